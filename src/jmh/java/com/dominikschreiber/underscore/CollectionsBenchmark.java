@@ -0,0 +1,166 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.BiFunction;
+import com.dominikschreiber.underscore.java.util.function.Consumer;
+import com.dominikschreiber.underscore.java.util.function.Function;
+import com.dominikschreiber.underscore.java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>benchmarks {@code _.each}, {@code _.map}, {@code _.filter}, {@code _.reduce} and {@code _.zip}
+ * against hand-written loops and {@code java.util.stream}</p>
+ */
+public class CollectionsBenchmark extends AbstractBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    public int size;
+
+    private List<Integer> values;
+    private List<Integer> others;
+
+    private final Function<Integer, Integer> square = in -> in * in;
+    private final Predicate<Integer> isEven = in -> in % 2 == 0;
+    private final BiFunction<Integer, Integer, Integer> sum = (now, accumulator) -> now + accumulator;
+
+    @Setup
+    public void setup() {
+        values = _.range(size);
+        others = new ArrayList<Integer>(_.range(size, 0, -1));
+    }
+
+    // ----- each ----------------------------------------------------------------------------------
+
+    @Benchmark
+    public void each(final Blackhole blackhole) {
+        _.each(values, (Consumer<Integer>) blackhole::consume);
+    }
+
+    @Benchmark
+    public void eachLoop(Blackhole blackhole) {
+        for (Integer value : values)
+            blackhole.consume(value);
+    }
+
+    @Benchmark
+    public void eachStream(Blackhole blackhole) {
+        values.stream().forEach(blackhole::consume);
+    }
+
+    // ----- map -----------------------------------------------------------------------------------
+
+    @Benchmark
+    public List<Integer> map() {
+        return _.map(values, square);
+    }
+
+    @Benchmark
+    public List<Integer> mapLoop() {
+        List<Integer> result = new ArrayList<Integer>(values.size());
+        for (Integer value : values)
+            result.add(value * value);
+        return result;
+    }
+
+    @Benchmark
+    public List<Integer> mapStream() {
+        return values.stream().map(in -> in * in).collect(Collectors.toList());
+    }
+
+    // ----- filter --------------------------------------------------------------------------------
+
+    @Benchmark
+    public List<Integer> filter() {
+        return _.filter(values, isEven);
+    }
+
+    @Benchmark
+    public List<Integer> filterLoop() {
+        List<Integer> result = new ArrayList<Integer>();
+        for (Integer value : values)
+            if (value % 2 == 0)
+                result.add(value);
+        return result;
+    }
+
+    @Benchmark
+    public List<Integer> filterStream() {
+        return values.stream().filter(in -> in % 2 == 0).collect(Collectors.toList());
+    }
+
+    // ----- reduce --------------------------------------------------------------------------------
+
+    @Benchmark
+    public Integer reduce() {
+        return _.reduce(values, sum, 0);
+    }
+
+    @Benchmark
+    public int reduceLoop() {
+        int result = 0;
+        for (Integer value : values)
+            result += value;
+        return result;
+    }
+
+    @Benchmark
+    public Integer reduceStream() {
+        return values.stream().reduce(0, Integer::sum);
+    }
+
+    // ----- map/filter/reduce chain ---------------------------------------------------------------
+
+    @Benchmark
+    public Integer chain() {
+        return new _<Integer>(values).map(square).filter(isEven).reduce(sum, 0);
+    }
+
+    @Benchmark
+    public Integer chainLazy() {
+        return _.lazy(values).map(square).filter(isEven).reduce(sum, 0);
+    }
+
+    @Benchmark
+    public Integer chainParallel() {
+        return _.parallel(values).map(square).filter(isEven).reduce(sum, 0, sum);
+    }
+
+    @Benchmark
+    public int chainLoop() {
+        int result = 0;
+        for (Integer value : values) {
+            int squared = value * value;
+            if (squared % 2 == 0)
+                result += squared;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Integer chainStream() {
+        return values.stream().map(in -> in * in).filter(in -> in % 2 == 0).reduce(0, Integer::sum);
+    }
+
+    // ----- zip -----------------------------------------------------------------------------------
+
+    @Benchmark
+    public List<Map.Entry<Integer, Integer>> zip() {
+        return _.zip(values, others);
+    }
+
+    @Benchmark
+    public List<Map.Entry<Integer, Integer>> zipLoop() {
+        List<Map.Entry<Integer, Integer>> result = new ArrayList<Map.Entry<Integer, Integer>>(values.size());
+        for (int i = 0; i < values.size(); i++)
+            result.add(_.entry(values.get(i), others.get(i)));
+        return result;
+    }
+}
@@ -0,0 +1,40 @@
+package com.dominikschreiber.underscore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/** <p>benchmarks {@code _.extend} against copying the fields by hand</p> */
+public class ExtendBenchmark extends AbstractBenchmark {
+
+    public static class Options {
+        public Integer timeout;
+        public String host;
+        public Boolean secure;
+        public Long retries;
+    }
+
+    private final Options options = options(null, "localhost", null, 3L);
+
+    private static Options options(Integer timeout, String host, Boolean secure, Long retries) {
+        Options options = new Options();
+        options.timeout = timeout;
+        options.host = host;
+        options.secure = secure;
+        options.retries = retries;
+        return options;
+    }
+
+    @Benchmark
+    public Options extend() throws IllegalAccessException, NoSuchFieldException {
+        return _.extend(options(1000, "example.com", true, 0L), options);
+    }
+
+    @Benchmark
+    public Options extendLoop() {
+        Options defaults = options(1000, "example.com", true, 0L);
+        if (options.timeout != null) defaults.timeout = options.timeout;
+        if (options.host != null) defaults.host = options.host;
+        if (options.secure != null) defaults.secure = options.secure;
+        if (options.retries != null) defaults.retries = options.retries;
+        return defaults;
+    }
+}
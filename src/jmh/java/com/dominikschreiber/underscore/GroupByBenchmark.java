@@ -0,0 +1,64 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/** <p>benchmarks {@code _.groupBy} and {@code _.countBy} against a hand-written loop and {@code java.util.stream}</p> */
+public class GroupByBenchmark extends AbstractBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    public int size;
+
+    private List<Integer> values;
+
+    private final Function<Integer, Integer> group = in -> in % 1000;
+
+    @Setup
+    public void setup() {
+        values = _.range(size);
+    }
+
+    @Benchmark
+    public Map<Integer, List<Integer>> groupBy() {
+        return _.groupBy(values, group);
+    }
+
+    @Benchmark
+    public Map<Integer, List<Integer>> groupByLoop() {
+        Map<Integer, List<Integer>> result = new HashMap<Integer, List<Integer>>();
+        for (Integer value : values) {
+            Integer key = value % 1000;
+            List<Integer> members = result.get(key);
+            if (members == null) {
+                members = new ArrayList<Integer>();
+                result.put(key, members);
+            }
+            members.add(value);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public Map<Integer, List<Integer>> groupByStream() {
+        return values.stream().collect(Collectors.groupingBy(in -> in % 1000));
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> countBy() {
+        return _.countBy(values, group);
+    }
+
+    @Benchmark
+    public Map<Integer, Long> countByStream() {
+        return values.stream().collect(Collectors.groupingBy(in -> in % 1000, Collectors.counting()));
+    }
+}
@@ -0,0 +1,49 @@
+package com.dominikschreiber.underscore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** <p>benchmarks {@code _.contains} on plain lists against {@code _.index} and a {@link HashSet}</p> */
+public class IndexBenchmark extends AbstractBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int size;
+
+    private List<Integer> values;
+    private Index<Integer, Integer> index;
+    private Set<Integer> set;
+    private int needle;
+
+    @Setup
+    public void setup() {
+        values = _.range(size);
+        index = _.index(values);
+        set = new HashSet<Integer>(values);
+        needle = size - 1;
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return _.contains(values, needle);
+    }
+
+    @Benchmark
+    public boolean containsIndex() {
+        return _.contains(index, needle);
+    }
+
+    @Benchmark
+    public boolean containsSet() {
+        return set.contains(needle);
+    }
+
+    @Benchmark
+    public Index<Integer, Integer> index() {
+        return _.index(values);
+    }
+}
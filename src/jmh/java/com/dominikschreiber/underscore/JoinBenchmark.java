@@ -0,0 +1,86 @@
+package com.dominikschreiber.underscore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/** <p>benchmarks {@code _.join} and {@code _.stringify} against a {@link StringBuilder} loop and {@code java.util.stream}</p> */
+public class JoinBenchmark extends AbstractBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    public int size;
+
+    private List<String> strings;
+    private List<Integer> numbers;
+    private List<Object> nested;
+    private final StringBuilder buffer = new StringBuilder();
+
+    @Setup
+    public void setup() {
+        numbers = _.range(size);
+        strings = new ArrayList<String>(size);
+        for (Integer number : numbers)
+            strings.add(Integer.toString(number));
+
+        // 10 values per nested object => size / 10 objects
+        nested = new ArrayList<Object>();
+        for (int i = 0; i < Math.max(1, size / 10); i++) {
+            Map<String, Object> object = new HashMap<String, Object>();
+            object.put("id", i);
+            object.put("tags", _.list("foo", "bar", "baz"));
+            object.put("values", _.range(5));
+            nested.add(object);
+        }
+    }
+
+    // ----- join ----------------------------------------------------------------------------------
+
+    @Benchmark
+    public String join() {
+        return _.join(strings, ",");
+    }
+
+    @Benchmark
+    public String joinChained() {
+        return new _<Integer>(numbers).join(",");
+    }
+
+    @Benchmark
+    public String joinFormatted() {
+        return _.join(numbers, ",", "IN (", ")", (i) -> "'" + i + "'");
+    }
+
+    @Benchmark
+    public String joinLoop() {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < strings.size(); i++) {
+            if (i > 0) joined.append(',');
+            joined.append(strings.get(i));
+        }
+        return joined.toString();
+    }
+
+    @Benchmark
+    public String joinStream() {
+        return strings.stream().collect(Collectors.joining(","));
+    }
+
+    // ----- stringify -----------------------------------------------------------------------------
+
+    @Benchmark
+    public String stringify() {
+        return _.stringify(nested);
+    }
+
+    @Benchmark
+    public StringBuilder stringifyToBuffer() {
+        buffer.setLength(0);
+        return _.stringify(nested, buffer);
+    }
+}
@@ -0,0 +1,40 @@
+package com.dominikschreiber.underscore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/** <p>benchmarks iterating over {@code _.range} (boxed and with {@link Range#each}) against a counting loop and {@link IntStream#range(int, int)}</p> */
+public class RangeBenchmark extends AbstractBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    public int size;
+
+    @Benchmark
+    public void range(Blackhole blackhole) {
+        for (Integer i : _.range(size))
+            blackhole.consume(i);
+    }
+
+    @Benchmark
+    public void rangeEach(Blackhole blackhole) {
+        ((Range) _.range(size)).each(blackhole::consume);
+    }
+
+    @Benchmark
+    public List<Integer> rangeLoop() {
+        List<Integer> range = new ArrayList<Integer>(size);
+        for (int i = 0; i < size; i++)
+            range.add(i);
+        return range;
+    }
+
+    @Benchmark
+    public void rangeStream(Blackhole blackhole) {
+        IntStream.range(0, size).forEach(blackhole::consume);
+    }
+}
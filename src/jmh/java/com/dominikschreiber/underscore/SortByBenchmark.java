@@ -0,0 +1,62 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Function;
+import com.dominikschreiber.underscore.java.util.function.ToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/** <p>benchmarks {@code _.sortBy} against {@link Collections#sort(List, Comparator)} and {@code java.util.stream}</p> */
+public class SortByBenchmark extends AbstractBenchmark {
+
+    @Param({"10", "10000", "10000000"})
+    public int size;
+
+    private List<Long> values;
+
+    private final Function<Long, Long> boxedKey = in -> in;
+    private final ToLongFunction<Long> key = in -> in;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        values = new ArrayList<Long>(size);
+        for (int i = 0; i < size; i++)
+            values.add(random.nextLong());
+    }
+
+    @Benchmark
+    public List<Long> sortBy() {
+        return _.sortBy(values, boxedKey);
+    }
+
+    @Benchmark
+    public List<Long> sortByPrimitive() {
+        return _.sortByLong(values, key);
+    }
+
+    @Benchmark
+    public Iterable<Long> sortByParallel() {
+        return _.parallel(values).sortByLong(key).value();
+    }
+
+    @Benchmark
+    public List<Long> sortByLoop() {
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Long> sortByStream() {
+        return values.stream().sorted(Comparator.comparingLong(in -> in)).collect(Collectors.toList());
+    }
+}
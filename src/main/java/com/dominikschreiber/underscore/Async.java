@@ -0,0 +1,290 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Function;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>implementation of {@link _#mapAsync(Iterable, Function, Options)}: calls a (typically
+ * blocking) function for many values concurrently, with at most {@code maxConcurrency} calls in
+ * flight, and collects the results in input order.</p>
+ * <p>The values are iterated and submitted by the calling thread, which blocks while
+ * {@code maxConcurrency} calls are in flight. Thus also large or lazy inputs are never submitted
+ * all at once.</p>
+ * <p>A call that timed out or was cancelled is interrupted and gives up its place among the calls
+ * in flight right away, so calls that hang (e.g. blocking I/O that ignores interrupts) neither
+ * reduce the concurrency for the other values nor block the results forever. Such calls may
+ * still be running when the results are returned (or the failure is thrown).</p>
+ */
+public final class Async {
+
+    /** what {@link _#mapAsync(Iterable, Function, Options)} does if a call fails */
+    public enum FailurePolicy {
+        /**
+         * stop submitting values, cancel (interrupt) the calls in flight and rethrow the first
+         * error (checked exceptions wrapped in an {@link IllegalStateException})
+         */
+        FAIL_FAST,
+        /** call the function for all values, then throw a {@link Failure} if any call failed */
+        COLLECT
+    }
+
+    /**
+     * <p>options of {@link _#mapAsync(Iterable, Function, Options)}. Fields that are {@code null}
+     * are set to their defaults (see {@link _#extend(Object, Object)}).</p>
+     */
+    public static class Options {
+        /** the maximum number of calls in flight, defaults to the number of processors */
+        public Integer maxConcurrency;
+        /** runs the calls, defaults to {@link #defaultExecutor()} */
+        public ExecutorService executor;
+        /** defaults to {@link FailurePolicy#FAIL_FAST} */
+        public FailurePolicy failurePolicy;
+        /**
+         * milliseconds after which a single call fails with a {@link TimeoutException} and is
+         * interrupted, defaults to never
+         */
+        public Long timeout;
+    }
+
+    /**
+     * <p>thrown by {@link _#mapAsync(Iterable, Function, Options)} with
+     * {@link FailurePolicy#COLLECT} if any call failed. It carries the results of the successful
+     * calls and the errors of the failed ones.</p>
+     */
+    public static class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final List<?> mResults;
+        private final SortedMap<Integer, Throwable> mErrors;
+
+        Failure(List<?> results, SortedMap<Integer, Throwable> errors) {
+            super(errors.size() + " of " + results.size() + " calls failed, first error at index "
+                    + errors.firstKey(), errors.get(errors.firstKey()));
+            mResults = results;
+            mErrors = errors;
+        }
+
+        /**
+         * @param <Out> the output type of the function
+         * @return the results in input order, {@code null} at the indexes of failed calls
+         */
+        @SuppressWarnings("unchecked") // exceptions cannot be generic, the caller knows the output type
+        public <Out> List<Out> results() {
+            return (List<Out>) mResults;
+        }
+
+        /** @return the errors of the failed calls by the index of their input value */
+        public SortedMap<Integer, Throwable> errors() {
+            return mErrors;
+        }
+    }
+
+    private static volatile ExecutorService sDefaultExecutor;
+
+    private Async() {}
+
+    /**
+     * <p>returns the executor used if none is given: on JVMs with virtual threads (Java 21+) an
+     * executor that starts a virtual thread per call, otherwise an unbounded pool of daemon
+     * threads. As the number of calls in flight is bounded by {@code maxConcurrency}, neither
+     * needs a bound of its own.</p>
+     * @return the shared default executor, created on first use
+     */
+    public static ExecutorService defaultExecutor() {
+        ExecutorService executor = sDefaultExecutor;
+        if (executor == null) {
+            synchronized (Async.class) {
+                executor = sDefaultExecutor;
+                if (executor == null) {
+                    executor = virtualThreads();
+                    if (executor == null)
+                        executor = Executors.newCachedThreadPool(Parallel.daemonThreads("underscore-async-"));
+                    sDefaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /** @return {@code Executors.newVirtualThreadPerTaskExecutor()}, or {@code null} if not available */
+    private static ExecutorService virtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            // before Java 21
+            return null;
+        }
+    }
+
+    /** the outcome of the call for a single value; the first completion wins */
+    private static final class Slot<Out> {
+        final AtomicBoolean mDone = new AtomicBoolean(false);
+        /** whether the permit of the call was released, by its return or its completion */
+        final AtomicBoolean mReleased = new AtomicBoolean(false);
+        volatile Out mValue;
+        volatile Throwable mError;
+        volatile Future<?> mCall;
+        volatile Timeout<Void> mTimeout;
+    }
+
+    static <In, Out> List<Out> map(Iterable<In> values, final Function<In, Out> function, Options options) {
+        if (values == null) return Collections.emptyList();
+
+        Options defaults = new Options();
+        defaults.maxConcurrency = Parallel.parallelism();
+        defaults.failurePolicy = FailurePolicy.FAIL_FAST;
+        defaults.timeout = 0L;
+
+        if (options != null) {
+            try {
+                Extend.extend(defaults, options, false);
+            } catch (Exception e) {
+                // defaults and options have the same class, all fields exist
+                throw new IllegalStateException(e);
+            }
+        }
+
+        final int maxConcurrency = Math.max(1, defaults.maxConcurrency);
+        ExecutorService executor = defaults.executor == null ? defaultExecutor() : defaults.executor;
+        final boolean failFast = defaults.failurePolicy == FailurePolicy.FAIL_FAST;
+        long timeout = defaults.timeout;
+
+        // a permit per call in flight, released when the call returns or is completed otherwise
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Slot<Out>> slots = new ArrayList<Slot<Out>>(Math.max(0, _.knownSize(values)));
+
+        try {
+            for (final In value : values) {
+                permits.acquire();
+                if (failFast && failure.get() != null) {
+                    permits.release();
+                    break;
+                }
+
+                final Slot<Out> slot = new Slot<Out>();
+                slots.add(slot);
+                Runnable call = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            // timed out or cancelled before it started
+                            if (slot.mDone.get()) return;
+
+                            Out result = null;
+                            Throwable error = null;
+                            try {
+                                result = function.apply(value);
+                            } catch (Throwable t) {
+                                error = t;
+                            }
+                            complete(slot, result, error, failFast ? failure : null);
+                        } finally {
+                            release(slot, permits);
+                        }
+                    }
+                };
+
+                try {
+                    slot.mCall = executor.submit(call);
+                } catch (RuntimeException e) {
+                    // e.g. rejected by a saturated or shut down executor
+                    complete(slot, null, e, failFast ? failure : null);
+                    release(slot, permits);
+                    continue;
+                }
+
+                if (timeout > 0) {
+                    slot.mTimeout = Scheduler.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (complete(slot, null, new TimeoutException("call timed out"),
+                                    failFast ? failure : null)) {
+                                slot.mCall.cancel(true);
+                                // a hung call must not hold its permit, it may never return
+                                release(slot, permits);
+                            }
+                        }
+                    }, timeout);
+                    // the call may have completed before its timeout was known
+                    if (slot.mDone.get()) slot.mTimeout.cancel(false);
+                }
+            }
+
+            if (failFast && failure.get() != null) cancel(slots, permits);
+
+            // all permits are back once all calls returned, timed out or were cancelled
+            permits.acquire(maxConcurrency);
+        } catch (InterruptedException e) {
+            cancel(slots, permits);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for asynchronous calls", e);
+        }
+
+        if (failure.get() != null) throw Parallel.rethrow(failure.get());
+
+        List<Out> results = new ArrayList<Out>(slots.size());
+        SortedMap<Integer, Throwable> errors = null;
+        for (int i = 0; i < slots.size(); i++) {
+            Slot<Out> slot = slots.get(i);
+            results.add(slot.mValue);
+            if (slot.mError != null) {
+                if (errors == null) errors = new TreeMap<Integer, Throwable>();
+                errors.put(i, slot.mError);
+            }
+        }
+
+        if (errors != null) throw new Failure(results, Collections.unmodifiableSortedMap(errors));
+        return results;
+    }
+
+    /**
+     * <p>completes {@code slot} with {@code value} or {@code error}, unless it was completed
+     * before</p>
+     * @param failure receives the first error if failing fast, else {@code null}
+     * @return {@code true} if {@code slot} was completed by this call
+     */
+    private static <Out> boolean complete(Slot<Out> slot, Out value, Throwable error,
+                                          AtomicReference<Throwable> failure) {
+        if (!slot.mDone.compareAndSet(false, true)) return false;
+
+        slot.mValue = value;
+        slot.mError = error;
+        Timeout<Void> timeout = slot.mTimeout;
+        if (timeout != null) timeout.cancel(false);
+        if (error != null && failure != null) failure.compareAndSet(null, error);
+        return true;
+    }
+
+    /** releases the permit of the call of {@code slot}, unless it was released before */
+    private static void release(Slot<?> slot, Semaphore permits) {
+        if (slot.mReleased.compareAndSet(false, true)) permits.release();
+    }
+
+    /** completes the calls in flight with a {@link CancellationException} and interrupts them */
+    private static <Out> void cancel(List<Slot<Out>> slots, Semaphore permits) {
+        for (Slot<Out> slot : slots) {
+            if (complete(slot, null, new CancellationException(), null)) {
+                Future<?> call = slot.mCall;
+                if (call != null) call.cancel(true);
+                release(slot, permits);
+            }
+        }
+    }
+}
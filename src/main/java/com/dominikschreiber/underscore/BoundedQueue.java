@@ -0,0 +1,141 @@
+package com.dominikschreiber.underscore;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>a bounded, lock-free multi-producer multi-consumer queue (Dmitry Vyukov's array queue) that
+ * connects the stages of a {@link Pipeline}.</p>
+ * <p>Each slot has a sequence number that tells producers and consumers whether it is free or
+ * full in the current lap around the array. Producers (consumers) claim a slot by a single CAS on
+ * the tail (head) position; {@link #offer(Object)} and {@link #poll()} never block but return
+ * {@code false} (or {@code null}) if the queue is full (or empty).</p>
+ * <p>Threads that have nothing to do park in {@link #awaitElement(long)} or
+ * {@link #awaitRoom(long)} and are unparked by the next {@code offer} or {@code poll}. They
+ * register before they check the head and tail positions one last time, and {@code offer} and
+ * {@code poll} look for registered threads after they moved these positions, so a wake-up cannot
+ * get lost in between.</p>
+ * <p>A queue is {@linkplain #close() closed} once all producers are done. Consumers that find it
+ * closed and empty know that no more elements will arrive.</p>
+ * @param <E> the type of the elements
+ */
+final class BoundedQueue<E> {
+
+    private final int mMask;
+    private final AtomicLongArray mSequences;
+    private final AtomicReferenceArray<E> mElements;
+    /** the position of the next element to be polled */
+    private final AtomicLong mHead = new AtomicLong();
+    /** the position of the next element to be offered */
+    private final AtomicLong mTail = new AtomicLong();
+    private volatile boolean mClosed;
+    /** consumers parked until an element is offered or the queue is closed */
+    private final ConcurrentLinkedQueue<Thread> mConsumers = new ConcurrentLinkedQueue<Thread>();
+    /** producers parked until an element is polled */
+    private final ConcurrentLinkedQueue<Thread> mProducers = new ConcurrentLinkedQueue<Thread>();
+
+    /** @param capacity the minimum capacity, rounded up to a power of two */
+    BoundedQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        mElements = new AtomicReferenceArray<E>(size);
+        for (int i = 0; i < size; i++)
+            mSequences.set(i, i);
+    }
+
+    /** @return {@code false} if the queue is full */
+    boolean offer(E element) {
+        long position = mTail.get();
+        while (true) {
+            int index = (int) position & mMask;
+            long difference = mSequences.get(index) - position;
+            if (difference == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mElements.lazySet(index, element);
+                    // publishes the element to the consumer of this lap
+                    mSequences.lazySet(index, position + 1);
+                    wake(mConsumers);
+                    return true;
+                }
+                position = mTail.get();
+            } else if (difference < 0) {
+                // the slot still holds the element of the previous lap
+                return false;
+            } else {
+                // another producer claimed the slot
+                position = mTail.get();
+            }
+        }
+    }
+
+    /** @return the oldest element, or {@code null} if the queue is empty */
+    E poll() {
+        long position = mHead.get();
+        while (true) {
+            int index = (int) position & mMask;
+            long difference = mSequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (mHead.compareAndSet(position, position + 1)) {
+                    E element = mElements.get(index);
+                    mElements.lazySet(index, null);
+                    // frees the slot for the producer of the next lap
+                    mSequences.lazySet(index, position + mMask + 1);
+                    wake(mProducers);
+                    return element;
+                }
+                position = mHead.get();
+            } else if (difference < 0) {
+                // the slot was not filled in this lap yet
+                return null;
+            } else {
+                // another consumer claimed the slot
+                position = mHead.get();
+            }
+        }
+    }
+
+    /**
+     * <p>parks the calling consumer until an element may have been offered, the queue was closed
+     * or {@code nanos} passed. It may also return spuriously, so {@link #poll()} must be called
+     * again.</p>
+     */
+    void awaitElement(long nanos) {
+        Thread current = Thread.currentThread();
+        mConsumers.add(current);
+        if (mHead.get() >= mTail.get() && !mClosed) LockSupport.parkNanos(this, nanos);
+        mConsumers.remove(current);
+    }
+
+    /**
+     * <p>parks the calling producer until an element may have been polled or {@code nanos}
+     * passed. It may also return spuriously, so {@link #offer(Object)} must be called again.</p>
+     */
+    void awaitRoom(long nanos) {
+        Thread current = Thread.currentThread();
+        mProducers.add(current);
+        if (mTail.get() - mHead.get() > mMask) LockSupport.parkNanos(this, nanos);
+        mProducers.remove(current);
+    }
+
+    private static void wake(ConcurrentLinkedQueue<Thread> parked) {
+        if (parked.isEmpty()) return;
+
+        Thread thread = parked.poll();
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    /** marks that no more elements will be offered */
+    void close() {
+        mClosed = true;
+        for (Thread thread = mConsumers.poll(); thread != null; thread = mConsumers.poll())
+            LockSupport.unpark(thread);
+    }
+
+    boolean isClosed() {
+        return mClosed;
+    }
+}
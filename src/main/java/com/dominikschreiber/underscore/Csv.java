@@ -0,0 +1,484 @@
+package com.dominikschreiber.underscore;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>implementation of {@link _#csv(Reader, Options)}: parses delimited text (CSV as of RFC 4180,
+ * TSV, ...) record by record into a single reusable {@link Row}.</p>
+ * <p>Fields may be enclosed in quotes to contain delimiters, line breaks and (doubled) quotes.
+ * Line breaks are {@code \n}, {@code \r\n} or {@code \r}. Empty lines are skipped.</p>
+ */
+public final class Csv {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * <p>options of {@link _#csv(Reader, Options)}. Fields that are {@code null} are set to their
+     * defaults (see {@link _#extend(Object, Object)}).</p>
+     */
+    public static class Options {
+        /** separates the fields of a record, defaults to {@code ','}; {@code '\t'} for TSV */
+        public Character delimiter;
+        /** encloses fields with delimiters, quotes or line breaks, defaults to {@code '"'} */
+        public Character quote;
+        /**
+         * whether the first record names the columns (see {@link Row#get(String)}) instead of
+         * being a row, defaults to {@code false}
+         */
+        public Boolean header;
+    }
+
+    /**
+     * <p>the current record of a {@link _#csv(Reader, Options)} source. The same row is reused
+     * for each record, so parsing allocates nothing per record once the row has grown to the
+     * largest record. E.g.</p>
+     * <pre>{@code
+     * _.reduce(_.csv(reader), (row, sum) -> sum + row.getLong(2), 0L);
+     * }</pre>
+     * <p>A row and its fields are only valid until the next record is read. Lazy chains pass
+     * each row through all stages before the next record is read; operations that keep rows
+     * (e.g. {@code _.filter} or {@code _.groupBy} of the rows themselves) have to
+     * {@link #copy()} them first.</p>
+     */
+    public static final class Row {
+        private char[] mChars = new char[256];
+        private int mLength;
+        /** the end of each field in {@link #mChars}, i.e. the start of the next one */
+        private int[] mEnds = new int[16];
+        private int mSize;
+        private Field[] mFields = new Field[16];
+        private Map<String, Integer> mColumns;
+
+        Row() {}
+
+        void clear() {
+            mLength = 0;
+            mSize = 0;
+        }
+
+        void append(char c) {
+            if (mLength == mChars.length) mChars = Arrays.copyOf(mChars, mLength * 2);
+            mChars[mLength++] = c;
+        }
+
+        void endField() {
+            if (mSize == mEnds.length) mEnds = Arrays.copyOf(mEnds, mSize * 2);
+            mEnds[mSize++] = mLength;
+        }
+
+        /** @return the number of fields */
+        public int size() {
+            return mSize;
+        }
+
+        private int start(int index) {
+            return index == 0 ? 0 : mEnds[index - 1];
+        }
+
+        private int check(int index) {
+            if (index < 0 || index >= mSize)
+                throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+            return index;
+        }
+
+        /**
+         * @param index the index of the field
+         * @return a view of the field, valid until the next record is read
+         */
+        public CharSequence get(int index) {
+            check(index);
+            if (index >= mFields.length) mFields = Arrays.copyOf(mFields, Math.max(index + 1, mFields.length * 2));
+            if (mFields[index] == null) mFields[index] = new Field(index);
+            return mFields[index];
+        }
+
+        /**
+         * @param column the name of the column
+         * @return the index of {@code column}, or {@code -1} if there is no such column
+         * @throws IllegalStateException if the source has no {@link Options#header}
+         */
+        public int indexOf(String column) {
+            if (mColumns == null) throw new IllegalStateException("the rows have no header");
+            Integer index = mColumns.get(column);
+            return index == null ? -1 : index;
+        }
+
+        private int column(String column) {
+            int index = indexOf(column);
+            if (index < 0) throw new IllegalArgumentException("no column " + column);
+            return index;
+        }
+
+        /** @see #get(int) */
+        public CharSequence get(String column) {
+            return get(column(column));
+        }
+
+        /**
+         * <p>parses a field as {@code long} without copying it to a {@link String}</p>
+         * @param index the index of the field
+         * @return the value of the field
+         * @throws NumberFormatException if the field is no {@code long}
+         */
+        public long getLong(int index) {
+            int start = start(check(index));
+            int end = mEnds[index];
+            int i = start;
+            boolean negative = false;
+            if (i < end && (mChars[i] == '-' || mChars[i] == '+')) {
+                negative = mChars[i] == '-';
+                i += 1;
+            }
+            if (i == end) throw notANumber(index);
+
+            // accumulated negatively, as Long.MIN_VALUE has no positive counterpart
+            long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = mChars[i] - '0';
+                if (digit < 0 || digit > 9 || value < limit / 10) throw notANumber(index);
+                value *= 10;
+                if (value < limit + digit) throw notANumber(index);
+                value -= digit;
+            }
+            return negative ? value : -value;
+        }
+
+        /** @see #getLong(int) */
+        public long getLong(String column) {
+            return getLong(column(column));
+        }
+
+        /** @see #getLong(int) */
+        public int getInt(int index) {
+            long value = getLong(index);
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw notANumber(index);
+            return (int) value;
+        }
+
+        /** @see #getLong(int) */
+        public int getInt(String column) {
+            return getInt(column(column));
+        }
+
+        /**
+         * @param index the index of the field
+         * @return the value of the field, as of {@link Double#parseDouble(String)}
+         * @throws NumberFormatException if the field is no {@code double}
+         */
+        public double getDouble(int index) {
+            return Double.parseDouble(get(index).toString());
+        }
+
+        /** @see #getDouble(int) */
+        public double getDouble(String column) {
+            return getDouble(column(column));
+        }
+
+        private NumberFormatException notANumber(int index) {
+            return new NumberFormatException("For input string: \"" + get(index) + "\"");
+        }
+
+        /**
+         * <p>copies the row, e.g. to keep it after the next record is read</p>
+         * @return a row with the fields of this row, that is not reused
+         */
+        public Row copy() {
+            Row copy = new Row();
+            copy.mChars = Arrays.copyOf(mChars, Math.max(1, mLength));
+            copy.mLength = mLength;
+            copy.mEnds = Arrays.copyOf(mEnds, Math.max(1, mSize));
+            copy.mSize = mSize;
+            copy.mFields = new Field[mSize];
+            copy.mColumns = mColumns;
+            return copy;
+        }
+
+        /** @return the fields like {@link java.util.List#toString()}, e.g. {@code [foo, 42]} */
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(mLength + 2 * mSize + 2).append('[');
+            for (int i = 0; i < mSize; i++) {
+                if (i > 0) out.append(", ");
+                out.append(mChars, start(i), mEnds[i] - start(i));
+            }
+            return out.append(']').toString();
+        }
+
+        /** a view of a field of the current record */
+        private final class Field implements CharSequence {
+            private final int mIndex;
+
+            Field(int index) {
+                mIndex = index;
+            }
+
+            @Override
+            public int length() {
+                return mEnds[mIndex] - start(mIndex);
+            }
+
+            @Override
+            public char charAt(int index) {
+                if (index < 0 || index >= length())
+                    throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+                return mChars[start(mIndex) + index];
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                if (start < 0 || end > length() || start > end)
+                    throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+                return new String(mChars, start(mIndex) + start, end - start);
+            }
+
+            @Override
+            public String toString() {
+                return new String(mChars, start(mIndex), length());
+            }
+        }
+    }
+
+    private Csv() {}
+
+    private static Options defaults(Options options) {
+        Options defaults = new Options();
+        defaults.delimiter = ',';
+        defaults.quote = '"';
+        defaults.header = false;
+
+        if (options != null) {
+            try {
+                Extend.extend(defaults, options, false);
+            } catch (Exception e) {
+                // defaults and options have the same class, all fields exist
+                throw new IllegalStateException(e);
+            }
+        }
+        return defaults;
+    }
+
+    static Iterable<Row> read(Reader reader, Options options) {
+        return Lazy.once(new Parser(reader, null, defaults(options)));
+    }
+
+    static Rows read(File file, Options options) throws IOException {
+        if (!file.isFile() || !file.canRead()) throw new FileNotFoundException(file + " cannot be read");
+        return new Rows(file, defaults(options));
+    }
+
+    /**
+     * <p>the rows of a file, created by {@link _#csv(File, Options)}. Each iteration opens the
+     * file, which is closed once all records are read. {@link #close()} closes the files of
+     * iterations that stopped early (e.g. by {@code first(n)}, {@code find} or an exception), so
+     * the rows should be closed in a {@code finally} block. E.g.</p>
+     * <pre>{@code
+     * Csv.Rows rows = _.csv(file);
+     * try {
+     *     return _.find(rows, (row) -> row.getLong(0) == id).copy();
+     * } finally {
+     *     rows.close();
+     * }
+     * }</pre>
+     */
+    public static final class Rows extends Lazy.Source<Row> implements Closeable {
+        private final File mFile;
+        private final Options mOptions;
+        /** the parsers of the iterations whose file is open */
+        private final List<Parser> mOpen = new ArrayList<Parser>();
+        private boolean mClosed;
+
+        Rows(File file, Options options) {
+            mFile = file;
+            mOptions = options;
+        }
+
+        /**
+         * @throws IllegalStateException if the rows are closed or the file cannot be opened
+         */
+        @Override
+        public synchronized Iterator<Row> iterator() {
+            if (mClosed) throw new IllegalStateException("the rows of " + mFile + " are closed");
+            try {
+                Parser parser = new Parser(new InputStreamReader(new FileInputStream(mFile), UTF_8), this, mOptions);
+                mOpen.add(parser);
+                return parser;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        synchronized void closed(Parser parser) {
+            mOpen.remove(parser);
+        }
+
+        /** closes the file of all iterations that are not done yet */
+        @Override
+        public void close() {
+            List<Parser> open;
+            synchronized (this) {
+                mClosed = true;
+                open = new ArrayList<Parser>(mOpen);
+            }
+            for (Parser parser : open)
+                parser.close();
+        }
+    }
+
+    /** reads the records of a reader into a single row, skipping the header */
+    private static final class Parser extends Lazy.LazyIterator<Row> {
+        private final Reader mReader;
+        /** the rows that opened the reader, or {@code null} if the reader belongs to the caller */
+        private final Rows mOwner;
+        private volatile boolean mClosed;
+        private final char mDelimiter;
+        private final char mQuote;
+        private boolean mHeader;
+        private final char[] mBuffer = new char[BUFFER_SIZE];
+        private int mPosition;
+        private int mLimit;
+        private int mLine = 1;
+        private boolean mDone;
+        private final Row mRow = new Row();
+
+        Parser(Reader reader, Rows owner, Options options) {
+            mReader = reader;
+            mOwner = owner;
+            mDelimiter = options.delimiter;
+            mQuote = options.quote;
+            mHeader = options.header;
+        }
+
+        @Override
+        protected Row computeNext() {
+            if (mClosed && !mDone) throw new IllegalStateException("the rows are closed");
+            try {
+                while (!mDone) {
+                    if (!readRecord()) continue;
+                    if (!mHeader) return mRow;
+
+                    Map<String, Integer> columns = new HashMap<String, Integer>();
+                    for (int i = mRow.size() - 1; i >= 0; i--)
+                        columns.put(mRow.get(i).toString(), i);
+                    mRow.mColumns = columns;
+                    mHeader = false;
+                }
+                return endOfData();
+            } catch (IOException e) {
+                close();
+                throw new IllegalStateException(e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private int peek() throws IOException {
+            while (mPosition == mLimit) {
+                if (mLimit < 0) return -1;
+                mLimit = mReader.read(mBuffer);
+                mPosition = 0;
+                if (mLimit < 0) {
+                    mPosition = -1;
+                    return -1;
+                }
+            }
+            return mBuffer[mPosition];
+        }
+
+        private int read() throws IOException {
+            int c = peek();
+            if (c >= 0) mPosition += 1;
+            return c;
+        }
+
+        /** reads {@code \n}, {@code \r\n} or {@code \r}, given the first char of it */
+        private void lineBreak(int c) throws IOException {
+            if (c == '\r' && peek() == '\n') read();
+            mLine += 1;
+        }
+
+        private boolean isEnd(int c) {
+            return c < 0 || c == mDelimiter || c == '\n' || c == '\r';
+        }
+
+        /** @return {@code true} if a record was read into {@link #mRow}, {@code false} for empty lines */
+        private boolean readRecord() throws IOException {
+            mRow.clear();
+            int c = read();
+            if (c < 0) {
+                mDone = true;
+                close();
+                return false;
+            }
+            if (c == '\n' || c == '\r') {
+                lineBreak(c);
+                return false;
+            }
+
+            while (true) {
+                if (c == mQuote) {
+                    int line = mLine;
+                    while (true) {
+                        c = read();
+                        if (c < 0) throw new IllegalStateException("line " + line + ": unterminated quoted field");
+                        if (c == mQuote) {
+                            c = read();
+                            // a doubled quote is a quote, a single quote ends the field
+                            if (c != mQuote) break;
+                        }
+                        if (c == '\n') mLine += 1;
+                        mRow.append((char) c);
+                    }
+                    if (!isEnd(c))
+                        throw new IllegalStateException("line " + mLine + ": unexpected '" + (char) c + "' after quoted field");
+                } else {
+                    while (!isEnd(c)) {
+                        mRow.append((char) c);
+                        c = read();
+                    }
+                }
+                mRow.endField();
+
+                if (c != mDelimiter) {
+                    if (c < 0) {
+                        mDone = true;
+                        close();
+                    } else {
+                        lineBreak(c);
+                    }
+                    return true;
+                }
+                c = read();
+            }
+        }
+
+        void close() {
+            if (mOwner == null) return;
+            synchronized (this) {
+                if (mClosed) return;
+                mClosed = true;
+            }
+            try {
+                mReader.close();
+            } catch (IOException e) {
+                // nothing more to read anyway
+            }
+            mOwner.closed(this);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Consumer;
+import com.dominikschreiber.underscore.java.util.function.Function;
+
+import java.util.concurrent.Future;
+
+/**
+ * <p>implementation of {@link _#debounce(Function, long, boolean, boolean)}: calls the wrapped
+ * function once per burst of calls, i.e. calls that are less than {@code wait} milliseconds
+ * apart.</p>
+ * <p>If {@code leading}, the function is called with the first input of a burst right away. If
+ * {@code trailing}, it is called with the last input of a burst {@code wait} milliseconds after
+ * the burst ended (unless that input was already passed on the leading edge).</p>
+ * <p>The state is guarded by the monitor of the debounce, but the function is called outside of
+ * it, so a slow call does not block concurrent callers. Trailing calls run on
+ * {@link Async#defaultExecutor()}, not on the scheduler thread.</p>
+ * @param <In> the input type of the wrapped function
+ * @param <Out> the output type of the wrapped function
+ */
+final class Debounce<In, Out> implements Function<In, Out>, Consumer<In> {
+
+    private final Function<In, Out> mFunction;
+    private final long mWait;
+    private final boolean mLeading;
+    private final boolean mTrailing;
+
+    private Out mResult;
+    /** the number of calls of the function started so far */
+    private long mCalls;
+    /** the call whose result is {@link #mResult} */
+    private long mResultCall;
+    private In mPending;
+    private boolean mHasPending;
+    /** the end of the current burst, {@code null} if there is no burst */
+    private Future<?> mTimer;
+    /** increased on each (re-)scheduling, so timers that were cancelled too late do nothing */
+    private long mGeneration;
+
+    Debounce(Function<In, Out> function, long wait, boolean leading, boolean trailing) {
+        mFunction = function;
+        mWait = wait;
+        mLeading = leading;
+        mTrailing = trailing;
+    }
+
+    /**
+     * <p>starts or extends the current burst by {@code wait} milliseconds</p>
+     * @return the result of this call of the function, or of its latest call
+     */
+    @Override
+    public Out apply(In in) {
+        long call;
+        synchronized (this) {
+            boolean callNow = mLeading && mTimer == null;
+
+            if (mTimer != null) mTimer.cancel(false);
+            final long generation = ++mGeneration;
+            mTimer = Scheduler.handOff(new Runnable() {
+                @Override
+                public void run() {
+                    trailing(generation);
+                }
+            }, mWait);
+
+            if (!callNow) {
+                mPending = in;
+                mHasPending = true;
+                return mResult;
+            }
+            mHasPending = false;
+            call = ++mCalls;
+        }
+        return call(call, in);
+    }
+
+    @Override
+    public void accept(In in) {
+        apply(in);
+    }
+
+    /** calls the function without holding the monitor, then keeps the result if it is the latest */
+    private Out call(long call, In in) {
+        Out result = mFunction.apply(in);
+        synchronized (this) {
+            // a later call may have completed first
+            if (call > mResultCall) {
+                mResultCall = call;
+                mResult = result;
+            }
+        }
+        return result;
+    }
+
+    private void trailing(long generation) {
+        In in;
+        long call;
+        synchronized (this) {
+            if (generation != mGeneration) return;
+
+            mTimer = null;
+            if (!mTrailing || !mHasPending) return;
+
+            in = mPending;
+            mPending = null;
+            mHasPending = false;
+            call = ++mCalls;
+        }
+        call(call, in);
+    }
+}
@@ -0,0 +1,262 @@
+package com.dominikschreiber.underscore;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>implementation of {@link _#extend(Object, Object, boolean)}.</p>
+ * <p>The public fields to be copied from one class onto another are looked up once per pair of
+ * classes and cached as a {@link Plan}, keyed by the target class and then by the source class.
+ * The cache is copied on write, so looking up a cached plan takes no lock.</p>
+ * <p>The cache holds the classes weakly. A plan references both classes through its fields, so
+ * it is held softly: a class can be unloaded (along with its class loader) once the plans for it
+ * were cleared, which the garbage collector does for plans that were not used for a while.</p>
+ */
+final class Extend {
+
+    /**
+     * target class => source class => plan, the maps are replaced as a whole when a plan is added.
+     * {@link java.util.WeakHashMap} is no option, as it expunges cleared keys on lookups.
+     */
+    private static volatile Map<ClassKey, Map<ClassKey, Reference<Plan>>> sPlans =
+            new HashMap<ClassKey, Map<ClassKey, Reference<Plan>>>();
+
+    private Extend() {}
+
+    /** a class, compared by identity */
+    private abstract static class ClassKey {
+        private final int mHash;
+
+        ClassKey(Class<?> type) {
+            mHash = System.identityHashCode(type);
+        }
+
+        abstract Class<?> type();
+
+        @Override
+        public final int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public final boolean equals(Object o) {
+            if (!(o instanceof ClassKey)) return false;
+            Class<?> type = type();
+            return type != null && type == ((ClassKey) o).type();
+        }
+    }
+
+    /** the class of a lookup, never stored in the cache */
+    private static final class Lookup extends ClassKey {
+        private final Class<?> mType;
+
+        Lookup(Class<?> type) {
+            super(type);
+            mType = type;
+        }
+
+        @Override
+        Class<?> type() {
+            return mType;
+        }
+    }
+
+    /** the class of a cached plan, {@code null} once it was unloaded */
+    private static final class Cached extends ClassKey {
+        private final Reference<Class<?>> mType;
+
+        Cached(Class<?> type) {
+            super(type);
+            mType = new WeakReference<Class<?>>(type);
+        }
+
+        @Override
+        Class<?> type() {
+            return mType.get();
+        }
+
+        boolean isCleared() {
+            return mType.get() == null;
+        }
+    }
+
+    /**
+     * <p>the public instance fields of a source class along with the fields of the same name in a
+     * target class. {@code mTargets[i]} is {@code null} if the target class has no field named
+     * like {@code mSources[i]}.</p>
+     */
+    static final class Plan {
+        final Field[] mSources;
+        final Field[] mTargets;
+
+        Plan(Class<?> target, Class<?> source) {
+            List<Field> sources = new ArrayList<Field>();
+            for (Field field : source.getFields())
+                if (!Modifier.isStatic(field.getModifiers()))
+                    sources.add(field);
+
+            mSources = sources.toArray(new Field[sources.size()]);
+            mTargets = new Field[mSources.length];
+            for (int i = 0; i < mSources.length; i++) {
+                try {
+                    mTargets[i] = target.getField(mSources[i].getName());
+                } catch (NoSuchFieldException e) {
+                    // only an error if there is a value to be copied, see Extend#extend
+                    mTargets[i] = null;
+                }
+            }
+        }
+    }
+
+    static Plan plan(Class<?> target, Class<?> source) {
+        Lookup targetKey = new Lookup(target);
+        Lookup sourceKey = new Lookup(source);
+        Plan plan = cached(sPlans, targetKey, sourceKey);
+        if (plan != null) return plan;
+
+        synchronized (Extend.class) {
+            Map<ClassKey, Map<ClassKey, Reference<Plan>>> plans = sPlans;
+            plan = cached(plans, targetKey, sourceKey);
+            if (plan != null) return plan;
+
+            plan = new Plan(target, source);
+
+            // copy without the plans of unloaded classes and the plans that were collected
+            Map<ClassKey, Map<ClassKey, Reference<Plan>>> copy = new HashMap<ClassKey, Map<ClassKey, Reference<Plan>>>();
+            Map<ClassKey, Reference<Plan>> sources = null;
+            for (Map.Entry<ClassKey, Map<ClassKey, Reference<Plan>>> entry : plans.entrySet()) {
+                if (((Cached) entry.getKey()).isCleared()) continue;
+
+                Map<ClassKey, Reference<Plan>> live = live(entry.getValue());
+                if (entry.getKey().equals(targetKey)) {
+                    sources = live;
+                } else if (!live.isEmpty()) {
+                    copy.put(entry.getKey(), live);
+                }
+            }
+            if (sources == null) sources = new HashMap<ClassKey, Reference<Plan>>();
+            sources.put(new Cached(source), new SoftReference<Plan>(plan));
+            copy.put(new Cached(target), sources);
+            sPlans = copy;
+
+            return plan;
+        }
+    }
+
+    /** @return a copy of {@code plans} without the plans of unloaded classes and the collected ones */
+    private static Map<ClassKey, Reference<Plan>> live(Map<ClassKey, Reference<Plan>> plans) {
+        Map<ClassKey, Reference<Plan>> live = new HashMap<ClassKey, Reference<Plan>>();
+        for (Map.Entry<ClassKey, Reference<Plan>> entry : plans.entrySet())
+            if (!((Cached) entry.getKey()).isCleared() && entry.getValue().get() != null)
+                live.put(entry.getKey(), entry.getValue());
+        return live;
+    }
+
+    private static Plan cached(Map<ClassKey, Map<ClassKey, Reference<Plan>>> plans, ClassKey target, ClassKey source) {
+        Map<ClassKey, Reference<Plan>> sources = plans.get(target);
+        Reference<Plan> reference = sources == null ? null : sources.get(source);
+        return reference == null ? null : reference.get();
+    }
+
+    static <Datastore> Datastore extend(Datastore defaults, Datastore options, boolean deep)
+            throws IllegalAccessException, NoSuchFieldException {
+        return extend(defaults, options, deep ? new HashSet<Merge>() : null);
+    }
+
+    /**
+     * <p>a value being merged into another one. Deep merges remember them, so values that
+     * reference themselves are merged only once instead of forever.</p>
+     */
+    private static final class Merge {
+        private final Object mCurrent;
+        private final Object mValue;
+
+        Merge(Object current, Object value) {
+            mCurrent = current;
+            mValue = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(mCurrent) + System.identityHashCode(mValue);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Merge && ((Merge) o).mCurrent == mCurrent && ((Merge) o).mValue == mValue;
+        }
+    }
+
+    /** @param merges the merges so far if {@code deep}, else {@code null} */
+    private static <Datastore> Datastore extend(Datastore defaults, Datastore options, Set<Merge> merges)
+            throws IllegalAccessException, NoSuchFieldException {
+        Plan plan = plan(defaults.getClass(), options.getClass());
+        if (merges != null) merges.add(new Merge(defaults, options));
+
+        for (int i = 0; i < plan.mSources.length; i++) {
+            Object value = plan.mSources[i].get(options);
+            if (value == null) continue;
+
+            Field target = plan.mTargets[i];
+            if (target == null) throw new NoSuchFieldException(plan.mSources[i].getName());
+
+            if (merges != null) {
+                Object current = target.get(defaults);
+                value = merge(current, value, merges);
+                if (value == current) continue;
+            }
+
+            target.set(defaults, value);
+        }
+
+        return defaults;
+    }
+
+    /**
+     * <p>merges {@code value} into {@code current} if both are {@link Map}s or extendable objects
+     * of compatible classes and returns {@code current}, otherwise returns {@code value}</p>
+     */
+    private static Object merge(Object current, Object value, Set<Merge> merges)
+            throws IllegalAccessException, NoSuchFieldException {
+        if (current == null || current == value) return value;
+        // merged already, or being merged further up
+        if (merges.contains(new Merge(current, value))) return current;
+
+        if (current instanceof Map && value instanceof Map) {
+            merges.add(new Merge(current, value));
+            // merged values come from the same field as current, so they fit its entries
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> target = (Map<Object, Object>) current;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (entry.getValue() == null) continue;
+
+                Object existing = target.get(entry.getKey());
+                Object merged = merge(existing, entry.getValue(), merges);
+                if (merged != existing) target.put(entry.getKey(), merged);
+            }
+            return current;
+        }
+
+        if (isExtendable(current) && isExtendable(value)
+                && (current.getClass().isInstance(value) || value.getClass().isInstance(current))) {
+            extend(current, value, merges);
+            return current;
+        }
+
+        return value;
+    }
+
+    /** objects are extendable if they have public instance fields (and are no {@link Map}s) */
+    private static boolean isExtendable(Object o) {
+        return !(o instanceof Map) && plan(o.getClass(), o.getClass()).mSources.length > 0;
+    }
+}
@@ -0,0 +1,152 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>an immutable hash index over values, created by {@link _#index(Iterable)} or
+ * {@link _#indexBy(Iterable, Function)}. Looking up values by key takes O(1) instead of the
+ * O(n) scan of {@link _#contains(Iterable, Object)} or {@link _#find(Iterable, com.dominikschreiber.underscore.java.util.function.Predicate)},
+ * so an index should be used whenever the same values are searched repeatedly. E.g.</p>
+ * <pre>{@code
+ * Index<Integer, User> users = _.indexBy(allUsers, (user) -> user.id);
+ * users.contains(42); // => true
+ * users.find(42); // => the first user with id 42
+ * users.get(42); // => all users with id 42
+ * }</pre>
+ * <p>Iterating an index gives the values in their original order. An index built by
+ * {@link _#index(Iterable)} is used transparently by {@link _#contains(Iterable, Object)}.</p>
+ * @param <Key> the type of the keys
+ * @param <Value> the type of the indexed values
+ */
+public class Index<Key, Value> implements Iterable<Value> {
+
+    private static final int END = -1;
+
+    private final Object[] mValues;
+    private final boolean mKeyedByValue;
+    /** key => position of the first value with that key */
+    private final Map<Key, Integer> mFirst;
+    /** position => position of the next value with the same key, or {@link #END} */
+    private final int[] mNext;
+
+    Index(Iterable<Value> values, Function<Value, Key> key) {
+        this(values == null ? new Object[0] : _.toArray(values), key);
+    }
+
+    private Index(Object[] values, Function<Value, Key> key) {
+        this(values, keys(values, key), key == null);
+    }
+
+    /**
+     * @param values the values to be indexed
+     * @param keys the key of each value, {@code keys[i]} belongs to {@code values[i]}
+     * @param keyedByValue {@code true} if {@code keys} are the values themselves
+     */
+    Index(Object[] values, Object[] keys, boolean keyedByValue) {
+        mValues = values;
+        mKeyedByValue = keyedByValue;
+        mFirst = new HashMap<Key, Integer>();
+        mNext = new int[mValues.length];
+
+        // link backwards so each chain is in encounter order without tracking its tail
+        for (int i = mValues.length - 1; i >= 0; i--) {
+            // keys holds the results of a Function<Value, Key>, or the values if keyed by value
+            @SuppressWarnings("unchecked")
+            Key k = (Key) keys[i];
+            Integer next = mFirst.put(k, i);
+            mNext[i] = next == null ? END : next;
+        }
+    }
+
+    /**
+     * <p>applies {@code key} exactly once to each value. Keys of an index built by
+     * {@link _#index(Iterable)} are the values themselves.</p>
+     */
+    static <Key, Value> Object[] keys(Object[] values, Function<Value, Key> key) {
+        if (key == null) return values;
+
+        Object[] keys = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            // values holds the Values passed to the constructor
+            @SuppressWarnings("unchecked")
+            Value value = (Value) values[i];
+            keys[i] = key.apply(value);
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked") // mValues holds the Values passed to the constructor
+    final Value valueAt(int position) {
+        return (Value) mValues[position];
+    }
+
+    /** like {@link #contains(Object)}, for keys of unknown type */
+    final boolean containsKey(Object key) {
+        return mFirst.containsKey(key);
+    }
+
+    /** @return {@code true} if the keys are the values themselves, see {@link _#index(Iterable)} */
+    final boolean isKeyedByValue() {
+        return mKeyedByValue;
+    }
+
+    /**
+     * @param key the key to be found
+     * @return {@code true} if a value with {@code key} is indexed
+     */
+    public boolean contains(Key key) {
+        return mFirst.containsKey(key);
+    }
+
+    /**
+     * @param key the key to be found
+     * @return the first indexed value with {@code key}, or {@code null} if there is none
+     */
+    public Value find(Key key) {
+        Integer position = mFirst.get(key);
+        return position == null ? null : valueAt(position);
+    }
+
+    /**
+     * @param key the key to be found
+     * @return all indexed values with {@code key} in their original order
+     */
+    public List<Value> get(Key key) {
+        Integer first = mFirst.get(key);
+        if (first == null) return Collections.emptyList();
+
+        List<Value> result = new ArrayList<Value>(1);
+        for (int i = first; i != END; i = mNext[i])
+            result.add(valueAt(i));
+        return Collections.unmodifiableList(result);
+    }
+
+    /** @return {@code values} as list, they must all be {@code Value}s */
+    @SuppressWarnings("unchecked")
+    static <Value> List<Value> asList(Object[] values) {
+        return (List<Value>) Arrays.asList(values);
+    }
+
+    /** @return the number of indexed values */
+    public int size() {
+        return mValues.length;
+    }
+
+    /** @return the number of distinct keys */
+    public int keys() {
+        return mFirst.size();
+    }
+
+    @Override
+    public Iterator<Value> iterator() {
+        return Collections.unmodifiableList(Index.<Value>asList(mValues)).iterator();
+    }
+}
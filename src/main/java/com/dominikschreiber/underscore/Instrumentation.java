@@ -0,0 +1,40 @@
+package com.dominikschreiber.underscore;
+
+/**
+ * <p>receives measurements of {@link _} operations, once installed by
+ * {@link _#instrument(Instrumentation)}. E.g.</p>
+ * <pre>{@code
+ * MetricsRegistry metrics = new MetricsRegistry();
+ * _.instrument(metrics);
+ * // ... run the application ...
+ * metrics.histogram("groupBy").percentile(0.99); // => the p99 latency of _.groupBy in nanos
+ * }</pre>
+ * <p>Each call of an operation that processes values is recorded once under the name of that
+ * operation, also if it is implemented by another one (e.g. {@code every} is not recorded as
+ * {@code some}), also if it throws. Operations that only create chains, lazy sources, ranges, functions or timers
+ * are not recorded, nor are the stages of lazy chains.</p>
+ * <p>Instrumentation is off by default. While it is off, the operations only check a single
+ * static field.</p>
+ * <p>Implementations are called synchronously by the thread that ran the operation, possibly
+ * by many threads at the same time. They should therefore be thread-safe and fast.</p>
+ * @see MetricsRegistry
+ */
+public interface Instrumentation {
+
+    /**
+     * <p>records a single call of an operation</p>
+     * @param operation the name of the operation, e.g. {@code "groupBy"}. Stages of parallel
+     *                  chains are prefixed with {@code "parallel."}.
+     * @param function the function passed to the operation (e.g. the key function of
+     *                 {@code groupBy}), or {@code null} if there is none
+     * @param inputSize the number of input values, or {@code -1} if it is not known in advance
+     * @param outputSize the number of output values, or {@code -1} if the output is no
+     *                   {@link java.util.Collection}, {@link java.util.Map} or array, or if the
+     *                   operation threw
+     * @param elapsedNanos the time the operation took in nanoseconds
+     * @param allocatedBytes the bytes allocated by the calling thread during the operation, or
+     *                       {@code -1} if the JVM does not expose them
+     */
+    void record(String operation, Object function, long inputSize, long outputSize, long elapsedNanos,
+                long allocatedBytes);
+}
@@ -0,0 +1,315 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Function;
+import com.dominikschreiber.underscore.java.util.function.Predicate;
+import com.dominikschreiber.underscore.java.util.function.Supplier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>lazy, fused views over {@link Iterable}s that back the lazy chain mode of {@link _}.</p>
+ * <p>Every view pulls its values from the view below it only when asked for the next value,
+ * so a chain of views is evaluated in a single pass without intermediate lists. Terminal
+ * operations that stop early (like {@link _#find(Predicate)}) stop the whole upstream chain.</p>
+ */
+final class Lazy {
+
+    private Lazy() {}
+
+    /**
+     * <p>base class for the iterators of lazy views. Subclasses implement {@link #computeNext()}
+     * and call {@link #endOfData()} once the view is exhausted.</p>
+     * @param <T> the type of the iterated values
+     */
+    abstract static class LazyIterator<T> implements Iterator<T> {
+        private static final int READY = 0;
+        private static final int NOT_READY = 1;
+        private static final int DONE = 2;
+
+        private int mState = NOT_READY;
+        private T mNext;
+
+        /**
+         * <p>computes the next value of the view</p>
+         * @return the next value, or the result of {@link #endOfData()} if there is none
+         */
+        protected abstract T computeNext();
+
+        protected final T endOfData() {
+            mState = DONE;
+            return null;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            if (mState == DONE) return false;
+            if (mState == READY) return true;
+
+            mNext = computeNext();
+            if (mState == DONE) return false;
+
+            mState = READY;
+            return true;
+        }
+
+        @Override
+        public final T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            T next = mNext;
+            mNext = null;
+            mState = NOT_READY;
+            return next;
+        }
+
+        @Override
+        public final void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static <In> Iterator<In> iterator(Iterable<In> values) {
+        if (values == null) return Collections.<In>emptyList().iterator();
+        return values.iterator();
+    }
+
+    // ----- map -----------------------------------------------------------------------------------
+
+    static <In, Out> Iterable<Out> map(final Iterable<In> values, final Function<In, Out> function) {
+        return new Iterable<Out>() {
+            @Override
+            public Iterator<Out> iterator() {
+                final Iterator<In> source = Lazy.iterator(values);
+                return new LazyIterator<Out>() {
+                    @Override
+                    protected Out computeNext() {
+                        return source.hasNext() ? function.apply(source.next()) : endOfData();
+                    }
+                };
+            }
+        };
+    }
+
+    // ----- filter --------------------------------------------------------------------------------
+
+    static <In> Iterable<In> filter(final Iterable<In> values, final Predicate<In> predicate) {
+        return new Iterable<In>() {
+            @Override
+            public Iterator<In> iterator() {
+                final Iterator<In> source = Lazy.iterator(values);
+                return new LazyIterator<In>() {
+                    @Override
+                    protected In computeNext() {
+                        while (source.hasNext()) {
+                            In value = source.next();
+                            if (predicate.test(value)) return value;
+                        }
+                        return endOfData();
+                    }
+                };
+            }
+        };
+    }
+
+    // ----- first ---------------------------------------------------------------------------------
+
+    static <In> Iterable<In> first(final Iterable<In> values, final int n) {
+        return new Iterable<In>() {
+            @Override
+            public Iterator<In> iterator() {
+                final Iterator<In> source = Lazy.iterator(values);
+                return new LazyIterator<In>() {
+                    private int mTaken = 0;
+
+                    @Override
+                    protected In computeNext() {
+                        // check the limit first so the source is not pulled beyond n
+                        if (mTaken >= n || !source.hasNext()) return endOfData();
+                        mTaken += 1;
+                        return source.next();
+                    }
+                };
+            }
+        };
+    }
+
+    // ----- rest ----------------------------------------------------------------------------------
+
+    static <In> Iterable<In> rest(final Iterable<In> values, final int startindex) {
+        return new Iterable<In>() {
+            @Override
+            public Iterator<In> iterator() {
+                final Iterator<In> source = Lazy.iterator(values);
+                return new LazyIterator<In>() {
+                    private boolean mSkipped = false;
+
+                    @Override
+                    protected In computeNext() {
+                        if (!mSkipped) {
+                            for (int i = 0; i < startindex && source.hasNext(); i++)
+                                source.next();
+                            mSkipped = true;
+                        }
+                        return source.hasNext() ? source.next() : endOfData();
+                    }
+                };
+            }
+        };
+    }
+
+    // ----- chunk ---------------------------------------------------------------------------------
+
+    static <In> Iterable<List<In>> chunk(final Iterable<In> values, final int n) {
+        return new Iterable<List<In>>() {
+            @Override
+            public Iterator<List<In>> iterator() {
+                if (values instanceof List && values instanceof RandomAccess) {
+                    // chunks of lists are read-only views, like _.first(List, int)
+                    final List<In> list = (List<In>) values;
+                    return new LazyIterator<List<In>>() {
+                        private int mFrom = 0;
+
+                        @Override
+                        protected List<In> computeNext() {
+                            int size = list.size();
+                            if (mFrom >= size) return endOfData();
+
+                            int to = (int) Math.min((long) mFrom + n, size);
+                            List<In> chunk = Collections.unmodifiableList(list.subList(mFrom, to));
+                            mFrom = to;
+                            return chunk;
+                        }
+                    };
+                }
+
+                final Iterator<In> source = Lazy.iterator(values);
+                return new LazyIterator<List<In>>() {
+                    @Override
+                    protected List<In> computeNext() {
+                        if (!source.hasNext()) return endOfData();
+
+                        List<In> chunk = new ArrayList<In>(Math.min(n, 1024));
+                        while (chunk.size() < n && source.hasNext())
+                            chunk.add(source.next());
+                        return chunk;
+                    }
+                };
+            }
+        };
+    }
+
+    // ----- zip -----------------------------------------------------------------------------------
+
+    static <F, S> Iterable<Map.Entry<F, S>> zip(final Iterable<F> first, final Iterable<S> second) {
+        return new Iterable<Map.Entry<F, S>>() {
+            @Override
+            public Iterator<Map.Entry<F, S>> iterator() {
+                // a missing side zips to nothing, like _.zip(Iterable, Iterable)
+                final Iterator<F> f = Lazy.iterator(second == null ? null : first);
+                final Iterator<S> s = Lazy.iterator(first == null ? null : second);
+                return new LazyIterator<Map.Entry<F, S>>() {
+                    @Override
+                    protected Map.Entry<F, S> computeNext() {
+                        return f.hasNext() && s.hasNext() ? _.entry(f.next(), s.next()) : endOfData();
+                    }
+                };
+            }
+        };
+    }
+
+    // ----- sources -------------------------------------------------------------------------------
+
+    /**
+     * <p>a source whose values must only be pulled as they are needed, because it may never end
+     * (like {@link #iterate(Object, Function)}) or can only be iterated once (like
+     * {@link #once(Iterator)}). {@link _#_(Iterable)} wraps it in a lazy chain.</p>
+     * @param <T> the type of the values
+     */
+    abstract static class Source<T> implements Iterable<T> {}
+
+    /** a source that can be iterated only once, e.g. a database cursor */
+    static <T> Iterable<T> once(final Iterator<T> iterator) {
+        return new Source<T>() {
+            private final AtomicBoolean mIterated = new AtomicBoolean(false);
+
+            @Override
+            public Iterator<T> iterator() {
+                if (mIterated.getAndSet(true))
+                    throw new IllegalStateException("the values of an iterator can only be iterated once");
+                return iterator;
+            }
+        };
+    }
+
+    static <T> Iterator<T> iterator(final Enumeration<T> enumeration) {
+        return new LazyIterator<T>() {
+            @Override
+            protected T computeNext() {
+                return enumeration.hasMoreElements() ? enumeration.nextElement() : endOfData();
+            }
+        };
+    }
+
+    static <T> Iterable<T> iterate(final T seed, final Function<T, T> function) {
+        return new Source<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new LazyIterator<T>() {
+                    private boolean mStarted = false;
+                    private T mCurrent;
+
+                    @Override
+                    protected T computeNext() {
+                        // the function is only called once the next value is asked for
+                        mCurrent = mStarted ? function.apply(mCurrent) : seed;
+                        mStarted = true;
+                        return mCurrent;
+                    }
+                };
+            }
+        };
+    }
+
+    static <T> Iterable<T> generate(final Supplier<T> supplier) {
+        return new Source<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new LazyIterator<T>() {
+                    @Override
+                    protected T computeNext() {
+                        return supplier.get();
+                    }
+                };
+            }
+        };
+    }
+
+    static <T> Iterable<T> cycle(final Iterable<T> values) {
+        return new Source<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new LazyIterator<T>() {
+                    private Iterator<T> mSource = Lazy.iterator(values);
+
+                    @Override
+                    protected T computeNext() {
+                        if (!mSource.hasNext()) {
+                            mSource = Lazy.iterator(values);
+                            // an empty pass would repeat forever
+                            if (!mSource.hasNext()) return endOfData();
+                        }
+                        return mSource.next();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,238 @@
+package com.dominikschreiber.underscore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>the lines of a memory-mapped UTF-8 text file, created by {@link _#lines(File)}. E.g.</p>
+ * <pre>{@code
+ * _.countBy(_.lines(new File("access.log")), (line) -> statusOf(line));
+ * // => {200: 3179834, 404: 1187, 500: 12}
+ * }</pre>
+ * <p>The file is mapped into memory instead of being read onto the heap. Each line is a
+ * {@link CharSequence} view of the mapped bytes, without the line terminator ({@code \n} or
+ * {@code \r\n}). Lines of ASCII characters are never decoded; other lines are decoded on first
+ * access to their characters. {@link CharSequence#toString()} copies a line, e.g. to keep it
+ * as a map key.</p>
+ * <p>{@link #segments(int)} splits the lines into parts at line boundaries, e.g. to process
+ * them in parallel.</p>
+ * <p>The mapping stays valid after the file is closed and is released when the lines are
+ * garbage collected. Changing the file while it is mapped changes the lines.</p>
+ */
+public final class Lines implements Iterable<CharSequence> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** the largest part of a file that is mapped at once */
+    static final int MAX_MAPPING = Integer.MAX_VALUE;
+
+    /** parts of the file that each consist of whole lines, in order */
+    private final List<ByteBuffer> mParts;
+
+    private Lines(List<ByteBuffer> parts) {
+        mParts = parts;
+    }
+
+    /**
+     * <p>maps {@code file} in parts of at most {@code maxMapping} bytes that end at line
+     * boundaries</p>
+     * @throws IOException if {@code file} cannot be read or has a line longer than
+     *                     {@code maxMapping} bytes
+     */
+    static Lines map(File file, int maxMapping) throws IOException {
+        List<ByteBuffer> parts = new ArrayList<ByteBuffer>();
+
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                int length = (int) Math.min(maxMapping, size - position);
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                // the next mapping starts with the line that did not fit completely
+                if (position + length < size) {
+                    int end = lastLineEnd(mapped, length);
+                    if (end < 0) throw new IOException(file + " has a line longer than " + maxMapping + " bytes");
+                    length = end;
+                }
+
+                parts.add(slice(mapped, 0, length));
+                position += length;
+            }
+        } finally {
+            input.close();
+        }
+
+        return new Lines(parts);
+    }
+
+    /** @return the position after the last {@code \n} before {@code end}, or {@code -1} */
+    private static int lastLineEnd(ByteBuffer buffer, int end) {
+        for (int i = end - 1; i >= 0; i--)
+            if (buffer.get(i) == '\n') return i + 1;
+        return -1;
+    }
+
+    /** @return the position after the first {@code \n} at or after {@code start}, or the limit */
+    private static int nextLineEnd(ByteBuffer buffer, int start) {
+        int limit = buffer.limit();
+        for (int i = start; i < limit; i++)
+            if (buffer.get(i) == '\n') return i + 1;
+        return limit;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(to);
+        duplicate.position(from);
+        return duplicate.slice();
+    }
+
+    /**
+     * <p>splits the lines into at most {@code n} parts of about the same number of bytes. Each
+     * line is in exactly one part, the parts are in the order of the file. E.g.</p>
+     * <pre>{@code
+     * _.parallel(_.lines(log).segments(8)).map((segment) -> _.countBy(segment, statusOf));
+     * }</pre>
+     * <p>No bytes are copied, the segments are views of the same mapping.</p>
+     * @param n the maximum number of segments
+     * @return the segments, fewer than {@code n} if there are not enough lines
+     */
+    public List<Lines> segments(int n) {
+        long size = 0;
+        for (ByteBuffer part : mParts)
+            size += part.limit();
+        if (size == 0 || n <= 1) return Collections.singletonList(this);
+
+        long target = (size + n - 1) / n;
+        List<Lines> segments = new ArrayList<Lines>(n);
+        List<ByteBuffer> current = new ArrayList<ByteBuffer>();
+        long currentSize = 0;
+
+        for (ByteBuffer part : mParts) {
+            int start = 0;
+            while (start < part.limit()) {
+                // end the segment at the first line end after its target size
+                long wanted = target - currentSize;
+                int end = wanted >= part.limit() - start
+                        ? part.limit()
+                        : nextLineEnd(part, start + (int) Math.max(0, wanted - 1));
+
+                current.add(slice(part, start, end));
+                currentSize += end - start;
+                start = end;
+
+                if (currentSize >= target) {
+                    segments.add(new Lines(current));
+                    current = new ArrayList<ByteBuffer>();
+                    currentSize = 0;
+                }
+            }
+        }
+        if (!current.isEmpty()) segments.add(new Lines(current));
+
+        return segments;
+    }
+
+    @Override
+    public Iterator<CharSequence> iterator() {
+        return new Lazy.LazyIterator<CharSequence>() {
+            private int mPart = 0;
+            private int mPosition = 0;
+
+            @Override
+            protected CharSequence computeNext() {
+                while (mPart < mParts.size() && mPosition >= mParts.get(mPart).limit()) {
+                    mPart += 1;
+                    mPosition = 0;
+                }
+                if (mPart >= mParts.size()) return endOfData();
+
+                ByteBuffer part = mParts.get(mPart);
+                int start = mPosition;
+                int next = nextLineEnd(part, start);
+                mPosition = next;
+
+                int end = next;
+                if (end > start && part.get(end - 1) == '\n') end -= 1;
+                if (end > start && part.get(end - 1) == '\r') end -= 1;
+                return new Line(part, start, end);
+            }
+        };
+    }
+
+    /** a line, viewed in place in the mapped file */
+    private static final class Line implements CharSequence {
+        private static final int UNKNOWN = 0;
+        private static final int ASCII = 1;
+        private static final int DECODED = 2;
+
+        private final ByteBuffer mBuffer;
+        private final int mStart;
+        private final int mEnd;
+        private int mEncoding = UNKNOWN;
+        private String mDecoded;
+
+        Line(ByteBuffer buffer, int start, int end) {
+            mBuffer = buffer;
+            mStart = start;
+            mEnd = end;
+        }
+
+        /** @return {@code true} if all bytes are ASCII characters, decodes the line otherwise */
+        private boolean isAscii() {
+            if (mEncoding == UNKNOWN) {
+                for (int i = mStart; i < mEnd; i++) {
+                    if (mBuffer.get(i) < 0) {
+                        mDecoded = UTF_8.decode(slice(mBuffer, mStart, mEnd)).toString();
+                        mEncoding = DECODED;
+                        return false;
+                    }
+                }
+                mEncoding = ASCII;
+            }
+            return mEncoding == ASCII;
+        }
+
+        @Override
+        public int length() {
+            return isAscii() ? mEnd - mStart : mDecoded.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (!isAscii()) return mDecoded.charAt(index);
+            if (index < 0 || index >= mEnd - mStart)
+                throw new IndexOutOfBoundsException("index " + index + ", length " + (mEnd - mStart));
+            return (char) mBuffer.get(mStart + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (!isAscii()) return mDecoded.subSequence(start, end);
+            if (start < 0 || end > mEnd - mStart || start > end)
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + (mEnd - mStart));
+            return new Line(mBuffer, mStart + start, mStart + end);
+        }
+
+        @Override
+        public String toString() {
+            if (!isAscii()) return mDecoded;
+
+            char[] chars = new char[mEnd - mStart];
+            for (int i = 0; i < chars.length; i++)
+                chars[i] = (char) mBuffer.get(mStart + i);
+            return new String(chars);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.LongConsumer;
+
+import java.math.BigInteger;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * <p>an arithmetic sequence of {@code long}s, created by {@link _#range(long, long, long)}. Like
+ * {@link Range} its values are computed on access, so it takes constant memory.</p>
+ * <p>A long range may hold more than {@link Integer#MAX_VALUE} values, so unlike {@link Range}
+ * it is no {@link List} (whose size and indexes are {@code int}s). All operations of {@link _}
+ * iterate it; {@link #longSize()}, {@link #valueAt(long)}, {@link #contains(long)},
+ * {@link #each(LongConsumer)} and {@link #split(int)} take {@code long} sizes and indexes.
+ * {@link #asList()} views ranges of at most {@link Integer#MAX_VALUE} values as list.</p>
+ * @see Range
+ */
+public final class LongRange implements Iterable<Long> {
+
+    private final long mStart;
+    private final long mStep;
+    private final long mSize;
+
+    LongRange(long start, long step, long size) {
+        mStart = start;
+        mStep = step;
+        mSize = size;
+    }
+
+    /**
+     * @see _#range(long, long, long)
+     * @throws IllegalArgumentException if the range has more than {@link Long#MAX_VALUE} values
+     */
+    static LongRange of(long start, long stop, long step) {
+        if (!(step > 0 && start < stop || step < 0 && start > stop)) return new LongRange(start, step, 0);
+
+        // stop - start may overflow, the size is computed only once
+        BigInteger distance = BigInteger.valueOf(stop).subtract(BigInteger.valueOf(start)).abs();
+        BigInteger size = distance.subtract(BigInteger.ONE)
+                .divide(BigInteger.valueOf(step).abs())
+                .add(BigInteger.ONE);
+
+        if (size.bitLength() > 63)
+            throw new IllegalArgumentException("range has more than " + Long.MAX_VALUE + " values");
+        return new LongRange(start, step, size.longValue());
+    }
+
+    /**
+     * @param index the index of the value
+     * @return the value at {@code index}
+     */
+    public long valueAt(long index) {
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        return mStart + index * mStep;
+    }
+
+    /** @return the number of values */
+    public long longSize() {
+        return mSize;
+    }
+
+    /**
+     * @param value the value to look for
+     * @return the index of {@code value}, or {@code -1} if it is not in the range
+     */
+    public long indexOf(long value) {
+        if (mSize == 0) return -1;
+        // compare in the direction of the step, as value - start may overflow
+        if (mStep > 0 ? value < mStart : value > mStart) return -1;
+
+        long offset = value - mStart;
+        long step = mStep;
+        if (mStep < 0) {
+            offset = -offset;
+            step = -step;
+        }
+        long index;
+        if (offset >= 0 && step > 0) {
+            if (offset % step != 0) return -1;
+            index = offset / step;
+        } else {
+            // the distance (or step) exceeds Long.MAX_VALUE, i.e. is negative as signed long
+            BigInteger[] division = unsigned(offset).divideAndRemainder(unsigned(step));
+            if (division[1].signum() != 0 || division[0].bitLength() > 63) return -1;
+            index = division[0].longValue();
+        }
+        return index < mSize ? index : -1;
+    }
+
+    private static BigInteger unsigned(long value) {
+        BigInteger big = BigInteger.valueOf(value);
+        return value < 0 ? big.add(BigInteger.ONE.shiftLeft(64)) : big;
+    }
+
+    /**
+     * @param value the value to look for
+     * @return {@code true} if {@code value} is in the range
+     */
+    public boolean contains(long value) {
+        return indexOf(value) >= 0;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            private long mIndex = 0;
+            private long mNext = mStart;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < mSize;
+            }
+
+            @Override
+            public Long next() {
+                if (mIndex >= mSize) throw new NoSuchElementException();
+
+                long value = mNext;
+                mIndex += 1;
+                mNext += mStep;
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private LongRange range(long fromIndex, long toIndex) {
+        if (fromIndex < 0 || toIndex > mSize || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("from " + fromIndex + ", to " + toIndex + ", size " + mSize);
+        return new LongRange(mStart + fromIndex * mStep, mStep, toIndex - fromIndex);
+    }
+
+    /**
+     * <p>calls {@code consumer} with each value of the range, in order and without boxing them</p>
+     * @param consumer the operation to call with each value
+     */
+    public void each(LongConsumer consumer) {
+        long value = mStart;
+        for (long i = 0; i < mSize; i++, value += mStep)
+            consumer.accept(value);
+    }
+
+    /**
+     * <p>splits the range into {@code parts} contiguous long ranges of (nearly) the same size, e.g.
+     * to process them in parallel loops</p>
+     * @param parts the number of parts, at most the size of the range
+     * @return the parts, in order
+     */
+    public List<LongRange> split(int parts) {
+        int count = (int) Math.max(1, Math.min(parts, mSize));
+        List<LongRange> split = new ArrayList<LongRange>(count);
+        long from = 0;
+        for (int i = 0; i < count; i++) {
+            // the first (mSize % count) parts get one more value, computed without overflow
+            long to = mSize / count * (i + 1) + Math.min(i + 1, mSize % count);
+            split.add(range(from, to));
+            from = to;
+        }
+        return split;
+    }
+
+    /**
+     * <p>views the range as immutable {@link List} with constant time {@link List#get(int)},
+     * {@link List#contains(Object)} and {@link List#indexOf(Object)}, that equals any list with
+     * the same values</p>
+     * @return the values as list
+     * @throws IllegalStateException if the range has more than {@link Integer#MAX_VALUE} values
+     */
+    public List<Long> asList() {
+        if (mSize > Integer.MAX_VALUE)
+            throw new IllegalStateException("range has more than " + Integer.MAX_VALUE + " values, use split");
+        return new ListView(this);
+    }
+
+    private static final class ListView extends AbstractList<Long> implements RandomAccess {
+        private final LongRange mRange;
+
+        ListView(LongRange range) {
+            mRange = range;
+        }
+
+        @Override
+        public Long get(int index) {
+            return mRange.valueAt(index);
+        }
+
+        @Override
+        public int size() {
+            return (int) mRange.mSize;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof Long ? (int) mRange.indexOf((Long) o) : -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOf(o) >= 0;
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return mRange.iterator();
+        }
+
+        @Override
+        public List<Long> subList(int fromIndex, int toIndex) {
+            return mRange.range(fromIndex, toIndex).asList();
+        }
+    }
+}
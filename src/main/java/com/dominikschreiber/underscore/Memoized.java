@@ -0,0 +1,408 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Function;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>a thread-safe, bounded cache of the results of a {@link Function}, created by
+ * {@link _#memoize(Function, Options)}.</p>
+ * <p>The cache is split into independently locked segments by the hash of the keys, so threads
+ * that look up different keys rarely wait for each other. The function itself is never called
+ * while holding a lock. If several threads miss the same key at the same time, only the first one
+ * calls the function, the others wait for its result (<i>single flight</i>).</p>
+ * <p>Results are cached until they are evicted because their segment is full or because they
+ * expired. Exceptions thrown by the function are passed to all waiting callers and are not
+ * cached.</p>
+ * @param <In> the input type of the function
+ * @param <Out> the output type of the function
+ */
+public final class Memoized<In, Out> implements Function<In, Out> {
+
+    /** how to choose the result to be evicted when the cache is full */
+    public enum Eviction {
+        /** evict the least recently used result */
+        LRU,
+        /** evict the least frequently used result, the least recently promoted one on ties */
+        LFU
+    }
+
+    /**
+     * <p>options of {@link _#memoize(Function, Options)}. Fields that are {@code null} are set to
+     * their defaults (see {@link _#extend(Object, Object)}).</p>
+     * @param <In> the input type of the function
+     */
+    public static class Options<In> {
+        /** the maximum number of cached results (approximately), defaults to {@code 1024} */
+        public Integer maxSize;
+        /** defaults to {@link Eviction#LRU} */
+        public Eviction eviction;
+        /** milliseconds after which a result expires, defaults to never */
+        public Long ttl;
+        /** computes the cache key of an input, defaults to the input itself */
+        public Function<In, ?> key;
+        /** the expected number of concurrently calling threads, defaults to the number of processors */
+        public Integer concurrency;
+    }
+
+    /** segments are not split further once they would hold less results than this */
+    private static final int MIN_SEGMENT_SIZE = 8;
+
+    private final Function<In, Out> mFunction;
+    private final Function<In, ?> mKey;
+    private final long mTtl;
+    private final boolean mLfu;
+    private final Segment<Out>[] mSegments;
+
+    Memoized(Function<In, Out> function, Options<In> options) {
+        Options<In> defaults = new Options<In>();
+        defaults.maxSize = 1024;
+        defaults.eviction = Eviction.LRU;
+        defaults.ttl = 0L;
+        defaults.concurrency = Parallel.parallelism();
+
+        if (options != null) {
+            try {
+                Extend.extend(defaults, options, false);
+            } catch (Exception e) {
+                // defaults and options have the same class, all fields exist
+                throw new IllegalStateException(e);
+            }
+        }
+
+        mFunction = function;
+        mKey = defaults.key;
+        mTtl = TimeUnit.MILLISECONDS.toNanos(defaults.ttl);
+        mLfu = defaults.eviction == Eviction.LFU;
+
+        int maxSize = Math.max(1, defaults.maxSize);
+        int limit = Math.max(1, Math.min(defaults.concurrency, maxSize / MIN_SEGMENT_SIZE));
+        int count = Integer.highestOneBit(limit);
+        int capacity = (maxSize + count - 1) / count;
+
+        // generic arrays cannot be created, this one only ever holds Segment<Out>s
+        @SuppressWarnings("unchecked")
+        Segment<Out>[] segments = (Segment<Out>[]) new Segment<?>[count];
+        for (int i = 0; i < count; i++)
+            segments[i] = new Segment<Out>(capacity, mLfu);
+        mSegments = segments;
+    }
+
+    /** a cached result, or the placeholder of a result that is being computed */
+    private static final class Entry<Out> {
+        final Object mKey;
+        final CountDownLatch mDone = new CountDownLatch(1);
+        volatile Out mValue;
+        volatile Throwable mError;
+        volatile long mExpiresAt;
+        // ----- LFU only, see Segment -----
+        Bucket<Out> mBucket;
+        Entry<Out> mPrevious;
+        Entry<Out> mNext;
+
+        Entry(Object key) {
+            mKey = key;
+        }
+
+        boolean isDone() {
+            return mDone.getCount() == 0;
+        }
+    }
+
+    /** the entries that were used equally often, from the least recently promoted one */
+    private static final class Bucket<Out> {
+        final int mFrequency;
+        Bucket<Out> mPrevious;
+        Bucket<Out> mNext;
+        Entry<Out> mFirst;
+        Entry<Out> mLast;
+
+        Bucket(int frequency) {
+            mFrequency = frequency;
+        }
+    }
+
+    /**
+     * <p>a part of the cache with its own lock. With {@link Eviction#LRU} its entries are ordered
+     * by access. With {@link Eviction#LFU} they are linked into buckets by frequency, which are
+     * ordered by frequency, so looking up, promoting and evicting an entry take O(1).</p>
+     * <p>All methods must be called while holding {@link #mLock}.</p>
+     */
+    private static final class Segment<Out> {
+        final ReentrantLock mLock = new ReentrantLock();
+        final Map<Object, Entry<Out>> mEntries;
+        final int mCapacity;
+        final boolean mLfu;
+        /** the bucket of the least frequently used entries, LFU only */
+        Bucket<Out> mLowest;
+        long mHits;
+        long mMisses;
+        long mEvictions;
+
+        Segment(int capacity, boolean lfu) {
+            mEntries = new LinkedHashMap<Object, Entry<Out>>(16, 0.75f, !lfu);
+            mCapacity = capacity;
+            mLfu = lfu;
+        }
+
+        void put(Entry<Out> entry) {
+            mEntries.put(entry.mKey, entry);
+            if (!mLfu) return;
+
+            if (mLowest == null || mLowest.mFrequency != 1) {
+                Bucket<Out> bucket = new Bucket<Out>(1);
+                bucket.mNext = mLowest;
+                if (mLowest != null) mLowest.mPrevious = bucket;
+                mLowest = bucket;
+            }
+            append(mLowest, entry);
+        }
+
+        /** counts a use of {@code entry} */
+        void hit(Entry<Out> entry) {
+            Bucket<Out> bucket = entry.mBucket;
+            if (bucket == null || bucket.mFrequency == Integer.MAX_VALUE) return;
+
+            Bucket<Out> next = bucket.mNext;
+            if (next == null || next.mFrequency != bucket.mFrequency + 1) {
+                next = new Bucket<Out>(bucket.mFrequency + 1);
+                next.mPrevious = bucket;
+                next.mNext = bucket.mNext;
+                if (bucket.mNext != null) bucket.mNext.mPrevious = next;
+                bucket.mNext = next;
+            }
+            unlink(entry);
+            append(next, entry);
+        }
+
+        void remove(Entry<Out> entry) {
+            // remove(key) does not count as access, so it is safe for access ordered maps
+            mEntries.remove(entry.mKey);
+            if (entry.mBucket != null) unlink(entry);
+        }
+
+        void clear() {
+            mEntries.clear();
+            mLowest = null;
+        }
+
+        /** @return the entry to be evicted, never one that is still being computed, or {@code null} */
+        Entry<Out> victim() {
+            if (mLfu) {
+                for (Bucket<Out> bucket = mLowest; bucket != null; bucket = bucket.mNext)
+                    for (Entry<Out> entry = bucket.mFirst; entry != null; entry = entry.mNext)
+                        if (entry.isDone()) return entry;
+                return null;
+            }
+
+            // iterated from the least recently used
+            for (Entry<Out> entry : mEntries.values())
+                if (entry.isDone()) return entry;
+            return null;
+        }
+
+        private void append(Bucket<Out> bucket, Entry<Out> entry) {
+            entry.mBucket = bucket;
+            entry.mPrevious = bucket.mLast;
+            entry.mNext = null;
+            if (bucket.mLast != null) {
+                bucket.mLast.mNext = entry;
+            } else {
+                bucket.mFirst = entry;
+            }
+            bucket.mLast = entry;
+        }
+
+        private void unlink(Entry<Out> entry) {
+            Bucket<Out> bucket = entry.mBucket;
+            if (entry.mPrevious != null) {
+                entry.mPrevious.mNext = entry.mNext;
+            } else {
+                bucket.mFirst = entry.mNext;
+            }
+            if (entry.mNext != null) {
+                entry.mNext.mPrevious = entry.mPrevious;
+            } else {
+                bucket.mLast = entry.mPrevious;
+            }
+            entry.mBucket = null;
+            entry.mPrevious = null;
+            entry.mNext = null;
+
+            if (bucket.mFirst != null) return;
+            // drop the empty bucket
+            if (bucket.mPrevious != null) {
+                bucket.mPrevious.mNext = bucket.mNext;
+            } else {
+                mLowest = bucket.mNext;
+            }
+            if (bucket.mNext != null) bucket.mNext.mPrevious = bucket.mPrevious;
+        }
+    }
+
+    private Segment<Out> segmentFor(Object key) {
+        int hash = key == null ? 0 : key.hashCode();
+        // spread the high bits, segments are chosen by the low bits
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return mSegments[hash & (mSegments.length - 1)];
+    }
+
+    @Override
+    public Out apply(In in) {
+        Object key = mKey == null ? in : mKey.apply(in);
+        Segment<Out> segment = segmentFor(key);
+
+        Entry<Out> entry;
+        boolean compute = false;
+
+        segment.mLock.lock();
+        try {
+            entry = segment.mEntries.get(key);
+            if (entry != null && mTtl > 0 && entry.isDone() && System.nanoTime() - entry.mExpiresAt >= 0) {
+                segment.remove(entry);
+                segment.mEvictions += 1;
+                entry = null;
+            }
+
+            if (entry == null) {
+                entry = new Entry<Out>(key);
+                segment.put(entry);
+                segment.mMisses += 1;
+                compute = true;
+                evict(segment);
+            } else {
+                segment.mHits += 1;
+                segment.hit(entry);
+            }
+        } finally {
+            segment.mLock.unlock();
+        }
+
+        if (compute) return compute(in, key, segment, entry);
+
+        try {
+            entry.mDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a memoized result", e);
+        }
+        if (entry.mError != null) throw Parallel.rethrow(entry.mError);
+        return entry.mValue;
+    }
+
+    private Out compute(In in, Object key, Segment<Out> segment, Entry<Out> entry) {
+        try {
+            Out value = mFunction.apply(in);
+            entry.mValue = value;
+            entry.mExpiresAt = System.nanoTime() + mTtl;
+            return value;
+        } catch (RuntimeException e) {
+            fail(key, segment, entry, e);
+            throw e;
+        } catch (Error e) {
+            fail(key, segment, entry, e);
+            throw e;
+        } finally {
+            entry.mDone.countDown();
+        }
+    }
+
+    /** passes {@code error} to the waiting callers and forgets {@code entry}, so the next call retries */
+    private void fail(Object key, Segment<Out> segment, Entry<Out> entry, Throwable error) {
+        entry.mError = error;
+        segment.mLock.lock();
+        try {
+            if (segment.mEntries.get(key) == entry)
+                segment.remove(entry);
+        } finally {
+            segment.mLock.unlock();
+        }
+    }
+
+    /**
+     * <p>evicts a result if {@code segment} is full. Results that are still being computed are
+     * never evicted. Must be called while holding the lock of {@code segment}.</p>
+     */
+    private void evict(Segment<Out> segment) {
+        if (segment.mEntries.size() <= segment.mCapacity) return;
+
+        Entry<Out> victim = segment.victim();
+        if (victim == null) return;
+
+        segment.remove(victim);
+        segment.mEvictions += 1;
+    }
+
+    /** @return the number of calls that were answered from the cache */
+    public long hits() {
+        long hits = 0;
+        for (Segment<Out> segment : mSegments) {
+            segment.mLock.lock();
+            try {
+                hits += segment.mHits;
+            } finally {
+                segment.mLock.unlock();
+            }
+        }
+        return hits;
+    }
+
+    /** @return the number of calls that called the function */
+    public long misses() {
+        long misses = 0;
+        for (Segment<Out> segment : mSegments) {
+            segment.mLock.lock();
+            try {
+                misses += segment.mMisses;
+            } finally {
+                segment.mLock.unlock();
+            }
+        }
+        return misses;
+    }
+
+    /** @return the number of results that were removed because the cache was full or they expired */
+    public long evictions() {
+        long evictions = 0;
+        for (Segment<Out> segment : mSegments) {
+            segment.mLock.lock();
+            try {
+                evictions += segment.mEvictions;
+            } finally {
+                segment.mLock.unlock();
+            }
+        }
+        return evictions;
+    }
+
+    /** @return the number of cached results, including results that are being computed */
+    public int size() {
+        int size = 0;
+        for (Segment<Out> segment : mSegments) {
+            segment.mLock.lock();
+            try {
+                size += segment.mEntries.size();
+            } finally {
+                segment.mLock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /** removes all cached results. Results that are being computed are still passed to their callers. */
+    public void clear() {
+        for (Segment<Out> segment : mSegments) {
+            segment.mLock.lock();
+            try {
+                segment.clear();
+            } finally {
+                segment.mLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.dominikschreiber.underscore;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>an in-memory {@link Instrumentation} that keeps a latency {@link Histogram} per operation. E.g.</p>
+ * <pre>{@code
+ * MetricsRegistry metrics = new MetricsRegistry();
+ * _.instrument(metrics);
+ * // ... run the application ...
+ * for (Map.Entry<String, MetricsRegistry.Histogram> entry : metrics.histograms().entrySet())
+ *     System.out.println(entry.getKey() + " p99=" + entry.getValue().percentile(0.99) + "ns");
+ * // => groupBy p99=1834752ns
+ * //    groupBy(com.example.ByCustomer) p99=1834752ns
+ * //    ...
+ * }</pre>
+ * <p>Each call is recorded under the name of the operation (e.g. {@code "groupBy"}) and, if a
+ * function was passed to the operation, additionally under the name of the operation followed by
+ * the class name of the function (e.g. {@code "groupBy(com.example.ByCustomer)"}).</p>
+ */
+public final class MetricsRegistry implements Instrumentation {
+
+    private final ConcurrentMap<String, Histogram> mHistograms = new ConcurrentHashMap<String, Histogram>();
+
+    @Override
+    public void record(String operation, Object function, long inputSize, long outputSize, long elapsedNanos,
+                       long allocatedBytes) {
+        histogramFor(operation).record(inputSize, outputSize, elapsedNanos, allocatedBytes);
+        if (function != null)
+            histogramFor(operation + "(" + function.getClass().getName() + ")")
+                    .record(inputSize, outputSize, elapsedNanos, allocatedBytes);
+    }
+
+    private Histogram histogramFor(String key) {
+        Histogram histogram = mHistograms.get(key);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = mHistograms.putIfAbsent(key, created);
+            if (histogram == null) histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * @param key the name of an operation, optionally followed by the class name of a function in
+     *            parentheses
+     * @return the histogram of {@code key}, or {@code null} if nothing was recorded for it
+     */
+    public Histogram histogram(String key) {
+        return mHistograms.get(key);
+    }
+
+    /** @return all histograms, sorted by key */
+    public Map<String, Histogram> histograms() {
+        return Collections.unmodifiableMap(new TreeMap<String, Histogram>(mHistograms));
+    }
+
+    /** removes all histograms */
+    public void reset() {
+        mHistograms.clear();
+    }
+
+    /**
+     * <p>a concurrent histogram of latencies in nanoseconds with log-linear buckets (like an
+     * <a href="http://hdrhistogram.org/">HdrHistogram</a>): values below {@value #SUB_BUCKETS}
+     * are counted exactly, larger values in buckets whose width is at most 1/{@value #HALF}th of
+     * their lower bound. Thus percentiles have a relative error below 2% over the whole range of
+     * {@code long}, at a fixed size of a few thousand counters.</p>
+     * <p>Besides the latencies it sums up the input and output sizes and allocated bytes of the
+     * recorded calls.</p>
+     */
+    public static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 7;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int HALF = SUB_BUCKETS / 2;
+        private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * HALF + HALF;
+
+        private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mSum = new AtomicLong();
+        private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong mInputSize = new AtomicLong();
+        private final AtomicLong mOutputSize = new AtomicLong();
+        private final AtomicLong mAllocatedBytes = new AtomicLong();
+
+        Histogram() {}
+
+        static int bucket(long value) {
+            if (value < SUB_BUCKETS) return (int) Math.max(0, value);
+
+            int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            // the top SUB_BUCKET_BITS bits of value, in [HALF, SUB_BUCKETS)
+            return shift * HALF + (int) (value >>> shift);
+        }
+
+        /** @return the largest value counted in {@code bucket} */
+        static long highestValue(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+
+            int shift = bucket / HALF - 1;
+            long mantissa = bucket - shift * HALF;
+            return ((mantissa + 1) << shift) - 1;
+        }
+
+        void record(long inputSize, long outputSize, long nanos, long allocatedBytes) {
+            mCounts.incrementAndGet(bucket(nanos));
+            mCount.incrementAndGet();
+            mSum.addAndGet(nanos);
+            if (inputSize > 0) mInputSize.addAndGet(inputSize);
+            if (outputSize > 0) mOutputSize.addAndGet(outputSize);
+            if (allocatedBytes > 0) mAllocatedBytes.addAndGet(allocatedBytes);
+
+            long min;
+            while (nanos < (min = mMin.get()) && !mMin.compareAndSet(min, nanos)) {
+                // retry
+            }
+            long max;
+            while (nanos > (max = mMax.get()) && !mMax.compareAndSet(max, nanos)) {
+                // retry
+            }
+        }
+
+        /** @return the number of recorded calls */
+        public long count() {
+            return mCount.get();
+        }
+
+        /** @return the shortest recorded latency, or {@code 0} if nothing was recorded */
+        public long min() {
+            return count() == 0 ? 0 : mMin.get();
+        }
+
+        /** @return the longest recorded latency, or {@code 0} if nothing was recorded */
+        public long max() {
+            return count() == 0 ? 0 : mMax.get();
+        }
+
+        /** @return the mean latency, or {@code 0} if nothing was recorded */
+        public double mean() {
+            long count = count();
+            return count == 0 ? 0 : (double) mSum.get() / count;
+        }
+
+        /**
+         * @param quantile the quantile in {@code [0, 1]}, e.g. {@code 0.99} for the 99th percentile
+         * @return the latency that {@code quantile} of the recorded calls did not exceed (with a
+         *         relative error below 2%), or {@code 0} if nothing was recorded
+         */
+        public long percentile(double quantile) {
+            long count = count();
+            if (count == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(Math.min(1, Math.max(0, quantile)) * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += mCounts.get(bucket);
+                if (seen >= rank) return Math.min(highestValue(bucket), max());
+            }
+            return max();
+        }
+
+        /** @return the sum of the known input sizes of the recorded calls */
+        public long inputSize() {
+            return mInputSize.get();
+        }
+
+        /** @return the sum of the known output sizes of the recorded calls */
+        public long outputSize() {
+            return mOutputSize.get();
+        }
+
+        /** @return the sum of the bytes allocated by the recorded calls, if the JVM exposes them */
+        public long allocatedBytes() {
+            return mAllocatedBytes.get();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count() + " mean=" + (long) mean() + "ns p50=" + percentile(0.5)
+                    + "ns p99=" + percentile(0.99) + "ns max=" + max() + "ns";
+        }
+    }
+}
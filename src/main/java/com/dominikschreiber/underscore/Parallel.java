@@ -0,0 +1,454 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.BiFunction;
+import com.dominikschreiber.underscore.java.util.function.Consumer;
+import com.dominikschreiber.underscore.java.util.function.Function;
+import com.dominikschreiber.underscore.java.util.function.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>data-parallel implementations of the {@link _} operations that back the parallel chain mode.</p>
+ * <p>The input is split into contiguous chunks that are processed on an {@link ExecutorService}
+ * (the calling thread processes the first chunk itself). Results of the chunks are combined in
+ * chunk order, so {@code map} and {@code filter} keep the encounter order of the input.</p>
+ */
+final class Parallel {
+
+    /** inputs with less values than this are processed sequentially in a single chunk */
+    static final int MIN_CHUNK_SIZE = 1024;
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static volatile ExecutorService sDefaultExecutor;
+
+    /** the executor whose task the current thread runs, see {@link #invoke(List, ExecutorService)} */
+    private static final ThreadLocal<ExecutorService> sRunning = new ThreadLocal<ExecutorService>();
+
+    private Parallel() {}
+
+    /**
+     * <p>returns the executor used by {@link _#parallel()}: a fixed pool of daemon threads, one
+     * per available processor, created on first use.</p>
+     */
+    static ExecutorService defaultExecutor() {
+        ExecutorService executor = sDefaultExecutor;
+        if (executor == null) {
+            synchronized (Parallel.class) {
+                executor = sDefaultExecutor;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(parallelism(), daemonThreads("underscore-parallel-"));
+                    sDefaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    static int parallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    static ThreadFactory daemonThreads(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    // ----- chunks --------------------------------------------------------------------------------
+
+    /**
+     * <p>splits {@code values} into contiguous chunks. {@link List}s are split into
+     * {@link List#subList(int, int)} views and {@link LongRange}s into {@link LongRange#split(int)}
+     * parts, other {@link Iterable}s are copied once.</p>
+     * <p>Few values that are {@link Iterable}s themselves (like {@link Lines#segments(int)} or
+     * {@link Range#split(int)}) are coarse work items, so they are split into one chunk per value
+     * (up to the usual number of chunks) instead of being processed in a single chunk.</p>
+     */
+    static <In> List<List<In>> chunks(Iterable<In> values) {
+        if (values == null) return Collections.emptyList();
+        if (values instanceof LongRange) {
+            // a LongRange is an Iterable<Long>, so In is Long
+            @SuppressWarnings("unchecked")
+            List<List<In>> chunks = (List<List<In>>) (List<?>) chunks((LongRange) values);
+            return chunks;
+        }
+
+        List<In> list;
+        if (values instanceof List) {
+            list = (List<In>) values;
+        } else {
+            list = new ArrayList<In>();
+            for (In value : values)
+                list.add(value);
+        }
+
+        int size = list.size();
+        int wanted = size < MIN_CHUNK_SIZE && size > 0 && list.get(0) instanceof Iterable ? size : size / MIN_CHUNK_SIZE;
+        int count = Math.max(1, Math.min(wanted, parallelism() * CHUNKS_PER_THREAD));
+        List<List<In>> chunks = new ArrayList<List<In>>(count);
+        for (int i = 0; i < count; i++)
+            chunks.add(list.subList((int) ((long) size * i / count), (int) ((long) size * (i + 1) / count)));
+
+        return chunks;
+    }
+
+    private static List<List<Long>> chunks(LongRange range) {
+        long size = range.longSize();
+        // enough parts to view each of them as list
+        long count = Math.max(Math.min(size / MIN_CHUNK_SIZE, parallelism() * CHUNKS_PER_THREAD),
+                (size + Integer.MAX_VALUE - 1) / Integer.MAX_VALUE);
+
+        List<List<Long>> chunks = new ArrayList<List<Long>>();
+        for (LongRange part : range.split((int) Math.max(1, Math.min(count, Integer.MAX_VALUE))))
+            chunks.add(part.asList());
+        return chunks;
+    }
+
+    /**
+     * <p>calls all {@code tasks} and returns their results in task order. The first task is called
+     * in the calling thread, the others are submitted to {@code executor}.</p>
+     * <p>If the calling thread runs a task of {@code executor} itself (e.g. a parallel chain
+     * nested in the function of another one), all tasks are called in the calling thread. Waiting
+     * for them would block a thread of {@code executor}, and once all its threads wait for tasks
+     * queued behind them, a fixed pool like the {@link #defaultExecutor()} deadlocks.</p>
+     */
+    static <Out> List<Out> invoke(List<Callable<Out>> tasks, ExecutorService executor) {
+        if (sRunning.get() == executor) return inline(tasks);
+
+        List<Future<Out>> futures = new ArrayList<Future<Out>>(tasks.size());
+        List<Out> results = new ArrayList<Out>(tasks.size());
+
+        try {
+            for (int i = 1; i < tasks.size(); i++)
+                futures.add(executor.submit(running(executor, tasks.get(i))));
+
+            if (!tasks.isEmpty())
+                results.add(tasks.get(0).call());
+
+            for (Future<Out> future : futures)
+                results.add(future.get());
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for parallel tasks", e);
+        } catch (Exception e) {
+            throw rethrow(e);
+        } finally {
+            for (Future<Out> future : futures)
+                future.cancel(true);
+        }
+
+        return results;
+    }
+
+    private static <Out> List<Out> inline(List<Callable<Out>> tasks) {
+        List<Out> results = new ArrayList<Out>(tasks.size());
+        try {
+            for (Callable<Out> task : tasks)
+                results.add(task.call());
+        } catch (Exception e) {
+            throw rethrow(e);
+        }
+        return results;
+    }
+
+    /** @return {@code task}, marking the thread that calls it as running a task of {@code executor} */
+    private static <Out> Callable<Out> running(final ExecutorService executor, final Callable<Out> task) {
+        return new Callable<Out>() {
+            @Override
+            public Out call() throws Exception {
+                ExecutorService outer = sRunning.get();
+                sRunning.set(executor);
+                try {
+                    return task.call();
+                } finally {
+                    if (outer == null) {
+                        sRunning.remove();
+                    } else {
+                        sRunning.set(outer);
+                    }
+                }
+            }
+        };
+    }
+
+    static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException) throw (RuntimeException) t;
+        if (t instanceof Error) throw (Error) t;
+        throw new IllegalStateException(t);
+    }
+
+    // ----- eachBatch -----------------------------------------------------------------------------
+
+    /**
+     * <p>fills batches of {@code n} values in the calling thread and passes them to
+     * {@code consumer} on {@code executor}. At most {@code maxInFlight} batches are passed at the
+     * same time; their buffers are reused for later batches. Stops passing batches after the first
+     * failed batch (or failure of the calling thread, e.g. of the iterator) and rethrows the first
+     * exception once all batches in flight are done, so no batch runs after this returns.</p>
+     */
+    static <In> void eachBatch(Iterable<In> values, int n, final Consumer<List<In>> consumer,
+                               ExecutorService executor, int maxInFlight) {
+        if (values == null) return;
+
+        // the pool of free buffers doubles as the bound of batches in flight
+        final BlockingQueue<List<In>> buffers = new ArrayBlockingQueue<List<In>>(maxInFlight);
+        for (int i = 0; i < maxInFlight; i++)
+            buffers.add(new ArrayList<In>(Math.min(n, 1024)));
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+        // a buffer taken from the pool that was not passed to a batch
+        List<In> pending = null;
+        boolean interrupted = false;
+        try {
+            Iterator<In> iterator = values.iterator();
+            while (iterator.hasNext() && error.get() == null) {
+                pending = buffers.take();
+                while (pending.size() < n && iterator.hasNext())
+                    pending.add(iterator.next());
+
+                final List<In> buffer = pending;
+                Runnable batch = new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (error.get() == null)
+                                consumer.accept(Collections.unmodifiableList(buffer));
+                        } catch (Throwable t) {
+                            error.compareAndSet(null, t);
+                        } finally {
+                            buffer.clear();
+                            buffers.add(buffer);
+                        }
+                    }
+                };
+
+                // e.g. rejected by a saturated or shut down executor
+                executor.execute(batch);
+                pending = null;
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            error.compareAndSet(null, e);
+        } catch (Throwable t) {
+            error.compareAndSet(null, t);
+        } finally {
+            if (pending != null) {
+                pending.clear();
+                buffers.add(pending);
+            }
+            // all buffers are back once all batches are done
+            interrupted |= await(buffers, maxInFlight);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for parallel batches", error.get());
+        }
+        if (error.get() != null) throw rethrow(error.get());
+    }
+
+    /**
+     * <p>takes {@code count} values from {@code queue}, also if interrupted</p>
+     * @return whether the calling thread was interrupted while waiting
+     */
+    private static boolean await(BlockingQueue<?> queue, int count) {
+        boolean interrupted = false;
+        for (int taken = 0; taken < count; ) {
+            try {
+                queue.take();
+                taken += 1;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        return interrupted;
+    }
+
+    // ----- map -----------------------------------------------------------------------------------
+
+    static <In, Out> List<Out> map(Iterable<In> values, final Function<In, Out> function, ExecutorService executor) {
+        if (values == null) return Collections.emptyList();
+
+        List<Callable<List<Out>>> tasks = new ArrayList<Callable<List<Out>>>();
+        for (final List<In> chunk : chunks(values)) {
+            tasks.add(new Callable<List<Out>>() {
+                @Override
+                public List<Out> call() {
+                    List<Out> result = new ArrayList<Out>(chunk.size());
+                    for (In value : chunk)
+                        result.add(function.apply(value));
+                    return result;
+                }
+            });
+        }
+
+        return concat(invoke(tasks, executor));
+    }
+
+    // ----- filter --------------------------------------------------------------------------------
+
+    static <In> List<In> filter(Iterable<In> values, final Predicate<In> predicate, ExecutorService executor) {
+        if (values == null) return Collections.emptyList();
+
+        List<Callable<List<In>>> tasks = new ArrayList<Callable<List<In>>>();
+        for (final List<In> chunk : chunks(values)) {
+            tasks.add(new Callable<List<In>>() {
+                @Override
+                public List<In> call() {
+                    List<In> result = new ArrayList<In>();
+                    for (In value : chunk)
+                        if (predicate.test(value))
+                            result.add(value);
+                    return result;
+                }
+            });
+        }
+
+        return concat(invoke(tasks, executor));
+    }
+
+    private static <In> List<In> concat(List<List<In>> parts) {
+        int size = 0;
+        for (List<In> part : parts)
+            size += part.size();
+
+        List<In> result = new ArrayList<In>(size);
+        for (List<In> part : parts)
+            result.addAll(part);
+        return result;
+    }
+
+    // ----- some/every ----------------------------------------------------------------------------
+
+    /**
+     * <p>returns {@code true} if any of the {@code values} passes {@code predicate}. Chunks stop
+     * as soon as any chunk found a passing value.</p>
+     */
+    static <In> boolean some(Iterable<In> values, final Predicate<In> predicate, ExecutorService executor) {
+        if (values == null) return false;
+
+        final AtomicBoolean found = new AtomicBoolean(false);
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+        for (final List<In> chunk : chunks(values)) {
+            tasks.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    for (In value : chunk) {
+                        if (found.get()) break;
+                        if (predicate.test(value)) {
+                            found.set(true);
+                            break;
+                        }
+                    }
+                    return found.get();
+                }
+            });
+        }
+
+        invoke(tasks, executor);
+        return found.get();
+    }
+
+    static <In> boolean every(Iterable<In> values, Predicate<In> predicate, ExecutorService executor) {
+        return !some(values, _.negate(predicate), executor);
+    }
+
+    // ----- find ----------------------------------------------------------------------------------
+
+    /**
+     * <p>returns the first of the {@code values} (in encounter order) that passes {@code predicate}.
+     * A chunk stops once a chunk before it found a passing value.</p>
+     */
+    static <In> In find(Iterable<In> values, final Predicate<In> predicate, ExecutorService executor) {
+        if (values == null) return null;
+
+        List<List<In>> chunks = chunks(values);
+        final AtomicInteger firstMatchingChunk = new AtomicInteger(chunks.size());
+        final Object[] matches = new Object[chunks.size()];
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < chunks.size(); i++) {
+            final int index = i;
+            final List<In> chunk = chunks.get(i);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (In value : chunk) {
+                        if (firstMatchingChunk.get() < index) break;
+                        if (predicate.test(value)) {
+                            matches[index] = value;
+                            int current;
+                            do {
+                                current = firstMatchingChunk.get();
+                            } while (index < current && !firstMatchingChunk.compareAndSet(current, index));
+                            break;
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+
+        invoke(tasks, executor);
+
+        int index = firstMatchingChunk.get();
+        if (index >= matches.length) return null;
+
+        @SuppressWarnings("unchecked") // matches only holds values of the chunks
+        In match = (In) matches[index];
+        return match;
+    }
+
+    // ----- reduce --------------------------------------------------------------------------------
+
+    /**
+     * <p>reduces each chunk with {@code combine}, starting from {@code init}, and merges the
+     * partial results in chunk order with {@code combiner}. Thus {@code init} must be an identity
+     * of {@code combiner} and {@code combiner} must be associative.</p>
+     */
+    static <In, Out> Out reduce(Iterable<In> values, final BiFunction<In, Out, Out> combine, final Out init,
+                                BiFunction<Out, Out, Out> combiner, ExecutorService executor) {
+        if (values == null) return init;
+
+        List<Callable<Out>> tasks = new ArrayList<Callable<Out>>();
+        for (final List<In> chunk : chunks(values)) {
+            tasks.add(new Callable<Out>() {
+                @Override
+                public Out call() {
+                    return _.fold(chunk, combine, init);
+                }
+            });
+        }
+
+        List<Out> partials = invoke(tasks, executor);
+        if (partials.isEmpty()) return init;
+
+        Out result = partials.get(0);
+        for (int i = 1; i < partials.size(); i++)
+            result = combiner.apply(result, partials.get(i));
+        return result;
+    }
+}
@@ -0,0 +1,437 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Consumer;
+import com.dominikschreiber.underscore.java.util.function.Function;
+import com.dominikschreiber.underscore.java.util.function.Predicate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>a chain whose stages run concurrently, created by {@link _#pipeline(Iterable)}. E.g.</p>
+ * <pre>{@code
+ * _.pipeline(files)
+ *   .map((file) -> parse(file), 4)       // 4 threads parse
+ *   .map((record) -> enrich(record), 16) // 16 threads wait for the enrichment service
+ *   .each((record) -> write(record));    // 1 thread writes, in the order of the files
+ * }</pre>
+ * <p>Unlike the stages of a parallel chain (see {@link _#parallel(Iterable)}), which run one after
+ * the other on chunks of all values, the stages of a pipeline overlap: while the last stage
+ * handles the first values, the first stage already handles the next ones. This pays off if the
+ * stages differ in cost, as each stage can get the number of threads it needs.</p>
+ * <p>Each stage runs on its own threads (one unless a parallelism is given), which are started by
+ * the terminal operation ({@link #each(Consumer)}, {@link #each(Consumer, int)} or
+ * {@link #value()}) and end with it. The stages are connected by bounded lock-free queues
+ * (see {@link #capacity(int)}): a stage whose output queue is full waits for the next stage, so
+ * a slow stage slows down the stages before it instead of piling up values in memory. The values
+ * are read from the source by the calling thread.</p>
+ * <p>{@link #value()} and {@link #each(Consumer)} keep the order of the values, even if stages
+ * before them handle several values at the same time. If a stage throws, the pipeline stops
+ * reading values, all stages stop and the terminal operation rethrows the first error once all
+ * threads are done.</p>
+ * <p>Pipelines are immutable: each stage returns a new pipeline, so a pipeline can be run more
+ * than once.</p>
+ * @param <T> the type of the values that leave the last stage
+ */
+public final class Pipeline<T> {
+
+    /** the default capacity of the queues between stages */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /** the value of a filtered value. It keeps its sequence number, so that ordering can skip it. */
+    private static final Object SKIPPED = new Object();
+
+    private static final ThreadFactory THREADS = Parallel.daemonThreads("underscore-pipeline-");
+
+    /** attempts a thread spins, then yields, before it parks while a queue is full or empty */
+    private static final int SPINS = 64;
+    private static final int YIELDS = 64;
+
+    /**
+     * a parked thread is unparked by the queue it waits for, but wakes up this often anyway to
+     * notice that another stage failed
+     */
+    private static final long PARK_NANOS = 10000000L;
+
+    /** the shortest and longest sleep of the source while it waits for an ordered sink */
+    private static final long MIN_BACKOFF_NANOS = 10000L;
+    private static final long MAX_BACKOFF_NANOS = 1000000L;
+
+    private final Iterable<?> mValues;
+    private final List<Stage> mStages;
+    private final int mCapacity;
+
+    Pipeline(Iterable<?> values, List<Stage> stages, int capacity) {
+        mValues = values;
+        mStages = stages;
+        mCapacity = capacity;
+    }
+
+    /** creates the pipeline of a chain without stages */
+    static <In> Pipeline<In> of(Iterable<In> values) {
+        return new Pipeline<In>(values, Collections.<Stage>emptyList(), DEFAULT_CAPACITY);
+    }
+
+    /** a stage of a pipeline, handles untyped values */
+    private abstract static class Stage {
+        final int mParallelism;
+
+        Stage(int parallelism) {
+            if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+            mParallelism = parallelism;
+        }
+
+        /** @return the output value, or {@link #SKIPPED} */
+        abstract Object apply(Object value);
+    }
+
+    /** a value on its way through the pipeline, tagged with its position in the source */
+    private static final class Item {
+        final long mSequence;
+        Object mValue;
+
+        Item(long sequence, Object value) {
+            mSequence = sequence;
+            mValue = value;
+        }
+    }
+
+    private <Out> Pipeline<Out> then(Stage stage) {
+        List<Stage> stages = new ArrayList<Stage>(mStages.size() + 1);
+        stages.addAll(mStages);
+        stages.add(stage);
+        return new Pipeline<Out>(mValues, stages, mCapacity);
+    }
+
+    /** @return {@code value}, the output of the last stage of this pipeline, which is a {@code T} */
+    @SuppressWarnings("unchecked")
+    private T typed(Object value) {
+        return (T) value;
+    }
+
+    /**
+     * @param capacity the minimum number of values each queue between two stages can hold
+     *                 (defaults to {@value #DEFAULT_CAPACITY})
+     * @return this pipeline with queues of {@code capacity}
+     */
+    public Pipeline<T> capacity(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        return new Pipeline<T>(mValues, mStages, capacity);
+    }
+
+    // ----- map -----------------------------------------------------------------------------------
+
+    /** @see _#map(Iterable, Function) */
+    public <Out> Pipeline<Out> map(Function<T, Out> function) {
+        return map(function, 1);
+    }
+
+    /**
+     * @param function the function to call on every value
+     * @param parallelism the number of threads that call {@code function}
+     * @see _#map(Iterable, Function)
+     */
+    public <Out> Pipeline<Out> map(final Function<T, Out> function, int parallelism) {
+        return then(new Stage(parallelism) {
+            @Override
+            Object apply(Object value) {
+                return function.apply(typed(value));
+            }
+        });
+    }
+
+    // ----- filter --------------------------------------------------------------------------------
+
+    /** @see _#filter(Iterable, Predicate) */
+    public Pipeline<T> filter(Predicate<T> predicate) {
+        return filter(predicate, 1);
+    }
+
+    /**
+     * @param predicate the predicate the values must pass
+     * @param parallelism the number of threads that call {@code predicate}
+     * @see _#filter(Iterable, Predicate)
+     */
+    public Pipeline<T> filter(final Predicate<T> predicate, int parallelism) {
+        return then(new Stage(parallelism) {
+            @Override
+            Object apply(Object value) {
+                return predicate.test(typed(value)) ? value : SKIPPED;
+            }
+        });
+    }
+
+    // ----- reject --------------------------------------------------------------------------------
+
+    /** @see _#reject(Iterable, Predicate) */
+    public Pipeline<T> reject(Predicate<T> predicate) {
+        return filter(_.negate(predicate), 1);
+    }
+
+    /**
+     * @param predicate the predicate the values must not pass
+     * @param parallelism the number of threads that call {@code predicate}
+     * @see _#reject(Iterable, Predicate)
+     */
+    public Pipeline<T> reject(Predicate<T> predicate, int parallelism) {
+        return filter(_.negate(predicate), parallelism);
+    }
+
+    // ----- each ----------------------------------------------------------------------------------
+
+    /**
+     * <p>runs the pipeline and calls {@code function} with each value, in the order of the values,
+     * from a single thread</p>
+     * @see _#each(Iterable, Consumer)
+     */
+    public void each(Consumer<T> function) {
+        run(consumer(function, 1), true);
+    }
+
+    /**
+     * <p>runs the pipeline and calls {@code function} with each value from {@code parallelism}
+     * threads. If {@code parallelism} is greater than {@code 1} the values are passed in no
+     * particular order.</p>
+     * @see _#each(Iterable, Consumer)
+     */
+    public void each(Consumer<T> function, int parallelism) {
+        run(consumer(function, parallelism), parallelism == 1);
+    }
+
+    private Stage consumer(final Consumer<T> function, int parallelism) {
+        return new Stage(parallelism) {
+            @Override
+            Object apply(Object value) {
+                function.accept(typed(value));
+                return SKIPPED;
+            }
+        };
+    }
+
+    // ----- value ---------------------------------------------------------------------------------
+
+    /**
+     * <p>runs the pipeline and collects its values</p>
+     * @return the values that leave the last stage, in the order of the source values
+     */
+    public List<T> value() {
+        final List<T> values = new ArrayList<T>();
+        run(new Stage(1) {
+            @Override
+            Object apply(Object value) {
+                values.add(typed(value));
+                return SKIPPED;
+            }
+        }, true);
+        return values;
+    }
+
+    // ----- execution -----------------------------------------------------------------------------
+
+    /**
+     * <p>starts the threads of all stages followed by {@code sink}, feeds the source values to the
+     * first stage and waits until all threads are done</p>
+     * @param ordered whether {@code sink} must see the values in source order
+     */
+    private void run(Stage sink, boolean ordered) {
+        if (mValues == null) return;
+
+        Probe probe = Probe.start("pipeline", mValues, null);
+        try {
+            List<Stage> stages = new ArrayList<Stage>(mStages);
+            stages.add(sink);
+
+            AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            BoundedQueue<Item> source = new BoundedQueue<Item>(mCapacity);
+            List<Thread> threads = new ArrayList<Thread>();
+
+            // the number of values the ordered sink handled, see window below
+            AtomicLong handled = ordered ? new AtomicLong() : null;
+            long workers = 0;
+
+            BoundedQueue<Item> in = source;
+            for (int i = 0; i < stages.size(); i++) {
+                Stage stage = stages.get(i);
+                boolean last = i == stages.size() - 1;
+                BoundedQueue<Item> out = last ? null : new BoundedQueue<Item>(mCapacity);
+                AtomicInteger running = new AtomicInteger(stage.mParallelism);
+                for (int worker = 0; worker < stage.mParallelism; worker++)
+                    threads.add(THREADS.newThread(new Worker(stage, in, out, running, failure, last ? handled : null)));
+                workers += stage.mParallelism;
+                in = out;
+            }
+
+            // if a value is stuck in a stage, an ordered sink has to keep the values after it until it
+            // arrives. Values are only read while they fit into the queues and workers behind the
+            // oldest value the sink still waits for, which also bounds the values it has to keep.
+            long window = (long) mCapacity * stages.size() + workers;
+
+            try {
+                for (Thread thread : threads)
+                    thread.start();
+
+                long sequence = 0;
+                for (Object value : mValues) {
+                    if (handled != null && !await(handled, sequence - window, failure)) break;
+                    if (!put(source, new Item(sequence++, value), failure)) break;
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            } finally {
+                source.close();
+            }
+
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        // stop all stages, but do not leave them running
+                        interrupted = true;
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the pipeline", failure.get());
+            }
+            if (failure.get() != null) throw Parallel.rethrow(failure.get());
+            Probe.stop(probe, null);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** offers {@code item} to {@code queue} until it has room, unless the pipeline failed */
+    private static boolean put(BoundedQueue<Item> queue, Item item, AtomicReference<Throwable> failure) {
+        for (int attempt = 0; !queue.offer(item); ) {
+            if (failure.get() != null) return false;
+            if (spin(attempt)) {
+                attempt++;
+            } else {
+                queue.awaitRoom(PARK_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>waits until more than {@code count} values were handled, unless the pipeline failed. The
+     * sink does not wake up the source, so it sleeps exponentially longer while it waits.</p>
+     */
+    private static boolean await(AtomicLong handled, long count, AtomicReference<Throwable> failure) {
+        long sleep = MIN_BACKOFF_NANOS;
+        for (int attempt = 0; handled.get() <= count; ) {
+            if (failure.get() != null) return false;
+            if (spin(attempt)) {
+                attempt++;
+            } else {
+                LockSupport.parkNanos(sleep);
+                sleep = Math.min(2 * sleep, MAX_BACKOFF_NANOS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * <p>spins, then yields while a queue is full or empty</p>
+     * @return {@code false} once the caller should park instead
+     */
+    private static boolean spin(int attempt) {
+        if (attempt >= SPINS + YIELDS) return false;
+        if (attempt >= SPINS) Thread.yield();
+        return true;
+    }
+
+    /** a thread of a stage */
+    private static final class Worker implements Runnable {
+        private final Stage mStage;
+        private final BoundedQueue<Item> mIn;
+        private final BoundedQueue<Item> mOut;
+        /** the number of running workers of the stage, the last one closes {@link #mOut} */
+        private final AtomicInteger mRunning;
+        private final AtomicReference<Throwable> mFailure;
+
+        /** items that arrived before their predecessors, if the worker must keep the order */
+        private final Map<Long, Item> mEarly;
+        /** the number of items handled in order, published to the source */
+        private final AtomicLong mHandled;
+        private long mNext;
+
+        /** @param handled counts the items handled in order, {@code null} if the order does not matter */
+        Worker(Stage stage, BoundedQueue<Item> in, BoundedQueue<Item> out, AtomicInteger running,
+               AtomicReference<Throwable> failure, AtomicLong handled) {
+            mStage = stage;
+            mIn = in;
+            mOut = out;
+            mRunning = running;
+            mFailure = failure;
+            mHandled = handled;
+            mEarly = handled != null ? new HashMap<Long, Item>() : null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int attempt = 0;
+                while (mFailure.get() == null) {
+                    Item item = mIn.poll();
+                    if (item == null) {
+                        // the queue may have been filled right before it was closed
+                        if (mIn.isClosed() && (item = mIn.poll()) == null) break;
+                        if (item == null) {
+                            if (spin(attempt)) {
+                                attempt++;
+                            } else {
+                                mIn.awaitElement(PARK_NANOS);
+                            }
+                            continue;
+                        }
+                    }
+                    attempt = 0;
+
+                    if (mEarly == null) {
+                        if (!handle(item)) break;
+                    } else {
+                        ordered(item);
+                    }
+                }
+            } catch (Throwable t) {
+                mFailure.compareAndSet(null, t);
+            } finally {
+                if (mRunning.decrementAndGet() == 0 && mOut != null) mOut.close();
+            }
+        }
+
+        /** applies the stage and passes {@code item} on, returns {@code false} if the pipeline failed */
+        private boolean handle(Item item) {
+            if (item.mValue != SKIPPED) item.mValue = mStage.apply(item.mValue);
+            return mOut == null || put(mOut, item, mFailure);
+        }
+
+        /** handles {@code item} and all early items after it once all items before it were handled */
+        private void ordered(Item item) {
+            if (item.mSequence != mNext) {
+                mEarly.put(item.mSequence, item);
+                return;
+            }
+
+            do {
+                handle(item);
+                mNext += 1;
+            } while (!mEarly.isEmpty() && (item = mEarly.remove(mNext)) != null);
+            mHandled.lazySet(mNext);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.dominikschreiber.underscore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * <p>measures a single call of an operation for the installed {@link Instrumentation}. Operations
+ * call {@link #start(String, Object, Object)} before and {@link #stop(Probe, Object)} after
+ * their work, and {@link #fail(Probe)} in a {@code finally} block to also record calls that
+ * throw; all of them do nothing if no instrumentation is installed.</p>
+ */
+final class Probe {
+
+    private static volatile Instrumentation sInstrumentation;
+
+    /** {@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}, if available */
+    private static final Method ALLOCATED_BYTES;
+    private static final Object THREADS;
+
+    static {
+        Method allocatedBytes = null;
+        Object threads = null;
+        try {
+            threads = ManagementFactory.getThreadMXBean();
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            if (type.isInstance(threads)) {
+                Method supported = type.getMethod("isThreadAllocatedMemorySupported");
+                Method enabled = type.getMethod("isThreadAllocatedMemoryEnabled");
+                if ((Boolean) supported.invoke(threads) && (Boolean) enabled.invoke(threads))
+                    allocatedBytes = type.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (Throwable t) {
+            // not a HotSpot based JVM, allocations are reported as -1
+            allocatedBytes = null;
+        }
+        ALLOCATED_BYTES = allocatedBytes;
+        THREADS = threads;
+    }
+
+    private final Instrumentation mInstrumentation;
+    private final String mOperation;
+    private final Object mFunction;
+    private final long mInputSize;
+    private final long mStartAllocated;
+    private final long mStart;
+    private boolean mStopped;
+
+    private Probe(Instrumentation instrumentation, String operation, Object function, long inputSize) {
+        mInstrumentation = instrumentation;
+        mOperation = operation;
+        mFunction = function;
+        mInputSize = inputSize;
+        mStartAllocated = allocatedBytes();
+        mStart = System.nanoTime();
+    }
+
+    static void install(Instrumentation instrumentation) {
+        sInstrumentation = instrumentation;
+    }
+
+    static Instrumentation installed() {
+        return sInstrumentation;
+    }
+
+    /**
+     * @param operation the name of the operation
+     * @param input the input of the operation, used to determine the input size
+     * @param function the function passed to the operation, or {@code null}
+     * @return a started probe, or {@code null} if no instrumentation is installed
+     */
+    static Probe start(String operation, Object input, Object function) {
+        Instrumentation instrumentation = sInstrumentation;
+        if (instrumentation == null) return null;
+
+        return new Probe(instrumentation, operation, function, size(input));
+    }
+
+    /**
+     * <p>records the measurement of {@code probe}, if it is not {@code null}</p>
+     * @return {@code result}
+     */
+    static <Out> Out stop(Probe probe, Out result) {
+        if (probe == null) return result;
+
+        probe.record(size(result));
+        return result;
+    }
+
+    /**
+     * <p>records the measurement of {@code probe} as a call that threw, unless it is {@code null}
+     * or was stopped. Called in a {@code finally} block after {@link #stop(Probe, Object)}.</p>
+     */
+    static void fail(Probe probe) {
+        if (probe == null || probe.mStopped) return;
+
+        probe.record(-1);
+    }
+
+    private void record(long outputSize) {
+        mStopped = true;
+        long elapsed = System.nanoTime() - mStart;
+        long allocated = mStartAllocated < 0 ? -1 : allocatedBytes() - mStartAllocated;
+        try {
+            mInstrumentation.record(mOperation, mFunction, mInputSize, outputSize, elapsed, allocated);
+        } catch (RuntimeException e) {
+            // broken instrumentation must not break the instrumented operation
+        }
+    }
+
+    private static long size(Object values) {
+        if (values instanceof Collection) return ((Collection<?>) values).size();
+        if (values instanceof Map) return ((Map<?, ?>) values).size();
+        if (values instanceof Index) return ((Index<?, ?>) values).size();
+        if (values instanceof int[]) return ((int[]) values).length;
+        if (values instanceof long[]) return ((long[]) values).length;
+        if (values instanceof double[]) return ((double[]) values).length;
+        return -1;
+    }
+
+    private static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) return -1;
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.IntConsumer;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * <p>an arithmetic sequence of {@code int}s, created by {@link _#range(int, int, int)}. Its values
+ * are computed on access instead of being stored, so a range takes constant memory regardless
+ * of its size. E.g.</p>
+ * <pre>{@code
+ * Range ids = (Range) _.range(0, 100000000);
+ * ids.get(42); // => 42, computed
+ * ids.each((id) -> process(id)); // => calls process without boxing the ids
+ * }</pre>
+ * <p>A range is a {@link List} with constant time {@link #get(int)}, {@link #size()},
+ * {@link #contains(Object)} and {@link #indexOf(Object)}. It equals any list with the same
+ * values. {@link #split(int)} returns ranges as well, so a range can be split for parallel loops
+ * without copying it.</p>
+ * <p>{@link _#range(int, int, int)} returned a mutable {@code ArrayList} before, so a range can
+ * still be modified: the first {@code set}, {@code add} or {@code remove} (e.g. by
+ * {@link java.util.Collections#sort(List)}) copies its values into a list that stores them.</p>
+ * @see LongRange
+ */
+public final class Range extends AbstractList<Integer> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mStart;
+    private final int mStep;
+    private final int mSize;
+    /** the values once the range was modified, {@code null} while they are computed */
+    private ArrayList<Integer> mValues;
+
+    Range(int start, int step, int size) {
+        mStart = start;
+        mStep = step;
+        mSize = size;
+    }
+
+    /**
+     * @see _#range(int, int, int)
+     * @throws IllegalArgumentException if the range has more than {@link Integer#MAX_VALUE} values
+     */
+    static Range of(int start, int stop, int step) {
+        long size;
+        if (step > 0 && start < stop) {
+            size = ((long) stop - start - 1) / step + 1;
+        } else if (step < 0 && start > stop) {
+            size = ((long) start - stop - 1) / -(long) step + 1;
+        } else {
+            size = 0;
+        }
+
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("range has more than " + Integer.MAX_VALUE + " values, use a long range");
+        return new Range(start, step, (int) size);
+    }
+
+    /** @return the stored values, copied from the computed ones on the first modification */
+    private List<Integer> values() {
+        if (mValues == null) {
+            ArrayList<Integer> values = new ArrayList<Integer>(mSize);
+            for (int i = 0, value = mStart; i < mSize; i++, value += mStep)
+                values.add(value);
+            mValues = values;
+        }
+        return mValues;
+    }
+
+    @Override
+    public Integer get(int index) {
+        if (mValues != null) return mValues.get(index);
+        if (index < 0 || index >= mSize)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+        return mStart + index * mStep;
+    }
+
+    @Override
+    public int size() {
+        return mValues != null ? mValues.size() : mSize;
+    }
+
+    @Override
+    public Integer set(int index, Integer value) {
+        return values().set(index, value);
+    }
+
+    @Override
+    public void add(int index, Integer value) {
+        values().add(index, value);
+        modCount += 1;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        Integer removed = values().remove(index);
+        modCount += 1;
+        return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        values().subList(fromIndex, toIndex).clear();
+        modCount += 1;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (mValues != null) return mValues.indexOf(o);
+        if (!(o instanceof Integer) || mSize == 0) return -1;
+
+        long offset = (long) (Integer) o - mStart;
+        if (offset % mStep != 0) return -1;
+
+        long index = offset / mStep;
+        return index >= 0 && index < mSize ? (int) index : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return mValues != null ? mValues.lastIndexOf(o) : indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        // a modified range iterates its stored values, with remove and concurrent modification checks
+        if (mValues != null) return super.iterator();
+
+        return new Iterator<Integer>() {
+            private final int mExpected = modCount;
+            private int mIndex = 0;
+            private int mNext = mStart;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < mSize;
+            }
+
+            @Override
+            public Integer next() {
+                if (modCount != mExpected || mValues != null) throw new ConcurrentModificationException();
+                if (mIndex >= mSize) throw new NoSuchElementException();
+
+                int value = mNext;
+                mIndex += 1;
+                mNext += mStep;
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("iterate a modified range to remove values");
+            }
+        };
+    }
+
+    /**
+     * <p>calls {@code consumer} with each value of the range, in order and without boxing them</p>
+     * @param consumer the operation to call with each value
+     */
+    public void each(IntConsumer consumer) {
+        if (mValues != null) {
+            for (int i = 0; i < mValues.size(); i++)
+                consumer.accept(mValues.get(i));
+            return;
+        }
+
+        for (int i = 0, value = mStart; i < mSize; i++, value += mStep)
+            consumer.accept(value);
+    }
+
+    /**
+     * <p>splits the range into {@code parts} contiguous ranges of (nearly) the same size, e.g. to
+     * process them in parallel loops</p>
+     * @param parts the number of parts, at most the size of the range
+     * @return the parts, in order
+     * @throws IllegalStateException if the range was modified
+     */
+    public List<Range> split(int parts) {
+        if (mValues != null) throw new IllegalStateException("a modified range cannot be split");
+
+        int count = Math.max(1, Math.min(parts, mSize));
+        List<Range> split = new ArrayList<Range>(count);
+        for (int i = 0; i < count; i++)
+            split.add(part((int) ((long) mSize * i / count), (int) ((long) mSize * (i + 1) / count)));
+        return split;
+    }
+
+    private Range part(int fromIndex, int toIndex) {
+        return new Range(mStart + fromIndex * mStep, mStep, toIndex - fromIndex);
+    }
+}
@@ -0,0 +1,292 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Supplier;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>the timer shared by all time based functions of {@link _} (like {@link _#delay(Supplier, long)}
+ * or {@link _#throttle(com.dominikschreiber.underscore.java.util.function.Function, long)}), so they
+ * do not need a timer thread each.</p>
+ * <p>Tasks are kept in a hashed hierarchical timing wheel with a resolution of one millisecond:
+ * {@value #LEVELS} levels of {@value #SLOTS} slots each, where a slot of level {@code l} spans
+ * {@code 64^l} ticks. A task is linked into the slot of the highest level in which its deadline
+ * differs from the current tick. Whenever the current tick enters a new slot of a level above
+ * level 0, the tasks of that slot are cascaded into the lower levels. Thus scheduling and
+ * cancelling take O(1), independent of the number of pending tasks.</p>
+ * <p>The wheel is only touched by the scheduler thread. Other threads hand scheduled and
+ * cancelled tasks over through lock-free queues. The scheduler thread sleeps until the next
+ * occupied slot is entered, or while there are no tasks. Tasks run on the scheduler thread and
+ * must therefore be short, unless they are scheduled with an executor to hand them off to.</p>
+ */
+final class Scheduler implements Runnable {
+
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    /** enough levels to cover any {@code long} deadline */
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    private static final long START = System.nanoTime();
+
+    private static volatile Scheduler sInstance;
+
+    private final Queue<Timeout<?>> mScheduled = new ConcurrentLinkedQueue<Timeout<?>>();
+    private final Queue<Timeout<?>> mCancelled = new ConcurrentLinkedQueue<Timeout<?>>();
+    private final AtomicBoolean mSleeping = new AtomicBoolean(false);
+    private final Wheel mWheel = new Wheel(now());
+    private final Thread mThread;
+
+    private Scheduler() {
+        mThread = Parallel.daemonThreads("underscore-scheduler-").newThread(this);
+        mThread.start();
+    }
+
+    private static Scheduler instance() {
+        Scheduler scheduler = sInstance;
+        if (scheduler == null) {
+            synchronized (Scheduler.class) {
+                scheduler = sInstance;
+                if (scheduler == null) {
+                    scheduler = new Scheduler();
+                    sInstance = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /** @return the current tick */
+    private static long now() {
+        return (System.nanoTime() - START) / TICK;
+    }
+
+    /**
+     * <p>runs {@code task} once after at least {@code delay} milliseconds</p>
+     * @return a handle to cancel the task or wait for its result
+     */
+    static <Out> Timeout<Out> schedule(Supplier<Out> task, long delay) {
+        return schedule(task, delay, null);
+    }
+
+    /**
+     * <p>like {@link #schedule(Supplier, long)}, but runs {@code task} on {@code executor} when it
+     * is due, for tasks that may take long (like user functions) and must not hold up the others</p>
+     */
+    static <Out> Timeout<Out> schedule(Supplier<Out> task, long delay, Executor executor) {
+        long elapsed = System.nanoTime() - START;
+        long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+        // round up, so tasks never run early, and saturate, so huge delays do not overflow into the past
+        long deadline = nanos > Long.MAX_VALUE - TICK - elapsed
+                ? Long.MAX_VALUE / TICK
+                : (elapsed + nanos + TICK - 1) / TICK;
+        Timeout<Out> timeout = new Timeout<Out>(task, deadline, executor);
+
+        Scheduler scheduler = instance();
+        scheduler.mScheduled.offer(timeout);
+        scheduler.wakeUp();
+        return timeout;
+    }
+
+    /** @see #schedule(Supplier, long) */
+    static Timeout<Void> schedule(final Runnable task, long delay) {
+        return schedule(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                task.run();
+                return null;
+            }
+        }, delay);
+    }
+
+    /**
+     * <p>like {@link #schedule(Runnable, long)}, but runs {@code task} on
+     * {@link Async#defaultExecutor()}, for tasks that may take long (like user functions) and
+     * must not hold up the other tasks</p>
+     * @return a handle to cancel the task before it is handed off
+     */
+    static Timeout<Void> handOff(final Runnable task, long delay) {
+        return schedule(new Runnable() {
+            @Override
+            public void run() {
+                Async.defaultExecutor().execute(task);
+            }
+        }, delay);
+    }
+
+    /** unlinks the cancelled {@code timeout} from the wheel. Called by {@link Timeout#cancel(boolean)}. */
+    static void cancelled(Timeout<?> timeout) {
+        // no need to wake up the scheduler, cancelled tasks are skipped anyway
+        instance().mCancelled.offer(timeout);
+    }
+
+    private void wakeUp() {
+        if (mSleeping.get() && mSleeping.compareAndSet(true, false))
+            LockSupport.unpark(mThread);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            for (Timeout<?> timeout = mCancelled.poll(); timeout != null; timeout = mCancelled.poll())
+                if (timeout.mSlot != null)
+                    mWheel.unlink(timeout);
+
+            // catch up first, so new tasks are inserted relative to the current tick
+            mWheel.advanceTo(now());
+
+            for (Timeout<?> timeout = mScheduled.poll(); timeout != null; timeout = mScheduled.poll())
+                if (!timeout.isDone())
+                    mWheel.insert(timeout);
+
+            // tasks that ran may have scheduled new tasks
+            if (!mScheduled.isEmpty()) continue;
+
+            long next = mWheel.nextTick();
+            mSleeping.set(true);
+            if (mScheduled.isEmpty()) {
+                if (next == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    // sleep until the next occupied slot is due, scheduling earlier tasks wakes up
+                    long delay = next * TICK - (System.nanoTime() - START);
+                    if (delay > 0) LockSupport.parkNanos(this, delay);
+                }
+            }
+            mSleeping.set(false);
+        }
+    }
+
+    /**
+     * <p>the timing wheel, see {@link Scheduler}. Its ticks are independent of the clock, so it
+     * can be tested without waiting.</p>
+     */
+    static final class Wheel {
+        private final Timeout<?>[][] mSlots = new Timeout<?>[LEVELS][SLOTS];
+        /** the last tick whose tasks were run */
+        private long mTick;
+        /** the number of tasks linked into the wheel */
+        private int mCount;
+
+        Wheel(long tick) {
+            mTick = tick;
+        }
+
+        long tick() {
+            return mTick;
+        }
+
+        /**
+         * <p>runs all tasks due until {@code now}. Ticks in which no slot is entered are skipped,
+         * so catching up after a long idle period takes time proportional to the number of tasks,
+         * not the number of ticks.</p>
+         */
+        void advanceTo(long now) {
+            while (mTick < now) {
+                long next = nextTick();
+                if (next > now) {
+                    // no occupied slot is entered until now, so all tasks stay in their slots
+                    mTick = now;
+                } else {
+                    mTick = next - 1;
+                    advance();
+                }
+            }
+        }
+
+        /**
+         * @return the next tick in which an occupied slot is entered (i.e. its tasks are run or
+         *         cascaded), or {@link Long#MAX_VALUE} if the wheel is empty
+         */
+        long nextTick() {
+            if (mCount == 0) return Long.MAX_VALUE;
+
+            long next = Long.MAX_VALUE;
+            for (int level = 0; level < LEVELS; level++) {
+                int shift = level * SLOT_BITS;
+                int current = (int) (mTick >>> shift) & SLOT_MASK;
+                // tasks are only linked into the slots after the current one of their level
+                for (int index = current + 1; index < SLOTS; index++) {
+                    if (mSlots[level][index] != null) {
+                        long block = shift + SLOT_BITS >= Long.SIZE ? 0 : mTick >>> (shift + SLOT_BITS) << (shift + SLOT_BITS);
+                        next = Math.min(next, block + ((long) index << shift));
+                        break;
+                    }
+                }
+            }
+            return next;
+        }
+
+        /** moves to the next tick: cascades the slots that are entered and runs the due tasks */
+        private void advance() {
+            long tick = ++mTick;
+
+            // cascade from the top, so tasks cascaded into a lower level are cascaded further if due
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (level * SLOT_BITS)) - 1)) == 0)
+                    cascade(level, (int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+            }
+
+            Timeout<?>[] slots = mSlots[0];
+            int index = (int) tick & SLOT_MASK;
+            Timeout<?> timeout = slots[index];
+            while (timeout != null) {
+                Timeout<?> next = timeout.mNext;
+                unlink(timeout);
+                timeout.fire();
+                timeout = next;
+            }
+        }
+
+        private void cascade(int level, int index) {
+            Timeout<?> timeout = mSlots[level][index];
+            while (timeout != null) {
+                Timeout<?> next = timeout.mNext;
+                unlink(timeout);
+                insert(timeout);
+                timeout = next;
+            }
+        }
+
+        void insert(Timeout<?> timeout) {
+            long deadline = timeout.mDeadline;
+            if (deadline <= mTick) {
+                timeout.fire();
+                return;
+            }
+
+            // the highest group of bits in which deadline and current tick differ
+            int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(deadline ^ mTick)) / SLOT_BITS;
+            int index = (int) (deadline >>> (level * SLOT_BITS)) & SLOT_MASK;
+
+            Timeout<?>[] slots = mSlots[level];
+            timeout.mSlot = slots;
+            timeout.mSlotIndex = index;
+            timeout.mPrevious = null;
+            timeout.mNext = slots[index];
+            if (slots[index] != null) slots[index].mPrevious = timeout;
+            slots[index] = timeout;
+            mCount += 1;
+        }
+
+        void unlink(Timeout<?> timeout) {
+            if (timeout.mPrevious != null) {
+                timeout.mPrevious.mNext = timeout.mNext;
+            } else {
+                timeout.mSlot[timeout.mSlotIndex] = timeout.mNext;
+            }
+            if (timeout.mNext != null) timeout.mNext.mPrevious = timeout.mPrevious;
+
+            timeout.mSlot = null;
+            timeout.mPrevious = null;
+            timeout.mNext = null;
+            mCount -= 1;
+        }
+    }
+}
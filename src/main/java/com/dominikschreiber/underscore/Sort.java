@@ -0,0 +1,351 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.ToLongFunction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>sorting engine behind {@link _#sortByLong(Iterable, com.dominikschreiber.underscore.java.util.function.ToLongFunction)}.</p>
+ * <p>Values are sorted by precomputed primitive {@code long} keys: the keys array and the values
+ * array are permuted together, so no key is computed more than once and no key is boxed while
+ * sorting. Small inputs are merge sorted, larger inputs are sorted by an O(n) LSD radix sort
+ * over the 64 bit keys. All sorts are stable.</p>
+ * <p>{@link #permutation(Object[], Comparator)} sorts the keys of a {@link SortedIndex}.</p>
+ */
+final class Sort {
+
+    /** ranges shorter than this are sorted by insertion sort */
+    private static final int INSERTION_SORT_THRESHOLD = 7;
+
+    /** inputs with at least this many values are radix sorted instead of merge sorted */
+    static final int RADIX_SORT_THRESHOLD = 1 << 10;
+
+    /** inputs with at least this many values are radix sorted in parallel, if an executor is given */
+    static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX - 1;
+    private static final int PASSES = Long.SIZE / RADIX_BITS;
+
+    private Sort() {}
+
+    /**
+     * <p>sorts {@code keys} ascending and applies the same permutation to {@code values}</p>
+     * @param keys the sort keys, {@code keys[i]} belongs to {@code values[i]}
+     * @param values the values to be sorted along with their keys
+     */
+    static void sort(long[] keys, Object[] values) {
+        if (keys.length < RADIX_SORT_THRESHOLD) {
+            mergeSort(keys, values);
+        } else {
+            radixSort(keys, values);
+        }
+    }
+
+    /**
+     * <p>like {@link #sort(long[], Object[])}, but sorts large inputs with a parallel radix sort
+     * on {@code executor}</p>
+     */
+    static void sort(long[] keys, Object[] values, ExecutorService executor) {
+        if (executor == null || keys.length < PARALLEL_SORT_THRESHOLD) {
+            sort(keys, values);
+        } else {
+            parallelRadixSort(keys, values, executor);
+        }
+    }
+
+    /**
+     * <p>computes the key of each of the {@code values}, concurrently on {@code executor} if one is
+     * given and there are enough values</p>
+     */
+    static <In> long[] keys(final Object[] values, final ToLongFunction<In> criterion, ExecutorService executor) {
+        final long[] keys = new long[values.length];
+
+        if (executor == null || values.length < PARALLEL_SORT_THRESHOLD) {
+            for (int i = 0; i < values.length; i++)
+                keys[i] = key(criterion, values[i]);
+            return keys;
+        }
+
+        int chunks = Parallel.parallelism() * 4;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final int from = (int) ((long) values.length * chunk / chunks);
+            final int to = (int) ((long) values.length * (chunk + 1) / chunks);
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = from; i < to; i++)
+                        keys[i] = key(criterion, values[i]);
+                    return null;
+                }
+            });
+        }
+        Parallel.invoke(tasks, executor);
+
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked") // values holds the Ins passed to _.sortByLong
+    private static <In> long key(ToLongFunction<In> criterion, Object value) {
+        return criterion.applyAsLong((In) value);
+    }
+
+    // ----- merge sort ----------------------------------------------------------------------------
+
+    static void mergeSort(long[] keys, Object[] values) {
+        if (keys.length < 2) return;
+
+        mergeSort(keys.clone(), values.clone(), keys, values, 0, keys.length);
+    }
+
+    /**
+     * <p>sorts the range {@code [low, high)} of {@code src} into {@code dst}. Both have the same
+     * content in that range on entry, the roles of the arrays alternate in each recursion.</p>
+     */
+    private static void mergeSort(long[] srcKeys, Object[] srcValues, long[] dstKeys, Object[] dstValues, int low, int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            insertionSort(dstKeys, dstValues, low, high);
+            return;
+        }
+
+        int mid = (low + high) >>> 1;
+        mergeSort(dstKeys, dstValues, srcKeys, srcValues, low, mid);
+        mergeSort(dstKeys, dstValues, srcKeys, srcValues, mid, high);
+
+        // halves are already in order => no need to merge
+        if (srcKeys[mid - 1] <= srcKeys[mid]) {
+            System.arraycopy(srcKeys, low, dstKeys, low, high - low);
+            System.arraycopy(srcValues, low, dstValues, low, high - low);
+            return;
+        }
+
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            // take from the left half on equal keys to keep the sort stable
+            if (q >= high || p < mid && srcKeys[p] <= srcKeys[q]) {
+                dstKeys[i] = srcKeys[p];
+                dstValues[i] = srcValues[p++];
+            } else {
+                dstKeys[i] = srcKeys[q];
+                dstValues[i] = srcValues[q++];
+            }
+        }
+    }
+
+    private static void insertionSort(long[] keys, Object[] values, int low, int high) {
+        for (int i = low + 1; i < high; i++) {
+            long key = keys[i];
+            Object value = values[i];
+            int j = i - 1;
+            for (; j >= low && keys[j] > key; j--) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * <p>returns the positions of {@code keys} in the order of their keys, equal keys in their
+     * original order. The keys are not moved and not boxed.</p>
+     * @param keys the keys to be sorted
+     * @param comparator the order of the keys
+     * @return {@code positions} such that {@code keys[positions[0]]} is the smallest key
+     */
+    static <Key> int[] permutation(Object[] keys, Comparator<? super Key> comparator) {
+        int[] positions = new int[keys.length];
+        for (int i = 0; i < positions.length; i++)
+            positions[i] = i;
+        if (positions.length < 2) return positions;
+
+        mergeSort(keys, comparator, positions.clone(), positions, 0, positions.length);
+        return positions;
+    }
+
+    /** @see #mergeSort(long[], Object[], long[], Object[], int, int) */
+    private static <Key> void mergeSort(Object[] keys, Comparator<? super Key> comparator, int[] src, int[] dst, int low, int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, comparator, dst, low, high);
+            return;
+        }
+
+        int mid = (low + high) >>> 1;
+        mergeSort(keys, comparator, dst, src, low, mid);
+        mergeSort(keys, comparator, dst, src, mid, high);
+
+        // halves are already in order => no need to merge
+        if (Sort.<Key>compare(keys, comparator, src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dst, low, high - low);
+            return;
+        }
+
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            // take from the left half on equal keys to keep the sort stable
+            if (q >= high || p < mid && Sort.<Key>compare(keys, comparator, src[p], src[q]) <= 0) {
+                dst[i] = src[p++];
+            } else {
+                dst[i] = src[q++];
+            }
+        }
+    }
+
+    private static <Key> void insertionSort(Object[] keys, Comparator<? super Key> comparator, int[] positions, int low, int high) {
+        for (int i = low + 1; i < high; i++) {
+            int position = positions[i];
+            int j = i - 1;
+            for (; j >= low && Sort.<Key>compare(keys, comparator, positions[j], position) > 0; j--)
+                positions[j + 1] = positions[j];
+            positions[j + 1] = position;
+        }
+    }
+
+    /** compares the keys at positions {@code a} and {@code b} */
+    @SuppressWarnings("unchecked") // keys holds the Keys passed to permutation
+    private static <Key> int compare(Object[] keys, Comparator<? super Key> comparator, int a, int b) {
+        return comparator.compare((Key) keys[a], (Key) keys[b]);
+    }
+
+    // ----- radix sort ----------------------------------------------------------------------------
+
+    /**
+     * <p>returns the {@code pass}th digit of {@code key}, least significant digit first. The sign
+     * bit is flipped so that negative keys are sorted before positive keys.</p>
+     */
+    private static int digit(long key, int pass) {
+        return (int) ((key ^ Long.MIN_VALUE) >>> (pass * RADIX_BITS)) & RADIX_MASK;
+    }
+
+    /** LSD radix sort, one pass per byte of the keys. Passes where all keys share a digit are skipped. */
+    static void radixSort(long[] keys, Object[] values) {
+        int n = keys.length;
+        if (n < 2) return;
+
+        // histograms of all passes are computed in a single run over the keys
+        int[][] counts = new int[PASSES][RADIX];
+        for (long key : keys)
+            for (int pass = 0; pass < PASSES; pass++)
+                counts[pass][digit(key, pass)] += 1;
+
+        long[] srcKeys = keys;
+        Object[] srcValues = values;
+        long[] dstKeys = new long[n];
+        Object[] dstValues = new Object[n];
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            int[] offsets = counts[pass];
+            if (offsets[digit(srcKeys[0], pass)] == n) continue;
+
+            for (int digit = 0, sum = 0; digit < RADIX; digit++) {
+                int count = offsets[digit];
+                offsets[digit] = sum;
+                sum += count;
+            }
+
+            for (int i = 0; i < n; i++) {
+                int position = offsets[digit(srcKeys[i], pass)]++;
+                dstKeys[position] = srcKeys[i];
+                dstValues[position] = srcValues[i];
+            }
+
+            long[] swapKeys = srcKeys; srcKeys = dstKeys; dstKeys = swapKeys;
+            Object[] swapValues = srcValues; srcValues = dstValues; dstValues = swapValues;
+        }
+
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcValues, 0, values, 0, n);
+        }
+    }
+
+    /**
+     * <p>LSD radix sort that computes the histograms and scatters the values of contiguous chunks
+     * concurrently. Each chunk writes to its own precomputed offsets, so the sort stays stable.</p>
+     */
+    static void parallelRadixSort(long[] keys, Object[] values, ExecutorService executor) {
+        final int n = keys.length;
+        if (n < 2) return;
+
+        final int chunks = Math.max(1, Math.min(n / Parallel.MIN_CHUNK_SIZE, Parallel.parallelism()));
+        final int[] bounds = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++)
+            bounds[c] = (int) ((long) n * c / chunks);
+
+        long[] srcKeys = keys;
+        Object[] srcValues = values;
+        long[] dstKeys = new long[n];
+        Object[] dstValues = new Object[n];
+        final int[][] offsets = new int[chunks][RADIX];
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            final int p = pass;
+            final long[] fromKeys = srcKeys;
+            final Object[] fromValues = srcValues;
+            final long[] toKeys = dstKeys;
+            final Object[] toValues = dstValues;
+
+            List<Callable<Void>> histograms = new ArrayList<Callable<Void>>(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                final int c = chunk;
+                histograms.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int[] counts = offsets[c];
+                        Arrays.fill(counts, 0);
+                        for (int i = bounds[c]; i < bounds[c + 1]; i++)
+                            counts[digit(fromKeys[i], p)] += 1;
+                        return null;
+                    }
+                });
+            }
+            Parallel.invoke(histograms, executor);
+
+            // digit-major, chunk-minor prefix sums keep values of earlier chunks first
+            int firstDigit = digit(fromKeys[0], p);
+            int sameDigit = 0;
+            for (int chunk = 0; chunk < chunks; chunk++)
+                sameDigit += offsets[chunk][firstDigit];
+            if (sameDigit == n) continue;
+
+            for (int digit = 0, sum = 0; digit < RADIX; digit++) {
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int count = offsets[chunk][digit];
+                    offsets[chunk][digit] = sum;
+                    sum += count;
+                }
+            }
+
+            List<Callable<Void>> scatters = new ArrayList<Callable<Void>>(chunks);
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                final int c = chunk;
+                scatters.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int[] positions = offsets[c];
+                        for (int i = bounds[c]; i < bounds[c + 1]; i++) {
+                            int position = positions[digit(fromKeys[i], p)]++;
+                            toKeys[position] = fromKeys[i];
+                            toValues[position] = fromValues[i];
+                        }
+                        return null;
+                    }
+                });
+            }
+            Parallel.invoke(scatters, executor);
+
+            srcKeys = toKeys; dstKeys = fromKeys;
+            srcValues = toValues; dstValues = fromValues;
+        }
+
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcValues, 0, values, 0, n);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Function;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>an {@link Index} that additionally keeps its values sorted by key, created by
+ * {@link _#indexBy(Iterable, Function, Comparator)}. Besides the O(1) lookups of {@link Index}
+ * it answers range queries in O(log n). E.g.</p>
+ * <pre>{@code
+ * SortedIndex<Long, Order> orders = _.indexBy(allOrders, (order) -> order.timestamp, naturalOrder);
+ * orders.range(yesterday, today); // => all orders of yesterday, sorted by timestamp
+ * orders.floor(now); // => the latest order
+ * }</pre>
+ * <p>Values with equal keys keep their original order.</p>
+ * @param <Key> the type of the keys
+ * @param <Value> the type of the indexed values
+ */
+public class SortedIndex<Key, Value> extends Index<Key, Value> {
+
+    private final Comparator<? super Key> mComparator;
+    private final Object[] mSortedKeys;
+    private final Object[] mSortedValues;
+
+    SortedIndex(Iterable<Value> values, Function<Value, Key> key, Comparator<? super Key> comparator) {
+        this(values == null ? new Object[0] : _.toArray(values), key, comparator);
+    }
+
+    private SortedIndex(Object[] values, Function<Value, Key> key, Comparator<? super Key> comparator) {
+        this(values, Index.keys(values, key), key == null, comparator);
+    }
+
+    private SortedIndex(Object[] values, Object[] keys, boolean keyedByValue, Comparator<? super Key> comparator) {
+        super(values, keys, keyedByValue);
+
+        mComparator = comparator;
+
+        // the sort is stable, so equal keys keep their original order
+        int[] positions = Sort.permutation(keys, comparator);
+
+        mSortedKeys = new Object[positions.length];
+        mSortedValues = new Object[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            mSortedKeys[i] = keys[positions[i]];
+            mSortedValues[i] = values[positions[i]];
+        }
+    }
+
+    /**
+     * <p>returns the position of the first key that is not less than {@code key}
+     * ({@code inclusive}) or greater than {@code key} (not {@code inclusive})</p>
+     */
+    private int bound(Key key, boolean inclusive) {
+        int low = 0;
+        int high = mSortedKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int comparison = mComparator.compare(Index.<Key>asList(mSortedKeys).get(mid), key);
+            if (comparison < 0 || (!inclusive && comparison == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param from the smallest key to be included
+     * @param to the smallest key to be excluded
+     * @return the values with keys in {@code [from, to)}, sorted by key
+     */
+    public List<Value> range(Key from, Key to) {
+        int start = bound(from, true);
+        int end = Math.max(start, bound(to, true));
+        return Collections.unmodifiableList(Index.<Value>asList(mSortedValues).subList(start, end));
+    }
+
+    /**
+     * @param key the upper bound
+     * @return the last value with the greatest key less than or equal to {@code key}, or
+     *         {@code null} if there is none
+     */
+    public Value floor(Key key) {
+        int position = bound(key, false) - 1;
+        return position < 0 ? null : Index.<Value>asList(mSortedValues).get(position);
+    }
+
+    /**
+     * @param key the lower bound
+     * @return the first value with the smallest key greater than or equal to {@code key}, or
+     *         {@code null} if there is none
+     */
+    public Value ceiling(Key key) {
+        int position = bound(key, true);
+        return position < mSortedValues.length ? Index.<Value>asList(mSortedValues).get(position) : null;
+    }
+
+    /** @return all values, sorted by key */
+    public List<Value> sorted() {
+        return Collections.unmodifiableList(Index.<Value>asList(mSortedValues));
+    }
+}
@@ -0,0 +1,128 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Consumer;
+import com.dominikschreiber.underscore.java.util.function.Function;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>implementation of {@link _#throttle(Function, long, boolean, boolean)}: calls the wrapped
+ * function at most once per {@code wait} milliseconds.</p>
+ * <p>A call that arrives while the function may not be called is remembered and, if
+ * {@code trailing}, the function is called with the latest remembered input once the wait is
+ * over. If not {@code leading}, the first call of a burst is delayed like a trailing call.</p>
+ * <p>The state is guarded by the monitor of the throttle, but the function is called outside of
+ * it, so a slow call does not block concurrent callers. Trailing calls run on
+ * {@link Async#defaultExecutor()}, not on the scheduler thread.</p>
+ * @param <In> the input type of the wrapped function
+ * @param <Out> the output type of the wrapped function
+ */
+final class Throttle<In, Out> implements Function<In, Out>, Consumer<In> {
+
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private final Function<In, Out> mFunction;
+    private final long mWait;
+    private final boolean mLeading;
+    private final boolean mTrailing;
+
+    /** nano time of the last call of the function, or {@link #NEVER} if a burst is over */
+    private long mLastRun = NEVER;
+    private Out mResult;
+    /** the number of calls of the function started so far */
+    private long mCalls;
+    /** the call whose result is {@link #mResult} */
+    private long mResultCall;
+    private In mPending;
+    private Future<?> mTimer;
+    /** increased on each (re-)scheduling, so timers that were cancelled too late do nothing */
+    private long mGeneration;
+
+    Throttle(Function<In, Out> function, long wait, boolean leading, boolean trailing) {
+        mFunction = function;
+        mWait = TimeUnit.MILLISECONDS.toNanos(wait);
+        mLeading = leading;
+        mTrailing = trailing;
+    }
+
+    /**
+     * <p>calls the function now if its last call is at least {@code wait} milliseconds ago,
+     * otherwise remembers {@code in} for the trailing call</p>
+     * @return the result of this call of the function, or of its latest call
+     */
+    @Override
+    public Out apply(In in) {
+        long call;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (mLastRun == NEVER && !mLeading) mLastRun = now;
+
+            long remaining = mLastRun == NEVER ? 0 : mWait - (now - mLastRun);
+            if (remaining > 0) {
+                if (mTrailing) {
+                    mPending = in;
+                    if (mTimer == null) scheduleTrailing(remaining);
+                }
+                return mResult;
+            }
+
+            cancelTimer();
+            mLastRun = now;
+            call = ++mCalls;
+        }
+        return call(call, in);
+    }
+
+    @Override
+    public void accept(In in) {
+        apply(in);
+    }
+
+    /** calls the function without holding the monitor, then keeps the result if it is the latest */
+    private Out call(long call, In in) {
+        Out result = mFunction.apply(in);
+        synchronized (this) {
+            // a later call may have completed first
+            if (call > mResultCall) {
+                mResultCall = call;
+                mResult = result;
+            }
+        }
+        return result;
+    }
+
+    private void scheduleTrailing(long delay) {
+        final long generation = ++mGeneration;
+        mTimer = Scheduler.handOff(new Runnable() {
+            @Override
+            public void run() {
+                trailing(generation);
+            }
+        }, TimeUnit.NANOSECONDS.toMillis(delay) + 1);
+    }
+
+    private void trailing(long generation) {
+        In in;
+        long call;
+        synchronized (this) {
+            if (generation != mGeneration) return;
+
+            mTimer = null;
+            mLastRun = mLeading ? System.nanoTime() : NEVER;
+            in = mPending;
+            mPending = null;
+            call = ++mCalls;
+        }
+        call(call, in);
+    }
+
+    private void cancelTimer() {
+        if (mTimer != null) {
+            mTimer.cancel(false);
+            mTimer = null;
+            mGeneration += 1;
+        }
+        mPending = null;
+    }
+}
@@ -0,0 +1,159 @@
+package com.dominikschreiber.underscore;
+
+import com.dominikschreiber.underscore.java.util.function.Supplier;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>a handle to a task scheduled by {@link _#delay(Supplier, long)} or {@link _#defer(Supplier)}.
+ * It allows to cancel the task before it runs and to wait for its result, e.g.</p>
+ * <pre>{@code
+ * Timeout<Void> timeout = _.delay(() -> request.abort(), 5000);
+ * response = request.send();
+ * timeout.cancel(false); // => the request is not aborted
+ * }</pre>
+ * <p>Cancelling takes O(1), cancelled tasks do not occupy the scheduler anymore.</p>
+ * @param <Out> the result type of the task
+ */
+public final class Timeout<Out> implements Future<Out> {
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int RUNNING = 2;
+    private static final int DONE = 3;
+
+    private final Supplier<Out> mTask;
+    /** runs the task when it is due, or {@code null} to run it on the scheduler thread */
+    private final Executor mExecutor;
+    private final AtomicInteger mState = new AtomicInteger(PENDING);
+    private Out mValue;
+    private Throwable mError;
+
+    // ----- owned by the scheduler thread, see Scheduler -----
+    /** the tick in which the task runs */
+    final long mDeadline;
+    /** the wheel slot the task is linked into, or {@code null} */
+    Timeout<?>[] mSlot;
+    int mSlotIndex;
+    Timeout<?> mPrevious;
+    Timeout<?> mNext;
+
+    Timeout(Supplier<Out> task, long deadline) {
+        this(task, deadline, null);
+    }
+
+    Timeout(Supplier<Out> task, long deadline, Executor executor) {
+        mTask = task;
+        mDeadline = deadline;
+        mExecutor = executor;
+    }
+
+    /**
+     * <p>runs the task, or hands it off to its executor, unless it was cancelled. Called by the
+     * scheduler thread when the task is due.</p>
+     */
+    void fire() {
+        if (mExecutor == null) {
+            run();
+            return;
+        }
+        if (mState.get() != PENDING) return;
+
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Timeout.this.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (mState.compareAndSet(PENDING, RUNNING)) complete(null, e);
+        }
+    }
+
+    /** runs the task unless it was cancelled */
+    private void run() {
+        if (!mState.compareAndSet(PENDING, RUNNING)) return;
+
+        Out value = null;
+        Throwable error = null;
+        try {
+            value = mTask.get();
+        } catch (Throwable t) {
+            error = t;
+        }
+        complete(value, error);
+    }
+
+    private void complete(Out value, Throwable error) {
+        synchronized (this) {
+            mValue = value;
+            mError = error;
+            mState.set(DONE);
+            notifyAll();
+        }
+    }
+
+    /**
+     * <p>cancels the task if it did not start yet, which includes tasks that are due but still
+     * wait for their executor</p>
+     * @param mayInterruptIfRunning ignored, running tasks are never interrupted
+     * @return {@code true} if the task will not run because of this call
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!mState.compareAndSet(PENDING, CANCELLED)) return false;
+
+        synchronized (this) {
+            notifyAll();
+        }
+        Scheduler.cancelled(this);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mState.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        int state = mState.get();
+        return state == CANCELLED || state == DONE;
+    }
+
+    @Override
+    public Out get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (!isDone())
+                wait();
+        }
+        return result();
+    }
+
+    @Override
+    public Out get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!isDone()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) throw new TimeoutException();
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return result();
+    }
+
+    private synchronized Out result() throws ExecutionException {
+        if (mState.get() == CANCELLED) throw new CancellationException();
+        if (mError != null) throw new ExecutionException(mError);
+        return mValue;
+    }
+}
@@ -1,30 +1,60 @@
 package com.dominikschreiber.underscore;
 
+import com.dominikschreiber.underscore.java.util.function.BiConsumer;
 import com.dominikschreiber.underscore.java.util.function.BiFunction;
 import com.dominikschreiber.underscore.java.util.function.BiPredicate;
 import com.dominikschreiber.underscore.java.util.function.Consumer;
+import com.dominikschreiber.underscore.java.util.function.DoubleBinaryOperator;
+import com.dominikschreiber.underscore.java.util.function.DoublePredicate;
+import com.dominikschreiber.underscore.java.util.function.DoubleUnaryOperator;
 import com.dominikschreiber.underscore.java.util.function.Function;
+import com.dominikschreiber.underscore.java.util.function.IntBinaryOperator;
+import com.dominikschreiber.underscore.java.util.function.IntConsumer;
+import com.dominikschreiber.underscore.java.util.function.IntFunction;
+import com.dominikschreiber.underscore.java.util.function.IntPredicate;
+import com.dominikschreiber.underscore.java.util.function.IntUnaryOperator;
+import com.dominikschreiber.underscore.java.util.function.LongBinaryOperator;
+import com.dominikschreiber.underscore.java.util.function.LongPredicate;
+import com.dominikschreiber.underscore.java.util.function.LongUnaryOperator;
 import com.dominikschreiber.underscore.java.util.function.Predicate;
 import com.dominikschreiber.underscore.java.util.function.Supplier;
-
-import java.lang.reflect.Field;
+import com.dominikschreiber.underscore.java.util.function.ToLongFunction;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
 
 /**
  * <p>implements basic functional programming methods known from underscore.js</p>
  * <p><b>WARNING:</b> does not make use of advanced functional programming technologies
  * (like <i>tail calls</i> or <i>map optimization</i>) so might be slow on large data sets</p>
+ * <p>chains on large data sets should use the lazy mode (see {@link #lazy(Iterable)}) that fuses
+ * all stages into a single pass</p>
  */
 public final class _ <T> {
 
     private Iterable<T> mValues;
+    private boolean mLazy;
+    private ExecutorService mExecutor;
 
     /**
      * <p>wraps {@code values} to allow chained execution, e.g.</p>
@@ -56,14 +86,192 @@ public final class _ <T> {
      *   [...]
      *   .value(); // => Iterable<>
      * }</pre>
+     * <p>Endless sequences (see {@link #iterate(Object, Function)}) and one-shot sources (see
+     * {@link #from(Iterator)}) are always chained lazily.</p>
      * @param values the values that should be wrapped
      */
     public _(Iterable<T> values) {
+        // endless and one-shot sources (e.g. of _.iterate and _.from) can only be chained lazily
+        this(values, values instanceof Lazy.Source, null);
+    }
+
+    private _(Iterable<T> values, boolean lazy, ExecutorService executor) {
         mValues = values;
+        mLazy = lazy;
+        mExecutor = executor;
+    }
+
+    /** wraps the result of a chained operation, keeping the evaluation mode of this chain */
+    private <Out> _<Out> chain(Iterable<Out> values) {
+        return new _<Out>(values, mLazy, mExecutor);
     }
 
+    /**
+     * <p>returns the actual value of the computation.</p>
+     * <p>In lazy mode (see {@link #lazy()}) this is a terminal operation: the recorded stages
+     * are evaluated in a single pass and their result is collected into a {@link List}.</p>
+     * @return the values computed by the chain
+     */
     public Iterable<T> value() {
-        return mValues;
+        if (!mLazy || mValues == null) return mValues;
+
+        List<T> value = new ArrayList<T>();
+        for (T t : mValues)
+            value.add(t);
+        return value;
+    }
+
+    // ----- _.lazy --------------------------------------------------------------------------------
+
+    /**
+     * <p>wraps {@code values} to allow lazy chained execution, e.g.</p>
+     * <pre>{@code
+     * _.lazy(_.range(1, 2000000))
+     *   .map(square)
+     *   .filter(isEven)
+     *   .reduce(sum, 0);
+     * }</pre>
+     * <p>In lazy mode {@code map}, {@code filter}, {@code reject}, {@code first(n)}, {@code rest}
+     * and {@code zip} do not compute anything but record a stage. The stages are fused and evaluated
+     * in a single pass when a terminal operation ({@code value}, {@code reduce}, {@code find},
+     * {@code some}, {@code every}, {@code size}, {@code join}) is called, so no intermediate lists
+     * are created. Short-circuiting terminals ({@code find}, {@code some}, {@code every}) and
+     * {@code first(n)} stop pulling values from the upstream stages as soon as they are done.</p>
+     * <p>Stages that need to see all values ({@code sortBy}, {@code initial}, {@code last}) are
+     * evaluated eagerly when they are recorded.</p>
+     * <p>Every terminal operation evaluates the stages again, so side effects in the stages are
+     * repeated for each terminal operation.</p>
+     * @param values the values that should be wrapped
+     * @param <In> the type of the {@code values}
+     * @return the lazy chain wrapper
+     */
+    public static <In> _<In> lazy(Iterable<In> values) {
+        return new _<In>(values, true, null);
+    }
+
+    /** @see #lazy(Iterable) */
+    public _<T> lazy() {
+        return new _<T>(mValues, true, null);
+    }
+
+    // ----- _.parallel ----------------------------------------------------------------------------
+
+    /**
+     * <p>wraps {@code values} to allow parallel chained execution on {@code executor}, e.g.</p>
+     * <pre>{@code
+     * _.parallel(_.range(1, 2000000), new ForkJoinPool(32))
+     *   .map(square)
+     *   .filter(isEven)
+     *   .reduce(sum, 0, sum);
+     * }</pre>
+     * <p>In parallel mode {@code map}, {@code filter}, {@code reject}, {@code every}, {@code some},
+     * {@code find} and {@link #reduce(BiFunction, Object, BiFunction)} split the values into
+     * contiguous chunks that are processed concurrently. {@code map}, {@code filter} and
+     * {@code reject} keep the encounter order of the values, {@code find} returns the first matching
+     * value in encounter order. All other operations are executed sequentially.</p>
+     * <p>{@link List}s are split without copying, other {@link Iterable}s are copied into a list
+     * once per operation. Inputs with only a few values are processed in the calling thread, unless
+     * the values are {@link Iterable}s themselves (e.g. the {@link Lines#segments(int)} of a file),
+     * which are processed one per task.</p>
+     * <p>The operations passed to a parallel chain are called concurrently, so they must be
+     * thread-safe.</p>
+     * <p>A parallel chain on {@code executor} that runs within an operation of another parallel
+     * chain on the same executor processes all its chunks in the calling thread instead of waiting
+     * for the executor, as waiting could deadlock a fixed pool once all its threads wait.</p>
+     * @param values the values that should be wrapped
+     * @param executor the executor to run the chunks on, e.g. a {@code ForkJoinPool}
+     * @param <In> the type of the {@code values}
+     * @return the parallel chain wrapper
+     */
+    public static <In> _<In> parallel(Iterable<In> values, ExecutorService executor) {
+        return new _<In>(values, false, executor);
+    }
+
+    /**
+     * <p>like {@link #parallel(Iterable, ExecutorService)}, using a shared pool of daemon threads
+     * with one thread per available processor</p>
+     * @see #parallel(Iterable, ExecutorService)
+     */
+    public static <In> _<In> parallel(Iterable<In> values) {
+        return _.parallel(values, Parallel.defaultExecutor());
+    }
+
+    /** @see #parallel(Iterable, ExecutorService) */
+    public _<T> parallel(ExecutorService executor) {
+        return new _<T>(mValues, false, executor);
+    }
+
+    /** @see #parallel(Iterable) */
+    public _<T> parallel() {
+        return parallel(Parallel.defaultExecutor());
+    }
+
+    // ----- _.pipeline ----------------------------------------------------------------------------
+
+    /**
+     * <p>wraps {@code values} in a {@link Pipeline}, a chain whose stages run concurrently on
+     * their own threads, connected by bounded queues. E.g.</p>
+     * <pre>{@code
+     * _.pipeline(lines)
+     *   .map(parse, 4)
+     *   .map(enrich, 16)
+     *   .each(write);
+     * }</pre>
+     * <p>This pays off for chains of stages with different costs (e.g. parsing, remote lookups
+     * and output), which then overlap instead of running one after the other.</p>
+     * @param values the values that should be wrapped
+     * @param <In> the type of the {@code values}
+     * @return the pipeline without stages
+     * @see Pipeline
+     */
+    public static <In> Pipeline<In> pipeline(Iterable<In> values) {
+        return Pipeline.of(values);
+    }
+
+    /** @see #pipeline(Iterable) */
+    public Pipeline<T> pipeline() {
+        return Pipeline.of(mValues);
+    }
+
+    // ----- capabilities --------------------------------------------------------------------------
+
+    /**
+     * <p>returns {@code values} as {@link List} if it can be accessed by index in constant time
+     * (i.e. it is a {@link RandomAccess} list), otherwise {@code null}. Indexed loops over such
+     * lists do not need an {@link Iterator}.</p>
+     */
+    private static <In> List<In> indexed(Iterable<In> values) {
+        return values instanceof RandomAccess && values instanceof List ? (List<In>) values : null;
+    }
+
+    /**
+     * <p>returns the number of {@code values} if it is known without iterating them (i.e. they
+     * are a {@link Collection}), otherwise {@code -1}</p>
+     */
+    static int knownSize(Iterable<?> values) {
+        return values instanceof Collection ? ((Collection<?>) values).size() : -1;
+    }
+
+    /** @return the initial capacity of a {@link HashMap} that holds {@code size} entries without rehashing */
+    static int capacityFor(int size) {
+        return (int) Math.min((long) size * 4 / 3 + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * <p>returns a read-only view of the range {@code [from, to)} of {@code list}. The bounds are
+     * clamped to the list, so an empty range gives an empty view.</p>
+     */
+    private static <In> List<In> slice(List<In> list, int from, int to) {
+        int size = list.size();
+        int start = Math.max(0, Math.min(from, size));
+        int end = Math.max(start, Math.min(to, size));
+        return Collections.unmodifiableList(list.subList(start, end));
+    }
+
+    /** returns a list to collect up to {@code values} into, presized if their number is known */
+    private static <In, Out> List<Out> listFor(Iterable<In> values) {
+        int size = _.knownSize(values);
+        return size < 0 ? new ArrayList<Out>() : new ArrayList<Out>(size);
     }
 
     // ----- _.tap ---------------------------------------------------------------------------------
@@ -89,8 +297,20 @@ public final class _ <T> {
     public static <In> void each(Iterable<In> values, Consumer<In> function) {
         if (values == null) return;
 
-        for (In value : values)
-            function.accept(value);
+        Probe probe = Probe.start("each", values, function);
+        try {
+            List<In> list = _.indexed(values);
+            if (list != null) {
+                for (int i = 0, size = list.size(); i < size; i++)
+                    function.accept(list.get(i));
+            } else {
+                for (In value : values)
+                    function.accept(value);
+            }
+            Probe.stop(probe, null);
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     /** @see #each(Iterable, Consumer) */
@@ -99,6 +319,85 @@ public final class _ <T> {
         return this;
     }
 
+    // ----- _.eachBatch ---------------------------------------------------------------------------
+
+    /**
+     * <p>calls {@code function} on batches of {@code n} consecutive values of {@code values}
+     * (the last batch may be smaller). E.g.</p>
+     * <pre>{@code
+     * _.eachBatch(rows, 500, (batch) -> { database.insertAll(batch); });
+     * // => one round trip per 500 rows
+     * }</pre>
+     * <p>The batches are read-only views of a single buffer that is reused for each batch, so
+     * {@code function} must copy a batch if it needs it after it returned. Use
+     * {@link #chunk(Iterable, int)} to get batches that may be kept.</p>
+     * @param values the values to be batched
+     * @param n the size of the batches
+     * @param function the function to call on every batch
+     * @param <In> type of the elements in {@code values}
+     */
+    public static <In> void eachBatch(Iterable<In> values, int n, Consumer<List<In>> function) {
+        if (n < 1) throw new IllegalArgumentException("batch size must be positive: " + n);
+        if (values == null) return;
+
+        Probe probe = Probe.start("eachBatch", values, function);
+        try {
+            List<In> buffer = new ArrayList<In>(Math.min(n, 1024));
+            List<In> batch = Collections.unmodifiableList(buffer);
+            for (In value : values) {
+                buffer.add(value);
+                if (buffer.size() == n) {
+                    function.accept(batch);
+                    buffer.clear();
+                }
+            }
+            if (!buffer.isEmpty()) function.accept(batch);
+            Probe.stop(probe, null);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /**
+     * <p>like {@link #eachBatch(Iterable, int, Consumer)}, but calls {@code function} on
+     * {@code executor}, on up to {@code maxInFlight} batches at the same time. The batches are
+     * filled in the calling thread while earlier batches are processed; filling blocks while
+     * {@code maxInFlight} batches are processed. Their buffers are reused for later batches.</p>
+     * <p>Returns once all batches are processed. If {@code function} throws, no more batches are
+     * started and the first exception is rethrown.</p>
+     * @param values the values to be batched
+     * @param n the size of the batches
+     * @param function the function to call on every batch
+     * @param executor the executor that processes the batches
+     * @param maxInFlight the maximum number of batches processed at the same time
+     * @param <In> type of the elements in {@code values}
+     */
+    public static <In> void eachBatch(Iterable<In> values, int n, Consumer<List<In>> function,
+                                      ExecutorService executor, int maxInFlight) {
+        if (n < 1) throw new IllegalArgumentException("batch size must be positive: " + n);
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+
+        Probe probe = Probe.start("eachBatch", values, function);
+        try {
+            Parallel.eachBatch(values, n, function, executor, maxInFlight);
+            Probe.stop(probe, null);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #eachBatch(Iterable, int, Consumer) */
+    public _<T> eachBatch(int n, Consumer<List<T>> function) {
+        _.eachBatch(mValues, n, function);
+        return this;
+    }
+
+    /** @see #eachBatch(Iterable, int, Consumer, ExecutorService, int) */
+    public _<T> eachBatch(int n, Consumer<List<T>> function, ExecutorService executor, int maxInFlight) {
+        _.eachBatch(mValues, n, function, executor, maxInFlight);
+        return this;
+    }
+
     // ----- _.map ---------------------------------------------------------------------------------
 
     /**
@@ -122,13 +421,18 @@ public final class _ <T> {
     public static <InKey, InValue, OutKey, OutValue> Map<OutKey, OutValue> map(Map<InKey,InValue> values, BiFunction<InKey,InValue,Map.Entry<OutKey,OutValue>> function) {
         if (values == null) return Collections.emptyMap();
 
-        Map<OutKey,OutValue> result = new HashMap<OutKey,OutValue>();
-        for (Map.Entry<InKey,InValue> value : values.entrySet()) {
-            final Map.Entry<OutKey, OutValue> entry = function.apply(value.getKey(), value.getValue());
-            result.put(entry.getKey(), entry.getValue());
-        }
+        Probe probe = Probe.start("map", values, function);
+        try {
+            Map<OutKey,OutValue> result = new HashMap<OutKey,OutValue>();
+            for (Map.Entry<InKey,InValue> value : values.entrySet()) {
+                final Map.Entry<OutKey, OutValue> entry = function.apply(value.getKey(), value.getValue());
+                result.put(entry.getKey(), entry.getValue());
+            }
 
-        return result;
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     /**
@@ -148,16 +452,110 @@ public final class _ <T> {
     public static <In, Out> List<Out> map(Iterable<In> values, Function<In, Out> function) {
         if (values == null) return Collections.emptyList();
 
-        List<Out> result = new ArrayList<Out>();
-        for (In value : values)
-            result.add(function.apply(value));
+        Probe probe = Probe.start("map", values, function);
+        try {
+            List<Out> result = _.listFor(values);
+            List<In> list = _.indexed(values);
+            if (list != null) {
+                for (int i = 0, size = list.size(); i < size; i++)
+                    result.add(function.apply(list.get(i)));
+            } else {
+                for (In value : values)
+                    result.add(function.apply(value));
+            }
 
-        return result;
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     /** @see #map(Iterable, Function) */
     public <Out> _<Out> map(Function<T, Out> function) {
-        return new _<Out>(_.map(mValues, function));
+        if (mLazy) return chain(Lazy.map(mValues, function));
+        if (mExecutor != null) {
+            Probe probe = Probe.start("parallel.map", mValues, function);
+            try {
+                return chain(Probe.stop(probe, Parallel.map(mValues, function, mExecutor)));
+            } finally {
+                Probe.fail(probe);
+            }
+        }
+        return chain(_.map(mValues, function));
+    }
+
+    // ----- _.mapAsync ----------------------------------------------------------------------------
+
+    /**
+     * <p>like {@link #map(Iterable, Function)}, but calls {@code function} for up to
+     * {@code maxConcurrency} values at the same time on {@code executor}. This pays off for
+     * functions that mostly wait, e.g. for remote calls or disk reads:</p>
+     * <pre>{@code
+     * _.mapAsync(userIds, (id) -> userService.fetch(id), 32, null);
+     * // => the users, in the order of userIds, fetched by 32 concurrent requests
+     * }</pre>
+     * <p>The results are in the order of the {@code values}. Blocks until all calls are done.
+     * The first failed call cancels the calls in flight and its error is rethrown (see
+     * {@link Async.FailurePolicy#FAIL_FAST}).</p>
+     * @param values the values to be mapped
+     * @param function the function to call on every element of {@code values}
+     * @param maxConcurrency the maximum number of calls in flight
+     * @param executor runs the calls, {@code null} for {@link Async#defaultExecutor()} (which
+     *                 uses virtual threads where available)
+     * @param <In> type of the elements in {@code values}
+     * @param <Out> type of the result of {@code function}
+     * @return the results of {@code function} in the order of the {@code values}
+     */
+    public static <In, Out> List<Out> mapAsync(Iterable<In> values, Function<In, Out> function, int maxConcurrency,
+                                               ExecutorService executor) {
+        Async.Options options = new Async.Options();
+        options.maxConcurrency = maxConcurrency;
+        options.executor = executor;
+        return _.mapAsync(values, function, options);
+    }
+
+    /**
+     * <p>like {@link #mapAsync(Iterable, Function, int, ExecutorService)}, but configured by
+     * {@code options}. E.g. to fetch all users that respond within a second:</p>
+     * <pre>{@code
+     * Async.Options options = new Async.Options();
+     * options.maxConcurrency = 32;
+     * options.failurePolicy = Async.FailurePolicy.COLLECT;
+     * options.timeout = 1000L;
+     * try {
+     *     users = _.mapAsync(userIds, (id) -> userService.fetch(id), options);
+     * } catch (Async.Failure failure) {
+     *     users = _.filter(failure.results(), (user) -> user != null);
+     * }
+     * }</pre>
+     * @param values the values to be mapped
+     * @param function the function to call on every element of {@code values}
+     * @param options configures the calls, {@code null} options are set to their defaults
+     * @param <In> type of the elements in {@code values}
+     * @param <Out> type of the result of {@code function}
+     * @return the results of {@code function} in the order of the {@code values}
+     * @throws Async.Failure if any call failed and {@code options.failurePolicy} is
+     *                       {@link Async.FailurePolicy#COLLECT}
+     */
+    public static <In, Out> List<Out> mapAsync(Iterable<In> values, Function<In, Out> function, Async.Options options) {
+        if (values == null) return Collections.emptyList();
+
+        Probe probe = Probe.start("mapAsync", values, function);
+        try {
+            return Probe.stop(probe, Async.map(values, function, options));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #mapAsync(Iterable, Function, int, ExecutorService) */
+    public <Out> _<Out> mapAsync(Function<T, Out> function, int maxConcurrency, ExecutorService executor) {
+        return chain(_.mapAsync(mValues, function, maxConcurrency, executor));
+    }
+
+    /** @see #mapAsync(Iterable, Function, Async.Options) */
+    public <Out> _<Out> mapAsync(Function<T, Out> function, Async.Options options) {
+        return chain(_.mapAsync(mValues, function, options));
     }
 
     // ----- _.filter ------------------------------------------------------------------------------
@@ -177,16 +575,42 @@ public final class _ <T> {
     public static <In> List<In> filter(Iterable<In> values, Predicate<In> predicate) {
         if (values == null) return Collections.emptyList();
 
+        Probe probe = Probe.start("filter", values, predicate);
+        try {
+            return Probe.stop(probe, _.select(values, predicate, true));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** the uninstrumented core of filter and reject: the values that {@code predicate} is {@code selected} for */
+    private static <In> List<In> select(Iterable<In> values, Predicate<In> predicate, boolean selected) {
         List<In> result = new ArrayList<In>();
-        for (In value : values)
-            if (predicate.test(value))
-                result.add(value);
+        List<In> list = _.indexed(values);
+        if (list != null) {
+            for (int i = 0, size = list.size(); i < size; i++)
+                if (predicate.test(list.get(i)) == selected)
+                    result.add(list.get(i));
+        } else {
+            for (In value : values)
+                if (predicate.test(value) == selected)
+                    result.add(value);
+        }
         return result;
     }
 
     /** @see #filter(Iterable, Predicate) */
     public _<T> filter(Predicate<T> predicate) {
-        return new _<T>(_.filter(mValues, predicate));
+        if (mLazy) return chain(Lazy.filter(mValues, predicate));
+        if (mExecutor != null) {
+            Probe probe = Probe.start("parallel.filter", mValues, predicate);
+            try {
+                return chain(Probe.stop(probe, Parallel.filter(mValues, predicate, mExecutor)));
+            } finally {
+                Probe.fail(probe);
+            }
+        }
+        return chain(_.filter(mValues, predicate));
     }
 
     // ----- _.find --------------------------------------------------------------------------------
@@ -207,14 +631,41 @@ public final class _ <T> {
     public static <In> In find(Iterable<In> values, Predicate<In> predicate) {
         if (values == null) return null;
 
-        for (In value : values)
-            if (predicate.test(value))
-                return value;
-        return null;
+        Probe probe = Probe.start("find", values, predicate);
+        try {
+            In found = null;
+            List<In> list = _.indexed(values);
+            if (list != null) {
+                for (int i = 0, size = list.size(); i < size; i++) {
+                    if (predicate.test(list.get(i))) {
+                        found = list.get(i);
+                        break;
+                    }
+                }
+            } else {
+                for (In value : values) {
+                    if (predicate.test(value)) {
+                        found = value;
+                        break;
+                    }
+                }
+            }
+            return Probe.stop(probe, found);
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     /** @see #find(Iterable, Predicate) */
     public T find(Predicate<T> predicate) {
+        if (mExecutor != null) {
+            Probe probe = Probe.start("parallel.find", mValues, predicate);
+            try {
+                return Probe.stop(probe, Parallel.find(mValues, predicate, mExecutor));
+            } finally {
+                Probe.fail(probe);
+            }
+        }
         return _.find(mValues, predicate);
     }
 
@@ -244,8 +695,25 @@ public final class _ <T> {
     public static <In, Out> Out reduce(Iterable<In> values, BiFunction<In, Out, Out> combine, Out init) {
         if (values == null) return init;
 
+        Probe probe = Probe.start("reduce", values, combine);
+        try {
+            return Probe.stop(probe, _.fold(values, combine, init));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** {@link #reduce(Iterable, BiFunction, Object)} without instrumentation, e.g. for chunks of parallel reductions */
+    static <In, Out> Out fold(Iterable<In> values, BiFunction<In, Out, Out> combine, Out init) {
         Out result = init;
 
+        List<In> list = _.indexed(values);
+        if (list != null) {
+            for (int i = 0, size = list.size(); i < size; i++)
+                result = combine.apply(list.get(i), result);
+            return result;
+        }
+
         for (In value : values)
             result = combine.apply(value, result);
 
@@ -257,6 +725,36 @@ public final class _ <T> {
         return _.reduce(mValues, combine, init);
     }
 
+    /**
+     * <p>reduces the values to a single value of type {@code <Out>}.</p>
+     * <p>In parallel mode (see {@link #parallel(Iterable, ExecutorService)}) chunks of the values are
+     * reduced concurrently using {@code combine}, each one starting at {@code init}. The partial
+     * results are merged in encounter order using {@code combiner}. Therefore {@code init} must be
+     * an identity of {@code combiner} and {@code combiner} must be associative, e.g.</p>
+     * <pre>{@code
+     * _.parallel(_.range(1, 5)).reduce(sum, 0, sum);
+     * // => 10
+     * }</pre>
+     * <p>Otherwise this is the same as {@link #reduce(BiFunction, Object)}, {@code combiner} is not
+     * used.</p>
+     * @param combine the combination function
+     * @param init the initial value, an identity of {@code combiner}
+     * @param combiner the associative function that merges two partial results
+     * @param <Out> the result type
+     * @return a value of type {@code <Out>} obtained by reducing the values
+     */
+    public <Out> Out reduce(BiFunction<T, Out, Out> combine, Out init, BiFunction<Out, Out, Out> combiner) {
+        if (mExecutor != null) {
+            Probe probe = Probe.start("parallel.reduce", mValues, combine);
+            try {
+                return Probe.stop(probe, Parallel.reduce(mValues, combine, init, combiner, mExecutor));
+            } finally {
+                Probe.fail(probe);
+            }
+        }
+        return _.reduce(mValues, combine, init);
+    }
+
     // ----- _.reject ------------------------------------------------------------------------------
 
     /**
@@ -274,18 +772,26 @@ public final class _ <T> {
     public static <In> List<In> reject(Iterable<In> values, Predicate<In> predicate) {
         if (values == null) return Collections.emptyList();
 
-        List<In> reject = new ArrayList<In>();
-
-        for (In value : values)
-            if (!predicate.test(value))
-                reject.add(value);
-
-        return reject;
+        Probe probe = Probe.start("reject", values, predicate);
+        try {
+            return Probe.stop(probe, _.select(values, predicate, false));
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     /** @see #reject(Iterable, com.dominikschreiber.underscore.java.util.function.Predicate) */
     public _<T> reject(Predicate<T> predicate) {
-        return new _<T>(_.reject(mValues, predicate));
+        if (mLazy) return chain(Lazy.filter(mValues, _.negate(predicate)));
+        if (mExecutor != null) {
+            Probe probe = Probe.start("parallel.reject", mValues, predicate);
+            try {
+                return chain(Probe.stop(probe, Parallel.filter(mValues, _.negate(predicate), mExecutor)));
+            } finally {
+                Probe.fail(probe);
+            }
+        }
+        return chain(_.reject(mValues, predicate));
     }
 
     // ----- _.every -------------------------------------------------------------------------------
@@ -302,15 +808,24 @@ public final class _ <T> {
     public static <In> boolean every(Iterable<In> values, Predicate<In> predicate) {
         if (values == null) return true;
 
-        for (In value : values)
-            if (!predicate.test(value))
-                return false;
-
-        return true;
+        Probe probe = Probe.start("every", values, predicate);
+        try {
+            return Probe.stop(probe, !_.any(values, predicate, false));
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     /** @see #every(Iterable, com.dominikschreiber.underscore.java.util.function.Predicate) */
     public boolean every(Predicate<T> predicate) {
+        if (mExecutor != null) {
+            Probe probe = Probe.start("parallel.every", mValues, predicate);
+            try {
+                return Probe.stop(probe, Parallel.every(mValues, predicate, mExecutor));
+            } finally {
+                Probe.fail(probe);
+            }
+        }
         return _.every(mValues, predicate);
     }
 
@@ -328,15 +843,37 @@ public final class _ <T> {
     public static <In> boolean some(Iterable<In> values, Predicate<In> predicate) {
         if (values == null) return false;
 
-        for (In value : values)
-            if (predicate.test(value))
-                return true;
+        Probe probe = Probe.start("some", values, predicate);
+        try {
+            return Probe.stop(probe, _.any(values, predicate, true));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
 
+    /** the uninstrumented core of some and every: is {@code predicate} {@code expected} for any value? */
+    private static <In> boolean any(Iterable<In> values, Predicate<In> predicate, boolean expected) {
+        List<In> list = _.indexed(values);
+        if (list != null) {
+            for (int i = 0, size = list.size(); i < size; i++)
+                if (predicate.test(list.get(i)) == expected) return true;
+        } else {
+            for (In value : values)
+                if (predicate.test(value) == expected) return true;
+        }
         return false;
     }
 
     /** @see #some(Iterable, Predicate) */
     public boolean some(Predicate<T> predicate) {
+        if (mExecutor != null) {
+            Probe probe = Probe.start("parallel.some", mValues, predicate);
+            try {
+                return Probe.stop(probe, Parallel.some(mValues, predicate, mExecutor));
+            } finally {
+                Probe.fail(probe);
+            }
+        }
         return _.some(mValues, predicate);
     }
 
@@ -345,20 +882,41 @@ public final class _ <T> {
     /**
      * <p>returns {@code true} if the {@code needle} is present in {@code haystack}.</p>
      * <p>Uses {@code Object.equals()} to determine equality.</p>
+     * <p>Scans {@code haystack} in O(n), unless it is a {@link java.util.HashSet} or an
+     * {@link Index} created by {@link #index(Iterable)} which are searched in O(1). To search the
+     * same values repeatedly, index them once.</p>
      * @param haystack the values that should contain {@code needle}
      * @param needle the value to be found in {@code haystack}
      * @param <In> the type of values in haystack/needle
      * @return {@code true} if {@code needle} is found in {@code haystack}
      */
     public static <In> boolean contains(Iterable<In> haystack, In needle) {
-        return _.contains(haystack, needle, new BiPredicate<In, In>() {
-            @Override
-            public boolean test(In a, In b) {
-                return a.equals(b);
+        if (haystack == null) return false;
+
+        Probe probe = Probe.start("contains", haystack, null);
+        try {
+            boolean found;
+            if (haystack instanceof Index && ((Index<?, ?>) haystack).isKeyedByValue()) {
+                found = ((Index<?, ?>) haystack).containsKey(needle);
+            } else if (haystack instanceof HashSet) {
+                found = ((HashSet<In>) haystack).contains(needle);
+            } else {
+                found = _.scan(haystack, needle, EQUALS);
             }
-        });
+            return Probe.stop(probe, found);
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
+    /** {@link Object#equals(Object)}, but {@code null} equals {@code null} */
+    private static final BiPredicate<Object, Object> EQUALS = new BiPredicate<Object, Object>() {
+        @Override
+        public boolean test(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    };
+
     /** @see #contains(Iterable, Object) */
     public boolean contains(T needle) {
         return _.contains(mValues, needle);
@@ -383,10 +941,22 @@ public final class _ <T> {
     public static <In> boolean contains(Iterable<In> haystack, In needle, BiPredicate<In, In> equals) {
         if (haystack == null) return false;
 
-        for (In hay : haystack) {
-            if (equals.test(hay, needle)) {
-                return true;
-            }
+        Probe probe = Probe.start("contains", haystack, equals);
+        try {
+            return Probe.stop(probe, _.scan(haystack, needle, equals));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    private static <In> boolean scan(Iterable<In> haystack, In needle, BiPredicate<? super In, ? super In> equals) {
+        List<In> list = _.indexed(haystack);
+        if (list != null) {
+            for (int i = 0, size = list.size(); i < size; i++)
+                if (equals.test(list.get(i), needle)) return true;
+        } else {
+            for (In value : haystack)
+                if (equals.test(value, needle)) return true;
         }
         return false;
     }
@@ -396,62 +966,523 @@ public final class _ <T> {
         return _.contains(mValues, needle, equals);
     }
 
+    // ----- _.index -------------------------------------------------------------------------------
+
+    /**
+     * <p>indexes {@code values} for repeated lookups. E.g.</p>
+     * <pre>{@code
+     * Index<String, String> known = _.index(_.list("foo", "bar"));
+     * known.contains("foo"); // => true
+     * _.contains(known, "baz"); // => false
+     * }</pre>
+     * <p>Building the index takes O(n), each lookup takes O(1) instead of the O(n) of
+     * {@link #contains(Iterable, Object)} on the plain {@code values}.</p>
+     * @param values the values to be indexed
+     * @param <In> the type of the {@code values}
+     * @return the index of the {@code values}, keyed by the values themselves
+     */
+    public static <In> Index<In, In> index(Iterable<In> values) {
+        Probe probe = Probe.start("index", values, null);
+        try {
+            return Probe.stop(probe, new Index<In, In>(values, null));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #index(Iterable) */
+    public Index<T, T> index() {
+        return _.index(value());
+    }
+
+    /**
+     * <p>indexes {@code values} by the key computed by {@code key}. E.g.</p>
+     * <pre>{@code
+     * Index<Integer, String> byLength = _.indexBy(_.list("foo", "bar", "quux"), (s) -> s.length());
+     * byLength.find(3); // => "foo"
+     * byLength.get(3); // => ["foo", "bar"]
+     * byLength.contains(5); // => false
+     * }</pre>
+     * @param values the values to be indexed
+     * @param key computes the key of a value, exactly once per value
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the keys
+     * @return the index of the {@code values}
+     */
+    public static <In, Key> Index<Key, In> indexBy(Iterable<In> values, Function<In, Key> key) {
+        Probe probe = Probe.start("indexBy", values, key);
+        try {
+            return Probe.stop(probe, new Index<Key, In>(values, key));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #indexBy(Iterable, Function) */
+    public <Key> Index<Key, T> indexBy(Function<T, Key> key) {
+        return _.indexBy(value(), key);
+    }
+
+    /**
+     * <p>like {@link #indexBy(Iterable, Function)}, but additionally sorts the {@code values} by
+     * their keys to allow range queries. E.g.</p>
+     * <pre>{@code
+     * SortedIndex<Integer, String> byLength = _.indexBy(_.list("foo", "ba", "quux"), (s) -> s.length(), naturalOrder);
+     * byLength.range(2, 4); // => ["ba", "foo"]
+     * byLength.ceiling(4); // => "quux"
+     * }</pre>
+     * @param values the values to be indexed
+     * @param key computes the key of a value, exactly once per value
+     * @param comparator the order of the keys
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the keys
+     * @return the sorted index of the {@code values}
+     */
+    public static <In, Key> SortedIndex<Key, In> indexBy(Iterable<In> values, Function<In, Key> key,
+                                                        Comparator<? super Key> comparator) {
+        Probe probe = Probe.start("indexBy", values, key);
+        try {
+            return Probe.stop(probe, new SortedIndex<Key, In>(values, key, comparator));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #indexBy(Iterable, Function, Comparator) */
+    public <Key> SortedIndex<Key, T> indexBy(Function<T, Key> key, Comparator<? super Key> comparator) {
+        return _.indexBy(value(), key, comparator);
+    }
+
     // ----- _.sortBy ------------------------------------------------------------------------------
 
     /**
      * <p>sorts  {@code values} by {@code criterion}. e.g.</p>
      * <pre>{@code
-     * _.sortBy(_.list("never", "gon", "na", "give"), (i) -> { return i.length(); });
+     * _.sortBy(_.list("never", "gon", "na", "give"), (i) -> { return (long) i.length(); });
      * // => ["na", "gon", "give", "never"]
      * }</pre>
+     * <p>{@code criterion} is applied exactly once per value. The sort is stable.</p>
      * @param values the values to be sorted
      * @param criterion the criterion to be applied to each value to sort them
      * @param <In> the type of {@code values}
      * @return the sorted list of {@code values}
      */
-    public static <In> List<In> sortBy(Iterable<In> values, final Function<In, Long> criterion) {
+    public static <In> List<In> sortBy(Iterable<In> values, Function<In, Long> criterion) {
         if (values == null) return Collections.emptyList();
 
-        List<In> sorted = new ArrayList<In>();
-        for (In value : values)
-            sorted.add(value);
+        Probe probe = Probe.start("sortBy", values, criterion);
+        try {
+            return Probe.stop(probe, _.sorted(values, _.asLongFunction(criterion), null));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
 
-        Collections.sort(sorted, new Comparator<In>() {
-            @Override
-            public int compare(In o1, In o2) {
-                return Long.valueOf(criterion.apply(o1)).compareTo(Long.valueOf(criterion.apply(o2)));
-            }
-        });
+    /**
+     * <p>sorts {@code values} by the primitive {@code long} {@code criterion}. It has a name of its
+     * own, as lambdas would be ambiguous with {@link #sortBy(Iterable, Function)}.</p>
+     * <p>The keys are computed once per value into a {@code long[]} that is sorted together with
+     * the values, so neither is the (possibly expensive) {@code criterion} evaluated per comparison
+     * nor is any key boxed. Large inputs are sorted by an O(n) radix sort on the keys, in parallel
+     * mode (see {@link #parallel(Iterable, ExecutorService)}) the keys are computed and radix
+     * sorted concurrently. The sort is stable.</p>
+     * @param values the values to be sorted
+     * @param criterion the criterion to be applied to each value to sort them
+     * @param <In> the type of {@code values}
+     * @return the sorted list of {@code values}
+     * @see #sortBy(Iterable, Function)
+     */
+    public static <In> List<In> sortByLong(Iterable<In> values, ToLongFunction<In> criterion) {
+        if (values == null) return Collections.emptyList();
 
-        return sorted;
+        Probe probe = Probe.start("sortByLong", values, criterion);
+        try {
+            return Probe.stop(probe, _.sorted(values, criterion, null));
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
-    /** @see #sortBy(Iterable, Function) */
-    public _<T> sortBy(final Function<T, Long> criterion) {
-        return new _<T>(_.sortBy(mValues, criterion));
-    }
+    @SuppressWarnings("unchecked") // sorted holds the values, only reordered
+    private static <In> List<In> sorted(Iterable<In> values, ToLongFunction<In> criterion, ExecutorService executor) {
+        if (values == null) return Collections.emptyList();
 
-    // ----- _.groupBy -----------------------------------------------------------------------------
+        Object[] sorted = _.toArray(values);
+        long[] keys = Sort.keys(sorted, criterion, executor);
 
-    public static <In, Key> Map<Key, List<In>> groupBy(Iterable<In> values, Function<In, Key> group) {
-        if (values == null) return Collections.emptyMap();
+        Sort.sort(keys, sorted, executor);
 
-        Map<Key, List<In>> result = new HashMap<Key, List<In>>();
+        List<In> result = new ArrayList<In>(sorted.length);
+        for (Object value : sorted)
+            result.add((In) value);
+        return result;
+    }
 
-        for (In value : values) {
-            Key key = group.apply(value);
-            if (result.containsKey(key)) {
-                result.get(key).add(value);
-            } else {
-                result.put(key, _.list(value));
+    private static <In> ToLongFunction<In> asLongFunction(final Function<In, Long> criterion) {
+        return new ToLongFunction<In>() {
+            @Override
+            public long applyAsLong(In value) {
+                return criterion.apply(value);
             }
-        }
-
-        return result;
+        };
     }
 
-    public <Key> Map<Key, List<T>> groupBy(Function<T, Key> group) {
-        return _.groupBy(mValues, group);
+    /** @see #sortBy(Iterable, Function) */
+    public _<T> sortBy(Function<T, Long> criterion) {
+        if (mExecutor == null) return chain(_.sortBy(mValues, criterion));
+
+        Probe probe = Probe.start("parallel.sortBy", mValues, criterion);
+        try {
+            return chain(Probe.stop(probe, _.sorted(mValues, _.asLongFunction(criterion), mExecutor)));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #sortByLong(Iterable, ToLongFunction) */
+    public _<T> sortByLong(ToLongFunction<T> criterion) {
+        if (mExecutor == null) return chain(_.sortByLong(mValues, criterion));
+
+        Probe probe = Probe.start("parallel.sortByLong", mValues, criterion);
+        try {
+            return chain(Probe.stop(probe, _.sorted(mValues, criterion, mExecutor)));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** copies {@code values} into a new array */
+    static <In> Object[] toArray(Iterable<In> values) {
+        if (values instanceof Collection) return ((Collection<In>) values).toArray();
+
+        List<In> list = new ArrayList<In>();
+        for (In value : values)
+            list.add(value);
+        return list.toArray();
+    }
+
+    // ----- _.groupBy -----------------------------------------------------------------------------
+
+    /**
+     * <p>splits {@code values} into groups of values that share the same key computed by
+     * {@code group}. E.g.</p>
+     * <pre>{@code
+     * _.groupBy(_.list("foo", "bar", "quux"), (s) -> { return s.length(); });
+     * // => {3: ["foo", "bar"], 4: ["quux"]}
+     * }</pre>
+     * <p>If only an aggregate of each group is needed, use {@link #countBy(Iterable, Function)},
+     * {@link #sumBy(Iterable, Function, ToLongFunction)}, {@link #minBy(Iterable, Function, ToLongFunction)},
+     * {@link #maxBy(Iterable, Function, ToLongFunction)} or {@link #reduceBy(Iterable, Function, BiFunction, Object)}
+     * which do not create the lists of the groups.</p>
+     * @param values the values to be grouped
+     * @param group computes the key of the group of a value
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the group keys
+     * @return the lists of values per group key
+     */
+    public static <In, Key> Map<Key, List<In>> groupBy(Iterable<In> values, Function<In, Key> group) {
+        if (values == null) return Collections.emptyMap();
+
+        Probe probe = Probe.start("groupBy", values, group);
+        try {
+            Map<Key, List<In>> result = new HashMap<Key, List<In>>();
+
+            for (In value : values) {
+                Key key = group.apply(value);
+                List<In> members = result.get(key);
+                if (members == null) {
+                    members = new ArrayList<In>();
+                    result.put(key, members);
+                }
+                members.add(value);
+            }
+
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #groupBy(Iterable, Function) */
+    public <Key> Map<Key, List<T>> groupBy(Function<T, Key> group) {
+        return _.groupBy(mValues, group);
+    }
+
+    // ----- _.countBy -----------------------------------------------------------------------------
+
+    /**
+     * <p>counts the {@code values} per group key computed by {@code group}. E.g.</p>
+     * <pre>{@code
+     * _.countBy(_.list("foo", "bar", "quux"), (s) -> { return s.length(); });
+     * // => {3: 2, 4: 1}
+     * }</pre>
+     * @param values the values to be counted
+     * @param group computes the key of the group of a value
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the group keys
+     * @return the number of values per group key
+     */
+    public static <In, Key> Map<Key, Integer> countBy(Iterable<In> values, Function<In, Key> group) {
+        if (values == null) return Collections.emptyMap();
+
+        Probe probe = Probe.start("countBy", values, group);
+        try {
+            Map<Key, int[]> counters = new HashMap<Key, int[]>();
+
+            for (In value : values) {
+                Key key = group.apply(value);
+                int[] count = counters.get(key);
+                if (count == null) {
+                    count = new int[1];
+                    counters.put(key, count);
+                }
+                count[0] += 1;
+            }
+
+            Map<Key, Integer> counts = new HashMap<Key, Integer>(_.capacityFor(counters.size()));
+            for (Map.Entry<Key, int[]> entry : counters.entrySet())
+                counts.put(entry.getKey(), entry.getValue()[0]);
+
+            return Probe.stop(probe, counts);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #countBy(Iterable, Function) */
+    public <Key> Map<Key, Integer> countBy(Function<T, Key> group) {
+        return _.countBy(mValues, group);
+    }
+
+    // ----- _.sumBy -------------------------------------------------------------------------------
+
+    /**
+     * <p>sums up {@code summand} of the {@code values} per group key computed by {@code group}. E.g.</p>
+     * <pre>{@code
+     * _.sumBy(_.list("foo", "bar", "quux"), (s) -> { return s.charAt(0); }, (s) -> { return s.length(); });
+     * // => {f=3, b=3, q=4}
+     * }</pre>
+     * @param values the values to be summed up
+     * @param group computes the key of the group of a value
+     * @param summand computes the number a value adds to the sum of its group
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the group keys
+     * @return the sum per group key
+     */
+    public static <In, Key> Map<Key, Long> sumBy(Iterable<In> values, Function<In, Key> group, ToLongFunction<In> summand) {
+        if (values == null) return Collections.emptyMap();
+
+        Probe probe = Probe.start("sumBy", values, group);
+        try {
+            Map<Key, long[]> counters = new HashMap<Key, long[]>();
+
+            for (In value : values) {
+                Key key = group.apply(value);
+                long[] sum = counters.get(key);
+                if (sum == null) {
+                    sum = new long[1];
+                    counters.put(key, sum);
+                }
+                sum[0] += summand.applyAsLong(value);
+            }
+
+            Map<Key, Long> sums = new HashMap<Key, Long>(_.capacityFor(counters.size()));
+            for (Map.Entry<Key, long[]> entry : counters.entrySet())
+                sums.put(entry.getKey(), entry.getValue()[0]);
+
+            return Probe.stop(probe, sums);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #sumBy(Iterable, Function, ToLongFunction) */
+    public <Key> Map<Key, Long> sumBy(Function<T, Key> group, ToLongFunction<T> summand) {
+        return _.sumBy(mValues, group, summand);
+    }
+
+    // ----- _.minBy -------------------------------------------------------------------------------
+
+    /**
+     * <p>picks the value with the smallest {@code criterion} per group key computed by {@code group}.
+     * Of values with the same {@code criterion} the first one is picked. E.g.</p>
+     * <pre>{@code
+     * _.minBy(_.list("foo", "bar", "quux"), (s) -> { return s.length(); }, (s) -> { return s.charAt(0); });
+     * // => {3: "bar", 4: "quux"}
+     * }</pre>
+     * @param values the values to pick from
+     * @param group computes the key of the group of a value
+     * @param criterion computes the number the values of a group are compared by
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the group keys
+     * @return the value with the smallest {@code criterion} per group key
+     */
+    public static <In, Key> Map<Key, In> minBy(Iterable<In> values, Function<In, Key> group, ToLongFunction<In> criterion) {
+        if (values == null) return Collections.emptyMap();
+
+        Probe probe = Probe.start("minBy", values, group);
+        try {
+            return Probe.stop(probe, _.extremeBy(values, group, criterion, -1));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #minBy(Iterable, Function, ToLongFunction) */
+    public <Key> Map<Key, T> minBy(Function<T, Key> group, ToLongFunction<T> criterion) {
+        return _.minBy(mValues, group, criterion);
+    }
+
+    // ----- _.maxBy -------------------------------------------------------------------------------
+
+    /**
+     * <p>picks the value with the greatest {@code criterion} per group key computed by {@code group}.
+     * Of values with the same {@code criterion} the first one is picked.</p>
+     * @param values the values to pick from
+     * @param group computes the key of the group of a value
+     * @param criterion computes the number the values of a group are compared by
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the group keys
+     * @return the value with the greatest {@code criterion} per group key
+     * @see #minBy(Iterable, Function, ToLongFunction)
+     */
+    public static <In, Key> Map<Key, In> maxBy(Iterable<In> values, Function<In, Key> group, ToLongFunction<In> criterion) {
+        if (values == null) return Collections.emptyMap();
+
+        Probe probe = Probe.start("maxBy", values, group);
+        try {
+            return Probe.stop(probe, _.extremeBy(values, group, criterion, 1));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #maxBy(Iterable, Function, ToLongFunction) */
+    public <Key> Map<Key, T> maxBy(Function<T, Key> group, ToLongFunction<T> criterion) {
+        return _.maxBy(mValues, group, criterion);
+    }
+
+    /** the current extreme of a group in {@link #extremeBy(Iterable, Function, ToLongFunction, int)} */
+    private static final class Extreme<In> {
+        long criterion;
+        In value;
+    }
+
+    /** implements {@code minBy} ({@code sign == -1}) and {@code maxBy} ({@code sign == 1}) */
+    private static <In, Key> Map<Key, In> extremeBy(Iterable<In> values, Function<In, Key> group, ToLongFunction<In> criterion, int sign) {
+        Map<Key, Extreme<In>> extremes = new HashMap<Key, Extreme<In>>();
+
+        for (In value : values) {
+            Key key = group.apply(value);
+            long current = criterion.applyAsLong(value);
+            Extreme<In> extreme = extremes.get(key);
+            if (extreme == null) {
+                extreme = new Extreme<In>();
+                extreme.criterion = current;
+                extreme.value = value;
+                extremes.put(key, extreme);
+            } else if (sign < 0 ? current < extreme.criterion : current > extreme.criterion) {
+                extreme.criterion = current;
+                extreme.value = value;
+            }
+        }
+
+        Map<Key, In> result = new HashMap<Key, In>(_.capacityFor(extremes.size()));
+        for (Map.Entry<Key, Extreme<In>> entry : extremes.entrySet())
+            result.put(entry.getKey(), entry.getValue().value);
+        return result;
+    }
+
+    // ----- _.reduceBy ----------------------------------------------------------------------------
+
+    /**
+     * <p>reduces the values of each group (see {@link #groupBy(Iterable, Function)}) to a single value
+     * of type {@code <Out>}, without creating the lists of the groups. E.g.</p>
+     * <pre>{@code
+     * _.reduceBy(_.list("foo", "bar", "quux"), (s) -> { return s.length(); }, (now, accumulator) -> { return now + accumulator; }, "");
+     * // => {3: "barfoo", 4: "quux"}
+     * }</pre>
+     * @param values the values to be reduced
+     * @param group computes the key of the group of a value
+     * @param combine the combination function
+     * @param init the initial value of each group
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the group keys
+     * @param <Out> the result type
+     * @return the reduced value per group key
+     * @see #reduce(Iterable, BiFunction, Object)
+     */
+    public static <In, Key, Out> Map<Key, Out> reduceBy(Iterable<In> values, Function<In, Key> group, BiFunction<In, Out, Out> combine, Out init) {
+        if (values == null) return Collections.emptyMap();
+
+        Probe probe = Probe.start("reduceBy", values, group);
+        try {
+            Map<Key, Out> result = new HashMap<Key, Out>();
+
+            for (In value : values) {
+                Key key = group.apply(value);
+                Out accumulator = result.get(key);
+                if (accumulator == null && !result.containsKey(key))
+                    accumulator = init;
+                result.put(key, combine.apply(value, accumulator));
+            }
+
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #reduceBy(Iterable, Function, BiFunction, Object) */
+    public <Key, Out> Map<Key, Out> reduceBy(Function<T, Key> group, BiFunction<T, Out, Out> combine, Out init) {
+        return _.reduceBy(mValues, group, combine, init);
+    }
+
+    /**
+     * <p>reduces the values of each group into a mutable per-group accumulator. {@code accumulator}
+     * creates the accumulator of a group when the first value of the group is found, then
+     * {@code accumulate} is called with each value of the group and the accumulator. E.g.</p>
+     * <pre>{@code
+     * _.reduceBy(_.list("foo", "bar", "quux"), (s) -> { return s.length(); }, (s, builder) -> { builder.append(s); }, () -> { return new StringBuilder(); });
+     * // => {3: "foobar", 4: "quux"}
+     * }</pre>
+     * <p>Unlike {@link #reduceBy(Iterable, Function, BiFunction, Object)} this neither replaces
+     * the map entry nor creates a new accumulator value per value.</p>
+     * @param values the values to be reduced
+     * @param group computes the key of the group of a value
+     * @param accumulate adds a value to the accumulator of its group
+     * @param accumulator creates the accumulator of a group
+     * @param <In> the type of the {@code values}
+     * @param <Key> the type of the group keys
+     * @param <Acc> the type of the accumulators
+     * @return the accumulator per group key
+     */
+    public static <In, Key, Acc> Map<Key, Acc> reduceBy(Iterable<In> values, Function<In, Key> group, BiConsumer<In, Acc> accumulate, Supplier<Acc> accumulator) {
+        if (values == null) return Collections.emptyMap();
+
+        Probe probe = Probe.start("reduceBy", values, group);
+        try {
+            Map<Key, Acc> result = new HashMap<Key, Acc>();
+
+            for (In value : values) {
+                Key key = group.apply(value);
+                Acc current = result.get(key);
+                if (current == null) {
+                    current = accumulator.get();
+                    result.put(key, current);
+                }
+                accumulate.accept(value, current);
+            }
+
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #reduceBy(Iterable, Function, BiConsumer, Supplier) */
+    public <Key, Acc> Map<Key, Acc> reduceBy(Function<T, Key> group, BiConsumer<T, Acc> accumulate, Supplier<Acc> accumulator) {
+        return _.reduceBy(mValues, group, accumulate, accumulator);
     }
 
     // ----- _.size --------------------------------------------------------------------------------
@@ -464,11 +1495,21 @@ public final class _ <T> {
     public static <In> int size(Iterable<In> values) {
         if (values == null) return 0;
 
-        int size = 0;
-        for (In value : values) {
-            size += 1;
+        Probe probe = Probe.start("size", values, null);
+        try {
+            int size = 0;
+            if (values instanceof Collection) {
+                size = ((Collection<In>) values).size();
+            } else {
+                for (In value : values) {
+                    size += 1;
+                }
+            }
+            Probe.stop(probe, null);
+            return size;
+        } finally {
+            Probe.fail(probe);
         }
-        return size;
     }
 
     /** @see #size(Iterable) */
@@ -485,15 +1526,31 @@ public final class _ <T> {
      * _.first(_.list(1, 2, 3, 4, 5), 2);
      * // => [1, 2]
      * }</pre>
-     * @param values
-     * @param n
-     * @param <In>
-     * @return
+     * <p>If {@code values} is a {@link RandomAccess} list (like an {@link ArrayList}), a read-only
+     * view of its first {@code n} elements is returned instead of a copy (see
+     * {@link List#subList(int, int)} for the semantics of such views).</p>
+     * @param values the values to take the first {@code n} from
+     * @param n the number of values to take from {@code values}
+     * @param <In> the type of the {@code values}
+     * @return the first {@code n} {@code values}
      */
     public static <In> List<In> first(Iterable<In> values, int n) {
         if (values == null) return Collections.emptyList();
 
-        List<In> first = new ArrayList<In>(n);
+        Probe probe = Probe.start("first", values, null);
+        try {
+            return Probe.stop(probe, _.take(values, n));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    private static <In> List<In> take(Iterable<In> values, int n) {
+        List<In> list = _.indexed(values);
+        if (list != null) return _.slice(list, 0, n);
+
+        List<In> first = new ArrayList<In>(Math.max(0, Math.min(n, 16)));
+
         Iterator<In> iterator = values.iterator();
 
         for (int i = 0; i < n && iterator.hasNext(); i++) {
@@ -512,13 +1569,28 @@ public final class _ <T> {
      * }</pre>
      */
     public static <In> In first(Iterable<In> values) {
-        if (values == null || !values.iterator().hasNext()) return null;
-        return values.iterator().next();
+        if (values == null) return null;
+
+        Probe probe = Probe.start("first", values, null);
+        try {
+            In first;
+            List<In> list = _.indexed(values);
+            if (list != null) {
+                first = list.isEmpty() ? null : list.get(0);
+            } else {
+                Iterator<In> iterator = values.iterator();
+                first = iterator.hasNext() ? iterator.next() : null;
+            }
+            return Probe.stop(probe, first);
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     /** @see #first(Iterable, int)  */
     public _<T> first(int n) {
-        return new _<T>(_.first(mValues, n));
+        if (mLazy) return chain(Lazy.first(mValues, n));
+        return chain(_.first(mValues, n));
     }
 
     /** @see #first(Iterable) */
@@ -528,18 +1600,48 @@ public final class _ <T> {
 
     // ----- _.initial -----------------------------------------------------------------------------
 
+    /**
+     * <p>returns all but the last {@code n} elements of {@code values}</p>
+     * <p>e.g.</p>
+     * <pre>{@code
+     * _.initial(_.list("foo", "bar", "baz"), 2);
+     * // => ["foo"]
+     * }</pre>
+     * <p>If {@code values} is a {@link RandomAccess} list, a read-only view of the elements is
+     * returned instead of a copy. Other {@code values} are iterated only once (see
+     * {@link #from(Iterator)}).</p>
+     * @param values the values to take the elements from
+     * @param n the number of values to exclude from the end of {@code values}, defaults to 1
+     * @param <In> the type of the {@code values}
+     * @return all but the last {@code n} {@code values}
+     */
     public static <In> List<In> initial(Iterable<In> values, int n) {
         if (values == null) return Collections.emptyList();
 
-        List<In> initial = new ArrayList<In>();
-        Iterator<In> iterator = values.iterator();
-        int limit = _.size(values) - n;
-
-        for (int i = 0; i < limit && iterator.hasNext(); i++) {
-            initial.add(iterator.next());
+        Probe probe = Probe.start("initial", values, null);
+        try {
+            if (values instanceof Collection)
+                return Probe.stop(probe, _.take(values, ((Collection<In>) values).size() - n));
+
+            // a single pass: each value is taken once n values came after it. The n values seen last
+            // are kept in a ring buffer, the oldest one is at lag[next].
+            List<In> initial = new ArrayList<In>();
+            List<In> lag = new ArrayList<In>();
+            int next = 0;
+            for (In value : values) {
+                if (lag.size() < n) {
+                    lag.add(value);
+                } else if (n > 0) {
+                    initial.add(lag.set(next, value));
+                    next = (next + 1) % n;
+                } else {
+                    initial.add(value);
+                }
+            }
+            return Probe.stop(probe, initial);
+        } finally {
+            Probe.fail(probe);
         }
-
-        return initial;
     }
 
     public static <In> List<In> initial(Iterable<In> values) {
@@ -547,7 +1649,7 @@ public final class _ <T> {
     }
 
     public _<T> initial(int n) {
-        return new _<T>(_.initial(mValues, n));
+        return chain(_.initial(mValues, n));
     }
 
     public _<T> initial() {
@@ -563,6 +1665,9 @@ public final class _ <T> {
      * _.last(_.list("foo", "bar", "baz"), 2);
      * // => ["bar", "baz"]
      * }</pre>
+     * <p>If {@code values} is a {@link RandomAccess} list, a read-only view of its last {@code n}
+     * elements is returned instead of a copy. Other {@code values} are iterated only once, keeping
+     * only the last {@code n} of them (see {@link #from(Iterator)}).</p>
      * @param values the values to take the last {@code n} from
      * @param n the number of values to take from {@code values}, defaults to 1
      * @return the last {@code n} {@code values}
@@ -570,149 +1675,896 @@ public final class _ <T> {
     public static <In> List<In> last(Iterable<In> values, int n) {
         if (values == null) return Collections.emptyList();
 
-        List<In> last = new ArrayList<In>();
-        int limit = _.size(values) - n;
+        Probe probe = Probe.start("last", values, null);
+        try {
+            return Probe.stop(probe, _.takeLast(values, n));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    private static <In> List<In> takeLast(Iterable<In> values, int n) {
+        List<In> list = _.indexed(values);
+        if (list != null) {
+            int size = list.size();
+            return _.slice(list, size - n, size);
+        }
+        if (n <= 0) return new ArrayList<In>();
+
+        // a single pass over a ring buffer of the last n values, the oldest one is at ring[next]
+        List<In> ring = new ArrayList<In>();
+        int next = 0;
+        for (In value : values) {
+            if (ring.size() < n) {
+                ring.add(value);
+            } else {
+                ring.set(next, value);
+                next = (next + 1) % n;
+            }
+        }
+
+        List<In> last = new ArrayList<In>(ring.size());
+        last.addAll(ring.subList(next, ring.size()));
+        last.addAll(ring.subList(0, next));
+        return last;
+    }
+
+    /** @see #last(Iterable, int) */
+    public static <In> In last(Iterable<In> values) {
+        if (values == null) return null;
+
+        Probe probe = Probe.start("last", values, null);
+        try {
+            In last = null;
+            List<In> list = _.indexed(values);
+            if (list != null) {
+                if (!list.isEmpty()) last = list.get(list.size() - 1);
+            } else {
+                Iterator<In> iterator = values.iterator();
+                while (iterator.hasNext()) {
+                    last = iterator.next();
+                }
+            }
+            return Probe.stop(probe, last);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #last(Iterable, int) */
+    public _<T> last(int n) {
+        return chain(_.last(mValues, n));
+    }
+
+    /** @see #last(int) */
+    public T last() {
+        return _.last(mValues);
+    }
+
+    // ----- _.rest --------------------------------------------------------------------------------
+
+    /**
+     * <p>returns the elements of {@code values} starting at {@code startindex}</p>
+     * <p>e.g.</p>
+     * <pre>{@code
+     * _.rest(_.list("foo", "bar", "baz"), 1);
+     * // => ["bar", "baz"]
+     * }</pre>
+     * <p>If {@code values} is a {@link RandomAccess} list, a read-only view of the elements is
+     * returned instead of a copy, so paging through such a list with
+     * {@code _.first(_.rest(list, offset), pageSize)} does not copy anything.</p>
+     * @param values the values to take the elements from
+     * @param startindex the index of the first value to take, defaults to 1
+     * @param <In> the type of the {@code values}
+     * @return the {@code values} starting at {@code startindex}
+     */
+    public static <In> List<In> rest(Iterable<In> values, int startindex) {
+        if (values == null) return Collections.emptyList();
+
+        Probe probe = Probe.start("rest", values, null);
+        try {
+            List<In> list = _.indexed(values);
+            if (list != null)
+                return Probe.stop(probe, _.slice(list, startindex, Integer.MAX_VALUE));
+
+            int start = Math.max(0, startindex);
+            int size = _.knownSize(values);
+            List<In> rest = size < 0 ? new ArrayList<In>() : new ArrayList<In>(Math.max(0, size - start));
+
+            int i = 0;
+            for (In value : values) {
+                if (i >= start) {
+                    rest.add(value);
+                }
+                i += 1;
+            }
+
+            return Probe.stop(probe, rest);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    public static <In> List<In> rest(Iterable<In> values) {
+        return _.rest(values, 1);
+    }
+
+    public _<T> rest(int startindex) {
+        if (mLazy) return chain(Lazy.rest(mValues, startindex));
+        return chain(_.rest(mValues, startindex));
+    }
+
+    public _<T> rest() {
+        return rest(1);
+    }
+
+    // ----- _.zip ---------------------------------------------------------------------------------
+
+    /**
+     * <p>returns a merged list of the lists {@code first} and {@code second}. E.g.</p>
+     * <pre>{@code
+     * _.zip(_.list(1,2,3), _.list(4,5,6)) // => [(1,4), (2,5), (3,6)]
+     * }</pre>
+     * <p>if the lists have different lengths, the merged list will be as long as the shorter list. I.e.</p>
+     * <pre>{@code
+     * _.zip(_.list(1,2,3), _.list(4,5,6,7,8,9)) // => [(1,4), (2,5), (3,6)]
+     * }</pre>
+     * @param first the first list of values
+     * @param second the second list of values
+     * @param <F> the type of values in {@code first}
+     * @param <S> the type of values in {@code second}
+     * @return the merged list
+     */
+    public static <F,S> List<Map.Entry<F,S>> zip(Iterable<F> first, Iterable<S> second) {
+        if (first == null || second == null) return Collections.emptyList();
+
+        Probe probe = Probe.start("zip", first, null);
+        try {
+            int firstSize = _.knownSize(first);
+            int secondSize = _.knownSize(second);
+            List<Map.Entry<F,S>> zipped = firstSize < 0 || secondSize < 0
+                    ? new ArrayList<Map.Entry<F,S>>()
+                    : new ArrayList<Map.Entry<F,S>>(Math.min(firstSize, secondSize));
+
+            List<F> firstList = _.indexed(first);
+            List<S> secondList = _.indexed(second);
+            if (firstList != null && secondList != null) {
+                for (int i = 0, size = Math.min(firstList.size(), secondList.size()); i < size; i++)
+                    zipped.add(_.entry(firstList.get(i), secondList.get(i)));
+            } else {
+                Iterator<F> f;
+                Iterator<S> s;
+
+                for (f = first.iterator(), s = second.iterator(); f.hasNext() && s.hasNext();/* nothing */) {
+                    zipped.add(_.entry(f.next(), s.next()));
+                }
+            }
+
+            return Probe.stop(probe, zipped);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #zip(Iterable, Iterable) */
+    public <O> _<Map.Entry<T,O>> zip(Iterable<O> other) {
+        if (mLazy) return chain(Lazy.zip(mValues, other));
+        return chain(_.zip(mValues, other));
+    }
+
+    // ----- _.chunk -------------------------------------------------------------------------------
+
+    /**
+     * <p>splits {@code values} into lists of {@code n} consecutive values (the last list may be
+     * smaller). E.g.</p>
+     * <pre>{@code
+     * _.chunk(_.list(1, 2, 3, 4, 5), 2) // => [[1, 2], [3, 4], [5]]
+     * }</pre>
+     * <p>The chunks are computed lazily while iterating the result, so only one chunk of
+     * {@code values} is held in memory at a time. Chunks of a {@link java.util.RandomAccess}
+     * {@link List} are read-only views (see {@link List#subList(int, int)}), chunks of other
+     * {@link Iterable}s are copies.</p>
+     * @param values the values to be split
+     * @param n the size of the chunks
+     * @param <In> the type of the {@code values}
+     * @return the chunks of {@code values}
+     */
+    public static <In> Iterable<List<In>> chunk(Iterable<In> values, int n) {
+        if (n < 1) throw new IllegalArgumentException("chunk size must be positive: " + n);
+
+        return Lazy.chunk(values, n);
+    }
+
+    /** @see #chunk(Iterable, int) */
+    public _<List<T>> chunk(int n) {
+        Iterable<List<T>> chunks = _.chunk(mValues, n);
+        if (mLazy) return chain(chunks);
+
+        List<List<T>> result = new ArrayList<List<T>>();
+        for (List<T> chunk : chunks)
+            result.add(chunk);
+        return chain(result);
+    }
+
+    // ----- _.range -------------------------------------------------------------------------------
+
+    /**
+     * <p>returns a list of integers starting at {@code start}, ending at {@code stop},
+     * incrementing by {@code step}. E.g.</p>
+     * <pre>{@code
+     * _.range(5) // => [0, 1, 2, 3, 4]
+     * _.range(3, 9) // => [3, 4, 5, 6, 7, 8]
+     * _.range(5, 16, 2) // => [5, 7, 9, 11, 13, 15]
+     * _.range(0, -4, -1) // => [0, -1, -2, -3]
+     * }</pre>
+     * <p>Negative ranges without negative step (and positive ranges without positive step) are
+     * considered empty:</p>
+     * <pre>{@code
+     * _.range(3, 2, 1) // => []
+     * }</pre>
+     * <p>The values are not stored but computed on access, so ranges of any size take constant
+     * memory until they are modified. The list is a {@link Range}, cast it to loop over the values
+     * without boxing:</p>
+     * <pre>{@code
+     * ((Range) _.range(1000000)).each((i) -> process(i));
+     * }</pre>
+     * @param start the start index, included (defaults to {@code 0})
+     * @param stop the end index, excluded
+     * @param step the stepwidth (defaults to {@code 1})
+     * @return a list of the integers in the specified range
+     * @throws IllegalArgumentException if the range has more than {@link Integer#MAX_VALUE}
+     *                                  values (use {@link #range(long, long, long)} instead)
+     */
+    public static List<Integer> range(int start, int stop, int step) {
+        return Range.of(start, stop, step);
+    }
+
+    /** @see #range(int, int, int) */
+    public static List<Integer> range(int start, int stop) {
+        return _.range(start, stop, 1);
+    }
+
+    /** @see #range(int, int, int) */
+    public static List<Integer> range(int stop) {
+        return _.range(0, stop);
+    }
+
+    /**
+     * <p>like {@link #range(int, int, int)}, but for {@code long} values, e.g. to loop over a large
+     * space of ids:</p>
+     * <pre>{@code
+     * _.range(0L, 1L << 40, 1L << 20).each((id) -> process(id));
+     * }</pre>
+     * @param start the start index, included (defaults to {@code 0})
+     * @param stop the end index, excluded
+     * @param step the stepwidth (defaults to {@code 1})
+     * @return the longs in the specified range, see {@link LongRange#asList()} for a list view
+     * @throws IllegalArgumentException if the range has more than {@link Long#MAX_VALUE} values
+     */
+    public static LongRange range(long start, long stop, long step) {
+        return LongRange.of(start, stop, step);
+    }
+
+    /** @see #range(long, long, long) */
+    public static LongRange range(long start, long stop) {
+        return _.range(start, stop, 1L);
+    }
+
+    /** @see #range(long, long, long) */
+    public static LongRange range(long stop) {
+        return _.range(0L, stop);
+    }
+
+    // ----- _.from --------------------------------------------------------------------------------
+
+    /**
+     * <p>wraps an {@link Iterator} (e.g. over a database cursor) as {@link Iterable} that can be
+     * iterated only once. E.g.</p>
+     * <pre>{@code
+     * new _<>(_.from(cursor)).filter(isActive).map(toUser).first(100).value();
+     * // => reads the cursor only until 100 active users are found
+     * }</pre>
+     * <p>Chains of one-shot sources are always lazy (see {@link #lazy(Iterable)}), so they are
+     * not copied into lists between stages. All operations read the values of a one-shot source
+     * in a single pass (e.g. {@link #last(Iterable, int)} keeps only the last {@code n} values).
+     * A second iteration, e.g. by a second terminal operation of the same chain, throws an
+     * {@link IllegalStateException}.</p>
+     * @param iterator the values
+     * @param <In> the type of the values
+     * @return the one-shot {@link Iterable} of the values of {@code iterator}
+     */
+    public static <In> Iterable<In> from(Iterator<In> iterator) {
+        return Lazy.once(iterator);
+    }
+
+    /**
+     * <p>like {@link #from(Iterator)}, but for legacy {@link Enumeration}s, e.g. of
+     * {@link java.util.zip.ZipFile#entries()}</p>
+     * @param enumeration the values
+     * @param <In> the type of the values
+     * @return the one-shot {@link Iterable} of the values of {@code enumeration}
+     */
+    public static <In> Iterable<In> from(Enumeration<In> enumeration) {
+        return Lazy.once(Lazy.iterator(enumeration));
+    }
+
+    // ----- _.lines -------------------------------------------------------------------------------
+
+    /**
+     * <p>memory-maps a UTF-8 text file and returns its lines as views of the mapped bytes. E.g.</p>
+     * <pre>{@code
+     * _.filter(_.lines(new File("app.log")), (line) -> startsWith(line, "ERROR"));
+     * // => the error lines, without reading the whole log onto the heap
+     * }</pre>
+     * <p>The lines are {@link CharSequence}s without their line terminator. ASCII lines are read
+     * directly from the mapping, other lines are decoded when their characters are accessed.
+     * Use {@link Lines#segments(int)} to split a large file at line boundaries and process the
+     * segments in parallel.</p>
+     * @param file the text file
+     * @return the lines of {@code file}, can be iterated repeatedly
+     * @throws IOException if {@code file} cannot be read or mapped
+     */
+    public static Lines lines(File file) throws IOException {
+        return Lines.map(file, Lines.MAX_MAPPING);
+    }
+
+    // ----- _.csv ---------------------------------------------------------------------------------
+
+    /**
+     * <p>parses delimited text (CSV, TSV, ...) record by record, as it is iterated. E.g.</p>
+     * <pre>{@code
+     * Csv.Options options = new Csv.Options() {{ header = true; }};
+     * new _<>(_.csv(reader, options))
+     *     .filter((row) -> row.getInt("age") >= 18)
+     *     .reduce((row, sum) -> sum + row.getDouble("income"), 0.0);
+     * }</pre>
+     * <p>All records are parsed into the same {@link Csv.Row}, so no strings or arrays are
+     * allocated per record. Fields are read as {@link CharSequence} views or parsed numbers. Rows
+     * are only valid until the next record is read, use {@link Csv.Row#copy()} to keep one.</p>
+     * <p>The source can be iterated only once and feeds lazy chains (see {@link #from(Iterator)}).
+     * {@code reader} is not closed. Malformed quoted fields throw an {@link IllegalStateException}
+     * with their line number.</p>
+     * @param reader the delimited text
+     * @param options the options (see {@link Csv.Options}), may be {@code null}
+     * @return the one-shot {@link Iterable} of the rows
+     */
+    public static Iterable<Csv.Row> csv(Reader reader, Csv.Options options) {
+        return Csv.read(reader, options);
+    }
+
+    /** @see #csv(Reader, Csv.Options) */
+    public static Iterable<Csv.Row> csv(Reader reader) {
+        return _.csv(reader, null);
+    }
+
+    /**
+     * <p>like {@link #csv(Reader, Csv.Options)}, but for a UTF-8 file. The file is opened on each
+     * iteration and closed when all records are read. Iterations that stop early (e.g. by
+     * {@code first(n)}, {@code find}, {@code some} or an exception of a later stage) leave it
+     * open until the rows are {@linkplain Csv.Rows#close() closed}, so close them in a
+     * {@code finally} block.</p>
+     * @param file the delimited text file
+     * @param options the options (see {@link Csv.Options}), may be {@code null}
+     * @return the rows of {@code file}
+     * @throws IOException if {@code file} cannot be read
+     */
+    public static Csv.Rows csv(File file, Csv.Options options) throws IOException {
+        return Csv.read(file, options);
+    }
+
+    /** @see #csv(File, Csv.Options) */
+    public static Csv.Rows csv(File file) throws IOException {
+        return _.csv(file, null);
+    }
+
+    // ----- _.iterate -----------------------------------------------------------------------------
+
+    /**
+     * <p>returns the endless sequence {@code seed, function(seed), function(function(seed)), ...}.
+     * E.g.</p>
+     * <pre>{@code
+     * _.first(_.iterate(100L, (delay) -> delay * 2), 5); // => [100, 200, 400, 800, 1600]
+     * }</pre>
+     * <p>The values are computed while the sequence is iterated: {@code function} is called only
+     * when the next value is asked for. Chains of endless sequences are always lazy (see
+     * {@link #lazy(Iterable)}), so that e.g.</p>
+     * <pre>{@code
+     * new _<>(_.iterate(1, (id) -> id + 1)).filter(isFree).first(100).value();
+     * }</pre>
+     * <p>computes only as many values as are needed to find 100 free ids. Operations that need
+     * all values (like {@code value} or {@code size}) never return for endless sequences, so
+     * limit them with {@code first(n)} before.</p>
+     * @param seed the first value
+     * @param function computes a value from the value before it
+     * @param <In> the type of the values
+     * @return the endless sequence
+     */
+    public static <In> Iterable<In> iterate(In seed, Function<In, In> function) {
+        return Lazy.iterate(seed, function);
+    }
+
+    // ----- _.generate ----------------------------------------------------------------------------
+
+    /**
+     * <p>returns the endless sequence of the values returned by {@code supplier}, calling it only
+     * when the next value is asked for. E.g.</p>
+     * <pre>{@code
+     * _.first(_.generate(() -> ids.allocate()), 3); // => allocates exactly 3 ids
+     * }</pre>
+     * @param supplier computes the values
+     * @param <In> the type of the values
+     * @return the endless sequence
+     * @see #iterate(Object, Function)
+     */
+    public static <In> Iterable<In> generate(Supplier<In> supplier) {
+        return Lazy.generate(supplier);
+    }
+
+    // ----- _.cycle -------------------------------------------------------------------------------
+
+    /**
+     * <p>returns the endless repetition of {@code values}. E.g.</p>
+     * <pre>{@code
+     * _.zip(_.list("a", "b", "c", "d", "e"), _.cycle(_.list(1, 2)));
+     * // => [("a", 1), ("b", 2), ("c", 1), ("d", 2), ("e", 1)]
+     * }</pre>
+     * <p>{@code values} are iterated again for each repetition. If they are empty, so is the
+     * repetition.</p>
+     * @param values the values to be repeated
+     * @param <In> the type of the values
+     * @return the endless sequence
+     * @see #iterate(Object, Function)
+     */
+    public static <In> Iterable<In> cycle(Iterable<In> values) {
+        return Lazy.cycle(values);
+    }
+
+    // ----- _.repeat ------------------------------------------------------------------------------
+
+    /**
+     * <p>returns a list of {@code n} times {@code value}. E.g.</p>
+     * <pre>{@code
+     * _.repeat("na", 4); // => ["na", "na", "na", "na"]
+     * }</pre>
+     * <p>Like {@link #range(int, int, int)} the list is not filled but answers each index with
+     * {@code value}, so it takes constant memory.</p>
+     * @param value the value to be repeated
+     * @param n the number of repetitions, negative numbers are treated as {@code 0}
+     * @param <In> the type of the value
+     * @return an immutable list of {@code n} times {@code value}
+     */
+    public static <In> List<In> repeat(In value, int n) {
+        return Collections.nCopies(Math.max(0, n), value);
+    }
+
+    // ===== ~Primitives ===========================================================================
+
+    // operations on primitive arrays that never box their values. They mirror the operations on
+    // Iterables above, e.g. reduce passes (value, accumulator) to its combination function.
+
+    // ----- _.map (primitives) --------------------------------------------------------------------
+
+    /**
+     * <p>creates an array of the results of applying {@code function} to all {@code values},
+     * without boxing them</p>
+     * <p>i.e.</p>
+     * <pre>
+     * _.map(new int[] {1, 2, 3, 4}, (x) -> { return x * x; });
+     * // => [1, 4, 9, 16]
+     * </pre>
+     * @param values the values to be mapped with the call of {@code function}
+     * @param function the function to call on every element of {@code values}
+     * @return an array of the results of {@code function}, empty if {@code values == null}
+     */
+    public static int[] map(int[] values, IntUnaryOperator function) {
+        if (values == null) return new int[0];
+
+        Probe probe = Probe.start("map", values, function);
+        try {
+            int[] result = new int[values.length];
+            for (int i = 0; i < values.length; i++)
+                result[i] = function.applyAsInt(values[i]);
+
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #map(int[], IntUnaryOperator) */
+    public static long[] map(long[] values, LongUnaryOperator function) {
+        if (values == null) return new long[0];
+
+        Probe probe = Probe.start("map", values, function);
+        try {
+            long[] result = new long[values.length];
+            for (int i = 0; i < values.length; i++)
+                result[i] = function.applyAsLong(values[i]);
+
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #map(int[], IntUnaryOperator) */
+    public static double[] map(double[] values, DoubleUnaryOperator function) {
+        if (values == null) return new double[0];
+
+        Probe probe = Probe.start("map", values, function);
+        try {
+            double[] result = new double[values.length];
+            for (int i = 0; i < values.length; i++)
+                result[i] = function.applyAsDouble(values[i]);
+
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /**
+     * <p>creates a {@link List} of the results of applying {@code function} to all {@code values}.
+     * It has a name of its own, as lambdas would be ambiguous with
+     * {@link #map(int[], IntUnaryOperator)}.</p>
+     * <p>i.e.</p>
+     * <pre>
+     * _.mapToObj(new int[] {1, 2}, (x) -> { return "#" + x; });
+     * // => ["#1", "#2"]
+     * </pre>
+     * @param values the values to be mapped with the call of {@code function}
+     * @param function the function to call on every element of {@code values}
+     * @param <Out> type of the result of {@code function}
+     * @return a List of the results of {@code function}
+     */
+    public static <Out> List<Out> mapToObj(int[] values, IntFunction<Out> function) {
+        if (values == null) return Collections.emptyList();
+
+        Probe probe = Probe.start("mapToObj", values, function);
+        try {
+            List<Out> result = new ArrayList<Out>(values.length);
+            for (int value : values)
+                result.add(function.apply(value));
+
+            return Probe.stop(probe, result);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /**
+     * <p>creates an array of the results of applying {@code function} to all {@code values}.
+     * Only the results are primitives, so no {@code Long} is created by the mapping.</p>
+     * <p>i.e.</p>
+     * <pre>
+     * _.mapToLong(_.list("foo", "quux"), (s) -> { return s.length(); });
+     * // => [3, 4]
+     * </pre>
+     * @param values the values to be mapped with the call of {@code function}
+     * @param function the function to call on every element of {@code values}
+     * @param <In> type of the elements in {@code values}
+     * @return an array of the results of {@code function}, empty if {@code values == null}
+     */
+    public static <In> long[] mapToLong(Iterable<In> values, ToLongFunction<In> function) {
+        if (values == null) return new long[0];
+
+        Probe probe = Probe.start("mapToLong", values, function);
+        try {
+            long[] result = new long[values instanceof Collection ? ((Collection<In>) values).size() : 16];
+            int size = 0;
+            for (In value : values) {
+                if (size == result.length) result = Arrays.copyOf(result, Math.max(16, size * 2));
+                result[size++] = function.applyAsLong(value);
+            }
+
+            return Probe.stop(probe, size == result.length ? result : Arrays.copyOf(result, size));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    // ----- _.filter (primitives) -----------------------------------------------------------------
+
+    /**
+     * <p>creates an array of all {@code values} that match {@code predicate}, without boxing them</p>
+     * @param values the values to be filtered
+     * @param predicate the predicate that must be matched by {@code values}
+     * @return an array of all {@code values} that match {@code predicate}
+     */
+    public static int[] filter(int[] values, IntPredicate predicate) {
+        if (values == null) return new int[0];
+
+        Probe probe = Probe.start("filter", values, predicate);
+        try {
+            int[] result = new int[values.length];
+            int size = 0;
+            for (int value : values)
+                if (predicate.test(value))
+                    result[size++] = value;
+
+            return Probe.stop(probe, size == result.length ? result : Arrays.copyOf(result, size));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #filter(int[], IntPredicate) */
+    public static long[] filter(long[] values, LongPredicate predicate) {
+        if (values == null) return new long[0];
+
+        Probe probe = Probe.start("filter", values, predicate);
+        try {
+            long[] result = new long[values.length];
+            int size = 0;
+            for (long value : values)
+                if (predicate.test(value))
+                    result[size++] = value;
+
+            return Probe.stop(probe, size == result.length ? result : Arrays.copyOf(result, size));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #filter(int[], IntPredicate) */
+    public static double[] filter(double[] values, DoublePredicate predicate) {
+        if (values == null) return new double[0];
+
+        Probe probe = Probe.start("filter", values, predicate);
+        try {
+            double[] result = new double[values.length];
+            int size = 0;
+            for (double value : values)
+                if (predicate.test(value))
+                    result[size++] = value;
+
+            return Probe.stop(probe, size == result.length ? result : Arrays.copyOf(result, size));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    // ----- _.reduce (primitives) -----------------------------------------------------------------
+
+    /**
+     * <p>reduces the {@code values} to a single value, without boxing them</p>
+     * <p>i.e.</p>
+     * <pre>
+     * _.reduce(new int[] {1, 2, 3, 4}, (now, accumulator) -> { return now + accumulator; }, 0);
+     * // => 10
+     * </pre>
+     * @param values the values to be reduced
+     * @param combine the combination function, called with {@code (value, accumulator)}
+     * @param init the initial value (if values is empty, this is the result)
+     * @return the value obtained by reducing {@code values} using {@code combine}
+     * @see #reduce(Iterable, BiFunction, Object)
+     */
+    public static int reduce(int[] values, IntBinaryOperator combine, int init) {
+        if (values == null) return init;
+
+        Probe probe = Probe.start("reduce", values, combine);
+        try {
+            int result = init;
+            for (int value : values)
+                result = combine.applyAsInt(value, result);
+
+            Probe.stop(probe, null);
+            return result;
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /** @see #reduce(int[], IntBinaryOperator, int) */
+    public static long reduce(long[] values, LongBinaryOperator combine, long init) {
+        if (values == null) return init;
 
-        int i = 0;
-        for (In value : values) {
-            if (i >= limit) {
-                last.add(value);
-            }
-            i += 1;
-        }
+        Probe probe = Probe.start("reduce", values, combine);
+        try {
+            long result = init;
+            for (long value : values)
+                result = combine.applyAsLong(value, result);
 
-        return last;
+            Probe.stop(probe, null);
+            return result;
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
-    /** @see #last(Iterable, int) */
-    public static <In> In last(Iterable<In> values) {
-        Iterator<In> iterator = values.iterator();
-        In last = null;
-        while (iterator.hasNext()) {
-            last = iterator.next();
+    /** @see #reduce(int[], IntBinaryOperator, int) */
+    public static double reduce(double[] values, DoubleBinaryOperator combine, double init) {
+        if (values == null) return init;
+
+        Probe probe = Probe.start("reduce", values, combine);
+        try {
+            double result = init;
+            for (double value : values)
+                result = combine.applyAsDouble(value, result);
+
+            Probe.stop(probe, null);
+            return result;
+        } finally {
+            Probe.fail(probe);
         }
-        return last;
     }
 
-    /** @see #last(Iterable, int) */
-    public _<T> last(int n) {
-        return new _<T>(_.last(mValues, n));
-    }
+    // ----- _.sum ---------------------------------------------------------------------------------
 
-    /** @see #last(int) */
-    public T last() {
-        return _.last(mValues);
-    }
+    /**
+     * <p>returns the sum of {@code values}. {@code int}s are summed up as {@code long}s so the sum
+     * does not overflow.</p>
+     * @param values the values to be summed up
+     * @return the sum of {@code values}, {@code 0} if {@code values == null}
+     */
+    public static long sum(int[] values) {
+        if (values == null) return 0;
 
-    // ----- _.rest --------------------------------------------------------------------------------
+        Probe probe = Probe.start("sum", values, null);
+        try {
+            long sum = 0;
+            for (int value : values)
+                sum += value;
 
-    public static <In> List<In> rest(Iterable<In> values, int startindex) {
-        return _.last(values, _.size(values) - startindex);
+            Probe.stop(probe, null);
+            return sum;
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
-    public static <In> List<In> rest(Iterable<In> values) {
-        return _.rest(values, 1);
-    }
+    /** @see #sum(int[]) */
+    public static long sum(long[] values) {
+        if (values == null) return 0;
 
-    public _<T> rest(int startindex) {
-        return new _<T>(_.rest(mValues, startindex));
+        Probe probe = Probe.start("sum", values, null);
+        try {
+            long sum = 0;
+            for (long value : values)
+                sum += value;
+
+            Probe.stop(probe, null);
+            return sum;
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
-    public _<T> rest() {
-        return rest(1);
+    /** @see #sum(int[]) */
+    public static double sum(double[] values) {
+        if (values == null) return 0;
+
+        Probe probe = Probe.start("sum", values, null);
+        try {
+            double sum = 0;
+            for (double value : values)
+                sum += value;
+
+            Probe.stop(probe, null);
+            return sum;
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
-    // ----- _.zip ---------------------------------------------------------------------------------
+    // ----- _.min ---------------------------------------------------------------------------------
 
     /**
-     * <p>returns a merged list of the lists {@code first} and {@code second}. E.g.</p>
-     * <pre>{@code
-     * _.zip(_.list(1,2,3), _.list(4,5,6)) // => [(1,4), (2,5), (3,6)]
-     * }</pre>
-     * <p>if the lists have different lengths, the merged list will be as long as the shorter list. I.e.</p>
-     * <pre>{@code
-     * _.zip(_.list(1,2,3), _.list(4,5,6,7,8,9)) // => [(1,4), (2,5), (3,6)]
-     * }</pre>
-     * @param first the first list of values
-     * @param second the second list of values
-     * @param <F> the type of values in {@code first}
-     * @param <S> the type of values in {@code second}
-     * @return the merged list
+     * <p>returns the smallest of the {@code values}</p>
+     * @param values the values to find the minimum of
+     * @return the smallest value, the greatest possible value if {@code values} is empty or {@code null}
      */
-    public static <F,S> List<Map.Entry<F,S>> zip(Iterable<F> first, Iterable<S> second) {
-        if (first == null || second == null) return Collections.emptyList();
+    public static int min(int[] values) {
+        int min = Integer.MAX_VALUE;
+        if (values == null) return min;
+
+        Probe probe = Probe.start("min", values, null);
+        try {
+            for (int value : values)
+                if (value < min)
+                    min = value;
+
+            Probe.stop(probe, null);
+            return min;
+        } finally {
+            Probe.fail(probe);
+        }
+    }
 
-        List<Map.Entry<F,S>> zipped = new ArrayList<Map.Entry<F,S>>();
-        Iterator<F> f;
-        Iterator<S> s;
+    /** @see #min(int[]) */
+    public static long min(long[] values) {
+        long min = Long.MAX_VALUE;
+        if (values == null) return min;
 
-        for (f = first.iterator(), s = second.iterator(); f.hasNext() && s.hasNext();/* nothing */) {
-            zipped.add(_.entry(f.next(), s.next()));
-        }
+        Probe probe = Probe.start("min", values, null);
+        try {
+            for (long value : values)
+                if (value < min)
+                    min = value;
 
-        return zipped;
+            Probe.stop(probe, null);
+            return min;
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
-    /** @see #zip(Iterable, Iterable) */
-    public <O> _<Map.Entry<T,O>> zip(Iterable<O> other) {
-        return new _<Map.Entry<T,O>>(_.zip(mValues, other));
-    }
+    /** @see #min(int[]) */
+    public static double min(double[] values) {
+        double min = Double.POSITIVE_INFINITY;
+        if (values == null) return min;
 
-    // ----- _.range -------------------------------------------------------------------------------
+        Probe probe = Probe.start("min", values, null);
+        try {
+            for (double value : values)
+                if (value < min)
+                    min = value;
 
-    private static BiPredicate<Integer, Integer> greater = new BiPredicate<Integer, Integer>() {
-        @Override
-        public boolean test(Integer a, Integer b) {
-            return a > b;
-        }
-    };
-    private static BiPredicate<Integer, Integer> smaller = new BiPredicate<Integer, Integer>() {
-        @Override
-        public boolean test(Integer a, Integer b) {
-            return a < b;
+            Probe.stop(probe, null);
+            return min;
+        } finally {
+            Probe.fail(probe);
         }
-    };
+    }
+
+    // ----- _.max ---------------------------------------------------------------------------------
 
     /**
-     * <p>returns a list of integers starting at {@code start}, ending at {@code stop},
-     * incrementing by {@code step}. E.g.</p>
-     * <pre>{@code
-     * _.range(5) // => [0, 1, 2, 3, 4]
-     * _.range(3, 9) // => [3, 4, 5, 6, 7, 8]
-     * _.range(5, 16, 2) // => [5, 7, 9, 11, 13, 15]
-     * _.range(0, -4, -1) // => [0, -1, -2, -3]
-     * }</pre>
-     * <p>Negative ranges without negative step are considered empty:</p>
-     * <pre>{@code
-     * _.range(3, 2, 1) // => []
-     * }</pre>
-     * @param start the start index, included (defaults to {@code 0})
-     * @param stop the end index, excluded
-     * @param step the stepwidth (defaults to {@code 1})
-     * @return a list of integers in the specified range
+     * <p>returns the greatest of the {@code values}</p>
+     * @param values the values to find the maximum of
+     * @return the greatest value, the smallest possible value if {@code values} is empty or {@code null}
      */
-    public static List<Integer> range(int start, int stop, int step) {
-        if (start == stop ||
-                step == 0 ||
-                start > stop && step > 0) return Collections.emptyList();
+    public static int max(int[] values) {
+        int max = Integer.MIN_VALUE;
+        if (values == null) return max;
+
+        Probe probe = Probe.start("max", values, null);
+        try {
+            for (int value : values)
+                if (value > max)
+                    max = value;
+
+            Probe.stop(probe, null);
+            return max;
+        } finally {
+            Probe.fail(probe);
+        }
+    }
 
-        List<Integer> range = new ArrayList<Integer>();
-        BiPredicate<Integer, Integer> compare = (start < stop) ? smaller : greater;
+    /** @see #max(int[]) */
+    public static long max(long[] values) {
+        long max = Long.MIN_VALUE;
+        if (values == null) return max;
 
-        for (int i = start; compare.test(i, stop); i += step)
-            range.add(i);
+        Probe probe = Probe.start("max", values, null);
+        try {
+            for (long value : values)
+                if (value > max)
+                    max = value;
 
-        return range;
+            Probe.stop(probe, null);
+            return max;
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
-    /** @see #range(int, int, int) */
-    public static List<Integer> range(int start, int stop) {
-        return _.range(start, stop, 1);
-    }
+    /** @see #max(int[]) */
+    public static double max(double[] values) {
+        double max = Double.NEGATIVE_INFINITY;
+        if (values == null) return max;
 
-    /** @see #range(int, int, int) */
-    public static List<Integer> range(int stop) {
-        return _.range(0, stop);
+        Probe probe = Probe.start("max", values, null);
+        try {
+            for (double value : values)
+                if (value > max)
+                    max = value;
+
+            Probe.stop(probe, null);
+            return max;
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     // ===== ~Functions ============================================================================
@@ -750,6 +2602,228 @@ public final class _ <T> {
         };
     }
 
+    // ----- _.memoize -----------------------------------------------------------------------------
+
+    /**
+     * <p>returns a thread-safe version of {@code function} that caches its results by input. E.g.</p>
+     * <pre>{@code
+     * Function<String, Document> parse = _.memoize((xml) -> parseXml(xml));
+     * parse.apply(xml); // => parses xml
+     * parse.apply(xml); // => returns the cached document
+     * }</pre>
+     * <p>Caches up to 1024 results and evicts the least recently used ones. Use
+     * {@link #memoize(Function, Memoized.Options)} to configure the cache.</p>
+     * @param function the function to be memoized
+     * @param <In> the input type of {@code function}
+     * @param <Out> the output type of {@code function}
+     * @return the memoized {@code function}
+     */
+    public static <In, Out> Memoized<In, Out> memoize(Function<In, Out> function) {
+        return _.memoize(function, null);
+    }
+
+    /**
+     * <p>like {@link #memoize(Function)}, but configured by {@code options}. E.g. to cache at most
+     * 10000 results of a function with two arguments for one minute, evicting the least frequently
+     * used results:</p>
+     * <pre>{@code
+     * Memoized.Options<Map.Entry<String, Locale>> options = new Memoized.Options<>();
+     * options.maxSize = 10000;
+     * options.eviction = Memoized.Eviction.LFU;
+     * options.ttl = 60 * 1000L;
+     * options.key = (args) -> args.getKey() + "/" + args.getValue();
+     * Memoized<Map.Entry<String, Locale>, Date> parse = _.memoize((args) -> parseDate(args), options);
+     * }</pre>
+     * <p>If several threads call the memoized function with the same uncached input at the same
+     * time, {@code function} is called only once. The returned {@link Memoized} counts hits,
+     * misses and evictions.</p>
+     * @param function the function to be memoized
+     * @param options configures the cache, {@code null} options are set to their defaults
+     * @param <In> the input type of {@code function}
+     * @param <Out> the output type of {@code function}
+     * @return the memoized {@code function}
+     */
+    public static <In, Out> Memoized<In, Out> memoize(Function<In, Out> function, Memoized.Options<In> options) {
+        return new Memoized<In, Out>(function, options);
+    }
+
+    // ----- _.throttle ----------------------------------------------------------------------------
+
+    /**
+     * <p>returns a version of {@code function} that is called at most once per {@code wait}
+     * milliseconds. E.g.</p>
+     * <pre>{@code
+     * Function<Event, Stats> refresh = _.throttle((event) -> recomputeStats(), 1000);
+     * for (Event event : events) refresh.apply(event); // => recomputes at most once per second
+     * }</pre>
+     * <p>The first call of a burst calls {@code function} right away. Calls during the wait return
+     * the result of the latest call of {@code function}; the last of them is passed to
+     * {@code function} once the wait is over.</p>
+     * <p>{@code function} is never called while holding a lock, so a slow call does not block
+     * other callers. Trailing calls run on {@link Async#defaultExecutor()}.</p>
+     * @param function the function to be throttled
+     * @param wait the minimum time between two calls of {@code function} in milliseconds
+     * @param <In> the input type of {@code function}
+     * @param <Out> the output type of {@code function}
+     * @return the throttled {@code function}
+     */
+    public static <In, Out> Function<In, Out> throttle(Function<In, Out> function, long wait) {
+        return _.throttle(function, wait, true, true);
+    }
+
+    /**
+     * <p>like {@link #throttle(Function, long)}, but configures whether {@code function} is called
+     * on the leading and on the trailing edge of the wait</p>
+     * @param function the function to be throttled
+     * @param wait the minimum time between two calls of {@code function} in milliseconds
+     * @param leading whether the first call of a burst calls {@code function} right away
+     * @param trailing whether the last call during the wait calls {@code function} once the wait is over
+     * @param <In> the input type of {@code function}
+     * @param <Out> the output type of {@code function}
+     * @return the throttled {@code function}
+     */
+    public static <In, Out> Function<In, Out> throttle(Function<In, Out> function, long wait, boolean leading, boolean trailing) {
+        return new Throttle<In, Out>(function, wait, leading, trailing);
+    }
+
+    /**
+     * <p>like {@link #throttle(Function, long)}, but for a {@link Consumer}. It has a name of its
+     * own, as lambdas would be ambiguous between the two.</p>
+     * @param consumer the consumer to be throttled
+     * @param wait the minimum time between two calls of {@code consumer} in milliseconds
+     * @param <In> the input type of {@code consumer}
+     * @return the throttled {@code consumer}
+     */
+    public static <In> Consumer<In> throttleConsumer(Consumer<In> consumer, long wait) {
+        return _.throttleConsumer(consumer, wait, true, true);
+    }
+
+    /** @see #throttle(Function, long, boolean, boolean) */
+    public static <In> Consumer<In> throttleConsumer(Consumer<In> consumer, long wait, boolean leading, boolean trailing) {
+        return new Throttle<In, Void>(_.asFunction(consumer), wait, leading, trailing);
+    }
+
+    private static <In> Function<In, Void> asFunction(final Consumer<In> consumer) {
+        return new Function<In, Void>() {
+            @Override
+            public Void apply(In in) {
+                consumer.accept(in);
+                return null;
+            }
+        };
+    }
+
+    // ----- _.debounce ----------------------------------------------------------------------------
+
+    /**
+     * <p>returns a version of {@code function} that is called only once per burst of calls, i.e.
+     * {@code wait} milliseconds after it was last called. E.g.</p>
+     * <pre>{@code
+     * Consumer<String> invalidate = _.debounceConsumer((key) -> cache.invalidateAll(), 100);
+     * for (String key : changedKeys) invalidate.accept(key); // => invalidates once, 100ms after the last change
+     * }</pre>
+     * <p>Calls return the result of the latest call of {@code function}. The calls are made on
+     * {@link Async#defaultExecutor()}, so a slow {@code function} does not hold up other timers.</p>
+     * @param function the function to be debounced
+     * @param wait the time without calls after which {@code function} is called, in milliseconds
+     * @param <In> the input type of {@code function}
+     * @param <Out> the output type of {@code function}
+     * @return the debounced {@code function}
+     */
+    public static <In, Out> Function<In, Out> debounce(Function<In, Out> function, long wait) {
+        return _.debounce(function, wait, false, true);
+    }
+
+    /**
+     * <p>like {@link #debounce(Function, long)}, but configures whether {@code function} is called
+     * on the leading and on the trailing edge of a burst</p>
+     * @param function the function to be debounced
+     * @param wait the time without calls after which a burst is over, in milliseconds
+     * @param leading whether the first call of a burst calls {@code function} right away
+     * @param trailing whether {@code function} is called with the last input of a burst after it is over
+     * @param <In> the input type of {@code function}
+     * @param <Out> the output type of {@code function}
+     * @return the debounced {@code function}
+     */
+    public static <In, Out> Function<In, Out> debounce(Function<In, Out> function, long wait, boolean leading, boolean trailing) {
+        return new Debounce<In, Out>(function, wait, leading, trailing);
+    }
+
+    /**
+     * <p>like {@link #debounce(Function, long)}, but for a {@link Consumer}. It has a name of its
+     * own, as lambdas would be ambiguous between the two.</p>
+     * @param consumer the consumer to be debounced
+     * @param wait the time without calls after which {@code consumer} is called, in milliseconds
+     * @param <In> the input type of {@code consumer}
+     * @return the debounced {@code consumer}
+     */
+    public static <In> Consumer<In> debounceConsumer(Consumer<In> consumer, long wait) {
+        return _.debounceConsumer(consumer, wait, false, true);
+    }
+
+    /** @see #debounce(Function, long, boolean, boolean) */
+    public static <In> Consumer<In> debounceConsumer(Consumer<In> consumer, long wait, boolean leading, boolean trailing) {
+        return new Debounce<In, Void>(_.asFunction(consumer), wait, leading, trailing);
+    }
+
+    // ----- _.delay -------------------------------------------------------------------------------
+
+    /**
+     * <p>calls {@code supplier} after {@code millis} milliseconds. E.g.</p>
+     * <pre>{@code
+     * Timeout<Void> timeout = _.delay(() -> { request.abort(); return null; }, 5000);
+     * response = request.send();
+     * timeout.cancel(false); // => the request is not aborted
+     * }</pre>
+     * <p>Scheduling and cancelling take O(1), so it is fine to have millions of pending delays.
+     * The delays are kept by a timer thread shared by all delayed functions, which hands
+     * {@code supplier} off to {@link Async#defaultExecutor()} when it is due, so slow functions do
+     * not hold up the others.</p>
+     * @param supplier the function to be called
+     * @param millis the delay in milliseconds
+     * @param <Out> the result type of {@code supplier}
+     * @return a handle to cancel the call or to wait for its result
+     */
+    public static <Out> Timeout<Out> delay(Supplier<Out> supplier, long millis) {
+        return Scheduler.schedule(supplier, millis, Async.defaultExecutor());
+    }
+
+    /**
+     * <p>like {@link #delay(Supplier, long)}, but calls {@code consumer} with {@code value}</p>
+     * @param consumer the function to be called
+     * @param value the input of {@code consumer}
+     * @param millis the delay in milliseconds
+     * @param <In> the input type of {@code consumer}
+     * @return a handle to cancel the call or to wait for it
+     */
+    public static <In> Timeout<Void> delay(final Consumer<In> consumer, final In value, long millis) {
+        return Scheduler.schedule(new Supplier<Void>() {
+            @Override
+            public Void get() {
+                consumer.accept(value);
+                return null;
+            }
+        }, millis, Async.defaultExecutor());
+    }
+
+    // ----- _.defer -------------------------------------------------------------------------------
+
+    /**
+     * <p>calls {@code supplier} asynchronously as soon as possible, like {@code _.delay(supplier, 0)}</p>
+     * @param supplier the function to be called
+     * @param <Out> the result type of {@code supplier}
+     * @return a handle to cancel the call or to wait for its result
+     * @see #delay(Supplier, long)
+     */
+    public static <Out> Timeout<Out> defer(Supplier<Out> supplier) {
+        return _.delay(supplier, 0);
+    }
+
+    /** @see #defer(Supplier) */
+    public static <In> Timeout<Void> defer(Consumer<In> consumer, In value) {
+        return _.delay(consumer, value, 0);
+    }
+
     // ===== ~Objects ==============================================================================
 
     // ----- _.extend ------------------------------------------------------------------------------
@@ -781,11 +2855,40 @@ public final class _ <T> {
      * @throws NoSuchFieldException
      */
     public static <Datastore> Datastore extend(Datastore defaults, Datastore options) throws IllegalAccessException, NoSuchFieldException {
-        for (Field field : options.getClass().getFields())
-            if (field.get(options) != null)
-                defaults.getClass().getField(field.getName()).set(defaults, field.get(options));
+        Probe probe = Probe.start("extend", null, null);
+        try {
+            return Probe.stop(probe, Extend.extend(defaults, options, false));
+        } finally {
+            Probe.fail(probe);
+        }
+    }
 
-        return defaults;
+    /**
+     * <p>like {@link #extend(Object, Object)}, but if {@code deep} merges nested values instead of
+     * replacing them: if a field holds {@link Map}s in both {@code defaults} and {@code options},
+     * the non-{@code null} entries of the options map are merged into the defaults map; if it holds
+     * objects with public fields, the options object extends the defaults object. E.g.</p>
+     * <pre>{@code
+     * _.extend(server("localhost", timeouts(10, 20)), server(null, timeouts(null, 5)), true);
+     * // => server("localhost", timeouts(10, 5))
+     * }</pre>
+     * <p>The fields to be copied are looked up once per pair of classes, so repeated calls do not
+     * repeat the reflective lookup.</p>
+     * @param defaults
+     * @param options
+     * @param deep whether nested {@link Map}s and objects are merged
+     * @param <Datastore>
+     * @return
+     * @throws IllegalAccessException
+     * @throws NoSuchFieldException
+     */
+    public static <Datastore> Datastore extend(Datastore defaults, Datastore options, boolean deep) throws IllegalAccessException, NoSuchFieldException {
+        Probe probe = Probe.start("extend", null, null);
+        try {
+            return Probe.stop(probe, Extend.extend(defaults, options, deep));
+        } finally {
+            Probe.fail(probe);
+        }
     }
 
     // ===== Utility ===============================================================================
@@ -811,7 +2914,7 @@ public final class _ <T> {
     public static <In> List<In> list(In... values) {
         if (values == null) return Collections.emptyList();
 
-        List<In> iterable = new ArrayList<In>();
+        List<In> iterable = new ArrayList<In>(values.length);
         for (In value : values) {
             iterable.add(value);
         }
@@ -853,6 +2956,9 @@ public final class _ <T> {
 
     // ----- _.join --------------------------------------------------------------------------------
 
+    /** estimates from the first value presize joined strings to at most this many chars */
+    static final int MAX_JOIN_ESTIMATE = 1 << 16;
+
     /**
      * <p>Joins the {@code values} using the specified {@code separator}. E.g.</p>
      * <pre>{@code
@@ -863,36 +2969,109 @@ public final class _ <T> {
      * @return the joined values
      */
     public static String join(Iterable<String> values, final String separator) {
-        if (values == null) return "";
+        return _.join(values, separator, "", "", null);
+    }
 
-        StringBuilder joined = new StringBuilder();
-        boolean isFirst = true;
+    /** @see #join(Iterable, String) */
+    public static String join(Iterable<String> values) {
+        return _.join(values, ",");
+    }
 
-        for (String value : values) {
-            if (isFirst) {
-                joined.append(value);
-                isFirst = false;
-            } else {
-                joined.append(separator).append(value);
+    /**
+     * <p>formats each of the {@code values} with {@code format} and joins them using the specified
+     * {@code separator}, enclosed in {@code prefix} and {@code suffix}. E.g.</p>
+     * <pre>{@code
+     * _.join(_.list(1, 2, 3), ",", "IN (", ")", (i) -> "'" + i + "'") // => "IN ('1','2','3')"
+     * }</pre>
+     * <p>No intermediate list is built. If the number of {@code values} is known in advance
+     * (i.e. they are a {@link Collection}), the result is presized from the length of the first
+     * formatted value, up to {@value #MAX_JOIN_ESTIMATE} chars.</p>
+     * @param values the values to be joined
+     * @param separator the separator to be used
+     * @param prefix prepended to the joined values, even if there are none
+     * @param suffix appended to the joined values, even if there are none
+     * @param format formats a single value (defaults to {@link String#valueOf(Object)})
+     * @param <In> the type of the {@code values}
+     * @return the joined values
+     */
+    public static <In> String join(Iterable<In> values, String separator, String prefix, String suffix,
+                                   Function<In, String> format) {
+        if (values == null) return prefix + suffix;
+
+        Iterator<In> iterator = values.iterator();
+        if (!iterator.hasNext()) return prefix + suffix;
+
+        Probe probe = Probe.start("join", values, format);
+        try {
+            String first = _.format(iterator.next(), format);
+            long capacity = prefix.length() + suffix.length() + _.joinedLength(values, separator, first);
+
+            StringBuilder joined = new StringBuilder((int) Math.min(capacity, Integer.MAX_VALUE - 8));
+            joined.append(prefix).append(first);
+            while (iterator.hasNext())
+                joined.append(separator).append(_.format(iterator.next(), format));
+            return Probe.stop(probe, joined.append(suffix).toString());
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /**
+     * <p>like {@link #join(Iterable, String, String, String, Function)}, but appends the joined
+     * values to {@code out} while iterating them, e.g. to stream them into a
+     * {@link java.io.Writer}</p>
+     * @param values the values to be joined
+     * @param separator the separator to be used
+     * @param prefix prepended to the joined values, even if there are none
+     * @param suffix appended to the joined values, even if there are none
+     * @param format formats a single value (defaults to {@link String#valueOf(Object)})
+     * @param out the destination of the joined values
+     * @param <In> the type of the {@code values}
+     * @param <A> the type of {@code out}
+     * @return {@code out}
+     * @throws IOException if {@code out} throws
+     */
+    public static <In, A extends Appendable> A join(Iterable<In> values, String separator, String prefix,
+                                                    String suffix, Function<In, String> format, A out)
+            throws IOException {
+        Probe probe = Probe.start("join", values, format);
+        try {
+            out.append(prefix);
+            if (values != null) {
+                boolean isFirst = true;
+                for (In value : values) {
+                    if (!isFirst) out.append(separator);
+                    isFirst = false;
+                    out.append(_.format(value, format));
+                }
             }
+            out.append(suffix);
+            return Probe.stop(probe, out);
+        } finally {
+            Probe.fail(probe);
         }
+    }
+
+    /**
+     * <p>estimates the length of the joined {@code values} without prefix and suffix from the
+     * length of the {@code first} formatted value, at most {@link #MAX_JOIN_ESTIMATE} unless the
+     * first value alone is longer. Values of unknown number are estimated as the first one only.</p>
+     */
+    static <In> long joinedLength(Iterable<In> values, String separator, String first) {
+        int size = _.knownSize(values);
+        if (size <= 1) return first.length();
 
-        return joined.toString();
+        long estimate = (long) size * first.length() + (long) (size - 1) * separator.length();
+        return Math.max(first.length(), Math.min(estimate, MAX_JOIN_ESTIMATE));
     }
 
-    /** @see #join(Iterable, String) */
-    public static String join(Iterable<String> values) {
-        return _.join(values, ",");
+    private static <In> String format(In value, Function<In, String> format) {
+        return format == null ? String.valueOf(value) : format.apply(value);
     }
 
     /** @see #join(Iterable, String) */
     public String join(final String separator) {
-        return _.join(_.map(mValues, new Function<T, String>() {
-            @Override
-            public String apply(T t) {
-                return t.toString();
-            }
-        }), separator);
+        return _.join(mValues, separator, "", "", null);
     }
 
     /** @see #join(Iterable, String) */
@@ -900,48 +3079,157 @@ public final class _ <T> {
         return join(",");
     }
 
+    /** @see #join(Iterable, String, String, String, Function) */
+    public String join(String separator, String prefix, String suffix, Function<T, String> format) {
+        return _.join(mValues, separator, prefix, suffix, format);
+    }
+
+    /** @see #join(Iterable, String, String, String, Function, Appendable) */
+    public <A extends Appendable> A join(String separator, String prefix, String suffix, Function<T, String> format,
+                                         A out) throws IOException {
+        return _.join(mValues, separator, prefix, suffix, format, out);
+    }
+
     // ----- _.stringify ---------------------------------------------------------------------------
 
+    /**
+     * <p>serializes {@code o} to a JSON-like string. E.g.</p>
+     * <pre>{@code
+     * _.stringify(_.list(1, 2, 3)) // => "[1,2,3]"
+     * _.stringify(_.dictionary(_.entry("foo", _.list("bar")))) // => "{\"foo\":[\"bar\"]}"
+     * }</pre>
+     * <p>{@link Iterable}s are serialized as lists, {@link Map}s as objects, {@link String}s are
+     * quoted (unless they look like serialized lists or objects), everything else is serialized by
+     * {@link Object#toString()}. {@code null} is serialized as empty string.</p>
+     * <p>To serialize large structures without building the whole string in memory use
+     * {@link #stringify(Object, Appendable)}.</p>
+     * @param o the object to be serialized
+     * @return the serialized object
+     */
     public static String stringify(Object o) {
+        return _.stringify(o, new StringBuilder()).toString();
+    }
+
+    /**
+     * <p>like {@link #stringify(Object)}, but appends the serialized object to {@code out}. This
+     * allows to reuse a buffer for many objects, e.g.</p>
+     * <pre>{@code
+     * StringBuilder buffer = new StringBuilder();
+     * for (Object o : objects) {
+     *     buffer.setLength(0);
+     *     send(_.stringify(o, buffer));
+     * }
+     * }</pre>
+     * @param o the object to be serialized
+     * @param out the buffer the serialized object is appended to
+     * @return {@code out}
+     */
+    public static StringBuilder stringify(Object o, StringBuilder out) {
+        Probe probe = Probe.start("stringify", o, null);
+        try {
+            try {
+                _.write(o, out);
+            } catch (IOException e) {
+                // StringBuilder.append does not throw
+                throw new IllegalStateException(e);
+            }
+            return Probe.stop(probe, out);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /**
+     * <p>like {@link #stringify(Object)}, but streams the serialized object to {@code out}
+     * (e.g. a {@link java.io.Writer}) as it is traversed. Neither the serialized object nor any of
+     * its nested parts is built as {@link String} in memory.</p>
+     * @param o the object to be serialized
+     * @param out the destination of the serialized object
+     * @param <A> the type of {@code out}
+     * @return {@code out}
+     * @throws IOException if {@code out} throws
+     */
+    public static <A extends Appendable> A stringify(Object o, A out) throws IOException {
+        Probe probe = Probe.start("stringify", o, null);
+        try {
+            _.write(o, out);
+            return Probe.stop(probe, out);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    /**
+     * <p>like {@link #stringify(Object, Appendable)}, but writes the serialized object to
+     * {@code out} encoded in {@code charset}. {@code out} is flushed, but not closed.</p>
+     * @param o the object to be serialized
+     * @param out the destination of the serialized object
+     * @param charset the encoding of the serialized object
+     * @throws IOException if {@code out} throws
+     */
+    public static void stringify(Object o, OutputStream out, Charset charset) throws IOException {
+        Probe probe = Probe.start("stringify", o, null);
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, charset));
+            _.write(o, writer);
+            writer.flush();
+            Probe.stop(probe, null);
+        } finally {
+            Probe.fail(probe);
+        }
+    }
+
+    private static void write(Object o, Appendable out) throws IOException {
         if (o == null) {
-            return "";
+            return;
         }
         if (o instanceof String) {
-            String s = o.toString();
+            String s = (String) o;
             if ((s.startsWith("[") && s.endsWith("]"))
                 || (s.startsWith("{") && s.endsWith("}"))) {
-                return s;
+                out.append(s);
             } else {
-                return '"' + s + '"';
+                out.append('"').append(s).append('"');
             }
+            return;
         }
         if (o instanceof Iterable) {
-            return '[' + new _((Iterable) o)
-                    .map(new Function<Object, String>() {
-                        @Override
-                        public String apply(Object o) {
-                            return _.stringify(o);
-                        }
-                    })
-                    .join() + ']';
+            out.append('[');
+            boolean isFirst = true;
+            for (Object value : (Iterable<?>) o) {
+                if (!isFirst) out.append(',');
+                isFirst = false;
+                _.write(value, out);
+            }
+            out.append(']');
+            return;
         }
         if (o instanceof Map) {
-            return '{' + new _(((Map) o).entrySet())
-                    .map(new Function<Map.Entry, String>() {
-                        @Override
-                        public String apply(Map.Entry o) {
-                            return _.stringify(o.getKey()) + ':' + _.stringify(o.getValue());
-                        }
-                    })
-                    .join() + '}';
+            out.append('{');
+            boolean isFirst = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+                if (!isFirst) out.append(',');
+                isFirst = false;
+                _.write(entry.getKey(), out);
+                out.append(':');
+                _.write(entry.getValue(), out);
+            }
+            out.append('}');
+            return;
         }
-        return o.toString();
+        out.append(o.toString());
     }
 
+    /** @see #stringify(Object) */
     public String stringify() {
         return _.stringify(mValues);
     }
 
+    /** @see #stringify(Object, Appendable) */
+    public <A extends Appendable> A stringify(A out) throws IOException {
+        return _.stringify(mValues, out);
+    }
+
     // ----- _.identity ----------------------------------------------------------------------------
 
     /**
@@ -993,4 +3281,26 @@ public final class _ <T> {
             }
         };
     }
+
+    // ----- _.instrument --------------------------------------------------------------------------
+
+    /**
+     * <p>installs {@code instrumentation} to receive a measurement of each call of the eager
+     * operations (e.g. {@code map}, {@code filter}, {@code sortBy}, {@code groupBy}, {@code join},
+     * {@code stringify}) and of the stages of parallel chains. E.g.</p>
+     * <pre>{@code
+     * MetricsRegistry metrics = new MetricsRegistry();
+     * _.instrument(metrics);
+     * _.groupBy(orders, (order) -> order.customer);
+     * metrics.histogram("groupBy").count(); // => 1
+     * }</pre>
+     * <p>Stages of lazy chains are not measured, as their work happens interleaved while the
+     * result is iterated. Operations that delegate to another operation (e.g. {@code reject} to
+     * {@code filter}) are recorded once, under the name of that operation.</p>
+     * @param instrumentation the instrumentation to be installed, or {@code null} to turn
+     *                        instrumentation off (the default)
+     */
+    public static void instrument(Instrumentation instrumentation) {
+        Probe.install(instrumentation);
+    }
 }
@@ -0,0 +1,18 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation upon two {@code double}-valued operands and producing a
+ * {@code double}-valued result. This is the primitive type specialization of a {@link BiFunction}
+ * from two {@code double}s to {@code double}.</p>
+ * <p>This is a functional interface whose functional method is {@link #applyAsDouble(double, double)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/DoubleBinaryOperator.html">Java 8 DoubleBinaryOperator</a>
+ */
+public interface DoubleBinaryOperator {
+    /**
+     * <p>Applies this operator to the given operands.</p>
+     * @param left the first operand
+     * @param right the second operand
+     * @return the operator result
+     */
+    public double applyAsDouble(double left, double right);
+}
@@ -0,0 +1,22 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents a predicate (boolean-valued function) of one {@code double}-valued argument.
+ * This is the {@code double}-consuming primitive type specialization of {@link Predicate}.</p>
+ * <p>This is a functional interface whose functional method is {@link #test(double)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/DoublePredicate.html">Java 8 DoublePredicate</a>
+ */
+public interface DoublePredicate {
+    /**
+     * <p>Evaluates this predicate on the given argument.</p>
+     * @param value the input argument
+     * @return {@code true} if the input argument matches the predicate, otherwise {@code false}
+     */
+    public boolean test(double value);
+
+    // not implementable pre Java 8:
+
+    // public default DoublePredicate and(DoublePredicate other);
+    // public default DoublePredicate negate();
+    // public default DoublePredicate or(DoublePredicate other);
+}
@@ -0,0 +1,23 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation on a single {@code double}-valued operand that produces a
+ * {@code double}-valued result. This is the primitive type specialization of a {@link Function}
+ * from {@code double} to {@code double}.</p>
+ * <p>This is a functional interface whose functional method is {@link #applyAsDouble(double)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/DoubleUnaryOperator.html">Java 8 DoubleUnaryOperator</a>
+ */
+public interface DoubleUnaryOperator {
+    /**
+     * <p>Applies this operator to the given operand.</p>
+     * @param operand the operand
+     * @return the operator result
+     */
+    public double applyAsDouble(double operand);
+
+    // not implementable pre Java 8:
+
+    // public default DoubleUnaryOperator andThen(DoubleUnaryOperator after);
+    // public default DoubleUnaryOperator compose(DoubleUnaryOperator before);
+    // public static DoubleUnaryOperator identity();
+}
@@ -0,0 +1,18 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation upon two {@code int}-valued operands and producing an
+ * {@code int}-valued result. This is the primitive type specialization of a {@link BiFunction}
+ * from two {@code int}s to {@code int}.</p>
+ * <p>This is a functional interface whose functional method is {@link #applyAsInt(int, int)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/IntBinaryOperator.html">Java 8 IntBinaryOperator</a>
+ */
+public interface IntBinaryOperator {
+    /**
+     * <p>Applies this operator to the given operands.</p>
+     * @param left the first operand
+     * @param right the second operand
+     * @return the operator result
+     */
+    public int applyAsInt(int left, int right);
+}
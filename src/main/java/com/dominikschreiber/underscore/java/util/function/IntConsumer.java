@@ -0,0 +1,21 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation that accepts a single {@code int}-valued argument and returns no result.
+ * This is the primitive type specialization of {@link Consumer} for {@code int}.
+ * Unlike most other functional interfaces, {@code IntConsumer} is expected to operate
+ * via side-effects.</p>
+ * <p>This is a functional interface whose functional method is {@link #accept(int)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/IntConsumer.html">Java 8 IntConsumer</a>
+ */
+public interface IntConsumer {
+    /**
+     * <p>Performs this operation on the given argument.</p>
+     * @param value the input argument
+     */
+    public void accept(int value);
+
+    // not implementable pre Java 8:
+
+    // public default IntConsumer andThen(IntConsumer after);
+}
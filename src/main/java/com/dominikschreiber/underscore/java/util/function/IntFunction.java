@@ -0,0 +1,17 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents a function that accepts an int-valued argument and produces a result.
+ * This is the {@code int}-consuming primitive specialization for {@link Function}.</p>
+ * <p>This is a functional interface whose functional method is {@link #apply(int)}.</p>
+ * @param <R> the type of the result of the function
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/IntFunction.html">Java 8 IntFunction</a>
+ */
+public interface IntFunction<R> {
+    /**
+     * <p>Applies this function to the given argument.</p>
+     * @param value the function argument
+     * @return the function result
+     */
+    public R apply(int value);
+}
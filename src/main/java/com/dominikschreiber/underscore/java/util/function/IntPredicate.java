@@ -0,0 +1,22 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents a predicate (boolean-valued function) of one {@code int}-valued argument.
+ * This is the {@code int}-consuming primitive type specialization of {@link Predicate}.</p>
+ * <p>This is a functional interface whose functional method is {@link #test(int)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/IntPredicate.html">Java 8 IntPredicate</a>
+ */
+public interface IntPredicate {
+    /**
+     * <p>Evaluates this predicate on the given argument.</p>
+     * @param value the input argument
+     * @return {@code true} if the input argument matches the predicate, otherwise {@code false}
+     */
+    public boolean test(int value);
+
+    // not implementable pre Java 8:
+
+    // public default IntPredicate and(IntPredicate other);
+    // public default IntPredicate negate();
+    // public default IntPredicate or(IntPredicate other);
+}
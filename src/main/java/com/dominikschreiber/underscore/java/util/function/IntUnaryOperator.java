@@ -0,0 +1,23 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation on a single {@code int}-valued operand that produces an
+ * {@code int}-valued result. This is the primitive type specialization of a {@link Function}
+ * from {@code int} to {@code int}.</p>
+ * <p>This is a functional interface whose functional method is {@link #applyAsInt(int)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/IntUnaryOperator.html">Java 8 IntUnaryOperator</a>
+ */
+public interface IntUnaryOperator {
+    /**
+     * <p>Applies this operator to the given operand.</p>
+     * @param operand the operand
+     * @return the operator result
+     */
+    public int applyAsInt(int operand);
+
+    // not implementable pre Java 8:
+
+    // public default IntUnaryOperator andThen(IntUnaryOperator after);
+    // public default IntUnaryOperator compose(IntUnaryOperator before);
+    // public static IntUnaryOperator identity();
+}
@@ -0,0 +1,18 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation upon two {@code long}-valued operands and producing a
+ * {@code long}-valued result. This is the primitive type specialization of a {@link BiFunction}
+ * from two {@code long}s to {@code long}.</p>
+ * <p>This is a functional interface whose functional method is {@link #applyAsLong(long, long)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/LongBinaryOperator.html">Java 8 LongBinaryOperator</a>
+ */
+public interface LongBinaryOperator {
+    /**
+     * <p>Applies this operator to the given operands.</p>
+     * @param left the first operand
+     * @param right the second operand
+     * @return the operator result
+     */
+    public long applyAsLong(long left, long right);
+}
@@ -0,0 +1,21 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation that accepts a single {@code long}-valued argument and returns no result.
+ * This is the primitive type specialization of {@link Consumer} for {@code long}.
+ * Unlike most other functional interfaces, {@code LongConsumer} is expected to operate
+ * via side-effects.</p>
+ * <p>This is a functional interface whose functional method is {@link #accept(long)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/LongConsumer.html">Java 8 LongConsumer</a>
+ */
+public interface LongConsumer {
+    /**
+     * <p>Performs this operation on the given argument.</p>
+     * @param value the input argument
+     */
+    public void accept(long value);
+
+    // not implementable pre Java 8:
+
+    // public default LongConsumer andThen(LongConsumer after);
+}
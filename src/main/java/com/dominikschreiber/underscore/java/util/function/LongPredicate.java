@@ -0,0 +1,22 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents a predicate (boolean-valued function) of one {@code long}-valued argument.
+ * This is the {@code long}-consuming primitive type specialization of {@link Predicate}.</p>
+ * <p>This is a functional interface whose functional method is {@link #test(long)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/LongPredicate.html">Java 8 LongPredicate</a>
+ */
+public interface LongPredicate {
+    /**
+     * <p>Evaluates this predicate on the given argument.</p>
+     * @param value the input argument
+     * @return {@code true} if the input argument matches the predicate, otherwise {@code false}
+     */
+    public boolean test(long value);
+
+    // not implementable pre Java 8:
+
+    // public default LongPredicate and(LongPredicate other);
+    // public default LongPredicate negate();
+    // public default LongPredicate or(LongPredicate other);
+}
@@ -0,0 +1,23 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents an operation on a single {@code long}-valued operand that produces a
+ * {@code long}-valued result. This is the primitive type specialization of a {@link Function}
+ * from {@code long} to {@code long}.</p>
+ * <p>This is a functional interface whose functional method is {@link #applyAsLong(long)}.</p>
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/LongUnaryOperator.html">Java 8 LongUnaryOperator</a>
+ */
+public interface LongUnaryOperator {
+    /**
+     * <p>Applies this operator to the given operand.</p>
+     * @param operand the operand
+     * @return the operator result
+     */
+    public long applyAsLong(long operand);
+
+    // not implementable pre Java 8:
+
+    // public default LongUnaryOperator andThen(LongUnaryOperator after);
+    // public default LongUnaryOperator compose(LongUnaryOperator before);
+    // public static LongUnaryOperator identity();
+}
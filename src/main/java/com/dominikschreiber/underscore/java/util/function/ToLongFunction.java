@@ -0,0 +1,17 @@
+package com.dominikschreiber.underscore.java.util.function;
+
+/**
+ * <p>Represents a function that produces a {@code long}-valued result. This is the
+ * {@code long}-producing primitive specialization for {@link Function}.</p>
+ * <p>This is a functional interface whose functional method is {@link #applyAsLong(Object)}.</p>
+ * @param <T> the type of the input to the function
+ * @see <a href="http://docs.oracle.com/javase/8/docs/api/java/util/function/ToLongFunction.html">Java 8 ToLongFunction</a>
+ */
+public interface ToLongFunction<T> {
+    /**
+     * <p>Applies this function to the given argument.</p>
+     * @param value the function argument
+     * @return the function result
+     */
+    public long applyAsLong(T value);
+}
@@ -1,20 +1,61 @@
 package com.dominikschreiber.underscore;
 
+import com.dominikschreiber.underscore.java.util.function.BiConsumer;
 import com.dominikschreiber.underscore.java.util.function.BiFunction;
 import com.dominikschreiber.underscore.java.util.function.BiPredicate;
 import com.dominikschreiber.underscore.java.util.function.Consumer;
+import com.dominikschreiber.underscore.java.util.function.DoubleBinaryOperator;
+import com.dominikschreiber.underscore.java.util.function.DoublePredicate;
+import com.dominikschreiber.underscore.java.util.function.DoubleUnaryOperator;
 import com.dominikschreiber.underscore.java.util.function.Function;
+import com.dominikschreiber.underscore.java.util.function.IntBinaryOperator;
+import com.dominikschreiber.underscore.java.util.function.IntConsumer;
+import com.dominikschreiber.underscore.java.util.function.IntFunction;
+import com.dominikschreiber.underscore.java.util.function.IntPredicate;
+import com.dominikschreiber.underscore.java.util.function.IntUnaryOperator;
+import com.dominikschreiber.underscore.java.util.function.LongBinaryOperator;
+import com.dominikschreiber.underscore.java.util.function.LongConsumer;
+import com.dominikschreiber.underscore.java.util.function.LongPredicate;
+import com.dominikschreiber.underscore.java.util.function.LongUnaryOperator;
 import com.dominikschreiber.underscore.java.util.function.Predicate;
+import com.dominikschreiber.underscore.java.util.function.Supplier;
+import com.dominikschreiber.underscore.java.util.function.ToLongFunction;
 
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -91,6 +132,141 @@ public class _Test {
         assertEquals("12345", result.toString());
     }
 
+    // ----- _.eachBatch ---------------------------------------------------------------------------
+
+    private static class BatchRecorder<In> implements Consumer<List<In>> {
+        final List<List<In>> batches = Collections.synchronizedList(new ArrayList<List<In>>());
+
+        @Override
+        public void accept(List<In> batch) {
+            batches.add(new ArrayList<In>(batch));
+        }
+    }
+
+    @Test
+    public void staticEachBatch() {
+        BatchRecorder<Integer> recorder = new BatchRecorder<Integer>();
+        _.eachBatch(iterable(1, 2, 3, 4, 5), 2, recorder);
+
+        assertEquals(_.list(_.list(1, 2), _.list(3, 4), _.list(5)), recorder.batches);
+    }
+
+    @Test
+    public void staticEachBatchWithNullInput() {
+        BatchRecorder<Integer> recorder = new BatchRecorder<Integer>();
+        _.eachBatch(null, 2, recorder);
+
+        assertTrue(recorder.batches.isEmpty());
+    }
+
+    @Test
+    public void staticEachBatchParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger maxInFlight = new AtomicInteger();
+            final AtomicLong sum = new AtomicLong();
+
+            _.eachBatch(_.range(1, 10001), 100, new Consumer<List<Integer>>() {
+                @Override
+                public void accept(List<Integer> batch) {
+                    int current = inFlight.incrementAndGet();
+                    int max;
+                    while ((max = maxInFlight.get()) < current && !maxInFlight.compareAndSet(max, current)) {
+                        // retry
+                    }
+                    for (Integer i : batch)
+                        sum.addAndGet(i);
+                    inFlight.decrementAndGet();
+                }
+            }, executor, 2);
+
+            assertEquals(50005000L, sum.get());
+            assertTrue(maxInFlight.get() <= 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void staticEachBatchParallelRethrows() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            _.eachBatch(_.range(1, 1001), 10, new Consumer<List<Integer>>() {
+                @Override
+                public void accept(List<Integer> batch) {
+                    if (batch.contains(500)) throw new IllegalStateException("batch " + batch.get(0));
+                }
+            }, executor, 2);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("batch 491", e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void staticEachBatchParallelWaitsForBatchesWhenIteratorFails() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        Iterable<Integer> failing = new Iterable<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                final Iterator<Integer> values = _.range(1, 1001).iterator();
+                return new Iterator<Integer>() {
+                    @Override
+                    public boolean hasNext() {
+                        return true;
+                    }
+
+                    @Override
+                    public Integer next() {
+                        if (!values.hasNext()) throw new IllegalStateException("cursor closed");
+                        return values.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        try {
+            _.eachBatch(failing, 300, new Consumer<List<Integer>>() {
+                @Override
+                public void accept(List<Integer> batch) {
+                    running.incrementAndGet();
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.incrementAndGet();
+                    running.decrementAndGet();
+                }
+            }, executor, 2);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("cursor closed", e.getMessage());
+            assertEquals(0, running.get());
+            assertTrue(done.get() >= 2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void chainedEachBatch() {
+        BatchRecorder<Integer> recorder = new BatchRecorder<Integer>();
+        new _<Integer>(_.list(1, 2, 3)).eachBatch(3, recorder);
+
+        assertEquals(_.list(_.list(1, 2, 3)), recorder.batches);
+    }
+
     // ----- _.map ---------------------------------------------------------------------------------
 
     @Test
@@ -134,6 +310,145 @@ public class _Test {
         assertEquals(expected, actual);
     }
 
+    // ----- _.mapAsync ----------------------------------------------------------------------------
+
+    /** sleeps for {@code input} milliseconds and tracks the highest number of concurrent calls */
+    private static final class SlowSquare implements Function<Integer, Integer> {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public Integer apply(Integer input) {
+            int now = running.incrementAndGet();
+            int max;
+            while (now > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, now)) {
+                // retry
+            }
+            try {
+                Thread.sleep(input);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            return input * input;
+        }
+    }
+
+    @Test
+    public void mapAsync() {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            SlowSquare slowSquare = new SlowSquare();
+            List<Integer> sleeps = _.list(20, 5, 15, 1, 10, 3, 8, 2, 12, 4);
+
+            assertEquals(_.map(sleeps, square), _.mapAsync(sleeps, slowSquare, 3, executor));
+            assertTrue(slowSquare.maxRunning.get() <= 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void mapAsyncDefaultExecutor() {
+        assertEquals(_.list(1, 4, 9), _.mapAsync(iterable(1, 2, 3), square, 2, null));
+        assertEquals(_.list(1, 4, 9), new _<Integer>(_.list(1, 2, 3)).mapAsync(square, 2, null).value());
+        assertEquals(Collections.<Integer>emptyList(), _.mapAsync(null, square, 2, null));
+    }
+
+    @Test
+    public void mapAsyncFailFast() {
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            _.mapAsync(_.range(100), new Function<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer input) {
+                    calls.incrementAndGet();
+                    if (input == 3) throw new IllegalArgumentException("3");
+                    return input;
+                }
+            }, 1, null);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("3", e.getMessage());
+        }
+        assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void mapAsyncCollect() {
+        Async.Options options = new Async.Options();
+        options.maxConcurrency = 4;
+        options.failurePolicy = Async.FailurePolicy.COLLECT;
+        try {
+            _.mapAsync(_.range(10), new Function<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer input) {
+                    if (input % 3 == 0) throw new IllegalArgumentException(String.valueOf(input));
+                    return input;
+                }
+            }, options);
+            fail("expected Async.Failure");
+        } catch (Async.Failure failure) {
+            assertEquals(_.list(null, 1, 2, null, 4, 5, null, 7, 8, null), failure.results());
+            assertEquals(_.list(0, 3, 6, 9), new ArrayList<Integer>(failure.errors().keySet()));
+            assertEquals("6", failure.errors().get(6).getMessage());
+        }
+    }
+
+    @Test
+    public void mapAsyncTimeout() {
+        Async.Options options = new Async.Options();
+        options.maxConcurrency = 2;
+        options.failurePolicy = Async.FailurePolicy.COLLECT;
+        options.timeout = 200L;
+        SlowSquare slowSquare = new SlowSquare();
+        long start = System.nanoTime();
+        try {
+            _.mapAsync(_.list(1, 10000, 2), slowSquare, options);
+            fail("expected Async.Failure");
+        } catch (Async.Failure failure) {
+            assertEquals(_.list(1, null, 4), failure.results());
+            assertTrue(failure.errors().get(1) instanceof TimeoutException);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+    }
+
+    @Test(timeout = 10000)
+    public void mapAsyncTimeoutReleasesHungCalls() {
+        final CountDownLatch release = new CountDownLatch(1);
+        Function<Integer, Integer> hangs = new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer input) {
+                if (input > 0) return input;
+                // like blocking I/O, does not stop when interrupted
+                while (true) {
+                    try {
+                        release.await();
+                        return input;
+                    } catch (InterruptedException e) {
+                        // ignored
+                    }
+                }
+            }
+        };
+        Async.Options options = new Async.Options();
+        options.maxConcurrency = 1;
+        options.failurePolicy = Async.FailurePolicy.COLLECT;
+        options.timeout = 20L;
+
+        try {
+            _.mapAsync(_.list(0, 0, 1), hangs, options);
+            fail("expected Async.Failure");
+        } catch (Async.Failure failure) {
+            assertEquals(_.list(0, 1), new ArrayList<Integer>(failure.errors().keySet()));
+            assertTrue(failure.errors().get(0) instanceof TimeoutException);
+            assertEquals(Integer.valueOf(1), failure.results().get(2));
+        } finally {
+            release.countDown();
+        }
+    }
+
     // ----- _.filter ------------------------------------------------------------------------------
 
     @Test
@@ -215,179 +530,814 @@ public class _Test {
         assertTrue(4 + 16 + 36 + 64 + 100 == sumOfEvenSquares);
     }
 
-    // ---- _.contains -----------------------------------------------------------------------------
+    // ----- _.lazy --------------------------------------------------------------------------------
 
     @Test
-    public void staticContainsWithIntegers() {
-        assertTrue(_.contains(_.range(1, 6), 4));
-        assertFalse(_.contains(_.range(1, 4), 6));
+    public void lazyComplexWithSumOfEvenSquares() {
+        assertTrue(20 == _.lazy(_.range(1, 5))
+                .map(square)
+                .filter(isEven)
+                .reduce(sum, 0));
     }
 
     @Test
-    public void staticContainsWithNullInput() {
-        assertFalse(_.contains(null, "foo"));
-    }
+    public void lazyDoesNotEvaluateBeforeTerminal() {
+        final int[] calls = {0};
+        _<Integer> chain = _.lazy(_.range(1, 6))
+                .map(new Function<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer input) {
+                        calls[0] += 1;
+                        return input;
+                    }
+                })
+                .filter(isEven);
 
-    @Test
-    public void chainedContainsWithIntegers() {
-        assertTrue(new _<Integer>(_.range(1, 6)).contains(4));
-        assertFalse(new _<Integer>(_.range(1, 4)).contains(6));
+        assertEquals(0, calls[0]);
+        assertEquals(_.list(2, 4), chain.value());
+        assertEquals(5, calls[0]);
     }
 
     @Test
-    public void staticContainsWithStringEquals() {
-        assertTrue(_.contains(_.list("foo", "bar", "baz"), "foo", stringEquals));
-        assertFalse(_.contains(_.list("foo", "bar"), "baz", stringEquals));
-    }
+    public void lazyFindShortCircuits() {
+        final int[] calls = {0};
+        Integer found = new _<Integer>(_.range(1, 1000)).lazy()
+                .map(new Function<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer input) {
+                        calls[0] += 1;
+                        return input * input;
+                    }
+                })
+                .find(isEven);
 
-    @Test
-    public void chainedContainsWithStringEquals() {
-        assertTrue(new _<String>(_.list("foo", "bar", "baz")).contains("foo", stringEquals));
-        assertFalse(new _<String>(_.list("foo", "bar")).contains("baz", stringEquals));
+        assertTrue(4 == found);
+        assertEquals(2, calls[0]);
     }
 
-    // ----- _.sortBy ------------------------------------------------------------------------------
-
     @Test
-    public void staticSortBy() {
-        assertEquals(_.list("foo", "test", "qwert", "zuiopü"), _.sortBy(_.list("test", "zuiopü", "foo", "qwert"), length));
+    public void lazyFirstShortCircuits() {
+        final int[] calls = {0};
+        Iterable<Integer> result = _.lazy(_.range(1, 1000))
+                .filter(new Predicate<Integer>() {
+                    @Override
+                    public boolean test(Integer input) {
+                        calls[0] += 1;
+                        return input % 2 == 0;
+                    }
+                })
+                .first(3)
+                .value();
+
+        assertEquals(_.list(2, 4, 6), result);
+        assertEquals(6, calls[0]);
     }
 
     @Test
-    public void staticSortByNullInput() {
-        assertEquals(Collections.emptyList(), _.sortBy(null, length));
+    public void lazyRestRejectZip() {
+        assertEquals(_.list(_.entry(3, "a"), _.entry(5, "b")),
+                _.lazy(_.range(1, 8)).rest(2).reject(isEven).zip(_.list("a", "b")).value());
     }
 
     @Test
-    public void chainedSortBy() {
-        assertEquals(_.list("foo", "test", "qwert", "zuiopü"), new _<String>(_.list("test", "zuiopü", "foo", "qwert")).sortBy(length).value());
+    public void lazyTerminals() {
+        _<Integer> chain = _.lazy(_.range(1, 6)).map(square);
+
+        assertEquals(5, chain.size());
+        assertEquals("1,4,9,16,25", chain.join());
+        assertTrue(chain.some(isEven));
+        assertFalse(chain.every(isEven));
+        assertEquals(_.list(25, 16), chain.sortBy(new Function<Integer, Long>() {
+            @Override
+            public Long apply(Integer input) {
+                return (long) -input;
+            }
+        }).first(2).value());
     }
 
     @Test
-    public void chainedSortByNullInput() {
-        assertEquals(Collections.emptyList(), new _<String>(null).sortBy(length).value());
+    public void lazyNullInput() {
+        assertEquals(Collections.emptyList(), _.<Integer>lazy(null).map(square).value());
+        assertEquals(0, _.<Integer>lazy(null).filter(isEven).size());
     }
 
-    // ----- _.groupBy -----------------------------------------------------------------------------
+    // ----- _.parallel ----------------------------------------------------------------------------
 
     @Test
-    public void staticGroupBy() {
-        Map<Integer, List<String>> expected = new HashMap<Integer, List<String>>();
-        expected.put(3, _.list("foo", "bar", "baz"));
-        expected.put(4, _.list("this", "shit"));
+    public void parallelMapFilterKeepEncounterOrder() {
+        List<Integer> values = _.range(0, 100000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertEquals(_.filter(_.map(values, square), isEven),
+                    _.parallel(values, executor).map(square).filter(isEven).value());
+            assertEquals(_.reject(values, isEven),
+                    _.parallel(values, executor).reject(isEven).value());
+        } finally {
+            executor.shutdown();
+        }
+    }
 
-        assertEquals(expected, _.groupBy(_.list("foo", "bar", "baz", "this", "shit"), new Function<String, Integer>() {
-            public Integer apply(String s) {
-                return s.length();
+    @Test
+    public void parallelFindReturnsFirstMatch() {
+        assertTrue(50001 == _.parallel(_.range(0, 100000)).find(new Predicate<Integer>() {
+            @Override
+            public boolean test(Integer input) {
+                return input > 50000;
+            }
+        }));
+        assertEquals(null, _.parallel(_.range(0, 100000)).find(new Predicate<Integer>() {
+            @Override
+            public boolean test(Integer input) {
+                return input < 0;
             }
         }));
     }
 
     @Test
-    public void staticGroupByNullInput() {
-        assertEquals(Collections.emptyMap(), _.groupBy(null, _.identity(Integer.class)));
+    public void parallelSomeEvery() {
+        assertTrue(_.parallel(_.range(0, 100000)).some(isEven));
+        assertFalse(_.parallel(_.range(0, 100000)).every(isEven));
+        assertTrue(_.parallel(_.range(0, 100000, 2)).every(isEven));
+        assertFalse(_.parallel(_.range(1, 100000, 2)).some(isEven));
     }
 
     @Test
-    public void chainedGroupBy() {
-        Map<Integer, List<String>> expected = new HashMap<Integer, List<String>>();
-        expected.put(3, _.list("foo", "bar", "baz"));
-        expected.put(4, _.list("this", "shit"));
+    public void parallelReduceWithCombiner() {
+        BiFunction<Integer, Long, Long> add = new BiFunction<Integer, Long, Long>() {
+            @Override
+            public Long apply(Integer current, Long sum) {
+                return current + sum;
+            }
+        };
+        BiFunction<Long, Long, Long> combine = new BiFunction<Long, Long, Long>() {
+            @Override
+            public Long apply(Long a, Long b) {
+                return a + b;
+            }
+        };
 
-        assertEquals(expected, new _<String>(_.list("foo", "bar", "baz", "this", "shit"))
-                .groupBy(new Function<String, Integer>() {
-                    public Integer apply(String s) {
-                        return s.length();
+        assertEquals(Long.valueOf(99999L * 100000L / 2), _.parallel(_.range(0, 100000)).reduce(add, 0L, combine));
+        assertEquals(Long.valueOf(0L), _.parallel((Iterable<Integer>) null).reduce(add, 0L, combine));
+        assertEquals(Long.valueOf(10L), new _<Integer>(_.range(1, 5)).reduce(add, 0L, combine));
+    }
+
+    @Test(timeout = 30000)
+    public void parallelNestedInParallelDoesNotDeadlock() {
+        final List<Integer> inner = _.range(4 * Parallel.MIN_CHUNK_SIZE);
+        int size = 4 * Parallel.parallelism() * Parallel.MIN_CHUNK_SIZE;
+
+        Iterable<Integer> sums = _.parallel(_.range(size)).map(new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer input) {
+                // the first value of each chunk waits for a parallel chain of its own
+                if (input % Parallel.MIN_CHUNK_SIZE != 0) return 0;
+                return _.parallel(inner).map(square).reduce(new BiFunction<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer value, Integer sum) {
+                        return value % 2 + sum;
                     }
-                })
-        );
+                }, 0, new BiFunction<Integer, Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer a, Integer b) {
+                        return a + b;
+                    }
+                });
+            }
+        }).value();
+
+        assertEquals(size, _.size(sums));
+        assertEquals(Integer.valueOf(inner.size() / 2), _.first(_.rest(sums, Parallel.MIN_CHUNK_SIZE)));
     }
 
     @Test
-    public void chainedGroupNullInput() {
-        assertEquals(Collections.emptyMap(), new _<Integer>(null).groupBy(_.identity(Integer.class)));
+    public void parallelPropagatesExceptions() {
+        try {
+            _.parallel(_.range(0, 100000)).map(new Function<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer input) {
+                    if (input == 77777) throw new IllegalArgumentException("77777");
+                    return input;
+                }
+            });
+            fail("exception expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("77777", e.getMessage());
+        }
     }
 
-    // ----- _.reject ------------------------------------------------------------------------------
+    // ---- _.contains -----------------------------------------------------------------------------
 
     @Test
-    public void staticRejectWithIsEven() {
-        assertEquals(_.list(1,3,5), _.reject(_.range(1, 6), isEven));
+    public void staticContainsWithIntegers() {
+        assertTrue(_.contains(_.range(1, 6), 4));
+        assertFalse(_.contains(_.range(1, 4), 6));
     }
 
     @Test
-    public void staticRejectWithIsEvenWithNullInput() {
-        assertEquals(Collections.emptyList(), _.reject(null, isEven));
+    public void staticContainsWithNullInput() {
+        assertFalse(_.contains(null, "foo"));
     }
 
     @Test
-    public void chainedRejectWithIsEven() {
-        assertEquals(_.list(1,3,5), new _<Integer>(_.range(1, 6)).reject(isEven).value());
+    public void chainedContainsWithIntegers() {
+        assertTrue(new _<Integer>(_.range(1, 6)).contains(4));
+        assertFalse(new _<Integer>(_.range(1, 4)).contains(6));
     }
 
     @Test
-    public void chainedRejectWithIsEvenWithNullInput() {
-        assertEquals(Collections.emptyList(), new _<Integer>(null).reject(isEven).value());
+    public void staticContainsWithStringEquals() {
+        assertTrue(_.contains(_.list("foo", "bar", "baz"), "foo", stringEquals));
+        assertFalse(_.contains(_.list("foo", "bar"), "baz", stringEquals));
     }
 
-    // ----- _.every -------------------------------------------------------------------------------
-
     @Test
-    public void staticEvery() {
-        assertTrue(_.every(_.list(2,4,6), isEven));
-        assertFalse(_.every(_.range(1, 6), isEven));
+    public void chainedContainsWithStringEquals() {
+        assertTrue(new _<String>(_.list("foo", "bar", "baz")).contains("foo", stringEquals));
+        assertFalse(new _<String>(_.list("foo", "bar")).contains("baz", stringEquals));
     }
 
     @Test
-    public void staticEveryWithNullInput() {
-        assertTrue(_.every(null, isEven));
+    public void staticContainsWithNullValues() {
+        assertTrue(_.contains(_.list(1, null, 3), (Integer) null));
+        assertFalse(_.contains(_.list(1, 2, 3), (Integer) null));
     }
 
     @Test
-    public void chainedEvery() {
-        assertTrue(new _<Integer>(_.list(2,4,6)).every(isEven));
-        assertFalse(new _<Integer>(_.range(1, 6)).every(isEven));
+    public void staticContainsWithIndexAndSet() {
+        assertTrue(_.contains(_.index(_.list(1, 2, 3)), 2));
+        assertFalse(_.contains(_.index(_.list(1, 2, 3)), 4));
+        assertTrue(_.contains(new HashSet<Integer>(_.list(1, 2, 3)), 3));
+        // an index by another key is searched by its values
+        assertTrue(_.contains(_.indexBy(_.list("foo", "quux"), stringLength), "quux"));
+        assertFalse(_.contains(_.indexBy(_.list("foo", "quux"), stringLength), "bar"));
     }
 
     @Test
-    public void chainedEveryWithNullInput() {
-        assertTrue(new _<Integer>(null).every(isEven));
+    public void chainedContainsWithIndex() {
+        assertTrue(new _<Integer>(_.index(_.list(1, 2, 3))).contains(1));
     }
 
-    // ----- _.some --------------------------------------------------------------------------------
+    // ----- _.pipeline ----------------------------------------------------------------------------
 
     @Test
-    public void staticSome() {
-        assertTrue(_.some(_.range(1, 6), isEven));
-        assertFalse(_.some(_.list(1,3), isEven));
+    public void pipeline() {
+        List<Integer> values = _.range(1, 10000);
+        Predicate<Integer> isOdd = _.negate(isEven);
+
+        assertEquals(_.filter(_.map(values, square), isEven),
+                _.pipeline(values).map(square, 4).filter(isEven, 3).value());
+        assertEquals(_.filter(_.map(values, square), isOdd),
+                new _<Integer>(values).pipeline().capacity(4).map(square).reject(isEven, 2).value());
+        assertEquals(Collections.<Integer>emptyList(), _.pipeline(Collections.<Integer>emptyList()).map(square).value());
     }
 
     @Test
-    public void staticSomeWithNullInput() {
-        assertFalse(_.some(null, isEven));
+    public void pipelineEachKeepsOrder() {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        _.pipeline(iterable(1, 2, 3, 4, 5, 6)).map(square, 3).each(recorder);
+        assertEquals(_.list(1, 4, 9, 16, 25, 36), recorder.calls);
     }
 
     @Test
-    public void chainedSome() {
-        assertTrue(new _<Integer>(_.range(1, 6)).some(isEven));
-        assertFalse(new _<Integer>(_.list(1,3)).some(isEven));
+    public void pipelineEachParallel() {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        _.pipeline(_.range(1000)).map(square, 2).each(recorder, 4);
+        List<Integer> calls = new ArrayList<Integer>(recorder.calls);
+        Collections.sort(calls);
+        assertEquals(_.map(_.range(1000), square), calls);
     }
 
     @Test
-    public void chainedSomeWithNullInput() {
-        assertFalse(new _<Integer>(null).some(isEven));
-    }
+    public void pipelineBackpressure() {
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        Iterable<Integer> counted = new Iterable<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                final Iterator<Integer> values = _.range(2000).iterator();
+                return new Iterator<Integer>() {
+                    @Override
+                    public boolean hasNext() {
+                        return values.hasNext();
+                    }
 
-    // ----- _.size --------------------------------------------------------------------------------
+                    @Override
+                    public Integer next() {
+                        read.incrementAndGet();
+                        return values.next();
+                    }
 
-    @Test
-    public void staticSize() {
-        assertEquals(3, _.size(_.range(1, 4)));
-    }
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
 
-    @Test
-    public void staticSizeWithNullInput() {
-        assertEquals(0, _.size(null));
+        _.pipeline(counted).capacity(4).map(square, 2).each(new Consumer<Integer>() {
+            @Override
+            public void accept(Integer input) {
+                maxAhead.set(Math.max(maxAhead.get(), read.get() - written.incrementAndGet()));
+            }
+        });
+
+        assertEquals(2000, written.get());
+        // the source is read ahead of the last stage by at most the queues and the values in the workers
+        assertTrue(maxAhead.get() <= 2 * 4 + 2 + 1);
+    }
+
+    @Test
+    public void pipelineStopsOnError() {
+        final AtomicInteger handled = new AtomicInteger();
+        try {
+            _.pipeline(_.range(100000)).capacity(8).map(new Function<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer input) {
+                    if (input == 100) throw new IllegalArgumentException("100");
+                    return input;
+                }
+            }, 2).each(new Consumer<Integer>() {
+                @Override
+                public void accept(Integer input) {
+                    handled.incrementAndGet();
+                }
+            });
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("100", e.getMessage());
+        }
+        assertTrue(handled.get() < 1000);
+    }
+
+    @Test
+    public void boundedQueue() {
+        BoundedQueue<Integer> queue = new BoundedQueue<Integer>(3);
+        assertEquals(null, queue.poll());
+        for (int i = 0; i < 4; i++)
+            assertTrue(queue.offer(i));
+        assertFalse(queue.offer(4));
+        assertEquals(Integer.valueOf(0), queue.poll());
+        assertTrue(queue.offer(4));
+        for (int i = 1; i < 5; i++)
+            assertEquals(Integer.valueOf(i), queue.poll());
+        assertEquals(null, queue.poll());
+    }
+
+    @Test
+    public void boundedQueueWakesParkedConsumers() throws InterruptedException {
+        final BoundedQueue<Integer> queue = new BoundedQueue<Integer>(2);
+        final List<Integer> polled = Collections.synchronizedList(new ArrayList<Integer>());
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Integer element = queue.poll();
+                    if (element != null) {
+                        polled.add(element);
+                    } else if (queue.isClosed() && (element = queue.poll()) == null) {
+                        return;
+                    } else if (element != null) {
+                        polled.add(element);
+                    } else {
+                        // long enough to fail the test if the offer did not unpark it
+                        queue.awaitElement(TimeUnit.MINUTES.toNanos(1));
+                    }
+                }
+            }
+        });
+        consumer.start();
+
+        Thread.sleep(50);
+        assertTrue(queue.offer(1));
+        Thread.sleep(50);
+        assertTrue(queue.offer(2));
+        queue.close();
+        consumer.join(10000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(_.list(1, 2), polled);
+    }
+
+    // ----- _.index -------------------------------------------------------------------------------
+
+    @Test
+    public void staticIndex() {
+        Index<String, String> index = _.index(_.list("foo", "bar", "foo", null));
+
+        assertTrue(index.contains("foo"));
+        assertTrue(index.contains(null));
+        assertFalse(index.contains("baz"));
+        assertEquals(_.list("foo", "foo"), index.get("foo"));
+        assertEquals(Collections.emptyList(), index.get("baz"));
+        assertEquals(4, index.size());
+        assertEquals(3, index.keys());
+        assertEquals(_.list("foo", "bar", "foo", null), new _<String>(index).map(_.identity(String.class)).value());
+    }
+
+    @Test
+    public void staticIndexWithNullInput() {
+        Index<Integer, Integer> index = _.index(null);
+
+        assertEquals(0, index.size());
+        assertFalse(index.contains(1));
+    }
+
+    @Test
+    public void staticIndexBy() {
+        Index<Integer, String> index = _.indexBy(iterable("foo", "quux", "bar"), stringLength);
+
+        assertTrue(index.contains(3));
+        assertFalse(index.contains(5));
+        assertEquals("foo", index.find(3));
+        assertEquals(null, index.find(5));
+        assertEquals(_.list("foo", "bar"), index.get(3));
+        assertEquals(_.list("quux"), index.get(4));
+    }
+
+    @Test
+    public void staticIndexBySorted() {
+        SortedIndex<Integer, String> index = _.indexBy(_.list("quux", "foo", "a", "bar", "hello"), stringLength,
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return a.compareTo(b);
+                    }
+                });
+
+        assertEquals(_.list("a", "foo", "bar", "quux", "hello"), index.sorted());
+        assertEquals(_.list("foo", "bar", "quux"), index.range(2, 5));
+        assertEquals(Collections.emptyList(), index.range(6, 10));
+        assertEquals(Collections.emptyList(), index.range(4, 2));
+        assertEquals("bar", index.floor(3));
+        assertEquals("quux", index.floor(4));
+        assertEquals(null, index.floor(0));
+        assertEquals("foo", index.ceiling(2));
+        assertEquals(null, index.ceiling(6));
+        assertEquals("quux", index.find(4));
+    }
+
+    @Test
+    public void staticIndexBySortedComputesEachKeyOnce() {
+        final AtomicInteger calls = new AtomicInteger();
+        Function<Integer, Integer> lastDigit = new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer input) {
+                calls.incrementAndGet();
+                return input % 10;
+            }
+        };
+
+        SortedIndex<Integer, Integer> index = _.indexBy(_.list(31, 12, 43, 22, 5, 11, 92, 3, 41, 70, 2, 13), lastDigit,
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return a.compareTo(b);
+                    }
+                });
+
+        assertEquals(12, calls.get());
+        assertEquals(_.list(70, 31, 11, 41, 12, 22, 92, 2, 43, 3, 13, 5), index.sorted());
+        assertEquals(_.list(12, 22, 92, 2), index.get(2));
+    }
+
+    @Test
+    public void chainedIndex() {
+        assertTrue(new _<Integer>(_.list(1, 2, 3)).map(square).index().contains(9));
+        assertEquals(_.list("foo"), new _<String>(_.list("foo", "quux")).indexBy(stringLength).get(3));
+    }
+
+    // ----- _.sortBy ------------------------------------------------------------------------------
+
+    @Test
+    public void staticSortBy() {
+        assertEquals(_.list("foo", "test", "qwert", "zuiopü"), _.sortBy(_.list("test", "zuiopü", "foo", "qwert"), length));
+    }
+
+    @Test
+    public void staticSortByNullInput() {
+        assertEquals(Collections.emptyList(), _.sortBy(null, length));
+    }
+
+    @Test
+    public void chainedSortBy() {
+        assertEquals(_.list("foo", "test", "qwert", "zuiopü"), new _<String>(_.list("test", "zuiopü", "foo", "qwert")).sortBy(length).value());
+    }
+
+    @Test
+    public void chainedSortByNullInput() {
+        assertEquals(Collections.emptyList(), new _<String>(null).sortBy(length).value());
+    }
+
+    @Test
+    public void staticSortByAppliesCriterionOncePerValue() {
+        final int[] calls = {0};
+        List<Integer> values = _.map(_.range(0, 1000), new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer input) {
+                return (input * 7919) % 1000;
+            }
+        });
+
+        List<Integer> sorted = _.sortByLong(values, new ToLongFunction<Integer>() {
+            @Override
+            public long applyAsLong(Integer input) {
+                calls[0] += 1;
+                return input;
+            }
+        });
+
+        assertEquals(_.range(0, 1000), sorted);
+        assertEquals(1000, calls[0]);
+    }
+
+    @Test
+    public void staticSortByIsStable() {
+        ToLongFunction<String> firstChar = new ToLongFunction<String>() {
+            @Override
+            public long applyAsLong(String input) {
+                return input.charAt(0);
+            }
+        };
+
+        assertEquals(_.list("a1", "a2", "a3", "b1", "b2", "c1"),
+                _.sortByLong(_.list("b1", "a1", "c1", "a2", "b2", "a3"), firstChar));
+    }
+
+    @Test
+    public void chainedSortByPrimitiveCriterion() {
+        assertEquals(_.list(3, 2, 1), new _<Integer>(_.list(1, 3, 2)).sortByLong(new ToLongFunction<Integer>() {
+            @Override
+            public long applyAsLong(Integer input) {
+                return -input;
+            }
+        }).value());
+    }
+
+    @Test
+    public void staticSortByLargeInputMatchesComparisonSort() {
+        final Random random = new Random(42);
+        List<Long> values = _.map(_.range(0, 50000), new Function<Integer, Long>() {
+            @Override
+            public Long apply(Integer input) {
+                // few distinct keys (to check stability) including negative ones
+                return (long) (random.nextInt(2000) - 1000) * 1000000000L + input;
+            }
+        });
+        ToLongFunction<Long> byThousands = new ToLongFunction<Long>() {
+            @Override
+            public long applyAsLong(Long input) {
+                return input / 1000000000L;
+            }
+        };
+        List<Long> expected = new ArrayList<Long>(values);
+        Collections.sort(expected, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                long x = a / 1000000000L;
+                long y = b / 1000000000L;
+                return x < y ? -1 : x > y ? 1 : 0;
+            }
+        });
+
+        assertEquals(expected, _.sortByLong(values, byThousands));
+        assertEquals(expected, _.parallel(values).sortByLong(byThousands).value());
+    }
+
+    @Test
+    public void parallelSortByLargeInput() {
+        List<Integer> values = _.range(200000, 0, -1);
+        assertEquals(_.range(1, 200001), _.parallel(values).sortByLong(new ToLongFunction<Integer>() {
+            @Override
+            public long applyAsLong(Integer input) {
+                return input;
+            }
+        }).value());
+    }
+
+    // ----- _.groupBy -----------------------------------------------------------------------------
+
+    @Test
+    public void staticGroupBy() {
+        Map<Integer, List<String>> expected = new HashMap<Integer, List<String>>();
+        expected.put(3, _.list("foo", "bar", "baz"));
+        expected.put(4, _.list("this", "shit"));
+
+        assertEquals(expected, _.groupBy(_.list("foo", "bar", "baz", "this", "shit"), new Function<String, Integer>() {
+            public Integer apply(String s) {
+                return s.length();
+            }
+        }));
+    }
+
+    @Test
+    public void staticGroupByNullInput() {
+        assertEquals(Collections.emptyMap(), _.groupBy(null, _.identity(Integer.class)));
+    }
+
+    @Test
+    public void chainedGroupBy() {
+        Map<Integer, List<String>> expected = new HashMap<Integer, List<String>>();
+        expected.put(3, _.list("foo", "bar", "baz"));
+        expected.put(4, _.list("this", "shit"));
+
+        assertEquals(expected, new _<String>(_.list("foo", "bar", "baz", "this", "shit"))
+                .groupBy(new Function<String, Integer>() {
+                    public Integer apply(String s) {
+                        return s.length();
+                    }
+                })
+        );
+    }
+
+    @Test
+    public void chainedGroupNullInput() {
+        assertEquals(Collections.emptyMap(), new _<Integer>(null).groupBy(_.identity(Integer.class)));
+    }
+
+    // ----- _.countBy -----------------------------------------------------------------------------
+
+    private Function<String, Integer> stringLength = new Function<String, Integer>() {
+        @Override
+        public Integer apply(String s) {
+            return s.length();
+        }
+    };
+
+    @Test
+    public void staticCountBy() {
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        expected.put(3, 3);
+        expected.put(4, 2);
+
+        assertEquals(expected, _.countBy(_.list("foo", "bar", "baz", "this", "shit"), stringLength));
+        assertEquals(Collections.emptyMap(), _.countBy(null, stringLength));
+    }
+
+    @Test
+    public void chainedCountBy() {
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        expected.put(3, 1);
+
+        assertEquals(expected, new _<String>(_.list("foo")).countBy(stringLength));
+    }
+
+    // ----- _.sumBy -------------------------------------------------------------------------------
+
+    @Test
+    public void staticSumBy() {
+        Map<Integer, Long> expected = new HashMap<Integer, Long>();
+        expected.put(3, 6L);
+        expected.put(4, 8L);
+
+        assertEquals(expected, _.sumBy(_.list("foo", "bar", "this", "shit"), stringLength, new ToLongFunction<String>() {
+            @Override
+            public long applyAsLong(String s) {
+                return s.length();
+            }
+        }));
+    }
+
+    // ----- _.minBy/_.maxBy -----------------------------------------------------------------------
+
+    @Test
+    public void staticMinByMaxBy() {
+        ToLongFunction<String> firstChar = new ToLongFunction<String>() {
+            @Override
+            public long applyAsLong(String s) {
+                return s.charAt(0);
+            }
+        };
+        Map<Integer, String> min = new HashMap<Integer, String>();
+        min.put(3, "bar");
+        min.put(4, "shit");
+        Map<Integer, String> max = new HashMap<Integer, String>();
+        max.put(3, "foo");
+        max.put(4, "this");
+        List<String> values = _.list("foo", "bar", "baz", "this", "shit");
+
+        assertEquals(min, _.minBy(values, stringLength, firstChar));
+        assertEquals(max, new _<String>(values).maxBy(stringLength, firstChar));
+    }
+
+    // ----- _.reduceBy ----------------------------------------------------------------------------
+
+    @Test
+    public void staticReduceBy() {
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        expected.put(3, "bazbarfoo");
+        expected.put(4, "shitthis");
+
+        assertEquals(expected, _.reduceBy(_.list("foo", "bar", "baz", "this", "shit"), stringLength,
+                new BiFunction<String, String, String>() {
+                    @Override
+                    public String apply(String now, String accumulator) {
+                        return now + accumulator;
+                    }
+                }, ""));
+    }
+
+    @Test
+    public void chainedReduceByWithMutableAccumulator() {
+        Map<Integer, StringBuilder> result = new _<String>(_.list("foo", "bar", "this"))
+                .reduceBy(stringLength, new BiConsumer<String, StringBuilder>() {
+                    @Override
+                    public void accept(String s, StringBuilder builder) {
+                        builder.append(s);
+                    }
+                }, new Supplier<StringBuilder>() {
+                    @Override
+                    public StringBuilder get() {
+                        return new StringBuilder();
+                    }
+                });
+
+        assertEquals(2, result.size());
+        assertEquals("foobar", result.get(3).toString());
+        assertEquals("this", result.get(4).toString());
+    }
+
+    // ----- _.reject ------------------------------------------------------------------------------
+
+    @Test
+    public void staticRejectWithIsEven() {
+        assertEquals(_.list(1,3,5), _.reject(_.range(1, 6), isEven));
+    }
+
+    @Test
+    public void staticRejectWithIsEvenWithNullInput() {
+        assertEquals(Collections.emptyList(), _.reject(null, isEven));
+    }
+
+    @Test
+    public void chainedRejectWithIsEven() {
+        assertEquals(_.list(1,3,5), new _<Integer>(_.range(1, 6)).reject(isEven).value());
+    }
+
+    @Test
+    public void chainedRejectWithIsEvenWithNullInput() {
+        assertEquals(Collections.emptyList(), new _<Integer>(null).reject(isEven).value());
+    }
+
+    // ----- _.every -------------------------------------------------------------------------------
+
+    @Test
+    public void staticEvery() {
+        assertTrue(_.every(_.list(2,4,6), isEven));
+        assertFalse(_.every(_.range(1, 6), isEven));
+    }
+
+    @Test
+    public void staticEveryWithNullInput() {
+        assertTrue(_.every(null, isEven));
+    }
+
+    @Test
+    public void chainedEvery() {
+        assertTrue(new _<Integer>(_.list(2,4,6)).every(isEven));
+        assertFalse(new _<Integer>(_.range(1, 6)).every(isEven));
+    }
+
+    @Test
+    public void chainedEveryWithNullInput() {
+        assertTrue(new _<Integer>(null).every(isEven));
+    }
+
+    // ----- _.some --------------------------------------------------------------------------------
+
+    @Test
+    public void staticSome() {
+        assertTrue(_.some(_.range(1, 6), isEven));
+        assertFalse(_.some(_.list(1,3), isEven));
+    }
+
+    @Test
+    public void staticSomeWithNullInput() {
+        assertFalse(_.some(null, isEven));
+    }
+
+    @Test
+    public void chainedSome() {
+        assertTrue(new _<Integer>(_.range(1, 6)).some(isEven));
+        assertFalse(new _<Integer>(_.list(1,3)).some(isEven));
+    }
+
+    @Test
+    public void chainedSomeWithNullInput() {
+        assertFalse(new _<Integer>(null).some(isEven));
+    }
+
+    // ----- _.size --------------------------------------------------------------------------------
+
+    @Test
+    public void staticSize() {
+        assertEquals(3, _.size(_.range(1, 4)));
+    }
+
+    @Test
+    public void staticSizeWithNullInput() {
+        assertEquals(0, _.size(null));
     }
 
     @Test
@@ -395,272 +1345,1616 @@ public class _Test {
         assertEquals(3, new _<Integer>(_.range(1, 4)).size());
     }
 
-    // ----- _.first -------------------------------------------------------------------------------
+    @Test
+    public void staticSizeOfNonCollection() {
+        assertEquals(4, _.size(iterable(1, 2, 3, 4)));
+    }
+
+    /** wraps {@code values} in an {@link Iterable} that is neither a {@link java.util.Collection} nor indexed */
+    private static <In> Iterable<In> iterable(In... values) {
+        final List<In> list = _.list(values);
+        return new Iterable<In>() {
+            @Override
+            public Iterator<In> iterator() {
+                return list.iterator();
+            }
+        };
+    }
+
+    @Test
+    public void staticOperationsOnSequentialInputs() {
+        List<Integer> linked = new LinkedList<Integer>(_.range(1, 6));
+        Iterable<Integer> iterable = iterable(1, 2, 3, 4, 5);
+
+        for (Iterable<Integer> values : _.list(linked, iterable)) {
+            assertEquals(_.list(1, 4, 9, 16, 25), _.map(values, square));
+            assertEquals(_.list(2, 4), _.filter(values, isEven));
+            assertEquals(_.list(1, 2), _.first(values, 2));
+            assertTrue(1 == _.first(values));
+            assertEquals(_.list(1, 2, 3), _.initial(values, 2));
+            assertEquals(_.list(4, 5), _.last(values, 2));
+            assertTrue(5 == _.last(values));
+            assertEquals(_.list(3, 4, 5), _.rest(values, 2));
+            assertEquals(_.list(_.entry(1, 5), _.entry(2, 4)), _.zip(values, _.list(5, 4)));
+            assertTrue(15 == _.reduce(values, sum, 0));
+        }
+    }
+
+    @Test
+    public void staticSliceBounds() {
+        assertEquals(_.range(1, 6), _.last(_.range(1, 6), 10));
+        assertEquals(Collections.emptyList(), _.last(_.range(1, 6), -1));
+        assertEquals(_.range(1, 6), _.rest(_.range(1, 6), -1));
+        assertEquals(Collections.emptyList(), _.rest(_.range(1, 6), 10));
+        assertEquals(Collections.emptyList(), _.initial(_.range(1, 6), 10));
+        assertEquals(Collections.emptyList(), _.first(_.range(1, 6), -1));
+        assertEquals(null, _.first(Collections.<Integer>emptyList()));
+        assertEquals(null, _.last(Collections.<Integer>emptyList()));
+    }
+
+    // ----- _.first -------------------------------------------------------------------------------
+
+    @Test
+    public void staticFirst() {
+        assertEquals(_.range(1, 4), _.first(_.range(1, 5), 3));
+    }
+
+    @Test
+    public void staticFirstWithNullInput() {
+        assertEquals(Collections.emptyList(), _.first(null, 3));
+    }
+
+    @Test
+    public void staticFirstDefaultN() {
+        assertTrue(1 == _.first(_.range(1, 5)));
+    }
+
+    @Test
+    public void chainedFirst() {
+        assertEquals(_.range(1, 4),new _<Integer>(_.range(1, 5)).first(3).value());
+    }
+
+    @Test
+    public void chainedFirstDefaultN() {
+        assertTrue(1 == new _<Integer>(_.range(1, 5)).first());
+    }
+
+    // ----- _.initial -----------------------------------------------------------------------------
+
+    @Test
+    public void staticInitial() {
+        assertEquals(_.list("foo"), _.initial(_.list("foo", "bar", "baz"), 2));
+    }
+
+    @Test
+    public void staticInitialWithNullInput() {
+        assertEquals(Collections.emptyList(), _.initial(null, 2));
+    }
+
+    @Test
+    public void staticInitialDefaultN() {
+        assertEquals(_.list("foo", "bar"), _.initial(_.list("foo", "bar", "baz")));
+    }
+
+    @Test
+    public void chainedInitial() {
+        assertEquals(_.list("foo"), new _<String>(_.list("foo", "bar", "baz")).initial(2).value());
+    }
+
+    @Test
+    public void chainedInitialDefaultN() {
+        assertEquals(_.list("foo", "bar"), new _<String>(_.list("foo", "bar", "baz")).initial().value());
+    }
+
+    @Test
+    public void staticInitialSinglePass() {
+        assertEquals(_.list("foo", null), _.initial(_.from(_.list("foo", null, "bar", "baz").iterator()), 2));
+        assertEquals(_.list("foo", "bar"), _.initial(_.from(_.list("foo", "bar").iterator()), 0));
+        assertEquals(Collections.emptyList(), _.initial(_.from(_.list("foo", "bar").iterator()), 3));
+    }
+
+    // ----- _.last --------------------------------------------------------------------------------
+
+    @Test
+    public void staticLast() {
+        assertEquals(_.range(4, 6), _.last(_.range(1, 6), 2));
+    }
+
+    @Test
+    public void staticLastDefaultN() {
+        assertTrue(4 == _.last(_.range(1, 5)));
+    }
+
+    @Test
+    public void chainedLast() {
+        assertEquals(_.range(4, 6), new _<Integer>(_.range(1, 6)).last(2).value());
+    }
+
+    @Test
+    public void chainedLastDefaultN() {
+        assertTrue(4 == new _<Integer>(_.range(1, 5)).last());
+    }
+
+    @Test
+    public void staticLastSinglePass() {
+        assertEquals(_.list(null, 5), _.last(_.from(_.list(1, 2, 3, null, 5).iterator()), 2));
+        assertEquals(_.list(1, 2), _.last(_.from(_.list(1, 2).iterator()), 5));
+        assertEquals(Collections.emptyList(), _.last(_.from(_.list(1, 2).iterator()), 0));
+        assertEquals(_.list(2, 3, 4), _.last(iterable(1, 2, 3, 4), 3));
+    }
+
+    // ----- _.rest --------------------------------------------------------------------------------
+
+    @Test
+    public void staticRest() {
+        assertEquals(_.range(3, 5), _.rest(_.range(1, 5), 2));
+    }
+
+    @Test
+    public void staticRestWithNullInput() {
+        assertEquals(Collections.emptyList(), _.rest(null, 2));
+    }
+
+    @Test
+    public void staticRestDefaultN() {
+        assertEquals(_.range(2, 5), _.rest(_.range(1, 5)));
+    }
+
+    @Test
+    public void chainedRest() {
+        assertEquals(_.range(3, 5), new _<Integer>(_.range(1, 5)).rest(2).value());
+    }
+
+    @Test
+    public void chainedRestDefaultN() {
+        assertEquals(_.range(2, 5), new _<Integer>(_.range(1, 5)).rest().value());
+    }
+
+    // ----- slice views ---------------------------------------------------------------------------
+
+    @Test
+    public void slicesOfListsAreReadOnlyViews() {
+        List<String> values = _.list("foo", "bar", "baz");
+        List<List<String>> slices = _.list(_.first(values, 2), _.initial(values), _.last(values, 2), _.rest(values));
+
+        values.set(1, "quux");
+
+        assertEquals(_.list("foo", "quux"), slices.get(0));
+        assertEquals(_.list("foo", "quux"), slices.get(1));
+        assertEquals(_.list("quux", "baz"), slices.get(2));
+        assertEquals(_.list("quux", "baz"), slices.get(3));
+        for (List<String> slice : slices) {
+            try {
+                slice.add("foo");
+                fail("slices must be read-only");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void slicesOfSequentialListsAreCopies() {
+        List<String> values = new LinkedList<String>(_.list("foo", "bar", "baz"));
+        List<List<String>> slices = _.list(_.first(values, 2), _.initial(values), _.last(values, 2), _.rest(values));
+
+        values.set(1, "quux");
+
+        assertEquals(_.list("foo", "bar"), slices.get(0));
+        assertEquals(_.list("foo", "bar"), slices.get(1));
+        assertEquals(_.list("bar", "baz"), slices.get(2));
+        assertEquals(_.list("bar", "baz"), slices.get(3));
+    }
+
+    @Test
+    public void chainedPagingWithSliceViews() {
+        List<Integer> values = _.range(0, 100);
+
+        assertEquals(_.range(20, 30), new _<Integer>(values).rest(20).first(10).value());
+        assertEquals(_.range(95, 100), _.first(_.rest(values, 95), 10));
+    }
+
+    // ----- _.zip ---------------------------------------------------------------------------------
+
+    @Test
+    public void staticZipSameLengths() {
+        assertEquals(_.list(_.entry(0,3), _.entry(1,4), _.entry(2,5)), _.zip(_.range(3), _.range(3,6)));
+    }
+
+    @Test
+    public void staticZipFirstIsLonger() {
+        assertEquals(_.list(_.entry(0,3), _.entry(1,4)), _.zip(_.range(3), _.range(3,5)));
+    }
+
+    @Test
+    public void staticZipSecondIsLonger() {
+        assertEquals(_.list(_.entry(0,3), _.entry(1,4), _.entry(2,5)), _.zip(_.range(3), _.range(3,9)));
+    }
+
+    @Test
+    public void staticZipNullInput() {
+        assertEquals(Collections.emptyList(), _.zip(null, _.range(4)));
+        assertEquals(Collections.emptyList(), _.zip(_.range(4), null));
+    }
+
+    @Test
+    public void chainedZipSameLengths() {
+        assertEquals(_.list(_.entry(0,4), _.entry(1,5), _.entry(2,6), _.entry(3,7)),
+                new _<Integer>(_.range(4)).zip(_.range(4,8)).value());
+    }
+
+    @Test
+    public void chainedZipFirstIsLonger() {
+        assertEquals(_.list(_.entry(0,3), _.entry(1,4)),
+                new _<Integer>(_.range(4)).zip(_.range(3,5)).value());
+    }
+
+    @Test
+    public void chainedZipSecondIsLonger() {
+        assertEquals(_.list(_.entry(0,3), _.entry(1,4)),
+                new _<Integer>(_.range(2)).zip(_.range(3,9)).value());
+    }
+
+    @Test
+    public void chainedZipNullInput() {
+        assertEquals(Collections.emptyList(), new _<Integer>(_.range(10)).zip(null).value());
+    }
+
+    // ----- _.chunk -------------------------------------------------------------------------------
+
+    @Test
+    public void staticChunk() {
+        assertEquals(_.list(_.list(1, 2), _.list(3, 4), _.list(5)), _.lazy(_.chunk(_.list(1, 2, 3, 4, 5), 2)).value());
+        assertEquals(_.list(_.list(1, 2), _.list(3, 4), _.list(5)), _.lazy(_.chunk(iterable(1, 2, 3, 4, 5), 2)).value());
+        assertEquals(_.list(_.list(1, 2)), _.lazy(_.chunk(_.list(1, 2), 5)).value());
+    }
+
+    @Test
+    public void staticChunkWithNullInput() {
+        assertFalse(_.chunk(null, 2).iterator().hasNext());
+    }
+
+    @Test
+    public void staticChunkIsLazy() {
+        final AtomicInteger pulled = new AtomicInteger();
+        final Iterable<Integer> values = iterable(1, 2, 3, 4, 5, 6);
+        Iterable<Integer> counted = new Iterable<Integer>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                final Iterator<Integer> iterator = values.iterator();
+                return new Iterator<Integer>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public Integer next() {
+                        pulled.incrementAndGet();
+                        return iterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+
+        Iterator<List<Integer>> chunks = _.chunk(counted, 2).iterator();
+        assertEquals(0, pulled.get());
+        assertEquals(_.list(1, 2), chunks.next());
+        assertEquals(2, pulled.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void staticChunkWithInvalidSize() {
+        _.chunk(_.list(1, 2), 0);
+    }
+
+    @Test
+    public void chainedChunk() {
+        assertEquals(_.list(_.list(1, 4), _.list(9)), new _<Integer>(_.list(1, 2, 3)).map(square).chunk(2).value());
+        assertEquals(_.list(_.list(1, 4)), _.lazy(_.list(1, 2, 3)).map(square).chunk(2).first(1).value());
+    }
+
+    // ----- _.range -------------------------------------------------------------------------------
+
+    @Test
+    public void rangeOptimisticInputs() {
+        assertEquals(_.list(1,2,3,4,5), _.range(1, 6, 1));
+    }
+
+    @Test
+    public void rangeNegativeStep() {
+        assertEquals(_.list(0,-1,-2,-3,-4), _.range(0, -5, -1));
+    }
+
+    @Test
+    public void rangeOddStep() {
+        assertEquals(_.list(0, 2, 4), _.range(0, 5, 2));
+        assertEquals(_.list(0, -2, -4), _.range(0, -5, -2));
+    }
+
+    @Test
+    public void rangeSameStartStop() {
+        List<Integer> empty = Collections.emptyList();
+        assertEquals(empty, _.range(0, 0, 1));
+    }
+
+    @Test
+    public void rangeZeroStep() {
+        List<Integer> empty = Collections.emptyList();
+        assertEquals(empty, _.range(0, 100, 0));
+    }
+
+    @Test
+    public void rangeStartGreaterStopPositiveStep() {
+        List<Integer> empty = Collections.emptyList();
+        assertEquals(empty, _.range(5, 0, 1));
+    }
+
+    @Test
+    public void rangeDefaultStep() {
+        assertEquals(_.list(0,1,2,3,4), _.range(0, 5));
+    }
+
+    @Test
+    public void rangePositiveRangeNegativeStep() {
+        List<Integer> empty = Collections.emptyList();
+        assertEquals(empty, _.range(0, 5, -1));
+    }
+
+    @Test
+    public void rangeIsComputed() {
+        Range range = (Range) _.range(10, 1000000000, 7);
+        assertEquals(142857142, range.size());
+        assertEquals(Integer.valueOf(10 + 7 * 12345678), range.get(12345678));
+        assertEquals(Integer.valueOf(999999997), range.get(range.size() - 1));
+        assertTrue(range.contains(999999997));
+        assertFalse(range.contains(999999998));
+        assertFalse(range.contains(3));
+        assertEquals(2, range.indexOf(24));
+        assertEquals(-1, range.indexOf("24"));
+        assertEquals(Integer.MAX_VALUE, _.range(Integer.MAX_VALUE).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeTooLarge() {
+        _.range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void rangeEqualsLists() {
+        assertEquals(Arrays.asList(3, 5, 7), _.range(3, 9, 2));
+        assertEquals(_.range(3, 9, 2), new ArrayList<Integer>(_.list(3, 5, 7)));
+        assertEquals(Arrays.asList(3, 5, 7).hashCode(), _.range(3, 9, 2).hashCode());
+    }
+
+    @Test
+    public void rangeSubList() {
+        List<Integer> range = _.range(0, -20, -2);
+        List<Integer> sub = range.subList(2, 5);
+        assertEquals(_.list(-4, -6, -8), sub);
+        assertEquals(Collections.<Integer>emptyList(), range.subList(3, 3));
+    }
+
+    @Test
+    public void rangeIsModifiable() {
+        List<Integer> range = _.range(5);
+        range.add(-1);
+        Collections.sort(range);
+        assertEquals(_.list(-1, 0, 1, 2, 3, 4), range);
+        range.subList(1, 3).clear();
+        range.set(0, 7);
+        assertEquals(_.list(7, 2, 3, 4), range);
+        assertTrue(range.contains(7));
+        assertEquals(1, range.indexOf(2));
+
+        final List<Integer> each = new ArrayList<Integer>();
+        ((Range) range).each(new IntConsumer() {
+            @Override
+            public void accept(int value) {
+                each.add(value);
+            }
+        });
+        assertEquals(range, each);
+    }
+
+    @Test
+    public void rangeSplit() {
+        List<Range> parts = ((Range) _.range(10)).split(3);
+        assertEquals(3, parts.size());
+        assertEquals(_.list(0, 1, 2), parts.get(0));
+        assertEquals(_.list(3, 4, 5), parts.get(1));
+        assertEquals(_.list(6, 7, 8, 9), parts.get(2));
+        assertEquals(2, ((Range) _.range(2)).split(8).size());
+    }
+
+    @Test
+    public void rangeEach() {
+        final AtomicLong sum = new AtomicLong();
+        ((Range) _.range(1, 101)).each(new IntConsumer() {
+            @Override
+            public void accept(int value) {
+                sum.addAndGet(value);
+            }
+        });
+        assertEquals(5050, sum.get());
+    }
+
+    @Test
+    public void longRange() {
+        LongRange range = _.range(0L, 1L << 40, 1L << 20);
+        assertEquals(1L << 20, range.longSize());
+        assertEquals(3L << 20, range.valueAt(3));
+        assertTrue(range.contains(5L << 20));
+        assertFalse(range.contains(5));
+        assertEquals(5, range.indexOf(5L << 20));
+        assertEquals(_.list(4L, 2L), _.range(4L, 0L, -2L).asList());
+        assertEquals(_.list(0L, 1L, 2L), _.map(_.range(3L), new Function<Long, Long>() {
+            @Override
+            public Long apply(Long input) {
+                return input;
+            }
+        }));
+    }
+
+    @Test
+    public void longRangeAsList() {
+        List<Long> list = _.range(10L, 20L, 3L).asList();
+        assertEquals(4, list.size());
+        assertEquals(Long.valueOf(16L), list.get(2));
+        assertEquals(2, list.indexOf(16L));
+        assertFalse(list.contains(16));
+        assertEquals(_.list(13L, 16L), list.subList(1, 3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void longRangeBeyondIntAsList() {
+        _.range(0L, 3000000000L).asList();
+    }
+
+    @Test
+    public void longRangeBeyondInt() {
+        LongRange range = _.range(Long.MIN_VALUE, Long.MAX_VALUE, 4L);
+        assertEquals(1L << 62, range.longSize());
+        assertTrue(range.contains(Long.MIN_VALUE + 4));
+        // beyond the first Integer.MAX_VALUE values, and further than Long.MAX_VALUE from the start
+        assertTrue(range.contains(Long.MAX_VALUE - 3));
+        assertEquals((1L << 62) - 1, range.indexOf(Long.MAX_VALUE - 3));
+        assertFalse(range.contains(Long.MAX_VALUE - 1));
+
+        List<LongRange> parts = range.split(4);
+        assertEquals(Long.MIN_VALUE, parts.get(0).valueAt(0));
+        long total = 0;
+        for (LongRange part : parts)
+            total += part.longSize();
+        assertEquals(range.longSize(), total);
+        LongRange last = parts.get(3);
+        assertEquals(Long.MAX_VALUE - 3, last.valueAt(last.longSize() - 1));
+    }
+
+    @Test
+    public void longRangeParallelChunks() {
+        LongRange range = _.range(0L, 3000000000L);
+        assertTrue(range.contains(2500000000L));
+
+        long total = 0;
+        long next = 0;
+        for (List<Long> chunk : Parallel.chunks(range)) {
+            assertEquals(Long.valueOf(next), chunk.get(0));
+            total += chunk.size();
+            next = chunk.get(chunk.size() - 1) + 1;
+        }
+        assertEquals(3000000000L, total);
+        assertEquals(3000000000L, next);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void longRangeTooLarge() {
+        _.range(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void longRangeEach() {
+        final AtomicLong sum = new AtomicLong();
+        _.range(5000000000L, 5000000100L, 10L).each(new LongConsumer() {
+            @Override
+            public void accept(long value) {
+                sum.addAndGet(value);
+            }
+        });
+        assertEquals(10 * 5000000000L + 450, sum.get());
+    }
+
+    @Test
+    public void rangeDefaultStepStartGreaterStop() {
+        List<Integer> empty = Collections.emptyList();
+        assertEquals(empty, _.range(0, -5));
+    }
+
+    @Test
+    public void rangeDefaultStart() {
+        assertEquals(_.list(0,1,2,3,4), _.range(5));
+    }
+
+    // ----- _.from --------------------------------------------------------------------------------
+
+    @Test
+    public void fromIterator() {
+        Iterator<Integer> cursor = _.range(1, 1000000).iterator();
+
+        Iterable<Integer> squares = new _<Integer>(_.from(cursor)).filter(isEven).map(square).first(3).value();
+
+        assertEquals(_.list(4, 16, 36), squares);
+        // the chain is lazy, so only the values needed were read
+        assertEquals(Integer.valueOf(7), cursor.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void fromIteratorOnlyOnce() {
+        Iterable<Integer> values = _.from(_.list(1, 2, 3).iterator());
+        assertEquals(3, _.size(values));
+        _.size(values);
+    }
+
+    @Test
+    public void fromEnumeration() {
+        Iterable<String> values = _.from(Collections.enumeration(_.list("foo", "bar", "baz")));
+        assertEquals("foo,bar,baz", _.join(values));
+    }
+
+    // ----- _.lines -------------------------------------------------------------------------------
+
+    private static File textFile(String content) throws IOException {
+        File file = File.createTempFile("lines", ".txt");
+        file.deleteOnExit();
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes(Charset.forName("UTF-8")));
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static final Function<CharSequence, String> asString = new Function<CharSequence, String>() {
+        @Override
+        public String apply(CharSequence input) {
+            return input.toString();
+        }
+    };
+
+    @Test
+    public void lines() throws IOException {
+        Lines lines = _.lines(textFile("foo\nbar\r\n\nbaz"));
+
+        assertEquals(_.list("foo", "bar", "", "baz"), _.map(lines, asString));
+        // lines can be iterated repeatedly
+        assertEquals(4, _.size(lines));
+    }
+
+    @Test
+    public void linesEmpty() throws IOException {
+        assertEquals(0, _.size(_.lines(textFile(""))));
+        assertEquals(_.list(""), _.map(_.lines(textFile("\n")), asString));
+    }
+
+    @Test
+    public void linesCharSequence() throws IOException {
+        CharSequence line = _.lines(textFile("hello world\n")).iterator().next();
+
+        assertEquals(11, line.length());
+        assertEquals('w', line.charAt(6));
+        assertEquals("world", line.subSequence(6, 11).toString());
+    }
+
+    @Test
+    public void linesUtf8() throws IOException {
+        Iterator<CharSequence> lines = _.lines(textFile("gr\u00fc\u00dfe\n\u20ac 5\n")).iterator();
+
+        CharSequence greeting = lines.next();
+        assertEquals(5, greeting.length());
+        assertEquals('\u00fc', greeting.charAt(2));
+        assertEquals("gr\u00fc\u00dfe", greeting.toString());
+        assertEquals("\u20ac", lines.next().subSequence(0, 1).toString());
+    }
+
+    @Test
+    public void linesMappedInParts() throws IOException {
+        File file = textFile("one\ntwo\nthree\nfour\nfive\n");
+
+        // parts of at most 10 bytes end at line boundaries
+        assertEquals(_.list("one", "two", "three", "four", "five"), _.map(Lines.map(file, 10), asString));
+    }
+
+    @Test(expected = IOException.class)
+    public void linesLongerThanMapping() throws IOException {
+        Lines.map(textFile("one\nthree\n"), 4);
+    }
+
+    @Test
+    public void linesSegments() throws IOException {
+        List<String> expected = _.map(_.range(1000), new Function<Integer, String>() {
+            @Override
+            public String apply(Integer input) {
+                return "line " + input;
+            }
+        });
+        Lines lines = Lines.map(textFile(_.join(expected, "\n")), 1000);
+
+        List<Lines> segments = lines.segments(7);
+        assertEquals(7, segments.size());
+
+        List<String> actual = new ArrayList<String>();
+        for (Lines segment : segments) {
+            assertTrue(_.size(segment) > 100);
+            actual.addAll(_.map(segment, asString));
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void linesSegmentsInParallel() throws Exception {
+        Lines lines = Lines.map(textFile(_.join(_.range(1000), "\n", "", "", null)), 1000);
+        final CountDownLatch concurrent = new CountDownLatch(2);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            Iterable<String> names = _.parallel(lines.segments(8), executor).map(new Function<Lines, String>() {
+                @Override
+                public String apply(Lines segment) {
+                    concurrent.countDown();
+                    try {
+                        concurrent.await(2, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Thread.currentThread().getName();
+                }
+            }).value();
+
+            Set<String> threads = new HashSet<String>();
+            for (String name : names)
+                threads.add(name);
+            assertEquals(8, _.size(names));
+            assertTrue(threads.size() > 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void linesSegmentsFewerLines() throws IOException {
+        List<Lines> segments = _.lines(textFile("one\ntwo\n")).segments(8);
+
+        assertEquals(2, segments.size());
+        assertEquals(_.list("two"), _.map(segments.get(1), asString));
+    }
+
+    // ----- _.csv ---------------------------------------------------------------------------------
+
+    private static final Function<Csv.Row, String> rowToString = new Function<Csv.Row, String>() {
+        @Override
+        public String apply(Csv.Row input) {
+            return input.toString();
+        }
+    };
+
+    @Test
+    public void csv() {
+        Iterable<Csv.Row> rows = _.csv(new StringReader("foo,42\nbar,,x\r\n\nbaz\n"));
+
+        assertEquals(_.list("[foo, 42]", "[bar, , x]", "[baz]"), _.map(rows, rowToString));
+    }
+
+    @Test
+    public void csvQuoted() {
+        String text = "\"a,b\",\"say \"\"hi\"\"\",\"two\r\nlines\"\n\"\",plain \"quote\"";
+
+        Iterator<Csv.Row> rows = _.csv(new StringReader(text)).iterator();
+
+        Csv.Row first = rows.next();
+        assertEquals(3, first.size());
+        assertEquals("a,b", first.get(0).toString());
+        assertEquals("say \"hi\"", first.get(1).toString());
+        assertEquals("two\r\nlines", first.get(2).toString());
+        assertEquals("[, plain \"quote\"]", rows.next().toString());
+        assertFalse(rows.hasNext());
+    }
+
+    @Test
+    public void csvUnterminatedQuote() {
+        try {
+            _.size(_.csv(new StringReader("a\n\"b,c\n")));
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("line 2: unterminated quoted field", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void csvTextAfterQuote() {
+        _.size(_.csv(new StringReader("\"a\"b,c")));
+    }
+
+    @Test
+    public void csvOptions() {
+        Csv.Options options = new Csv.Options();
+        options.delimiter = '\t';
+        options.quote = '\'';
+        options.header = true;
+
+        Iterable<Csv.Row> rows = _.csv(new StringReader("name\tage\n'a\tb'\t42\n"), options);
+        Csv.Row row = rows.iterator().next();
+
+        assertEquals("a\tb", row.get("name").toString());
+        assertEquals(42, row.getInt("age"));
+        assertEquals(-1, row.indexOf("income"));
+    }
 
     @Test
-    public void staticFirst() {
-        assertEquals(_.range(1, 4), _.first(_.range(1, 5), 3));
+    public void csvNumbers() {
+        Csv.Row row = _.csv(new StringReader("-42,+7,9223372036854775807,-9223372036854775808,2.5e3,9223372036854775808,4x,-"))
+                .iterator().next();
+
+        assertEquals(-42, row.getInt(0));
+        assertEquals(7, row.getInt(1));
+        assertEquals(Long.MAX_VALUE, row.getLong(2));
+        assertEquals(Long.MIN_VALUE, row.getLong(3));
+        assertEquals(2500.0, row.getDouble(4), 0.0);
+        for (int i : _.list(2, 5, 6, 7)) {
+            try {
+                if (i == 2) row.getInt(i); else row.getLong(i);
+                fail("expected NumberFormatException for " + row.get(i));
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
     }
 
     @Test
-    public void staticFirstWithNullInput() {
-        assertEquals(Collections.emptyList(), _.first(null, 3));
+    public void csvReusesRow() {
+        Iterator<Csv.Row> rows = _.csv(new StringReader("a,b\nc,d\n")).iterator();
+
+        Csv.Row first = rows.next();
+        CharSequence field = first.get(0);
+        Csv.Row copy = first.copy();
+
+        assertTrue(first == rows.next());
+        assertEquals("c", field.toString());
+        assertEquals("[a, b]", copy.toString());
+        assertEquals("a", copy.get(0).toString());
     }
 
     @Test
-    public void staticFirstDefaultN() {
-        assertTrue(1 == _.first(_.range(1, 5)));
+    public void csvLazyChain() {
+        Iterable<Csv.Row> rows = _.csv(new StringReader("x,1\ny,2\nz,3\nw,4\n"));
+
+        Iterable<String> names = new _<Csv.Row>(rows)
+                .filter(new Predicate<Csv.Row>() {
+                    @Override
+                    public boolean test(Csv.Row input) {
+                        return input.getInt(1) % 2 == 0;
+                    }
+                })
+                .map(new Function<Csv.Row, String>() {
+                    @Override
+                    public String apply(Csv.Row input) {
+                        return input.get(0).toString();
+                    }
+                })
+                .value();
+
+        assertEquals(_.list("y", "w"), names);
     }
 
     @Test
-    public void chainedFirst() {
-        assertEquals(_.range(1, 4),new _<Integer>(_.range(1, 5)).first(3).value());
+    public void csvFile() throws IOException {
+        Iterable<Csv.Row> rows = _.csv(textFile("id,name\n1,gr\u00fc\u00dfe\n"), null);
+
+        assertEquals(_.list("[id, name]", "[1, gr\u00fc\u00dfe]"), _.map(rows, rowToString));
+        // files are read again on each iteration
+        assertEquals(2, _.size(rows));
     }
 
     @Test
-    public void chainedFirstDefaultN() {
-        assertTrue(1 == new _<Integer>(_.range(1, 5)).first());
+    public void csvFileClosedEarly() throws IOException {
+        Csv.Rows rows = _.csv(textFile("a\nb\nc\n"));
+        Iterator<Csv.Row> iterator = rows.iterator();
+        assertEquals("[a]", iterator.next().toString());
+
+        rows.close();
+        try {
+            iterator.next();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // the file was closed
+        }
+        try {
+            rows.iterator();
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
     }
 
-    // ----- _.initial -----------------------------------------------------------------------------
+    @Test(expected = IOException.class)
+    public void csvFileMissing() throws IOException {
+        _.csv(new File("does/not/exist.csv"));
+    }
+
+    // ----- _.iterate -----------------------------------------------------------------------------
 
     @Test
-    public void staticInitial() {
-        assertEquals(_.list("foo"), _.initial(_.list("foo", "bar", "baz"), 2));
+    public void iterate() {
+        Function<Long, Long> twice = new Function<Long, Long>() {
+            @Override
+            public Long apply(Long input) {
+                return input * 2;
+            }
+        };
+        assertEquals(_.list(100L, 200L, 400L, 800L, 1600L), _.first(_.iterate(100L, twice), 5));
+        assertEquals(Long.valueOf(1024L), _.find(_.iterate(1L, twice), new Predicate<Long>() {
+            @Override
+            public boolean test(Long input) {
+                return input > 1000;
+            }
+        }));
     }
 
     @Test
-    public void staticInitialWithNullInput() {
-        assertEquals(Collections.emptyList(), _.initial(null, 2));
+    public void iteratePullsOnlyNeededValues() {
+        final AtomicInteger calls = new AtomicInteger();
+        Function<Integer, Integer> next = new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer input) {
+                calls.incrementAndGet();
+                return input + 1;
+            }
+        };
+
+        Iterable<Integer> evens = new _<Integer>(_.iterate(0, next)).filter(isEven).first(3).value();
+
+        assertEquals(_.list(0, 2, 4), evens);
+        assertEquals(4, calls.get());
     }
 
+    // ----- _.generate ----------------------------------------------------------------------------
+
     @Test
-    public void staticInitialDefaultN() {
-        assertEquals(_.list("foo", "bar"), _.initial(_.list("foo", "bar", "baz")));
+    public void generate() {
+        final AtomicInteger ids = new AtomicInteger();
+        Iterable<Integer> allocated = _.generate(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                return ids.incrementAndGet();
+            }
+        });
+
+        assertEquals(_.list(1, 4, 9), new _<Integer>(allocated).map(square).first(3).value());
+        assertEquals(3, ids.get());
+        assertTrue(new _<Integer>(allocated).some(isEven));
     }
 
+    // ----- _.cycle -------------------------------------------------------------------------------
+
     @Test
-    public void chainedInitial() {
-        assertEquals(_.list("foo"), new _<String>(_.list("foo", "bar", "baz")).initial(2).value());
+    public void cycle() {
+        assertEquals(_.list(1, 2, 3, 1, 2, 3, 1), _.first(_.cycle(_.list(1, 2, 3)), 7));
+        assertEquals(
+                _.list(_.entry("a", 1), _.entry("b", 2), _.entry("c", 1)),
+                new _<String>(_.list("a", "b", "c")).zip(_.cycle(_.list(1, 2))).value());
+        assertEquals(Collections.<Integer>emptyList(), _.first(_.cycle(Collections.<Integer>emptyList()), 3));
     }
 
+    // ----- _.repeat ------------------------------------------------------------------------------
+
     @Test
-    public void chainedInitialDefaultN() {
-        assertEquals(_.list("foo", "bar"), new _<String>(_.list("foo", "bar", "baz")).initial().value());
+    public void repeat() {
+        assertEquals(_.list("na", "na", "na"), _.repeat("na", 3));
+        assertEquals(Collections.<String>emptyList(), _.repeat("na", -1));
+        assertEquals(Integer.MAX_VALUE, _.repeat("na", Integer.MAX_VALUE).size());
     }
 
-    // ----- _.last --------------------------------------------------------------------------------
+    // ----- _.map (primitives) --------------------------------------------------------------------
+
+    private IntUnaryOperator squareInt = new IntUnaryOperator() {
+        @Override
+        public int applyAsInt(int input) {
+            return input * input;
+        }
+    };
+    private IntPredicate isEvenInt = new IntPredicate() {
+        @Override
+        public boolean test(int input) {
+            return input % 2 == 0;
+        }
+    };
+    private IntBinaryOperator sumInt = new IntBinaryOperator() {
+        @Override
+        public int applyAsInt(int current, int sum) {
+            return current + sum;
+        }
+    };
 
     @Test
-    public void staticLast() {
-        assertEquals(_.range(4, 6), _.last(_.range(1, 6), 2));
+    public void primitiveMap() {
+        assertArrayEquals(new int[] {1, 4, 9, 16}, _.map(new int[] {1, 2, 3, 4}, squareInt));
+        assertArrayEquals(new long[] {2L, 4L}, _.map(new long[] {1L, 2L}, new LongUnaryOperator() {
+            @Override
+            public long applyAsLong(long input) {
+                return input * 2;
+            }
+        }));
+        assertArrayEquals(new double[] {0.5, 1.0}, _.map(new double[] {1.0, 2.0}, new DoubleUnaryOperator() {
+            @Override
+            public double applyAsDouble(double input) {
+                return input / 2;
+            }
+        }), 0.0);
+        assertArrayEquals(new int[0], _.map((int[]) null, squareInt));
     }
 
     @Test
-    public void staticLastDefaultN() {
-        assertTrue(4 == _.last(_.range(1, 5)));
+    public void primitiveMapToObjects() {
+        assertEquals(_.list("1", "2"), _.mapToObj(new int[] {1, 2}, new IntFunction<String>() {
+            @Override
+            public String apply(int input) {
+                return Integer.toString(input);
+            }
+        }));
+        assertArrayEquals(new long[] {3L, 4L}, _.mapToLong(_.list("foo", "quux"), new ToLongFunction<String>() {
+            @Override
+            public long applyAsLong(String input) {
+                return input.length();
+            }
+        }));
     }
 
     @Test
-    public void chainedLast() {
-        assertEquals(_.range(4, 6), new _<Integer>(_.range(1, 6)).last(2).value());
+    public void primitiveFilter() {
+        assertArrayEquals(new int[] {2, 4}, _.filter(new int[] {1, 2, 3, 4, 5}, isEvenInt));
+        assertArrayEquals(new long[] {1L}, _.filter(new long[] {1L, -1L}, new LongPredicate() {
+            @Override
+            public boolean test(long input) {
+                return input > 0;
+            }
+        }));
+        assertArrayEquals(new double[0], _.filter((double[]) null, new DoublePredicate() {
+            @Override
+            public boolean test(double input) {
+                return true;
+            }
+        }), 0.0);
     }
 
     @Test
-    public void chainedLastDefaultN() {
-        assertTrue(4 == new _<Integer>(_.range(1, 5)).last());
+    public void primitiveReduceSumMinMax() {
+        int[] values = {3, 1, 4, 1, 5};
+
+        assertEquals(14, _.reduce(values, sumInt, 0));
+        assertEquals(2, _.reduce(new int[] {1, 2, 3, 4}, new IntBinaryOperator() {
+            @Override
+            public int applyAsInt(int now, int accumulator) {
+                return now - accumulator;
+            }
+        }, 0));
+        assertEquals(14L, _.sum(values));
+        assertEquals(4000000000L, _.sum(new int[] {2000000000, 2000000000}));
+        assertEquals(1, _.min(values));
+        assertEquals(5, _.max(values));
+        assertEquals(Long.MAX_VALUE, _.min((long[]) null));
+        assertEquals(1.5, _.sum(new double[] {1.0, 0.5}), 0.0);
+        assertEquals(-1.0, _.reduce(new double[] {1.0, 2.0}, new DoubleBinaryOperator() {
+            @Override
+            public double applyAsDouble(double now, double accumulator) {
+                return Math.min(now, accumulator);
+            }
+        }, -1.0), 0.0);
+        assertEquals(6L, _.reduce(new long[] {1L, 2L, 3L}, new LongBinaryOperator() {
+            @Override
+            public long applyAsLong(long now, long accumulator) {
+                return now * accumulator;
+            }
+        }, 1L));
     }
 
-    // ----- _.rest --------------------------------------------------------------------------------
+    // ----- _.wrap --------------------------------------------------------------------------------
 
     @Test
-    public void staticRest() {
-        assertEquals(_.range(3, 5), _.rest(_.range(1, 5), 2));
+    public void wrap() {
+        final String before = "before ++ ";
+        final String after = " ++ after";
+        final Function<String, String> expected = new Function<String, String>() {
+            @Override
+            public String apply(String s) {
+                return before + s + after;
+            }
+        };
+        final Function<String, String> actual = _.wrap(_.identity(String.class), new Function<Function<String, String>, Function<String, String>>() {
+            public Function<String, String> apply(final Function<String, String> wrapped) {
+                return new Function<String, String>() {
+                    public String apply(String s){
+                        return before + wrapped.apply(s) + after;
+                    }
+                };
+            }
+        });
+
+        _.each(_.list("foo", "bar", "baz"), new Consumer<String>() {
+            @Override
+            public void accept(String s) {
+                assertEquals(expected.apply(s), actual.apply(s));
+            }
+        });
     }
 
+    // ----- _.negate ------------------------------------------------------------------------------
+
     @Test
-    public void staticRestWithNullInput() {
-        assertEquals(Collections.emptyList(), _.rest(null, 2));
+    public void negatePredicate() {
+        final Predicate<String> ofEvenLength = new Predicate<String>() {
+            @Override
+            public boolean test(String s) {
+                return s.length() % 2 == 0;
+            }
+        };
+        final Predicate<String> ofOddLength = _.negate(ofEvenLength);
+        _.each(_.list("foo", "lorem", "quux"), new Consumer<String>() {
+            @Override
+            public void accept(String s) {
+                assertTrue(ofEvenLength.test(s) ^ ofOddLength.test(s));
+            }
+        });
     }
 
     @Test
-    public void staticRestDefaultN() {
-        assertEquals(_.range(2, 5), _.rest(_.range(1, 5)));
+    public void negateBiPredicate() {
+        final BiPredicate<String, Integer> isOfLength = new BiPredicate<String, Integer>() {
+            @Override
+            public boolean test(String s, Integer integer) {
+                return s.length() == integer;
+            }
+        };
+        final BiPredicate<String, Integer> isNotOfLength = _.negate(isOfLength);
+        _.each(_.list("foo:3", "lorem:2", "quux:12"), new Consumer<String>() {
+            @Override
+            public void accept(String s) {
+                String[] unzip = s.split(":");
+                assertTrue(isOfLength.test(unzip[0], Integer.parseInt(unzip[1])) ^ isNotOfLength.test(unzip[0], Integer.parseInt(unzip[1])));
+            }
+        });
+    }
+
+    // ----- _.memoize -----------------------------------------------------------------------------
+
+    private static class CountingFunction<In, Out> implements Function<In, Out> {
+        private final Function<In, Out> mFunction;
+        final AtomicInteger calls = new AtomicInteger();
+
+        CountingFunction(Function<In, Out> function) {
+            mFunction = function;
+        }
+
+        @Override
+        public Out apply(In in) {
+            calls.incrementAndGet();
+            return mFunction.apply(in);
+        }
     }
 
     @Test
-    public void chainedRest() {
-        assertEquals(_.range(3, 5), new _<Integer>(_.range(1, 5)).rest(2).value());
+    public void memoize() {
+        CountingFunction<Integer, Integer> counting = new CountingFunction<Integer, Integer>(square);
+        Memoized<Integer, Integer> memoized = _.memoize(counting);
+
+        assertEquals(Integer.valueOf(4), memoized.apply(2));
+        assertEquals(Integer.valueOf(4), memoized.apply(2));
+        assertEquals(Integer.valueOf(9), memoized.apply(3));
+
+        assertEquals(2, counting.calls.get());
+        assertEquals(1, memoized.hits());
+        assertEquals(2, memoized.misses());
+        assertEquals(2, memoized.size());
     }
 
     @Test
-    public void chainedRestDefaultN() {
-        assertEquals(_.range(2, 5), new _<Integer>(_.range(1, 5)).rest().value());
+    public void memoizeLeastRecentlyUsed() {
+        Memoized.Options<Integer> options = new Memoized.Options<Integer>();
+        options.maxSize = 2;
+        CountingFunction<Integer, Integer> counting = new CountingFunction<Integer, Integer>(square);
+        Memoized<Integer, Integer> memoized = _.memoize(counting, options);
+
+        memoized.apply(1);
+        memoized.apply(2);
+        memoized.apply(1);
+        memoized.apply(3); // evicts 2
+
+        assertEquals(1, memoized.evictions());
+        memoized.apply(1);
+        assertEquals(3, counting.calls.get());
+        memoized.apply(2);
+        assertEquals(4, counting.calls.get());
     }
 
-    // ----- _.zip ---------------------------------------------------------------------------------
+    @Test
+    public void memoizeLeastFrequentlyUsed() {
+        Memoized.Options<Integer> options = new Memoized.Options<Integer>();
+        options.maxSize = 2;
+        options.eviction = Memoized.Eviction.LFU;
+        CountingFunction<Integer, Integer> counting = new CountingFunction<Integer, Integer>(square);
+        Memoized<Integer, Integer> memoized = _.memoize(counting, options);
+
+        memoized.apply(1);
+        memoized.apply(1);
+        memoized.apply(2);
+        memoized.apply(3); // evicts 2, 1 is used more often
+
+        memoized.apply(1);
+        assertEquals(3, counting.calls.get());
+        memoized.apply(2);
+        assertEquals(4, counting.calls.get());
+    }
 
     @Test
-    public void staticZipSameLengths() {
-        assertEquals(_.list(_.entry(0,3), _.entry(1,4), _.entry(2,5)), _.zip(_.range(3), _.range(3,6)));
+    public void memoizeLeastFrequentlyUsedAmongAll() {
+        Memoized.Options<Integer> options = new Memoized.Options<Integer>();
+        options.maxSize = 16;
+        options.concurrency = 1;
+        options.eviction = Memoized.Eviction.LFU;
+        CountingFunction<Integer, Integer> counting = new CountingFunction<Integer, Integer>(square);
+        Memoized<Integer, Integer> memoized = _.memoize(counting, options);
+
+        for (int i = 0; i < 16; i++)
+            memoized.apply(i);
+        // all but the newest result are used more often
+        for (int i = 0; i < 15; i++)
+            memoized.apply(i);
+        memoized.apply(16); // evicts 15
+
+        for (int i = 0; i < 15; i++)
+            memoized.apply(i);
+        assertEquals(17, counting.calls.get());
+        memoized.apply(15);
+        assertEquals(18, counting.calls.get());
     }
 
     @Test
-    public void staticZipFirstIsLonger() {
-        assertEquals(_.list(_.entry(0,3), _.entry(1,4)), _.zip(_.range(3), _.range(3,5)));
+    public void memoizeTimeToLive() throws InterruptedException {
+        Memoized.Options<Integer> options = new Memoized.Options<Integer>();
+        options.ttl = 20L;
+        CountingFunction<Integer, Integer> counting = new CountingFunction<Integer, Integer>(square);
+        Memoized<Integer, Integer> memoized = _.memoize(counting, options);
+
+        memoized.apply(2);
+        memoized.apply(2);
+        assertEquals(1, counting.calls.get());
+
+        Thread.sleep(50);
+        memoized.apply(2);
+        assertEquals(2, counting.calls.get());
+        assertEquals(1, memoized.evictions());
     }
 
     @Test
-    public void staticZipSecondIsLonger() {
-        assertEquals(_.list(_.entry(0,3), _.entry(1,4), _.entry(2,5)), _.zip(_.range(3), _.range(3,9)));
+    public void memoizeWithKey() {
+        Memoized.Options<String> options = new Memoized.Options<String>();
+        options.key = stringLength;
+        Memoized<String, String> memoized = _.memoize(new Function<String, String>() {
+            @Override
+            public String apply(String s) {
+                return s.toUpperCase();
+            }
+        }, options);
+
+        assertEquals("FOO", memoized.apply("foo"));
+        // same key => cached result
+        assertEquals("FOO", memoized.apply("bar"));
+        assertEquals("QUUX", memoized.apply("quux"));
     }
 
     @Test
-    public void staticZipNullInput() {
-        assertEquals(Collections.emptyList(), _.zip(null, _.range(4)));
-        assertEquals(Collections.emptyList(), _.zip(_.range(4), null));
+    public void memoizeDoesNotCacheExceptions() {
+        final AtomicInteger calls = new AtomicInteger();
+        Memoized<Integer, Integer> memoized = _.memoize(new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer i) {
+                if (calls.incrementAndGet() == 1) throw new IllegalArgumentException("first call");
+                return i;
+            }
+        });
+
+        try {
+            memoized.apply(1);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("first call", e.getMessage());
+        }
+        assertEquals(Integer.valueOf(1), memoized.apply(1));
+        assertEquals(1, memoized.size());
     }
 
     @Test
-    public void chainedZipSameLengths() {
-        assertEquals(_.list(_.entry(0,4), _.entry(1,5), _.entry(2,6), _.entry(3,7)),
-                new _<Integer>(_.range(4)).zip(_.range(4,8)).value());
+    public void memoizeComputesConcurrentMissesOnce() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingFunction<Integer, Integer> counting = new CountingFunction<Integer, Integer>(new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer i) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return i * i;
+            }
+        });
+        final Memoized<Integer, Integer> memoized = _.memoize(counting);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return memoized.apply(3);
+                }
+            }));
+            started.await();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() {
+                        return memoized.apply(3);
+                    }
+                }));
+            }
+            Thread.sleep(20);
+            release.countDown();
+
+            for (Future<Integer> result : results)
+                assertEquals(Integer.valueOf(9), result.get());
+            assertEquals(1, counting.calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // ----- _.throttle ----------------------------------------------------------------------------
+
+    private static class Recorder<In> implements Consumer<In> {
+        final List<In> calls = Collections.synchronizedList(new ArrayList<In>());
+
+        @Override
+        public void accept(In in) {
+            calls.add(in);
+        }
+
+        /** waits until at least {@code count} calls were recorded, then a bit longer for unexpected calls */
+        List<In> await(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (calls.size() < count && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            Thread.sleep(100);
+            return new ArrayList<In>(calls);
+        }
     }
 
     @Test
-    public void chainedZipFirstIsLonger() {
-        assertEquals(_.list(_.entry(0,3), _.entry(1,4)),
-                new _<Integer>(_.range(4)).zip(_.range(3,5)).value());
+    public void throttle() throws InterruptedException {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        Consumer<Integer> throttled = _.throttleConsumer(recorder, 50);
+
+        for (int i = 1; i <= 5; i++) throttled.accept(i);
+
+        assertEquals(_.list(1), new ArrayList<Integer>(recorder.calls));
+        assertEquals(_.list(1, 5), recorder.await(2));
     }
 
     @Test
-    public void chainedZipSecondIsLonger() {
-        assertEquals(_.list(_.entry(0,3), _.entry(1,4)),
-                new _<Integer>(_.range(2)).zip(_.range(3,9)).value());
+    public void throttleWithoutTrailing() throws InterruptedException {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        Consumer<Integer> throttled = _.throttleConsumer(recorder, 50, true, false);
+
+        for (int i = 1; i <= 5; i++) throttled.accept(i);
+
+        assertEquals(_.list(1), recorder.await(2));
+    }
+
+    @Test
+    public void throttleWithoutLeading() throws InterruptedException {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        Consumer<Integer> throttled = _.throttleConsumer(recorder, 50, false, true);
+
+        for (int i = 1; i <= 5; i++) throttled.accept(i);
+
+        assertTrue(recorder.calls.isEmpty());
+        assertEquals(_.list(5), recorder.await(1));
+    }
+
+    @Test
+    public void throttleFunctionReturnsLatestResult() {
+        Function<Integer, Integer> throttled = _.throttle(square, 10000);
+
+        assertEquals(Integer.valueOf(4), throttled.apply(2));
+        assertEquals(Integer.valueOf(4), throttled.apply(3));
     }
 
     @Test
-    public void chainedZipNullInput() {
-        assertEquals(Collections.emptyList(), new _<Integer>(_.range(10)).zip(null).value());
+    public void throttleSlowFunctionBlocksNobody() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        final Function<Integer, Integer> throttled = _.throttle(new Function<Integer, Integer>() {
+            @Override
+            public Integer apply(Integer input) {
+                threads.add(Thread.currentThread().getName());
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return input;
+            }
+        }, 10);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> leading = executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return throttled.apply(1);
+                }
+            });
+            while (threads.isEmpty()) Thread.sleep(1);
+
+            // the leading call is still running, but neither callers nor timers wait for it
+            assertEquals(null, throttled.apply(2));
+            Recorder<String> recorder = new Recorder<String>();
+            _.delay(recorder, "timer", 30);
+            assertEquals(_.list("timer"), recorder.await(1));
+
+            // the trailing call is made, but not on the scheduler thread
+            assertEquals(2, threads.size());
+            assertFalse(threads.get(1).startsWith("underscore-scheduler-"));
+
+            release.countDown();
+            assertEquals(Integer.valueOf(1), leading.get(2, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
     }
 
-    // ----- _.range -------------------------------------------------------------------------------
+    // ----- _.debounce ----------------------------------------------------------------------------
 
     @Test
-    public void rangeOptimisticInputs() {
-        assertEquals(_.list(1,2,3,4,5), _.range(1, 6, 1));
+    public void debounce() throws InterruptedException {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        Consumer<Integer> debounced = _.debounceConsumer(recorder, 50);
+
+        for (int i = 1; i <= 5; i++) debounced.accept(i);
+
+        assertTrue(recorder.calls.isEmpty());
+        assertEquals(_.list(5), recorder.await(1));
     }
 
     @Test
-    public void rangeNegativeStep() {
-        assertEquals(_.list(0,-1,-2,-3,-4), _.range(0, -5, -1));
+    public void debounceLeading() throws InterruptedException {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        Consumer<Integer> debounced = _.debounceConsumer(recorder, 50, true, false);
+
+        for (int i = 1; i <= 5; i++) debounced.accept(i);
+
+        assertEquals(_.list(1), new ArrayList<Integer>(recorder.calls));
+        assertEquals(_.list(1), recorder.await(2));
     }
 
     @Test
-    public void rangeOddStep() {
-        assertEquals(_.list(0, 2, 4), _.range(0, 5, 2));
-        assertEquals(_.list(0, -2, -4), _.range(0, -5, -2));
+    public void debounceLeadingAndTrailing() throws InterruptedException {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        Consumer<Integer> debounced = _.debounceConsumer(recorder, 50, true, true);
+
+        debounced.accept(1);
+        assertEquals(_.list(1), recorder.await(2));
+
+        for (int i = 2; i <= 5; i++) debounced.accept(i);
+        assertEquals(_.list(1, 2, 5), recorder.await(3));
     }
 
+    // ----- _.delay -------------------------------------------------------------------------------
+
     @Test
-    public void rangeSameStartStop() {
-        List<Integer> empty = Collections.emptyList();
-        assertEquals(empty, _.range(0, 0, 1));
+    public void delay() throws Exception {
+        final long start = System.nanoTime();
+        Timeout<Long> timeout = _.delay(new Supplier<Long>() {
+            @Override
+            public Long get() {
+                return System.nanoTime() - start;
+            }
+        }, 100);
+
+        assertFalse(timeout.isDone());
+        assertTrue(timeout.get() >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(timeout.isDone());
     }
 
     @Test
-    public void rangeZeroStep() {
-        List<Integer> empty = Collections.emptyList();
-        assertEquals(empty, _.range(0, 100, 0));
+    public void delayConsumer() throws Exception {
+        Recorder<String> recorder = new Recorder<String>();
+        Timeout<Void> timeout = _.delay(recorder, "foo", 10);
+
+        assertEquals(null, timeout.get(2, TimeUnit.SECONDS));
+        assertEquals(_.list("foo"), recorder.calls);
     }
 
     @Test
-    public void rangeStartGreaterStopPositiveStep() {
-        List<Integer> empty = Collections.emptyList();
-        assertEquals(empty, _.range(5, 0, 1));
+    public void delayCancelled() throws Exception {
+        Recorder<String> recorder = new Recorder<String>();
+        Timeout<Void> timeout = _.delay(recorder, "foo", 50);
+
+        assertTrue(timeout.cancel(false));
+        assertFalse(timeout.cancel(false));
+        assertTrue(timeout.isCancelled());
+        assertTrue(timeout.isDone());
+        assertEquals(Collections.emptyList(), recorder.await(1));
+
+        try {
+            timeout.get();
+            fail("expected CancellationException");
+        } catch (CancellationException e) {
+            // expected
+        }
     }
 
     @Test
-    public void rangeDefaultStep() {
-        assertEquals(_.list(0,1,2,3,4), _.range(0, 5));
+    public void delayWithException() throws Exception {
+        Timeout<Integer> timeout = _.delay(new Supplier<Integer>() {
+            @Override
+            public Integer get() {
+                throw new IllegalStateException("foo");
+            }
+        }, 1);
+
+        try {
+            timeout.get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertEquals("foo", e.getCause().getMessage());
+        }
     }
 
     @Test
-    public void rangeDefaultStepStartGreaterStop() {
-        List<Integer> empty = Collections.emptyList();
-        assertEquals(empty, _.range(0, -5));
+    public void delaySlowSupplierDoesNotHoldUpOthers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        Timeout<Boolean> slow = _.delay(new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                try {
+                    return release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+        }, 1);
+        Thread.sleep(20);
+
+        Recorder<String> recorder = new Recorder<String>();
+        assertEquals(null, _.delay(recorder, "foo", 1).get(2, TimeUnit.SECONDS));
+        assertFalse(slow.isDone());
+
+        release.countDown();
+        assertTrue(slow.get(2, TimeUnit.SECONDS));
     }
 
     @Test
-    public void rangeDefaultStart() {
-        assertEquals(_.list(0,1,2,3,4), _.range(5));
-    }
+    public void delayForever() throws Exception {
+        Recorder<String> recorder = new Recorder<String>();
+        Timeout<Void> timeout = _.delay(recorder, "foo", Long.MAX_VALUE);
 
-    // ----- _.wrap --------------------------------------------------------------------------------
+        assertEquals(Collections.emptyList(), recorder.await(0));
+        assertFalse(timeout.isDone());
+        assertTrue(timeout.cancel(false));
+    }
 
     @Test
-    public void wrap() {
-        final String before = "before ++ ";
-        final String after = " ++ after";
-        final Function<String, String> expected = new Function<String, String>() {
-            @Override
-            public String apply(String s) {
-                return before + s + after;
-            }
-        };
-        final Function<String, String> actual = _.wrap(_.identity(String.class), new Function<Function<String, String>, Function<String, String>>() {
-            public Function<String, String> apply(final Function<String, String> wrapped) {
-                return new Function<String, String>() {
-                    public String apply(String s){
-                        return before + wrapped.apply(s) + after;
-                    }
-                };
+    public void delayManyNeverEarly() throws Exception {
+        Random random = new Random(42);
+        List<Timeout<Boolean>> timeouts = new ArrayList<Timeout<Boolean>>();
+        List<Timeout<Boolean>> cancelled = new ArrayList<Timeout<Boolean>>();
+
+        for (int i = 0; i < 10000; i++) {
+            // spread over several levels of the wheel
+            final long delay = random.nextInt(300);
+            final long start = System.nanoTime();
+            Timeout<Boolean> timeout = _.delay(new Supplier<Boolean>() {
+                @Override
+                public Boolean get() {
+                    return System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(delay);
+                }
+            }, delay);
+            if (i % 3 == 0 && timeout.cancel(false)) {
+                cancelled.add(timeout);
+            } else {
+                timeouts.add(timeout);
             }
-        });
+        }
 
-        _.each(_.list("foo", "bar", "baz"), new Consumer<String>() {
+        for (Timeout<Boolean> timeout : timeouts)
+            assertTrue(timeout.get(5, TimeUnit.SECONDS));
+        for (Timeout<Boolean> timeout : cancelled)
+            assertTrue(timeout.isCancelled());
+    }
+
+    private static Timeout<Long> tickTimeout(final Scheduler.Wheel wheel, long deadline) {
+        return new Timeout<Long>(new Supplier<Long>() {
             @Override
-            public void accept(String s) {
-                assertEquals(expected.apply(s), actual.apply(s));
+            public Long get() {
+                return wheel.tick();
             }
-        });
+        }, deadline);
     }
 
-    // ----- _.negate ------------------------------------------------------------------------------
+    @Test
+    public void delayWheelRunsOnDeadline() throws Exception {
+        Scheduler.Wheel wheel = new Scheduler.Wheel(5);
+        Random random = new Random(42);
+        List<Timeout<Long>> timeouts = new ArrayList<Timeout<Long>>();
+        for (int i = 0; i < 1000; i++) {
+            Timeout<Long> timeout = tickTimeout(wheel, 6 + random.nextInt(1 << 20));
+            wheel.insert(timeout);
+            timeouts.add(timeout);
+        }
+
+        for (long now = 5; now < (1 << 20) + 10; now += 1 + random.nextInt(5000))
+            wheel.advanceTo(now);
+        wheel.advanceTo((1 << 20) + 10);
+
+        for (Timeout<Long> timeout : timeouts)
+            assertEquals(Long.valueOf(timeout.mDeadline), timeout.get(0, TimeUnit.SECONDS));
+        assertEquals(Long.MAX_VALUE, wheel.nextTick());
+    }
 
     @Test
-    public void negatePredicate() {
-        final Predicate<String> ofEvenLength = new Predicate<String>() {
-            @Override
-            public boolean test(String s) {
-                return s.length() % 2 == 0;
-            }
-        };
-        final Predicate<String> ofOddLength = _.negate(ofEvenLength);
-        _.each(_.list("foo", "lorem", "quux"), new Consumer<String>() {
-            @Override
-            public void accept(String s) {
-                assertTrue(ofEvenLength.test(s) ^ ofOddLength.test(s));
-            }
-        });
+    public void delayWheelSkipsIdleTicks() throws Exception {
+        long week = TimeUnit.DAYS.toMillis(7);
+        Scheduler.Wheel wheel = new Scheduler.Wheel(0);
+        Timeout<Long> later = tickTimeout(wheel, 2 * week);
+        wheel.insert(later);
+
+        long start = System.nanoTime();
+        wheel.advanceTo(week);
+        Timeout<Long> soon = tickTimeout(wheel, week + 1);
+        wheel.insert(soon);
+        wheel.advanceTo(week + 1);
+
+        // catching up a week of idle ticks must not take a week of steps
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(Long.valueOf(week + 1), soon.get(0, TimeUnit.SECONDS));
+        assertFalse(later.isDone());
+        assertTrue(wheel.nextTick() <= 2 * week);
+
+        wheel.advanceTo(2 * week);
+        assertEquals(Long.valueOf(2 * week), later.get(0, TimeUnit.SECONDS));
     }
 
+    // ----- _.defer -------------------------------------------------------------------------------
+
     @Test
-    public void negateBiPredicate() {
-        final BiPredicate<String, Integer> isOfLength = new BiPredicate<String, Integer>() {
-            @Override
-            public boolean test(String s, Integer integer) {
-                return s.length() == integer;
-            }
-        };
-        final BiPredicate<String, Integer> isNotOfLength = _.negate(isOfLength);
-        _.each(_.list("foo:3", "lorem:2", "quux:12"), new Consumer<String>() {
+    public void defer() throws Exception {
+        Recorder<Integer> recorder = new Recorder<Integer>();
+        _.defer(recorder, 1);
+
+        assertEquals(Integer.valueOf(4), _.defer(new Supplier<Integer>() {
             @Override
-            public void accept(String s) {
-                String[] unzip = s.split(":");
-                assertTrue(isOfLength.test(unzip[0], Integer.parseInt(unzip[1])) ^ isNotOfLength.test(unzip[0], Integer.parseInt(unzip[1])));
+            public Integer get() {
+                return 4;
             }
-        });
+        }).get(2, TimeUnit.SECONDS));
+        assertEquals(_.list(1), recorder.await(1));
     }
 
     // ----- _.extend ------------------------------------------------------------------------------
@@ -781,6 +3075,111 @@ public class _Test {
         }
     }
 
+    @Test
+    public void extendWithMissingFieldOnlyFailsForValues() throws Exception {
+        Datastore defaults = datastore(0, 1);
+
+        assertEquals(Integer.valueOf(2), _.extend(defaults, (Datastore) extraDatastore(null, 2, null)).b);
+
+        try {
+            _.extend(defaults, (Datastore) extraDatastore(null, null, "c"));
+            fail("expected NoSuchFieldException");
+        } catch (NoSuchFieldException e) {
+            assertEquals("c", e.getMessage());
+        }
+    }
+
+    private static class ExtraDatastore extends Datastore {
+        public String c;
+    }
+
+    private ExtraDatastore extraDatastore(Integer a, Integer b, String c) {
+        ExtraDatastore result = new ExtraDatastore();
+        result.a = a;
+        result.b = b;
+        result.c = c;
+        return result;
+    }
+
+    @Test
+    public void extendShallowReplacesNested() throws Exception {
+        NestedDatastore defaults = nestedDatastore(datastore(0, 1), _.dictionary(_.entry("x", 1)));
+        NestedDatastore options = nestedDatastore(datastore(null, 2), _.dictionary(_.entry("y", 2)));
+
+        NestedDatastore result = _.extend(defaults, options);
+        assertEquals(null, result.store.a);
+        assertEquals(_.dictionary(_.entry("y", 2)), result.map);
+    }
+
+    @Test
+    public void extendDeepMergesNested() throws Exception {
+        Map<String, Object> defaultMap = new HashMap<String, Object>();
+        defaultMap.put("x", 1);
+        defaultMap.put("nested", new HashMap<String, Object>(_.dictionary(_.entry("z", (Object) 3))));
+        Map<String, Object> optionMap = new HashMap<String, Object>();
+        optionMap.put("x", null);
+        optionMap.put("y", 2);
+        optionMap.put("nested", _.dictionary(_.entry("w", (Object) 4)));
+
+        NestedDatastore defaults = nestedDatastore(datastore(0, 1), defaultMap);
+        NestedDatastore options = nestedDatastore(datastore(null, 2), optionMap);
+
+        NestedDatastore result = _.extend(defaults, options, true);
+        assertEquals(Integer.valueOf(0), result.store.a);
+        assertEquals(Integer.valueOf(2), result.store.b);
+        assertEquals(1, result.map.get("x"));
+        assertEquals(2, result.map.get("y"));
+        assertEquals(_.dictionary(_.entry("z", (Object) 3), _.entry("w", (Object) 4)), result.map.get("nested"));
+    }
+
+    @Test
+    public void extendDeepWithoutDefaultsTakesOptions() throws Exception {
+        Datastore store = datastore(1, 2);
+        NestedDatastore result = _.extend(nestedDatastore(null, null), nestedDatastore(store, null), true);
+
+        assertTrue(store == result.store);
+    }
+
+    @Test
+    public void extendDeepMergesSelfReferences() throws Exception {
+        CyclicDatastore defaults = new CyclicDatastore();
+        defaults.a = 0;
+        defaults.next = defaults;
+        defaults.map = new HashMap<String, Object>();
+        defaults.map.put("self", defaults.map);
+
+        CyclicDatastore options = new CyclicDatastore();
+        options.a = 1;
+        options.next = options;
+        options.map = new HashMap<String, Object>();
+        options.map.put("self", options.map);
+        options.map.put("x", 2);
+
+        CyclicDatastore result = _.extend(defaults, options, true);
+        assertTrue(defaults == result.next);
+        assertEquals(Integer.valueOf(1), result.a);
+        assertTrue(defaults.map == result.map.get("self"));
+        assertEquals(2, result.map.get("x"));
+    }
+
+    private static class CyclicDatastore {
+        public Integer a;
+        public CyclicDatastore next;
+        public Map<String, Object> map;
+    }
+
+    private static class NestedDatastore {
+        public Datastore store;
+        public Map<String, Object> map;
+    }
+
+    private NestedDatastore nestedDatastore(Datastore store, Map<String, ?> map) {
+        NestedDatastore result = new NestedDatastore();
+        result.store = store;
+        result.map = map == null ? null : (Map<String, Object>) map;
+        return result;
+    }
+
     // ----- _.list --------------------------------------------------------------------------------
 
     @Test
@@ -834,6 +3233,25 @@ public class _Test {
         assertEquals("foo,bar", _.join(_.list("foo", "bar")));
     }
 
+    @Test
+    public void joinPresizesStringsFromFirstValue() {
+        assertEquals(7, _.joinedLength(_.list("a", "bcd", "", "ef"), ",", "a"));
+        assertEquals(1, _.joinedLength(iterable("a", "bcd"), ",", "a"));
+        assertEquals("a,bcd,,ef", _.join(_.list("a", "bcd", "", "ef")));
+    }
+
+    @Test
+    public void joinCapsEstimatedPresize() {
+        String first = _.join(Collections.nCopies(1000, "x"), "");
+        List<String> values = new ArrayList<String>(Collections.nCopies(100000, "y"));
+        values.set(0, first);
+        Function<String, String> same = _.identity(String.class);
+
+        assertEquals(_.MAX_JOIN_ESTIMATE, _.joinedLength(values, ",", first));
+        assertEquals(1000, _.joinedLength(values.subList(0, 1), ",", first));
+        assertEquals(1000 + 2 * 99999, _.join(values, ",", "", "", same).length());
+    }
+
     @Test
     public void staticJoinWithNullInput() {
         assertEquals("", _.join(null, ","));
@@ -865,6 +3283,48 @@ public class _Test {
         assertEquals("", new _<String>(null).join());
     }
 
+    @Test
+    public void staticJoinFormatted() {
+        Function<Integer, String> quote = new Function<Integer, String>() {
+            @Override
+            public String apply(Integer i) {
+                return "'" + i + "'";
+            }
+        };
+
+        assertEquals("IN ('1','2','3')", _.join(_.list(1, 2, 3), ",", "IN (", ")", quote));
+        assertEquals("IN ('1','2')", _.join(iterable(1, 2), ",", "IN (", ")", quote));
+        assertEquals("IN ()", _.join(Collections.<Integer>emptyList(), ",", "IN (", ")", quote));
+        assertEquals("IN ()", _.join((Iterable<Integer>) null, ",", "IN (", ")", quote));
+    }
+
+    @Test
+    public void staticJoinFormattedDefaultsToStringValueOf() {
+        assertEquals("[1, null, 3]", _.join(_.list(1, null, 3), ", ", "[", "]", null));
+    }
+
+    @Test
+    public void staticJoinToAppendable() throws IOException {
+        StringWriter writer = new StringWriter();
+        writer.write("ids=");
+
+        assertTrue(writer == _.join(_.list(1, 2, 3), ";", "", "\n", null, writer));
+        assertEquals("ids=1;2;3\n", writer.toString());
+    }
+
+    @Test
+    public void chainedJoinFormatted() throws IOException {
+        Function<Integer, String> hex = new Function<Integer, String>() {
+            @Override
+            public String apply(Integer i) {
+                return Integer.toHexString(i);
+            }
+        };
+
+        assertEquals("<a|ff>", new _<Integer>(_.list(10, 255)).join("|", "<", ">", hex));
+        assertEquals("<a|ff>", new _<Integer>(_.list(10, 255)).join("|", "<", ">", hex, new StringBuilder()).toString());
+    }
+
     // ----- _.stringify ---------------------------------------------------------------------------
 
     @Test
@@ -929,6 +3389,42 @@ public class _Test {
         assertEquals("{\"number\":1337,\"string\":\"thisIsAString\",\"list\":[1,2,3,4,5],\"map\":{\"number\":12345,\"string\":\"thisIsAnotherString\"}}", _.stringify(json));
     }
 
+    @Test
+    public void staticStringifyToStringBuilderAppends() {
+        StringBuilder buffer = new StringBuilder("x=");
+
+        assertTrue(buffer == _.stringify(_.list(1, 2), buffer));
+        assertEquals("x=[1,2]", buffer.toString());
+
+        buffer.setLength(0);
+        assertEquals("[\"a\",\"b\"]", _.stringify(_.list("a", "b"), buffer).toString());
+    }
+
+    @Test
+    public void staticStringifyToAppendable() throws IOException {
+        Map<String, Object> json = new HashMap<String, Object>();
+        json.put("list", _.list(_.list(1, 2), _.list(3)));
+
+        StringWriter writer = new StringWriter();
+        _.stringify(json, writer);
+
+        assertEquals(_.stringify(json), writer.toString());
+        assertEquals("{\"list\":[[1,2],[3]]}", writer.toString());
+    }
+
+    @Test
+    public void staticStringifyToOutputStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        _.stringify(_.list("\u00e4", null, 1), out, Charset.forName("UTF-8"));
+
+        assertEquals("[\"\u00e4\",,1]", new String(out.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void stringifyToAppendable() throws IOException {
+        assertEquals("[1,2,3]", new _<Integer>(_.list(1, 2, 3)).stringify(new StringWriter()).toString());
+    }
+
     // ----- _.identity ----------------------------------------------------------------------------
 
     @Test
@@ -954,4 +3450,182 @@ public class _Test {
     public void constant() {
         assertEquals("foo", _.constant("foo").get());
     }
+
+    // ----- _.instrument --------------------------------------------------------------------------
+
+    @Test
+    public void instrumentRecordsOperations() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        _.instrument(metrics);
+        try {
+            _.map(_.list(1, 2, 3), square);
+            _.map(_.list(4, 5), square);
+            _.groupBy(_.list("foo", "bar", "quux"), stringLength);
+            _.reject(_.list(1, 2, 3, 4), isEven);
+        } finally {
+            _.instrument(null);
+        }
+
+        MetricsRegistry.Histogram map = metrics.histogram("map");
+        assertEquals(2, map.count());
+        assertEquals(5, map.inputSize());
+        assertEquals(5, map.outputSize());
+        assertTrue(map.min() <= map.percentile(0.5));
+        assertTrue(map.percentile(0.5) <= map.max());
+        assertEquals(2, metrics.histogram("map(" + square.getClass().getName() + ")").count());
+
+        MetricsRegistry.Histogram groupBy = metrics.histogram("groupBy");
+        assertEquals(1, groupBy.count());
+        assertEquals(3, groupBy.inputSize());
+        assertEquals(2, groupBy.outputSize());
+
+        assertEquals(1, metrics.histogram("reject").count());
+        assertEquals(1, metrics.histogram("reject(" + isEven.getClass().getName() + ")").count());
+        assertEquals(null, metrics.histogram("filter"));
+    }
+
+    @Test
+    public void instrumentRecordsFailingCalls() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        _.instrument(metrics);
+        try {
+            _.map(_.list(1, 2, 3), new Function<Integer, Integer>() {
+                @Override
+                public Integer apply(Integer input) {
+                    throw new IllegalStateException("foo");
+                }
+            });
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("foo", e.getMessage());
+        } finally {
+            _.instrument(null);
+        }
+
+        MetricsRegistry.Histogram map = metrics.histogram("map");
+        assertEquals(1, map.count());
+        assertEquals(3, map.inputSize());
+        assertEquals(0, map.outputSize());
+    }
+
+    @Test
+    public void instrumentRecordsDelegatingOperationsUnderTheirOwnNames() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        _.instrument(metrics);
+        try {
+            _.every(_.list(2, 4), isEven);
+            _.sortBy(_.list("quux", "a"), new Function<String, Long>() {
+                @Override
+                public Long apply(String input) {
+                    return (long) input.length();
+                }
+            });
+            _.indexBy(_.list("foo", "quux"), stringLength);
+            _.initial(_.list(1, 2, 3));
+            _.minBy(_.list(1, 2, 3), square, new ToLongFunction<Integer>() {
+                @Override
+                public long applyAsLong(Integer value) {
+                    return value;
+                }
+            });
+            _.sum(new int[] {1, 2, 3});
+        } finally {
+            _.instrument(null);
+        }
+
+        assertEquals(1, metrics.histogram("every").count());
+        assertEquals(1, metrics.histogram("every(" + isEven.getClass().getName() + ")").count());
+        assertEquals(1, metrics.histogram("sortBy").count());
+        assertEquals(1, metrics.histogram("indexBy").count());
+        assertEquals(2, metrics.histogram("indexBy").outputSize());
+        assertEquals(1, metrics.histogram("initial").count());
+        assertEquals(1, metrics.histogram("minBy").count());
+        assertEquals(3, metrics.histogram("sum").inputSize());
+        assertEquals(null, metrics.histogram("some"));
+        assertEquals(null, metrics.histogram("sortByLong"));
+        assertEquals(null, metrics.histogram("first"));
+        assertEquals(null, metrics.histogram("size"));
+    }
+
+    @Test
+    public void instrumentRecordsParallelStages() throws InterruptedException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        _.instrument(metrics);
+        try {
+            BiFunction<Integer, Integer, Integer> plus = new BiFunction<Integer, Integer, Integer>() {
+                @Override
+                public Integer apply(Integer value, Integer sum) {
+                    return value + sum;
+                }
+            };
+            int sum = new _<Integer>(_.range(1, 1000)).parallel(executor)
+                    .map(square)
+                    .reduce(plus, 0, plus);
+            assertEquals(332833500, sum);
+        } finally {
+            _.instrument(null);
+            executor.shutdown();
+        }
+
+        assertEquals(1, metrics.histogram("parallel.map").count());
+        assertEquals(1, metrics.histogram("parallel.reduce").count());
+        // the chunks of the parallel stages are not recorded separately
+        assertEquals(null, metrics.histogram("map"));
+        assertEquals(null, metrics.histogram("reduce"));
+    }
+
+    @Test
+    public void instrumentOffRecordsNothing() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        _.instrument(metrics);
+        _.instrument(null);
+
+        _.map(_.list(1, 2, 3), square);
+
+        assertTrue(metrics.histograms().isEmpty());
+    }
+
+    @Test
+    public void instrumentIgnoresBrokenInstrumentation() {
+        _.instrument(new Instrumentation() {
+            @Override
+            public void record(String operation, Object function, long inputSize, long outputSize,
+                               long elapsedNanos, long allocatedBytes) {
+                throw new IllegalStateException("broken");
+            }
+        });
+        try {
+            assertEquals(_.list(1, 4, 9), _.map(_.list(1, 2, 3), square));
+        } finally {
+            _.instrument(null);
+        }
+    }
+
+    @Test
+    public void histogramPercentiles() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        for (long nanos = 1; nanos <= 100000; nanos++)
+            metrics.record("op", null, -1, -1, nanos, -1);
+
+        MetricsRegistry.Histogram histogram = metrics.histogram("op");
+        assertEquals(100000, histogram.count());
+        assertEquals(1, histogram.min());
+        assertEquals(100000, histogram.max());
+        assertEquals(50000.5, histogram.mean(), 0.001);
+        assertEquals(100, histogram.percentile(0.001));
+        assertEquals(50000, histogram.percentile(0.5), 50000 * 0.02);
+        assertEquals(99000, histogram.percentile(0.99), 99000 * 0.02);
+        assertEquals(100000, histogram.percentile(1));
+        assertEquals(0, histogram.inputSize());
+    }
+
+    @Test
+    public void histogramBuckets() {
+        for (long value : new long[] {0, 1, 127, 128, 129, 1000, 123456789L, Long.MAX_VALUE}) {
+            int bucket = MetricsRegistry.Histogram.bucket(value);
+            assertTrue(value <= MetricsRegistry.Histogram.highestValue(bucket));
+            assertTrue(bucket == 0 || value > MetricsRegistry.Histogram.highestValue(bucket - 1));
+        }
+    }
 }